@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.core;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.alipay.sofa.jraft.Iterator;
+import com.alipay.sofa.jraft.NodeManager;
+import com.alipay.sofa.jraft.Status;
+import com.alipay.sofa.jraft.closure.ReadIndexClosure;
+import com.alipay.sofa.jraft.conf.Configuration;
+import com.alipay.sofa.jraft.entity.PeerId;
+import com.alipay.sofa.jraft.entity.Task;
+import com.alipay.sofa.jraft.option.NodeOptions;
+import com.alipay.sofa.jraft.option.RaftOptions;
+import com.alipay.sofa.jraft.util.Endpoint;
+import com.anyilanxin.kunpeng.atomix.cluster.AtomixCluster;
+import com.anyilanxin.kunpeng.atomix.cluster.DefaultPartitionManagementService;
+import com.anyilanxin.kunpeng.atomix.cluster.PartitionManagementService;
+import com.anyilanxin.kunpeng.atomix.utils.net.Address;
+
+/**
+ * End to end throughput of a 3 nodes group hosted in one process. The peers share one
+ * messaging service and differ by their index only, so every raft message goes through
+ * {@code LocalClientConnection}/{@code LocalServerConnection}: no socket is involved and
+ * the numbers show the cost of the raft paths themselves. With {@code sharedLoops} the peers
+ * run on one {@link GroupEventLoops} instead of their own disruptor threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Threads(8)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.util=ALL-UNNAMED")
+public class ClusterBenchmark {
+
+    private static final String  GROUP_ID = "bench";
+
+    @Param({ "128", "4096" })
+    private int                  dataSize;
+
+    @Param({ "false", "true" })
+    private boolean              sharedLoops;
+
+    private File                 path;
+    private AtomixCluster        cluster;
+    private Endpoint             endpoint;
+    private final List<NodeImpl> nodes    = new ArrayList<>();
+    private NodeImpl             leader;
+    private NodeImpl             follower;
+    private GroupEventLoops      eventLoops;
+    private byte[]               data;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.path = Files.createTempDirectory("jraft-bench-cluster").toFile();
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        this.endpoint = new Endpoint("127.0.0.1", port);
+        this.cluster = AtomixCluster.builder() //
+            .withMemberId("bench") //
+            .withAddress(Address.from(this.endpoint.getIp(), port)) //
+            .build();
+        this.cluster.start().join();
+        final PartitionManagementService partitionManagementService = new DefaultPartitionManagementService(
+            this.cluster.getMembershipService(), this.cluster.getMessagingService());
+        NodeManager.getInstance().addAddress(this.endpoint);
+
+        if (this.sharedLoops) {
+            this.eventLoops = new GroupEventLoops(2, new RaftOptions());
+        }
+        final List<PeerId> peers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            peers.add(new PeerId(this.endpoint, i));
+        }
+        for (final PeerId peer : peers) {
+            final File dataDir = new File(this.path, String.valueOf(peer.getIdx()));
+            FileUtils.forceMkdir(dataDir);
+            final String dataPath = dataDir.getAbsolutePath();
+            final NodeOptions opts = new NodeOptions();
+            opts.setElectionTimeoutMs(1000);
+            opts.setInitialConf(new Configuration(peers));
+            opts.setFsm(new StateMachineAdapter() {
+
+                @Override
+                public void onApply(final Iterator iter) {
+                    while (iter.hasNext()) {
+                        if (iter.done() != null) {
+                            iter.done().run(Status.OK());
+                        }
+                        iter.next();
+                    }
+                }
+            });
+            opts.setLogUri(dataPath + File.separator + "log");
+            opts.setRaftMetaUri(dataPath + File.separator + "meta");
+            opts.setGroupEventLoops(this.eventLoops);
+            final NodeImpl node = new NodeImpl(GROUP_ID, peer);
+            if (!node.init(opts, partitionManagementService)) {
+                throw new IllegalStateException("Fail to init node " + peer);
+            }
+            this.nodes.add(node);
+        }
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (this.leader == null) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("No leader elected");
+            }
+            Thread.sleep(100);
+            for (final NodeImpl node : this.nodes) {
+                if (node.isLeader()) {
+                    this.leader = node;
+                }
+            }
+        }
+        for (final NodeImpl node : this.nodes) {
+            if (node != this.leader) {
+                this.follower = node;
+                break;
+            }
+        }
+        this.data = new byte[this.dataSize];
+        ThreadLocalRandom.current().nextBytes(this.data);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (final NodeImpl node : this.nodes) {
+            node.shutdown();
+        }
+        for (final NodeImpl node : this.nodes) {
+            node.join();
+        }
+        if (this.eventLoops != null) {
+            this.eventLoops.shutdown();
+        }
+        NodeManager.getInstance().removeAddress(this.endpoint);
+        this.cluster.stop().join();
+        FileUtils.deleteDirectory(this.path);
+    }
+
+    @Benchmark
+    public Status apply() {
+        final CompletableFuture<Status> future = new CompletableFuture<>();
+        this.leader.apply(new Task(ByteBuffer.wrap(this.data), future::complete));
+        return check(future.join());
+    }
+
+    @Benchmark
+    public Status leaderReadIndex() {
+        return readIndex(this.leader);
+    }
+
+    @Benchmark
+    public Status followerReadIndex() {
+        return readIndex(this.follower);
+    }
+
+    private static Status readIndex(final NodeImpl node) {
+        final CompletableFuture<Status> future = new CompletableFuture<>();
+        node.readIndex(null, new ReadIndexClosure() {
+
+            @Override
+            public void run(final Status status, final long index, final byte[] reqCtx) {
+                future.complete(status);
+            }
+        });
+        return check(future.join());
+    }
+
+    private static Status check(final Status status) {
+        if (!status.isOk()) {
+            throw new IllegalStateException(status.toString());
+        }
+        return status;
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder() //
+            .include(ClusterBenchmark.class.getSimpleName()) //
+            .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.core;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.alipay.sofa.jraft.Iterator;
+import com.alipay.sofa.jraft.Status;
+import com.alipay.sofa.jraft.closure.ClosureQueueImpl;
+import com.alipay.sofa.jraft.conf.ConfigurationManager;
+import com.alipay.sofa.jraft.entity.EnumOutter;
+import com.alipay.sofa.jraft.entity.LogEntry;
+import com.alipay.sofa.jraft.entity.LogId;
+import com.alipay.sofa.jraft.entity.PeerId;
+import com.alipay.sofa.jraft.option.FSMCallerOptions;
+import com.alipay.sofa.jraft.option.LogManagerOptions;
+import com.alipay.sofa.jraft.option.RaftOptions;
+import com.alipay.sofa.jraft.storage.LogManager;
+import com.alipay.sofa.jraft.storage.LogStorage;
+import com.alipay.sofa.jraft.storage.impl.LogManagerImpl;
+import com.alipay.sofa.jraft.storage.impl.RocksDBLogStorage;
+
+/**
+ * Apply path of {@link FSMCallerImpl}: the entries of a batch are committed one by one, as the
+ * ballot box does under load, and the caller coalesces the committed tasks before iterating
+ * the entries into the state machine. One operation lasts until the whole batch is applied.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.util=ALL-UNNAMED")
+public class FSMCallerApplyBenchmark {
+
+    @Param({ "1", "32", "256" })
+    private int                     batchSize;
+
+    @Param({ "128" })
+    private int                     dataSize;
+
+    private File                    path;
+    private LogStorage              logStorage;
+    private LogManagerImpl          logManager;
+    private FSMCallerImpl           fsmCaller;
+    private byte[]                  data;
+    private volatile long           waitIndex;
+    private volatile CountDownLatch applied;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.path = Files.createTempDirectory("jraft-bench-fsm").toFile();
+        final RaftOptions raftOptions = new RaftOptions();
+        raftOptions.setSync(false);
+
+        final LogManagerOptions lmOpts = new LogManagerOptions();
+        lmOpts.setGroupId("bench");
+        this.logStorage = new RocksDBLogStorage(this.path.getAbsolutePath(), raftOptions);
+        lmOpts.setLogStorage(this.logStorage);
+        lmOpts.setConfigurationManager(new ConfigurationManager());
+        lmOpts.setRaftOptions(raftOptions);
+        lmOpts.setNodeMetrics(new NodeMetrics(false));
+        this.logManager = new LogManagerImpl();
+        if (!this.logManager.init(lmOpts)) {
+            throw new IllegalStateException("Fail to init log manager");
+        }
+
+        final FSMCallerOptions opts = new FSMCallerOptions();
+        opts.setLogManager(this.logManager);
+        opts.setFsm(new StateMachineAdapter() {
+
+            @Override
+            public void onApply(final Iterator iter) {
+                while (iter.hasNext()) {
+                    iter.next();
+                }
+            }
+        });
+        opts.setClosureQueue(new ClosureQueueImpl("bench"));
+        opts.setNode(new BenchmarkNode("bench", new PeerId("127.0.0.1", 8081)));
+        opts.setBootstrapId(new LogId(0, 0));
+        this.fsmCaller = new FSMCallerImpl();
+        if (!this.fsmCaller.init(opts)) {
+            throw new IllegalStateException("Fail to init fsm caller");
+        }
+        this.fsmCaller.addLastAppliedLogIndexListener(lastAppliedLogIndex -> {
+            final CountDownLatch latch = this.applied;
+            if (latch != null && lastAppliedLogIndex >= this.waitIndex) {
+                latch.countDown();
+            }
+        });
+        this.data = new byte[this.dataSize];
+        ThreadLocalRandom.current().nextBytes(this.data);
+    }
+
+    @Setup(Level.Invocation)
+    public void appendEntries() throws InterruptedException {
+        final List<LogEntry> entries = new ArrayList<>(this.batchSize);
+        for (int i = 0; i < this.batchSize; i++) {
+            final LogEntry entry = new LogEntry(EnumOutter.EntryType.ENTRY_TYPE_DATA);
+            entry.getId().setTerm(1);
+            entry.setData(ByteBuffer.wrap(this.data));
+            entries.add(entry);
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        this.logManager.appendEntries(entries, new LogManager.StableClosure() {
+
+            @Override
+            public void run(final Status status) {
+                latch.countDown();
+            }
+        });
+        latch.await();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.fsmCaller.shutdown();
+        this.fsmCaller.join();
+        this.logManager.shutdown();
+        this.logManager.join();
+        this.logStorage.shutdown();
+        FileUtils.deleteDirectory(this.path);
+    }
+
+    @Benchmark
+    public long apply() throws InterruptedException {
+        final long lastIndex = this.logManager.getLastLogIndex();
+        final CountDownLatch latch = new CountDownLatch(1);
+        this.waitIndex = lastIndex;
+        this.applied = latch;
+        for (long index = lastIndex - this.batchSize + 1; index <= lastIndex; index++) {
+            this.fsmCaller.onCommitted(index);
+        }
+        latch.await();
+        return this.fsmCaller.getLastAppliedIndex();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder() //
+            .include(FSMCallerApplyBenchmark.class.getSimpleName()) //
+            .build();
+        new Runner(opt).run();
+    }
+}
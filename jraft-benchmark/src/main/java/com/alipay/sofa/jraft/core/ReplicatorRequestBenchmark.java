@@ -0,0 +1,170 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.core;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.alipay.sofa.jraft.Status;
+import com.alipay.sofa.jraft.conf.ConfigurationManager;
+import com.alipay.sofa.jraft.entity.EnumOutter;
+import com.alipay.sofa.jraft.entity.LogEntry;
+import com.alipay.sofa.jraft.entity.PeerId;
+import com.alipay.sofa.jraft.option.LogManagerOptions;
+import com.alipay.sofa.jraft.option.RaftOptions;
+import com.alipay.sofa.jraft.option.ReplicatorOptions;
+import com.alipay.sofa.jraft.rpc.RpcRequests.AppendEntriesRequest;
+import com.alipay.sofa.jraft.storage.LogManager;
+import com.alipay.sofa.jraft.storage.LogStorage;
+import com.alipay.sofa.jraft.storage.impl.LogManagerImpl;
+import com.alipay.sofa.jraft.storage.impl.RocksDBLogStorage;
+
+/**
+ * Request building of {@link Replicator}'s sendEntries, through the same replicator methods: the
+ * entries are read back from the in-memory logs of the log manager with one range read, their
+ * metas collected and their data wrapped into the request without copying. The entries are never
+ * applied, so they all stay in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.util=ALL-UNNAMED")
+public class ReplicatorRequestBenchmark {
+
+    private static final int  LOG_COUNT = 64 * 1024;
+
+    @Param({ "1", "64", "1024" })
+    private int               maxEntriesSize;
+
+    @Param({ "128", "4096" })
+    private int               dataSize;
+
+    private File              path;
+    private LogStorage        logStorage;
+    private LogManagerImpl    logManager;
+    private Replicator        replicator;
+    private ReplicatorOptions options;
+    private long              nextSendingIndex = 1;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.path = Files.createTempDirectory("jraft-bench-replicator").toFile();
+        final RaftOptions raftOptions = new RaftOptions();
+        raftOptions.setSync(false);
+        raftOptions.setMaxEntriesSize(this.maxEntriesSize);
+
+        final LogManagerOptions lmOpts = new LogManagerOptions();
+        lmOpts.setGroupId("bench");
+        this.logStorage = new RocksDBLogStorage(this.path.getAbsolutePath(), raftOptions);
+        lmOpts.setLogStorage(this.logStorage);
+        lmOpts.setConfigurationManager(new ConfigurationManager());
+        lmOpts.setRaftOptions(raftOptions);
+        lmOpts.setNodeMetrics(new NodeMetrics(false));
+        this.logManager = new LogManagerImpl();
+        if (!this.logManager.init(lmOpts)) {
+            throw new IllegalStateException("Fail to init log manager");
+        }
+        appendEntries();
+
+        final PeerId serverId = new PeerId("127.0.0.1", 8081);
+        this.options = new ReplicatorOptions();
+        this.options.setGroupId("bench");
+        this.options.setServerId(serverId);
+        this.options.setPeerId(new PeerId("127.0.0.1", 8082));
+        this.options.setTerm(1);
+        this.options.setLogManager(this.logManager);
+        this.options.setBallotBox(new BallotBox());
+        this.options.setNode(new BenchmarkNode("bench", serverId));
+        this.replicator = new Replicator(this.options, raftOptions);
+    }
+
+    private void appendEntries() throws InterruptedException {
+        final byte[] data = new byte[this.dataSize];
+        ThreadLocalRandom.current().nextBytes(data);
+        final List<LogEntry> entries = new ArrayList<>(LOG_COUNT);
+        for (int i = 0; i < LOG_COUNT; i++) {
+            final LogEntry entry = new LogEntry(EnumOutter.EntryType.ENTRY_TYPE_DATA);
+            entry.getId().setTerm(1);
+            entry.setData(ByteBuffer.wrap(data));
+            entries.add(entry);
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        this.logManager.appendEntries(entries, new LogManager.StableClosure() {
+
+            @Override
+            public void run(final Status status) {
+                latch.countDown();
+            }
+        });
+        latch.await();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.logManager.shutdown();
+        this.logManager.join();
+        this.logStorage.shutdown();
+        FileUtils.deleteDirectory(this.path);
+    }
+
+    @Benchmark
+    public AppendEntriesRequest buildRequest() {
+        if (this.nextSendingIndex + this.maxEntriesSize > LOG_COUNT) {
+            this.nextSendingIndex = 1;
+        }
+        final AppendEntriesRequest.Builder rb = AppendEntriesRequest.newBuilder();
+        if (!this.replicator.fillCommonFields(rb, this.nextSendingIndex - 1, false)) {
+            throw new IllegalStateException("Log " + (this.nextSendingIndex - 1) + " was compacted");
+        }
+        this.nextSendingIndex += this.replicator.fillEntries(rb, this.nextSendingIndex);
+        return rb.build();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder() //
+            .include(ReplicatorRequestBenchmark.class.getSimpleName()) //
+            .build();
+        new Runner(opt).run();
+    }
+}
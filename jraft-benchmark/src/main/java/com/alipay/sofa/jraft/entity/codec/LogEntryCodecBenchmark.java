@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.entity.codec;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.alipay.sofa.jraft.entity.EnumOutter;
+import com.alipay.sofa.jraft.entity.LogEntry;
+import com.alipay.sofa.jraft.entity.codec.v2.LogEntryV2CodecFactory;
+
+/**
+ * Encode and decode of a data entry with {@link LogEntryV2CodecFactory}, the codec every log
+ * storage runs on the append and read paths.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.util=ALL-UNNAMED")
+public class LogEntryCodecBenchmark {
+
+    @Param({ "16", "512", "16384" })
+    private int             dataSize;
+
+    private LogEntryEncoder encoder;
+    private LogEntryDecoder decoder;
+    private LogEntry        entry;
+    private byte[]          encoded;
+
+    @Setup
+    public void setup() {
+        this.encoder = LogEntryV2CodecFactory.getInstance().encoder();
+        this.decoder = LogEntryV2CodecFactory.getInstance().decoder();
+        final byte[] data = new byte[this.dataSize];
+        ThreadLocalRandom.current().nextBytes(data);
+        this.entry = new LogEntry(EnumOutter.EntryType.ENTRY_TYPE_DATA);
+        this.entry.getId().setIndex(1_000_000L);
+        this.entry.getId().setTerm(3);
+        this.entry.setData(ByteBuffer.wrap(data));
+        this.entry.setChecksum(this.entry.checksum());
+        this.encoded = this.encoder.encode(this.entry);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return this.encoder.encode(this.entry);
+    }
+
+    @Benchmark
+    public LogEntry decode() {
+        return this.decoder.decode(this.encoded);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder() //
+            .include(LogEntryCodecBenchmark.class.getSimpleName()) //
+            .build();
+        new Runner(opt).run();
+    }
+}
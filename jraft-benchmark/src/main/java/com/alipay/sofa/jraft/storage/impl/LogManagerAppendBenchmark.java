@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.storage.impl;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.alipay.sofa.jraft.Status;
+import com.alipay.sofa.jraft.conf.ConfigurationManager;
+import com.alipay.sofa.jraft.core.NodeMetrics;
+import com.alipay.sofa.jraft.entity.EnumOutter;
+import com.alipay.sofa.jraft.entity.LogEntry;
+import com.alipay.sofa.jraft.entity.LogId;
+import com.alipay.sofa.jraft.option.LogManagerOptions;
+import com.alipay.sofa.jraft.option.RaftOptions;
+import com.alipay.sofa.jraft.storage.LogManager;
+import com.alipay.sofa.jraft.storage.LogStorage;
+import com.alipay.sofa.jraft.storage.log.RocksDBSegmentLogStorage;
+
+/**
+ * Leader side log append: {@link LogManagerImpl#appendEntries} through the disk disruptor
+ * down to the log storage, one operation is a batch of entries appended and made stable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.util=ALL-UNNAMED")
+public class LogManagerAppendBenchmark {
+
+    @Param({ "rocksdb", "segment" })
+    private String         storage;
+
+    @Param({ "1", "32" })
+    private int            batchSize;
+
+    @Param({ "128", "4096" })
+    private int            dataSize;
+
+    @Param({ "true", "false" })
+    private boolean        sync;
+
+    private File           path;
+    private LogStorage     logStorage;
+    private LogManagerImpl logManager;
+    private byte[]         data;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.path = Files.createTempDirectory("jraft-bench-log").toFile();
+        final RaftOptions raftOptions = new RaftOptions();
+        raftOptions.setSync(this.sync);
+        this.logStorage = "segment".equals(this.storage) ? new RocksDBSegmentLogStorage(
+            this.path.getAbsolutePath(), raftOptions) : new RocksDBLogStorage(this.path.getAbsolutePath(), raftOptions);
+
+        final LogManagerOptions opts = new LogManagerOptions();
+        opts.setGroupId("bench");
+        opts.setLogStorage(this.logStorage);
+        opts.setConfigurationManager(new ConfigurationManager());
+        opts.setRaftOptions(raftOptions);
+        opts.setNodeMetrics(new NodeMetrics(false));
+        this.logManager = new LogManagerImpl();
+        if (!this.logManager.init(opts)) {
+            throw new IllegalStateException("Fail to init log manager");
+        }
+        this.data = new byte[this.dataSize];
+        ThreadLocalRandom.current().nextBytes(this.data);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.logManager.shutdown();
+        this.logManager.join();
+        this.logStorage.shutdown();
+        FileUtils.deleteDirectory(this.path);
+    }
+
+    @Benchmark
+    public long appendEntries() throws InterruptedException {
+        final List<LogEntry> entries = new ArrayList<>(this.batchSize);
+        for (int i = 0; i < this.batchSize; i++) {
+            final LogEntry entry = new LogEntry(EnumOutter.EntryType.ENTRY_TYPE_DATA);
+            entry.getId().setTerm(1);
+            entry.setData(ByteBuffer.wrap(this.data));
+            entries.add(entry);
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        final Status[] result = new Status[1];
+        this.logManager.appendEntries(entries, new LogManager.StableClosure() {
+
+            @Override
+            public void run(final Status status) {
+                result[0] = status;
+                latch.countDown();
+            }
+        });
+        latch.await();
+        if (!result[0].isOk()) {
+            throw new IllegalStateException(result[0].toString());
+        }
+        // Nothing applies the entries, release them from memory as soon as they are stable.
+        final long lastIndex = this.logManager.getLastLogIndex();
+        this.logManager.setAppliedId(new LogId(lastIndex, 1));
+        return lastIndex;
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder() //
+            .include(LogManagerAppendBenchmark.class.getSimpleName()) //
+            .build();
+        new Runner(opt).run();
+    }
+}
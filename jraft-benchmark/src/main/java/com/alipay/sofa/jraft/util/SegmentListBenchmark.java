@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * {@link SegmentList} used the way the log manager keeps the in-memory logs: random reads
+ * inside a window of {@code size} entries that slides as new entries are appended and the
+ * applied ones are released from the head.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.util=ALL-UNNAMED")
+public class SegmentListBenchmark {
+
+    @Param({ "1024", "65536" })
+    private int               size;
+
+    @Param({ "1", "128" })
+    private int               batchSize;
+
+    private SegmentList<Long> list;
+    private long              nextValue;
+
+    @Setup
+    public void setup() {
+        this.list = new SegmentList<>(true);
+        for (int i = 0; i < this.size; i++) {
+            this.list.add(this.nextValue++);
+        }
+    }
+
+    @Benchmark
+    public Long get() {
+        return this.list.get(ThreadLocalRandom.current().nextInt(this.size));
+    }
+
+    @Benchmark
+    public int addAndRemoveFromFirst() {
+        for (int i = 0; i < this.batchSize; i++) {
+            this.list.add(this.nextValue++);
+        }
+        this.list.removeFromFirst(this.batchSize);
+        return this.list.size();
+    }
+
+    @Benchmark
+    public int addAndRemoveFromFirstWhen() {
+        for (int i = 0; i < this.batchSize; i++) {
+            this.list.add(this.nextValue++);
+        }
+        final long firstKept = this.nextValue - this.size;
+        this.list.removeFromFirstWhen(v -> v < firstKept);
+        return this.list.size();
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder() //
+            .include(SegmentListBenchmark.class.getSimpleName()) //
+            .build();
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingConfig;
+import com.anyilanxin.kunpeng.atomix.utils.net.Address;
+
+/**
+ * Request/response throughput of two {@link NettyMessagingService}s over the loopback, by
+ * transport. Every invocation sends |inFlight| requests, one by one or as a batch, and waits for
+ * all the replies. A transport the platform doesn't support falls back to the next one, check the
+ * logs of the run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class MessagingTransportBenchmark {
+
+    private static final String       SUBJECT = "bench";
+    private static final Duration     TIMEOUT = Duration.ofSeconds(10);
+
+    @Param({ "NIO", "EPOLL", "IO_URING" })
+    private MessagingConfig.Transport transport;
+
+    @Param({ "0", "256" })
+    private int                       flushConsolidation;
+
+    @Param({ "1", "64" })
+    private int                       inFlight;
+
+    @Param({ "128", "4096" })
+    private int                       payloadSize;
+
+    private NettyMessagingService     server;
+    private NettyMessagingService     client;
+    private Address                   serverAddress;
+    private List<byte[]>              payloads;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        this.serverAddress = Address.from("127.0.0.1", freePort());
+        this.server = new NettyMessagingService("bench", this.serverAddress, newConfig());
+        this.client = new NettyMessagingService("bench", Address.from("127.0.0.1", freePort()), newConfig());
+        this.server.start().join();
+        this.client.start().join();
+        this.server.registerHandler(SUBJECT, (address, payload) -> payload, Runnable::run);
+
+        final byte[] payload = new byte[this.payloadSize];
+        ThreadLocalRandom.current().nextBytes(payload);
+        this.payloads = Collections.nCopies(this.inFlight, payload);
+        // connect before measuring
+        this.client.sendAndReceive(this.serverAddress, SUBJECT, payload, true, TIMEOUT).join();
+    }
+
+    private MessagingConfig           newConfig() {
+        return new MessagingConfig() //
+            .setTransport(this.transport) //
+            .setFlushConsolidation(this.flushConsolidation) //
+            .setClientEventLoops(2) //
+            .setServerEventLoops(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.client.stop().join();
+        this.server.stop().join();
+    }
+
+    @Benchmark
+    public void requestResponse() {
+        final List<CompletableFuture<byte[]>> responses = new ArrayList<>(this.inFlight);
+        for (final byte[] payload : this.payloads) {
+            responses.add(this.client.sendAndReceive(this.serverAddress, SUBJECT, payload, true, TIMEOUT));
+        }
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).join();
+    }
+
+    @Benchmark
+    public void batchRequestResponse() {
+        final List<CompletableFuture<byte[]>> responses = this.client.sendAndReceiveBatch(this.serverAddress,
+            SUBJECT, this.payloads, TIMEOUT);
+        CompletableFuture.allOf(responses.toArray(new CompletableFuture[0])).join();
+    }
+
+    private static                    int freePort() throws IOException {
+        try (final ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        final Options opt = new OptionsBuilder() //
+            .include(MessagingTransportBenchmark.class.getSimpleName()) //
+            .build();
+        new Runner(opt).run();
+    }
+}
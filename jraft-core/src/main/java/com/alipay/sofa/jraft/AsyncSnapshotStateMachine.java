@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft;
+
+import com.alipay.sofa.jraft.storage.snapshot.SnapshotWriter;
+
+/**
+ * A |StateMachine| whose snapshots are saved without blocking StateMachine#onApply(Iterator).
+ *
+ * The FSM thread only captures a point-in-time view of the state machine by
+ * {@link #captureSnapshot()}, e.g. a rocksdb snapshot or a copy-on-write structure, together
+ * with the last applied index and the configuration. The view is then written by
+ * {@link #onSnapshotSave(Object, SnapshotWriter, Closure)} in a dedicated snapshot thread,
+ * while the following logs keep being applied.
+ *
+ * StateMachine#onSnapshotSave(SnapshotWriter, Closure) is not called for such a state machine.
+ *
+ * @param <T> the type of the point-in-time view
+ */
+public interface AsyncSnapshotStateMachine<T> extends StateMachine {
+
+    /**
+     * Captures a consistent view of the state machine at the last applied log, called in the FSM
+     * thread so it must be cheap. The view must not change when the following logs are applied.
+     *
+     * @return the view to save
+     */
+    T captureSnapshot();
+
+    /**
+     * Writes the captured view into |writer|, called in the snapshot thread. Call done.run(status)
+     * when the snapshot is written, and release the view.
+     *
+     * @param snapshot the view returned by {@link #captureSnapshot()}
+     * @param writer   snapshot writer
+     * @param done     callback
+     */
+    void onSnapshotSave(final T snapshot, final SnapshotWriter writer, final Closure done);
+
+    @Override
+    default void onSnapshotSave(final SnapshotWriter writer, final Closure done) {
+        done.run(new Status(-1, "%s saves snapshots asynchronously", getClass().getSimpleName()));
+    }
+}
@@ -16,6 +16,9 @@
  */
 package com.alipay.sofa.jraft.core;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.locks.StampedLock;
 
 import javax.annotation.concurrent.ThreadSafe;
@@ -28,16 +31,21 @@ import com.alipay.sofa.jraft.FSMCaller;
 import com.alipay.sofa.jraft.Lifecycle;
 import com.alipay.sofa.jraft.closure.ClosureQueue;
 import com.alipay.sofa.jraft.conf.Configuration;
-import com.alipay.sofa.jraft.entity.Ballot;
 import com.alipay.sofa.jraft.entity.PeerId;
 import com.alipay.sofa.jraft.option.BallotBoxOptions;
 import com.alipay.sofa.jraft.util.Describer;
 import com.alipay.sofa.jraft.util.OnlyForTest;
 import com.alipay.sofa.jraft.util.Requires;
-import com.alipay.sofa.jraft.util.SegmentList;
 
 /**
  * Ballot box for voting.
+ *
+ * <p>The leader keeps the match index of every voter in a primitive array instead of a
+ * {@link com.alipay.sofa.jraft.entity.Ballot} per pending log. Pending logs are grouped in
+ * runs sharing one configuration, and the last log of a run granted by the quorum of both its
+ * configuration and its old one is the W-th largest match index of their voters, so an ack
+ * costs O(peers) whatever the size of the batch it covers.
+ *
  * @author boyan (boyan@alibaba-inc.com)
  *
  * 2018-Apr-04 2:32:10 PM
@@ -45,38 +53,80 @@ import com.alipay.sofa.jraft.util.SegmentList;
 @ThreadSafe
 public class BallotBox implements Lifecycle<BallotBoxOptions>, Describer {
 
-    private static final Logger       LOG                = LoggerFactory.getLogger(BallotBox.class);
+    private static final Logger           LOG                = LoggerFactory.getLogger(BallotBox.class);
+    private static final PeerId[]         EMPTY_PEERS        = new PeerId[0];
+    private static final long[]           EMPTY_INDEXES      = new long[0];
+
+    private FSMCaller                     waiter;
+    private ClosureQueue                  closureQueue;
+    private final StampedLock             stampedLock        = new StampedLock();
+    private volatile long                 lastCommittedIndex = 0;
+    private long                          pendingIndex;
+    // pendingIndex - 1 when there is no pending log
+    private long                          lastPendingIndex;
+    private final ArrayDeque<PendingConf> pendingConfs       = new ArrayDeque<>();
+    // voters of the pending confs, and the last log index each of them acked
+    private PeerId[]                      peers              = EMPTY_PEERS;
+    private long[]                        matchIndexes       = EMPTY_INDEXES;
+    private long[]                        sortBuffer         = EMPTY_INDEXES;
+    private BallotBoxOptions              opts;
+
+    /**
+     * A run of pending logs sharing one configuration. Voters are referred to by their slot in
+     * {@link #matchIndexes}.
+     */
+    private static final class PendingConf {
+        final PeerId[] voters;
+        final int[]    slots;
+        final int      quorum;
+        final PeerId[] oldVoters;
+        final int[]    oldSlots;
+        final int      oldQuorum;
+        long           firstIndex;
+        long           lastIndex;
+
+        PendingConf(final PeerId[] voters, final int[] slots, final int quorum, final PeerId[] oldVoters,
+                    final int[] oldSlots, final int oldQuorum) {
+            this.voters = voters;
+            this.slots = slots;
+            this.quorum = quorum;
+            this.oldVoters = oldVoters;
+            this.oldSlots = oldSlots;
+            this.oldQuorum = oldQuorum;
+        }
+
+        boolean matches(final Configuration conf, final Configuration oldConf) {
+            return sameVoters(this.voters, this.quorum, conf) && sameVoters(this.oldVoters, this.oldQuorum, oldConf);
+        }
 
-    private FSMCaller                 waiter;
-    private ClosureQueue              closureQueue;
-    private final StampedLock         stampedLock        = new StampedLock();
-    private long                      lastCommittedIndex = 0;
-    private long                      pendingIndex;
-    private final SegmentList<Ballot> pendingMetaQueue   = new SegmentList<>(false);
-    private BallotBoxOptions          opts;
+        private static boolean sameVoters(final PeerId[] voters, final int quorum, final Configuration conf) {
+            if (conf == null || conf.isEmpty()) {
+                return voters.length == 0;
+            }
+            final List<PeerId> peers = conf.getPeers();
+            if (peers.size() != voters.length || conf.getQuorum().getW() != quorum) {
+                return false;
+            }
+            for (int i = 0; i < voters.length; i++) {
+                if (!voters[i].equals(peers.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
 
     @OnlyForTest
     long getPendingIndex() {
         return this.pendingIndex;
     }
 
-    @OnlyForTest
-    SegmentList<Ballot> getPendingMetaQueue() {
-        return this.pendingMetaQueue;
+    long getPendingSize() {
+        return this.pendingIndex == 0 ? 0 : this.lastPendingIndex - this.pendingIndex + 1;
     }
 
     public long getLastCommittedIndex() {
-        long stamp = this.stampedLock.tryOptimisticRead();
-        final long optimisticVal = this.lastCommittedIndex;
-        if (this.stampedLock.validate(stamp)) {
-            return optimisticVal;
-        }
-        stamp = this.stampedLock.readLock();
-        try {
-            return this.lastCommittedIndex;
-        } finally {
-            this.stampedLock.unlockRead(stamp);
-        }
+        return this.lastCommittedIndex;
     }
 
     @Override
@@ -95,9 +145,11 @@ public class BallotBox implements Lifecycle<BallotBoxOptions>, Describer {
     /**
      * Called by leader, otherwise the behavior is undefined
      * Set logs in [first_log_index, last_log_index] are stable at |peer|.
+     *
+     * <p>Acks of a peer are contiguous, the replicator only sends a batch once the previous
+     * logs matched, so the peer holds every log up to |last_log_index|.
      */
     public boolean commitAt(final long firstLogIndex, final long lastLogIndex, final PeerId peer) {
-        // TODO  use lock-free algorithm here?
         final long stamp = this.stampedLock.writeLock();
         long lastCommittedIndex = 0;
         try {
@@ -108,29 +160,35 @@ public class BallotBox implements Lifecycle<BallotBoxOptions>, Describer {
                 return true;
             }
 
-            if (lastLogIndex >= this.pendingIndex + this.pendingMetaQueue.size()) {
+            if (lastLogIndex > this.lastPendingIndex) {
                 throw new ArrayIndexOutOfBoundsException();
             }
 
-            final long startAt = Math.max(this.pendingIndex, firstLogIndex);
-            Ballot.PosHint hint = new Ballot.PosHint();
-            for (long logIndex = startAt; logIndex <= lastLogIndex; logIndex++) {
-                final Ballot ballot = this.pendingMetaQueue.get((int) (logIndex - this.pendingIndex));
-                hint = ballot.grant(peer, hint);
-                if (ballot.isGranted()) {
-                    lastCommittedIndex = logIndex;
-                }
-            }
-            if (lastCommittedIndex == 0) {
+            final int slot = slotOf(peer);
+            if (slot < 0 || this.matchIndexes[slot] >= lastLogIndex) {
                 return true;
             }
+            this.matchIndexes[slot] = lastLogIndex;
+
             // When removing a peer off the raft group which contains even number of
             // peers, the quorum would decrease by 1, e.g. 3 of 4 changes to 2 of 3. In
             // this case, the log after removal may be committed before some previous
             // logs, since we use the new configuration to deal the quorum of the
             // removal request, we think it's safe to commit all the uncommitted
             // previous logs, which is not well proved right now
-            this.pendingMetaQueue.removeFromFirst((int) (lastCommittedIndex - this.pendingIndex) + 1);
+            for (final PendingConf pending : this.pendingConfs) {
+                final long granted = Math.min(pending.lastIndex, Math.min(quorumIndex(pending.slots, pending.quorum),
+                    quorumIndex(pending.oldSlots, pending.oldQuorum)));
+                if (granted >= Math.max(pending.firstIndex, this.pendingIndex)) {
+                    lastCommittedIndex = granted;
+                }
+            }
+            if (lastCommittedIndex == 0) {
+                return true;
+            }
+            while (!this.pendingConfs.isEmpty() && this.pendingConfs.peekFirst().lastIndex <= lastCommittedIndex) {
+                this.pendingConfs.pollFirst();
+            }
             LOG.debug("Node {} committed log fromIndex={}, toIndex={}.", this.opts.getNodeId(), this.pendingIndex,
                 lastCommittedIndex);
             this.pendingIndex = lastCommittedIndex + 1;
@@ -142,6 +200,82 @@ public class BallotBox implements Lifecycle<BallotBoxOptions>, Describer {
         return true;
     }
 
+    /**
+     * Returns the highest log index acked by |quorum| voters of |slots|, the W-th largest of
+     * their match indexes.
+     */
+    private long quorumIndex(final int[] slots, final int quorum) {
+        if (quorum <= 0) {
+            return Long.MAX_VALUE;
+        }
+        if (quorum > slots.length) {
+            return 0;
+        }
+        final long[] buf = this.sortBuffer;
+        for (int i = 0; i < slots.length; i++) {
+            buf[i] = this.matchIndexes[slots[i]];
+        }
+        // partial selection sort, voters are a handful
+        for (int i = 0; i < quorum; i++) {
+            int max = i;
+            for (int j = i + 1; j < slots.length; j++) {
+                if (buf[j] > buf[max]) {
+                    max = j;
+                }
+            }
+            final long tmp = buf[i];
+            buf[i] = buf[max];
+            buf[max] = tmp;
+        }
+        return buf[quorum - 1];
+    }
+
+    private int slotOf(final PeerId peer) {
+        for (int i = 0; i < this.peers.length; i++) {
+            if (this.peers[i].equals(peer)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int[] assignSlots(final PeerId[] voters) {
+        final int[] slots = new int[voters.length];
+        for (int i = 0; i < voters.length; i++) {
+            int slot = slotOf(voters[i]);
+            if (slot < 0) {
+                slot = this.peers.length;
+                this.peers = Arrays.copyOf(this.peers, slot + 1);
+                this.matchIndexes = Arrays.copyOf(this.matchIndexes, slot + 1);
+                this.peers[slot] = voters[i];
+            }
+            slots[i] = slot;
+        }
+        if (this.sortBuffer.length < voters.length) {
+            this.sortBuffer = new long[voters.length];
+        }
+        return slots;
+    }
+
+    private static PeerId[] votersOf(final Configuration conf) {
+        if (conf == null || conf.isEmpty()) {
+            return EMPTY_PEERS;
+        }
+        return conf.getPeers().toArray(EMPTY_PEERS);
+    }
+
+    private PendingConf newPendingConf(final Configuration conf, final Configuration oldConf) {
+        if (this.pendingConfs.isEmpty()) {
+            // every ack so far is below the next pending log, start over from the new voters
+            this.peers = EMPTY_PEERS;
+            this.matchIndexes = EMPTY_INDEXES;
+        }
+        final PeerId[] voters = votersOf(conf);
+        final PeerId[] oldVoters = votersOf(oldConf);
+        return new PendingConf(voters, assignSlots(voters), voters.length == 0 ? 0 : conf.getQuorum().getW(),
+            oldVoters, assignSlots(oldVoters), oldVoters.length == 0 ? 0 : oldConf.getQuorum().getW());
+    }
+
     /**
      * Called when the leader steps down, otherwise the behavior is undefined
      * When a leader steps down, the uncommitted user applications should
@@ -151,8 +285,11 @@ public class BallotBox implements Lifecycle<BallotBoxOptions>, Describer {
     public void clearPendingTasks() {
         final long stamp = this.stampedLock.writeLock();
         try {
-            this.pendingMetaQueue.clear();
+            this.pendingConfs.clear();
+            this.peers = EMPTY_PEERS;
+            this.matchIndexes = EMPTY_INDEXES;
             this.pendingIndex = 0;
+            this.lastPendingIndex = 0;
             this.closureQueue.clear();
         } finally {
             this.stampedLock.unlockWrite(stamp);
@@ -172,9 +309,9 @@ public class BallotBox implements Lifecycle<BallotBoxOptions>, Describer {
     public boolean resetPendingIndex(final long newPendingIndex) {
         final long stamp = this.stampedLock.writeLock();
         try {
-            if (!(this.pendingIndex == 0 && this.pendingMetaQueue.isEmpty())) {
-                LOG.error("Node {} resetPendingIndex fail, pendingIndex={}, pendingMetaQueueSize={}.",
-                    this.opts.getNodeId(), this.pendingIndex, this.pendingMetaQueue.size());
+            if (!(this.pendingIndex == 0 && this.pendingConfs.isEmpty())) {
+                LOG.error("Node {} resetPendingIndex fail, pendingIndex={}, pendingSize={}.", this.opts.getNodeId(),
+                    this.pendingIndex, getPendingSize());
                 return false;
             }
             if (newPendingIndex <= this.lastCommittedIndex) {
@@ -184,6 +321,7 @@ public class BallotBox implements Lifecycle<BallotBoxOptions>, Describer {
             }
 
             this.pendingIndex = newPendingIndex;
+            this.lastPendingIndex = newPendingIndex - 1;
             this.closureQueue.resetFirstIndex(newPendingIndex);
             return true;
         } finally {
@@ -201,19 +339,19 @@ public class BallotBox implements Lifecycle<BallotBoxOptions>, Describer {
      * @return          returns true on success
      */
     public boolean appendPendingTask(final Configuration conf, final Configuration oldConf, final Closure done) {
-        final Ballot bl = new Ballot();
-        final Ballot ballot = new Ballot();
-        if (!ballot.init(conf, oldConf)) {
-            LOG.error("Fail to init ballot.");
-            return false;
-        }
         final long stamp = this.stampedLock.writeLock();
         try {
             if (this.pendingIndex <= 0) {
                 LOG.error("Node {} fail to appendingTask, pendingIndex={}.", this.opts.getNodeId(), this.pendingIndex);
                 return false;
             }
-            this.pendingMetaQueue.add(ballot);
+            PendingConf pending = this.pendingConfs.peekLast();
+            if (pending == null || !pending.matches(conf, oldConf)) {
+                pending = newPendingConf(conf, oldConf);
+                pending.firstIndex = this.lastPendingIndex + 1;
+                this.pendingConfs.addLast(pending);
+            }
+            pending.lastIndex = ++this.lastPendingIndex;
             this.closureQueue.appendPendingClosure(done);
             return true;
         } finally {
@@ -232,7 +370,7 @@ public class BallotBox implements Lifecycle<BallotBoxOptions>, Describer {
         boolean doUnlock = true;
         final long stamp = this.stampedLock.writeLock();
         try {
-            if (this.pendingIndex != 0 || !this.pendingMetaQueue.isEmpty()) {
+            if (this.pendingIndex != 0 || !this.pendingConfs.isEmpty()) {
                 Requires.requireTrue(lastCommittedIndex < this.pendingIndex,
                     "Node changes to leader, pendingIndex=%d, param lastCommittedIndex=%d", this.pendingIndex,
                     lastCommittedIndex);
@@ -274,13 +412,13 @@ public class BallotBox implements Lifecycle<BallotBoxOptions>, Describer {
         if (this.stampedLock.validate(stamp)) {
             _lastCommittedIndex = this.lastCommittedIndex;
             _pendingIndex = this.pendingIndex;
-            _pendingMetaQueueSize = this.pendingMetaQueue.size();
+            _pendingMetaQueueSize = getPendingSize();
         } else {
             stamp = this.stampedLock.readLock();
             try {
                 _lastCommittedIndex = this.lastCommittedIndex;
                 _pendingIndex = this.pendingIndex;
-                _pendingMetaQueueSize = this.pendingMetaQueue.size();
+                _pendingMetaQueueSize = getPendingSize();
             } finally {
                 this.stampedLock.unlockRead(stamp);
             }
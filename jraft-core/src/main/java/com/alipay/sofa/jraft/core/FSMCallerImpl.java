@@ -28,13 +28,13 @@ import com.alipay.sofa.jraft.entity.codec.v2.LogOutter;
 import com.alipay.sofa.jraft.error.RaftError;
 import com.alipay.sofa.jraft.error.RaftException;
 import com.alipay.sofa.jraft.option.FSMCallerOptions;
+import com.alipay.sofa.jraft.option.RaftOptions;
 import com.alipay.sofa.jraft.storage.LogManager;
 import com.alipay.sofa.jraft.storage.snapshot.SnapshotReader;
 import com.alipay.sofa.jraft.storage.snapshot.SnapshotWriter;
 import com.alipay.sofa.jraft.util.*;
-import com.lmax.disruptor.*;
-import com.lmax.disruptor.dsl.Disruptor;
-import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventTranslator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -43,6 +43,10 @@ import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -92,7 +96,7 @@ public class FSMCallerImpl implements FSMCaller {
      *
      * 2018-Apr-03 11:12:35 AM
      */
-    private static class ApplyTask {
+    public static class ApplyTask extends GroupedEvent {
         TaskType            type;
         // union fields
         long                committedIndex;
@@ -113,7 +117,7 @@ public class FSMCallerImpl implements FSMCaller {
         }
     }
 
-    private static class ApplyTaskFactory implements EventFactory<ApplyTask> {
+    public static class ApplyTaskFactory implements EventFactory<ApplyTask> {
 
         @Override
         public ApplyTask newInstance() {
@@ -121,7 +125,7 @@ public class FSMCallerImpl implements FSMCaller {
         }
     }
 
-    private class ApplyTaskHandler implements EventHandler<ApplyTask> {
+    private class ApplyTaskHandler implements GroupedEventHandler<ApplyTask> {
         boolean      firstRun          = true;
         // max committed index in current batch, reset to -1 every batch
         private long maxCommittedIndex = -1;
@@ -132,6 +136,16 @@ public class FSMCallerImpl implements FSMCaller {
             this.maxCommittedIndex = runApplyTask(event, this.maxCommittedIndex, endOfBatch);
         }
 
+        @Override
+        public void onBatchEnd() {
+            if (this.maxCommittedIndex >= 0) {
+                FSMCallerImpl.this.currTask = TaskType.COMMITTED;
+                doCommitted(this.maxCommittedIndex);
+                this.maxCommittedIndex = -1L; // reset maxCommittedIndex
+                FSMCallerImpl.this.currTask = TaskType.IDLE;
+            }
+        }
+
         private void setFsmThread() {
             if (firstRun) {
                 fsmThread = Thread.currentThread();
@@ -152,10 +166,14 @@ public class FSMCallerImpl implements FSMCaller {
     private volatile TaskType                                       currTask;
     private final AtomicLong                                        applyingIndex;
     private volatile RaftException                                  error;
-    private Disruptor<ApplyTask>                                    disruptor;
-    private RingBuffer<ApplyTask>                                   taskQueue;
+    private StripedDisruptor<ApplyTask>                             disruptor;
+    private boolean                                                 sharedDisruptor;
+    private StripedDisruptor.Subscription<ApplyTask>                taskQueue;
     private volatile CountDownLatch                                 shutdownLatch;
     private NodeMetrics                                             nodeMetrics;
+    private LogEntryPrefetcher                                      prefetcher;
+    // Writes the snapshots of an AsyncSnapshotStateMachine
+    private ThreadPoolExecutor                                      snapshotSaveExecutor;
     private final CopyOnWriteArrayList<LastAppliedLogIndexListener> lastAppliedLogIndexListeners = new CopyOnWriteArrayList<>();
 
     public FSMCallerImpl() {
@@ -179,19 +197,38 @@ public class FSMCallerImpl implements FSMCaller {
         this.lastAppliedIndex.set(opts.getBootstrapId().getIndex());
         notifyLastAppliedIndexUpdated(this.lastAppliedIndex.get());
         this.lastAppliedTerm = opts.getBootstrapId().getTerm();
-        this.disruptor = DisruptorBuilder.<ApplyTask> newInstance() //
-            .setEventFactory(new ApplyTaskFactory()) //
-            .setRingBufferSize(opts.getDisruptorBufferSize()) //
-            .setThreadFactory(new NamedThreadFactory("JRaft-FSMCaller-Disruptor-", true)) //
-            .setProducerType(ProducerType.MULTI) //
-            .setWaitStrategy(new BlockingWaitStrategy()) //
-            .build();
-        this.disruptor.handleEventsWith(new ApplyTaskHandler());
-        this.disruptor.setDefaultExceptionHandler(new LogExceptionHandler<Object>(getClass().getSimpleName()));
-        this.taskQueue = this.disruptor.start();
+        this.sharedDisruptor = opts.getDisruptor() != null;
+        if (this.sharedDisruptor) {
+            this.disruptor = opts.getDisruptor();
+        } else {
+            this.disruptor = new StripedDisruptor<>("JRaft-FSMCaller-Disruptor-", 1, opts.getDisruptorBufferSize(),
+                new ApplyTaskFactory());
+        }
+        this.taskQueue = this.disruptor.subscribe(this.node.getGroupId(), opts.getSchedulingWeight(),
+            new ApplyTaskHandler(), new LogExceptionHandler<Object>(getClass().getSimpleName()));
         if (this.nodeMetrics.getMetricRegistry() != null) {
             this.nodeMetrics.getMetricRegistry().register("jraft-fsm-caller-disruptor",
-                new DisruptorMetricSet(this.taskQueue));
+                new DisruptorMetricSet(this.taskQueue.getRingBuffer()));
+            this.nodeMetrics.getMetricRegistry().register("jraft-fsm-caller-disruptor-group", this.taskQueue);
+        }
+        final RaftOptions raftOptions = this.node.getRaftOptions();
+        if (raftOptions.getMaxApplyPrefetchEntries() > 0) {
+            this.prefetcher = new LogEntryPrefetcher(this.node.getGroupId(), this.logManager,
+                opts.getBootstrapId().getIndex(), raftOptions.getMaxApplyPrefetchEntries(),
+                raftOptions.getMaxApplyPrefetchBytes());
+        }
+        if (this.fsm instanceof AsyncSnapshotStateMachine) {
+            this.snapshotSaveExecutor = ThreadPoolUtil.newBuilder() //
+                .poolName("JRAFT_SNAPSHOT_SAVE_EXECUTOR") //
+                .enableMetric(false) //
+                .coreThreads(1) //
+                .maximumThreads(1) //
+                .keepAliveSeconds(60L) //
+                .workQueue(new LinkedBlockingQueue<>()) //
+                .threadFactory(new NamedThreadFactory("JRaft-Snapshot-Save-" + this.node.getGroupId() + "-", true)) //
+                .build();
+            // Snapshots are rare, don't keep an idle thread per group between them.
+            this.snapshotSaveExecutor.allowCoreThreadTimeOut(true);
         }
         this.error = new RaftException(EnumOutter.ErrorType.ERROR_TYPE_NONE);
         LOG.info("Starts FSMCaller successfully.");
@@ -242,6 +279,9 @@ public class FSMCallerImpl implements FSMCaller {
 
     @Override
     public boolean onCommitted(final long committedIndex) {
+        if (this.prefetcher != null && this.shutdownLatch == null) {
+            this.prefetcher.onCommitted(committedIndex);
+        }
         return enqueueTask((task, sequence) -> {
             task.type = TaskType.COMMITTED;
             task.committedIndex = committedIndex;
@@ -367,7 +407,10 @@ public class FSMCallerImpl implements FSMCaller {
     public synchronized void join() throws InterruptedException {
         if (this.shutdownLatch != null) {
             this.shutdownLatch.await();
-            this.disruptor.shutdown();
+            this.taskQueue.unsubscribe();
+            if (!this.sharedDisruptor) {
+                this.disruptor.shutdown();
+            }
             if (this.afterShutdown != null) {
                 this.afterShutdown.run(Status.OK());
                 this.afterShutdown = null;
@@ -484,9 +527,23 @@ public class FSMCallerImpl implements FSMCaller {
     }
 
     private void doShutdown() {
+        if (this.prefetcher != null) {
+            this.prefetcher.shutdown();
+        }
         if (this.node != null) {
             this.node = null;
         }
+        if (this.snapshotSaveExecutor != null) {
+            // Let the running snapshot save finish before shutting down the state machine.
+            this.snapshotSaveExecutor.shutdown();
+            try {
+                while (!this.snapshotSaveExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    LOG.info("Waiting for the snapshot save to finish.");
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         if (this.fsm != null) {
             this.fsm.onShutdown();
         }
@@ -518,8 +575,8 @@ public class FSMCallerImpl implements FSMCaller {
             onTaskCommitted(taskClosures);
 
             Requires.requireTrue(firstClosureIndex >= 0, "Invalid firstClosureIndex");
-            final IteratorImpl iterImpl = new IteratorImpl(this, this.logManager, closures, firstClosureIndex,
-                lastAppliedIndex, committedIndex, this.applyingIndex);
+            final IteratorImpl iterImpl = new IteratorImpl(this, this.logManager, this.prefetcher, closures,
+                firstClosureIndex, lastAppliedIndex, committedIndex, this.applyingIndex);
             while (iterImpl.isGood()) {
                 final LogEntry logEntry = iterImpl.entry();
                 if (logEntry.getType() != EnumOutter.EntryType.ENTRY_TYPE_DATA) {
@@ -640,9 +697,35 @@ public class FSMCallerImpl implements FSMCaller {
             done.run(new Status(RaftError.EINVAL, "snapshot_storage create SnapshotWriter failed"));
             return;
         }
+        if (this.snapshotSaveExecutor != null) {
+            doSnapshotSaveAsync((AsyncSnapshotStateMachine<?>) this.fsm, writer, done);
+            return;
+        }
         this.fsm.onSnapshotSave(writer, done);
     }
 
+    /**
+     * Captures the view of the state machine at lastAppliedIndex in the FSM thread, and writes it
+     * in the snapshot thread while the following logs are applied.
+     */
+    private <T> void doSnapshotSaveAsync(final AsyncSnapshotStateMachine<T> fsm, final SnapshotWriter writer,
+                                         final SaveSnapshotClosure done) {
+        final T snapshot;
+        try {
+            snapshot = fsm.captureSnapshot();
+        } catch (final Throwable t) {
+            LOG.error("Fail to capture snapshot at lastAppliedIndex={}.", this.lastAppliedIndex.get(), t);
+            done.run(new Status(RaftError.ESTATEMACHINE, "Fail to capture snapshot: %s", t.getMessage()));
+            return;
+        }
+        try {
+            this.snapshotSaveExecutor.execute(() -> fsm.onSnapshotSave(snapshot, writer, done));
+        } catch (final RejectedExecutionException e) {
+            // Shutting down, save it in place.
+            fsm.onSnapshotSave(snapshot, writer, done);
+        }
+    }
+
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("StateMachine [");
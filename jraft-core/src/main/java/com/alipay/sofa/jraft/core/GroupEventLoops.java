@@ -0,0 +1,95 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.core;
+
+import java.util.concurrent.TimeUnit;
+
+import com.alipay.sofa.jraft.option.NodeOptions;
+import com.alipay.sofa.jraft.option.RaftOptions;
+import com.alipay.sofa.jraft.storage.impl.LogManagerImpl;
+import com.alipay.sofa.jraft.util.StripedDisruptor;
+import com.alipay.sofa.jraft.util.Utils;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.TimeoutBlockingWaitStrategy;
+
+/**
+ * Event loops shared by the raft groups of a process. The apply, log manager, fsm caller and
+ * read-only service events of the nodes set with {@link NodeOptions#setGroupEventLoops} run on
+ * a fixed number of stripes of each kind, instead of four threads and ring buffers per node.
+ * Groups on a stripe are scheduled fairly by {@link NodeOptions#getSchedulingWeight()}.
+ *
+ * <p>It's shut down by its owner, after all the nodes using it.
+ */
+public class GroupEventLoops {
+
+    private final StripedDisruptor<NodeImpl.LogEntryAndClosure>        applyDisruptor;
+    private final StripedDisruptor<LogManagerImpl.StableClosureEvent>  logManagerDisruptor;
+    private final StripedDisruptor<FSMCallerImpl.ApplyTask>            fsmCallerDisruptor;
+    private final StripedDisruptor<ReadOnlyServiceImpl.ReadIndexEvent> readOnlyServiceDisruptor;
+
+    public GroupEventLoops() {
+        this(Utils.cpus(), new RaftOptions());
+    }
+
+    /**
+     * @param stripes     number of stripes, threads, of each kind
+     * @param raftOptions the ring buffer size and the publish timeout of the stripes are taken
+     *                    from it
+     */
+    public GroupEventLoops(final int stripes, final RaftOptions raftOptions) {
+        final int bufferSize = raftOptions.getDisruptorBufferSize();
+        final int publishWaitTimeoutSecs = raftOptions.getDisruptorPublishEventWaitTimeoutSecs();
+        this.applyDisruptor = new StripedDisruptor<>("JRaft-NodeImpl-Disruptor-", stripes, bufferSize,
+            new NodeImpl.LogEntryAndClosureFactory(), BlockingWaitStrategy::new, publishWaitTimeoutSecs);
+        this.logManagerDisruptor = new StripedDisruptor<>("JRaft-LogManager-Disruptor-", stripes, bufferSize,
+            new LogManagerImpl.StableClosureEventFactory(), () -> new TimeoutBlockingWaitStrategy(
+                publishWaitTimeoutSecs, TimeUnit.SECONDS), publishWaitTimeoutSecs);
+        this.fsmCallerDisruptor = new StripedDisruptor<>("JRaft-FSMCaller-Disruptor-", stripes, bufferSize,
+            new FSMCallerImpl.ApplyTaskFactory(), BlockingWaitStrategy::new, publishWaitTimeoutSecs);
+        this.readOnlyServiceDisruptor = new StripedDisruptor<>("JRaft-ReadOnlyService-Disruptor-", stripes,
+            bufferSize, new ReadOnlyServiceImpl.ReadIndexEventFactory(), BlockingWaitStrategy::new,
+            publishWaitTimeoutSecs);
+    }
+
+    public StripedDisruptor<NodeImpl.LogEntryAndClosure> getApplyDisruptor() {
+        return this.applyDisruptor;
+    }
+
+    public StripedDisruptor<LogManagerImpl.StableClosureEvent> getLogManagerDisruptor() {
+        return this.logManagerDisruptor;
+    }
+
+    public StripedDisruptor<FSMCallerImpl.ApplyTask> getFsmCallerDisruptor() {
+        return this.fsmCallerDisruptor;
+    }
+
+    public StripedDisruptor<ReadOnlyServiceImpl.ReadIndexEvent> getReadOnlyServiceDisruptor() {
+        return this.readOnlyServiceDisruptor;
+    }
+
+    public void shutdown() {
+        this.applyDisruptor.shutdown();
+        this.logManagerDisruptor.shutdown();
+        this.fsmCallerDisruptor.shutdown();
+        this.readOnlyServiceDisruptor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "GroupEventLoops{" + "stripes=" + this.applyDisruptor.getStripes() + '}';
+    }
+}
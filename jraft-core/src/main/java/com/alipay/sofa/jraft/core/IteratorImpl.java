@@ -16,6 +16,7 @@
  */
 package com.alipay.sofa.jraft.core;
 
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -23,6 +24,7 @@ import com.alipay.sofa.jraft.Closure;
 import com.alipay.sofa.jraft.Status;
 import com.alipay.sofa.jraft.entity.EnumOutter;
 import com.alipay.sofa.jraft.entity.LogEntry;
+import com.alipay.sofa.jraft.entity.codec.LogEntryCompression;
 import com.alipay.sofa.jraft.error.LogEntryCorruptedException;
 import com.alipay.sofa.jraft.error.RaftError;
 import com.alipay.sofa.jraft.error.RaftException;
@@ -40,25 +42,36 @@ import com.alipay.sofa.jraft.util.Utils;
  */
 public class IteratorImpl {
 
-    private final FSMCallerImpl fsmCaller;
-    private final LogManager    logManager;
-    private final List<Closure> closures;
-    private final long          firstClosureIndex;
-    private long                currentIndex;
-    private final long          committedIndex;
-    private long                fsmCommittedIndex;                // fsm commit index
-    private LogEntry            currEntry        = new LogEntry(); // blank entry
-    private final AtomicLong    applyingIndex;
-    private RaftException       error;
-    private boolean             autoCommitPerLog = false;         // Default enabled
+    private final FSMCallerImpl      fsmCaller;
+    private final LogManager         logManager;
+    private final LogEntryPrefetcher prefetcher;
+    private final List<Closure>      closures;
+    private final long               firstClosureIndex;
+    private long                     currentIndex;
+    private final long               committedIndex;
+    private long                     fsmCommittedIndex;                // fsm commit index
+    private LogEntry                 currEntry        = new LogEntry(); // blank entry
+    private ByteBuffer               currData;                         // decompressed data of currEntry
+    private final AtomicLong         applyingIndex;
+    private RaftException            error;
+    private boolean                  autoCommitPerLog = false;         // Default enabled
 
     public IteratorImpl(final FSMCallerImpl fsmCaller, final LogManager logManager, final List<Closure> closures,
                         final long firstClosureIndex, final long lastAppliedIndex, final long committedIndex,
                         final AtomicLong applyingIndex) {
+        this(fsmCaller, logManager, null, closures, firstClosureIndex, lastAppliedIndex, committedIndex,
+            applyingIndex);
+    }
+
+    public IteratorImpl(final FSMCallerImpl fsmCaller, final LogManager logManager,
+                        final LogEntryPrefetcher prefetcher, final List<Closure> closures,
+                        final long firstClosureIndex, final long lastAppliedIndex, final long committedIndex,
+                        final AtomicLong applyingIndex) {
         super();
         this.fsmCaller = fsmCaller;
         this.fsmCommittedIndex = -1L;
         this.logManager = logManager;
+        this.prefetcher = prefetcher;
         this.closures = closures;
         this.firstClosureIndex = firstClosureIndex;
         this.currentIndex = lastAppliedIndex;
@@ -79,6 +92,13 @@ public class IteratorImpl {
         return this.currEntry;
     }
 
+    /**
+     * Returns the data of the current entry, decompressed when it was written compressed.
+     */
+    public ByteBuffer getData() {
+        return this.currData;
+    }
+
     public RaftException getError() {
         return this.error;
     }
@@ -104,17 +124,26 @@ public class IteratorImpl {
      */
     public void next() {
         this.currEntry = null; //release current entry
+        this.currData = null;
         //get next entry
         if (this.currentIndex <= this.committedIndex) {
             ++this.currentIndex;
             if (this.currentIndex <= this.committedIndex) {
                 try {
-                    this.currEntry = this.logManager.getEntry(this.currentIndex);
+                    if (this.prefetcher != null) {
+                        this.currEntry = this.prefetcher.take(this.currentIndex);
+                    }
+                    if (this.currEntry == null) {
+                        // Not prefetched yet, read it on this thread.
+                        this.currEntry = this.logManager.getEntry(this.currentIndex);
+                    }
                     if (this.currEntry == null) {
                         getOrCreateError().setType(EnumOutter.ErrorType.ERROR_TYPE_LOG);
                         getOrCreateError().getStatus().setError(-1,
                             "Fail to get entry at index=%d while committed_index=%d", this.currentIndex,
                             this.committedIndex);
+                    } else {
+                        this.currData = LogEntryCompression.decode(this.currEntry);
                     }
                 } catch (final LogEntryCorruptedException e) {
                     getOrCreateError().setType(EnumOutter.ErrorType.ERROR_TYPE_LOG);
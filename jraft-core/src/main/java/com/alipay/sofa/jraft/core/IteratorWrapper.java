@@ -22,7 +22,6 @@ import com.alipay.sofa.jraft.Closure;
 import com.alipay.sofa.jraft.Iterator;
 import com.alipay.sofa.jraft.Status;
 import com.alipay.sofa.jraft.entity.EnumOutter;
-import com.alipay.sofa.jraft.entity.LogEntry;
 
 public class IteratorWrapper implements Iterator {
 
@@ -58,8 +57,7 @@ public class IteratorWrapper implements Iterator {
 
     @Override
     public ByteBuffer getData() {
-        final LogEntry entry = this.impl.entry();
-        return entry != null ? entry.getData() : null;
+        return this.impl.getData();
     }
 
     @Override
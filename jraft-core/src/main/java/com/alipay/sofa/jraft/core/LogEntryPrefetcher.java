@@ -0,0 +1,192 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.core;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alipay.sofa.jraft.entity.LogEntry;
+import com.alipay.sofa.jraft.error.LogEntryCorruptedException;
+import com.alipay.sofa.jraft.storage.LogManager;
+import com.alipay.sofa.jraft.util.ThreadPoolsFactory;
+
+/**
+ * Reads and decodes the committed logs ahead of the FSM thread, so that applying them doesn't
+ * wait for the log storage. The prefetched logs are kept in a window bounded in count and bytes,
+ * that the {@link IteratorImpl} drains in order.
+ *
+ * <p>Committed logs never change, so a prefetched log stays valid until it's applied. A log the
+ * prefetcher fails to read is read again by the iterator, which reports the error.
+ */
+public class LogEntryPrefetcher {
+
+    private static final Logger        LOG     = LoggerFactory.getLogger(LogEntryPrefetcher.class);
+
+    private final String               groupId;
+    private final LogManager           logManager;
+    private final int                  maxEntries;
+    private final long                 maxBytes;
+    private final Lock                 lock    = new ReentrantLock();
+    private final ArrayDeque<LogEntry> window  = new ArrayDeque<>();
+    private final AtomicBoolean        running = new AtomicBoolean(false);
+    private long                       windowBytes;
+    // the next log to prefetch
+    private long                       nextIndex;
+    // the log that fails to be read, skipped until the iterator passes it
+    private long                       failedIndex;
+    private volatile long              committedIndex;
+    private volatile boolean           stopped;
+
+    public LogEntryPrefetcher(final String groupId, final LogManager logManager, final long lastAppliedIndex,
+                              final int maxEntries, final long maxBytes) {
+        this.groupId = groupId;
+        this.logManager = logManager;
+        this.nextIndex = lastAppliedIndex + 1;
+        this.committedIndex = lastAppliedIndex;
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Prefetches the logs up to |committedIndex|, called by any thread.
+     */
+    public void onCommitted(final long committedIndex) {
+        if (committedIndex > this.committedIndex) {
+            this.committedIndex = committedIndex;
+        }
+        schedule();
+    }
+
+    /**
+     * Returns the prefetched log at |index|, dropping the logs before it, or null when it's not
+     * prefetched. Called by the FSM thread only, in increasing order.
+     */
+    public LogEntry take(final long index) {
+        LogEntry entry = null;
+        this.lock.lock();
+        try {
+            LogEntry first;
+            while ((first = this.window.peekFirst()) != null && first.getId().getIndex() <= index) {
+                this.window.pollFirst();
+                this.windowBytes -= sizeOf(first);
+                if (first.getId().getIndex() == index) {
+                    entry = first;
+                    break;
+                }
+            }
+            if (entry == null) {
+                // Missed, e.g. after a snapshot was loaded, restart after the log the caller reads.
+                this.window.clear();
+                this.windowBytes = 0;
+                this.nextIndex = Math.max(this.nextIndex, index + 1);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        schedule();
+        return entry;
+    }
+
+    public void shutdown() {
+        this.stopped = true;
+        this.lock.lock();
+        try {
+            this.window.clear();
+            this.windowBytes = 0;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void schedule() {
+        if (!this.stopped && hasWork() && this.running.compareAndSet(false, true)) {
+            ThreadPoolsFactory.runInThread(this.groupId, this::run);
+        }
+    }
+
+    private boolean hasWork() {
+        this.lock.lock();
+        try {
+            return this.nextIndex <= this.committedIndex && this.nextIndex != this.failedIndex
+                   && this.window.size() < this.maxEntries && this.windowBytes < this.maxBytes;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!this.stopped) {
+                final long index;
+                final int maxCount;
+                final long maxBytes;
+                this.lock.lock();
+                try {
+                    if (this.nextIndex > this.committedIndex || this.nextIndex == this.failedIndex
+                        || this.window.size() >= this.maxEntries || this.windowBytes >= this.maxBytes) {
+                        break;
+                    }
+                    index = this.nextIndex;
+                    maxCount = (int) Math.min(this.committedIndex - index + 1, this.maxEntries - this.window.size());
+                    maxBytes = this.maxBytes - this.windowBytes;
+                } finally {
+                    this.lock.unlock();
+                }
+                List<LogEntry> entries;
+                try {
+                    entries = this.logManager.getEntries(index, maxCount, maxBytes);
+                } catch (final LogEntryCorruptedException e) {
+                    entries = Collections.emptyList();
+                }
+                this.lock.lock();
+                try {
+                    if (index != this.nextIndex) {
+                        // Skipped by the iterator meanwhile.
+                        continue;
+                    }
+                    if (entries.isEmpty()) {
+                        LOG.debug("Node {} fails to prefetch log at index={}.", this.groupId, index);
+                        this.failedIndex = index;
+                        break;
+                    }
+                    for (final LogEntry entry : entries) {
+                        this.window.addLast(entry);
+                        this.windowBytes += sizeOf(entry);
+                    }
+                    this.nextIndex += entries.size();
+                } finally {
+                    this.lock.unlock();
+                }
+            }
+        } finally {
+            this.running.set(false);
+        }
+        // Committed or taken meanwhile.
+        schedule();
+    }
+
+    private static long sizeOf(final LogEntry entry) {
+        return entry.getData() != null ? entry.getData().remaining() : 0;
+    }
+}
@@ -22,6 +22,7 @@ import com.alipay.sofa.jraft.conf.Configuration;
 import com.alipay.sofa.jraft.conf.ConfigurationEntry;
 import com.alipay.sofa.jraft.conf.ConfigurationManager;
 import com.alipay.sofa.jraft.entity.*;
+import com.alipay.sofa.jraft.entity.codec.LogEntryCompression;
 import com.alipay.sofa.jraft.entity.codec.v2.LogOutter;
 import com.alipay.sofa.jraft.error.*;
 import com.alipay.sofa.jraft.option.*;
@@ -40,9 +41,8 @@ import com.alipay.sofa.jraft.util.concurrent.LongHeldDetectingReadWriteLock;
 import com.alipay.sofa.jraft.util.timer.RaftTimerFactory;
 import com.anyilanxin.kunpeng.atomix.cluster.PartitionManagementService;
 import com.google.protobuf.Message;
-import com.lmax.disruptor.*;
-import com.lmax.disruptor.dsl.Disruptor;
-import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventTranslator;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -145,8 +145,9 @@ public class NodeImpl implements Node, RaftServerService {
     /**
      * Disruptor to run node service
      */
-    private Disruptor<LogEntryAndClosure>                                  applyDisruptor;
-    private RingBuffer<LogEntryAndClosure>                                 applyQueue;
+    private StripedDisruptor<LogEntryAndClosure>                           applyDisruptor;
+    private boolean                                                        sharedApplyDisruptor;
+    private StripedDisruptor.Subscription<LogEntryAndClosure>              applyQueue;
 
     /**
      * Metrics
@@ -203,7 +204,7 @@ public class NodeImpl implements Node, RaftServerService {
      * <p>
      * 2018-Apr-03 4:29:55 PM
      */
-    private static class LogEntryAndClosure {
+    public static class LogEntryAndClosure extends GroupedEvent {
         LogEntry       entry;
         Closure        done;
         long           expectedTerm;
@@ -217,7 +218,7 @@ public class NodeImpl implements Node, RaftServerService {
         }
     }
 
-    private static class LogEntryAndClosureFactory implements EventFactory<LogEntryAndClosure> {
+    public static class LogEntryAndClosureFactory implements EventFactory<LogEntryAndClosure> {
 
         @Override
         public LogEntryAndClosure newInstance() {
@@ -232,7 +233,7 @@ public class NodeImpl implements Node, RaftServerService {
      * <p>
      * 2018-Apr-03 4:30:07 PM
      */
-    private class LogEntryAndClosureHandler implements EventHandler<LogEntryAndClosure> {
+    private class LogEntryAndClosureHandler implements GroupedEventHandler<LogEntryAndClosure> {
         // task list for batch
         private final List<LogEntryAndClosure> tasks = new ArrayList<>(NodeImpl.this.raftOptions.getApplyBatch());
 
@@ -257,6 +258,14 @@ public class NodeImpl implements Node, RaftServerService {
             }
         }
 
+        @Override
+        public void onBatchEnd() {
+            if (!this.tasks.isEmpty()) {
+                executeApplyingTasks(this.tasks);
+                reset();
+            }
+        }
+
         private void reset() {
             for (final LogEntryAndClosure task : this.tasks) {
                 task.reset();
@@ -570,6 +579,10 @@ public class NodeImpl implements Node, RaftServerService {
         opts.setNodeMetrics(this.metrics);
         opts.setDisruptorBufferSize(this.raftOptions.getDisruptorBufferSize());
         opts.setRaftOptions(this.raftOptions);
+        if (this.options.getGroupEventLoops() != null) {
+            opts.setDisruptor(this.options.getGroupEventLoops().getLogManagerDisruptor());
+        }
+        opts.setSchedulingWeight(this.options.getSchedulingWeight());
         return this.logManager.init(opts);
     }
 
@@ -762,6 +775,10 @@ public class NodeImpl implements Node, RaftServerService {
         opts.setNode(this);
         opts.setBootstrapId(bootstrapId);
         opts.setDisruptorBufferSize(this.raftOptions.getDisruptorBufferSize());
+        if (this.options.getGroupEventLoops() != null) {
+            opts.setDisruptor(this.options.getGroupEventLoops().getFsmCallerDisruptor());
+        }
+        opts.setSchedulingWeight(this.options.getSchedulingWeight());
         return this.fsmCaller.init(opts);
     }
 
@@ -998,19 +1015,20 @@ public class NodeImpl implements Node, RaftServerService {
 
         this.configManager = new ConfigurationManager();
 
-        this.applyDisruptor = DisruptorBuilder.<LogEntryAndClosure> newInstance() //
-            .setRingBufferSize(this.raftOptions.getDisruptorBufferSize()) //
-            .setEventFactory(new LogEntryAndClosureFactory()) //
-            .setThreadFactory(new NamedThreadFactory("JRaft-NodeImpl-Disruptor-", true)) //
-            .setProducerType(ProducerType.MULTI) //
-            .setWaitStrategy(new BlockingWaitStrategy()) //
-            .build();
-        this.applyDisruptor.handleEventsWith(new LogEntryAndClosureHandler());
-        this.applyDisruptor.setDefaultExceptionHandler(new LogExceptionHandler<Object>(getClass().getSimpleName()));
-        this.applyQueue = this.applyDisruptor.start();
+        final GroupEventLoops eventLoops = this.options.getGroupEventLoops();
+        this.sharedApplyDisruptor = eventLoops != null;
+        if (this.sharedApplyDisruptor) {
+            this.applyDisruptor = eventLoops.getApplyDisruptor();
+        } else {
+            this.applyDisruptor = new StripedDisruptor<>("JRaft-NodeImpl-Disruptor-", 1,
+                this.raftOptions.getDisruptorBufferSize(), new LogEntryAndClosureFactory());
+        }
+        this.applyQueue = this.applyDisruptor.subscribe(this.groupId, this.options.getSchedulingWeight(),
+            new LogEntryAndClosureHandler(), new LogExceptionHandler<Object>(getClass().getSimpleName()));
         if (this.metrics.getMetricRegistry() != null) {
             this.metrics.getMetricRegistry().register("jraft-node-impl-disruptor",
-                new DisruptorMetricSet(this.applyQueue));
+                new DisruptorMetricSet(this.applyQueue.getRingBuffer()));
+            this.metrics.getMetricRegistry().register("jraft-node-impl-disruptor-group", this.applyQueue);
         }
 
         this.fsmCaller = new FSMCallerImpl();
@@ -1083,8 +1101,10 @@ public class NodeImpl implements Node, RaftServerService {
 
         // TODO RPC service and ReplicatorGroup is in cycle dependent, refactor it
         this.replicatorGroup = new ReplicatorGroupImpl();
+        // Adds metric registry to RPC service.
+        this.options.setMetricRegistry(this.metrics.getMetricRegistry());
         this.rpcService = new DefaultRaftMessageClientService(this.replicatorGroup, this.options,
-            partitionManagementService, this);
+            partitionManagementService);
         final ReplicatorGroupOptions rgOpts = new ReplicatorGroupOptions();
         rgOpts.setHeartbeatTimeoutMs(heartbeatTimeout(this.options.getElectionTimeoutMs()));
         rgOpts.setElectionTimeoutMs(this.options.getElectionTimeoutMs());
@@ -1096,9 +1116,6 @@ public class NodeImpl implements Node, RaftServerService {
         rgOpts.setRaftOptions(this.raftOptions);
         rgOpts.setTimerManager(this.timerManager);
 
-        // Adds metric registry to RPC service.
-        this.options.setMetricRegistry(this.metrics.getMetricRegistry());
-
         this.replicatorGroup.init(new NodeId(this.groupId, this.serverId), rgOpts);
 
         this.readOnlyService = new ReadOnlyServiceImpl();
@@ -1106,6 +1123,10 @@ public class NodeImpl implements Node, RaftServerService {
         rosOpts.setFsmCaller(this.fsmCaller);
         rosOpts.setNode(this);
         rosOpts.setRaftOptions(this.raftOptions);
+        if (this.options.getGroupEventLoops() != null) {
+            rosOpts.setDisruptor(this.options.getGroupEventLoops().getReadOnlyServiceDisruptor());
+        }
+        rosOpts.setSchedulingWeight(this.options.getSchedulingWeight());
 
         if (!this.readOnlyService.init(rosOpts)) {
             LOG.error("Fail to init readOnlyService.");
@@ -1209,6 +1230,7 @@ public class NodeImpl implements Node, RaftServerService {
                 this.rpcService.requestVote(peer.getEndpoint(), request)
                         .whenComplete((BiConsumer<RequestVoteResponse, Throwable>) (requestVoteResponse, throwable) -> {
                             if (throwable == null) {
+                                done.setResponse(requestVoteResponse);
                                 done.run(Status.OK());
                             } else {
                                 done.run(new Status(RaftError.ERAFTTIMEDOUT, throwable.getMessage()));
@@ -1536,26 +1558,24 @@ public class NodeImpl implements Node, RaftServerService {
      * Handle read index request.
      */
     @Override
-    public RpcRequests.ReadIndexResponse handleReadIndexRequest(final ReadIndexRequest request) {
+    public void handleReadIndexRequest(final ReadIndexRequest request,
+                                       final RpcResponseClosure<ReadIndexResponse> done) {
         final long startMs = Utils.monotonicMs();
         this.readLock.lock();
-        ReadIndexResponse.Builder builder = ReadIndexResponse.newBuilder();
-        ErrorResponse.Builder errBuilder = ErrorResponse.newBuilder();
         try {
             switch (this.state) {
                 case STATE_LEADER:
-                    readLeader(request, builder);
-                    return builder.build();
+                    readLeader(request, ReadIndexResponse.newBuilder(), done);
+                    break;
                 case STATE_FOLLOWER:
-                    readFollower(request, builder);
-                    return builder.build();
+                    readFollower(request, done);
+                    break;
                 case STATE_TRANSFERRING:
-                    errBuilder.setErrorCode(RaftError.EBUSY.getNumber()).setErrorMsg("Is transferring leadership.");
-                    return builder.setErrorResponse(errBuilder.build()).build();
+                    done.run(new Status(RaftError.EBUSY, "Is transferring leadership."));
+                    break;
                 default:
-                    errBuilder.setErrorCode(RaftError.EPERM.getNumber()).setErrorMsg(
-                        String.format("Invalid state for readIndex: %s.", this.state));
-                    return builder.setErrorResponse(errBuilder.build()).build();
+                    done.run(new Status(RaftError.EPERM, "Invalid state for readIndex: %s.", this.state));
+                    break;
             }
         } finally {
             this.readLock.unlock();
@@ -1564,6 +1584,25 @@ public class NodeImpl implements Node, RaftServerService {
         }
     }
 
+    /**
+     * Returns the index at which a follower may serve a bounded-stale read locally, without any
+     * RPC, or -1 when this node is not a follower which heard from its leader within the leader
+     * lease. The index is the commit index known by this follower, the leader may have committed
+     * further since, so a read at this index is not linearizable.
+     */
+    long getBoundedStaleReadIndex() {
+        this.readLock.lock();
+        try {
+            if (this.state != State.STATE_FOLLOWER || this.leaderId == null || this.leaderId.isEmpty()
+                || !checkLeaderLease(Utils.monotonicMs())) {
+                return -1;
+            }
+            return this.ballotBox.getLastCommittedIndex();
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
     private int getReadQuorum() {
         final Configuration c = this.conf.getConf();
         if (c.isEmpty()) {
@@ -1572,87 +1611,85 @@ public class NodeImpl implements Node, RaftServerService {
         return this.conf.getConf().getQuorum().getR();
     }
 
-    private void readFollower(final ReadIndexRequest request, ReadIndexResponse.Builder builder) {
-        ErrorResponse.Builder errBuilder = ErrorResponse.newBuilder();
+    private void readFollower(final ReadIndexRequest request, final RpcResponseClosure<ReadIndexResponse> closure) {
         if (this.leaderId == null || this.leaderId.isEmpty()) {
-            errBuilder.setErrorCode(RaftError.EPERM.getNumber())
-                            .setErrorMsg(String.format("No leader at term %d.", this.currTerm));
-            builder.setErrorResponse(errBuilder.build());
+            closure.run(new Status(RaftError.EPERM, "No leader at term %d.", this.currTerm));
             return;
         }
         // send request to leader.
+        final PeerId leader = this.leaderId;
         final ReadIndexRequest newRequest = ReadIndexRequest.newBuilder() //
-                .mergeFrom(request) //
-                .setPeerId(this.leaderId.toString()) //
-                .build();
-        this.rpcService.readIndex(this.leaderId.getEndpoint(), newRequest, -1)
-                .whenComplete((readIndexResponse, throwable) -> {
-                    if(throwable==null) {
-                        builder.mergeFrom(readIndexResponse);
-                    }
-                });
+            .mergeFrom(request) //
+            .setPeerId(leader.toString()) //
+            .build();
+        this.rpcService.readIndex(leader.getEndpoint(), newRequest, -1).whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                closure.run(new Status(RaftError.EINTERNAL, "Fail to send readIndex to leader %s: %s.", leader,
+                    throwable.getMessage()));
+                return;
+            }
+            closure.setResponse(response);
+            closure.run(Status.OK());
+        });
     }
 
-    private void readLeader(final ReadIndexRequest request, final ReadIndexResponse.Builder respBuilder) {
-        //        ErrorResponse.Builder builder = ErrorResponse.newBuilder();
-        //        if (this.conf.getConf().getQuorum().getR() <= 1) {
-        //            // Only one peer, fast path.
-        //            respBuilder.setSuccess(true) //
-        //                    .setIndex(this.ballotBox.getLastCommittedIndex());
-        ////            closure.setResponse(respBuilder.build());
-        ////            closure.run(Status.OK());
-        //            return;
-        //        }
-        //
-        //        final long lastCommittedIndex = this.ballotBox.getLastCommittedIndex();
-        //        if (this.logManager.getTerm(lastCommittedIndex) != this.currTerm) {
-        //            builder.setErrorCode(RaftError.EAGAIN.getNumber())
-        //                    .setErrorMsg(String.format("ReadIndex request rejected because leader has not committed any log entry at its term, logIndex=%d, currTerm=%d.", lastCommittedIndex, this.currTerm));
-        //            // Reject read only request when this leader has not committed any log entry at its term
-        //            respBuilder.setErrorResponse(builder.build());
-        //            return;
-        //        }
-        //        respBuilder.setIndex(lastCommittedIndex);
-        //
-        //        if (Objects.nonNull(request.getPeerId())) {
-        //            // request from follower or learner, check if the follower/learner is in current conf.
-        //            final PeerId peer = new PeerId();
-        //            peer.parse(request.getServerId());
-        //            if (!this.conf.contains(peer) && !this.conf.containsLearner(peer)) {
-        //                builder.setErrorCode(RaftError.EPERM.getNumber())
-        //                        .setErrorMsg(String.format("Peer %s is not in current configuration: %s.", peer, this.conf));
-        //                // Reject read only request when this leader has not committed any log entry at its term
-        //                respBuilder.setErrorResponse(builder.build());
-        //                return;
-        //            }
-        //        }
-        //
-        //        ReadOnlyOption readOnlyOpt = ReadOnlyOption.valueOfWithDefault(request.getReadOnlyOptions(), this.raftOptions.getReadOnlyOptions());
-        //        if (readOnlyOpt == ReadOnlyOption.ReadOnlyLeaseBased && !isLeaderLeaseValid()) {
-        //            // If leader lease timeout, we must change option to ReadOnlySafe
-        //            readOnlyOpt = ReadOnlyOption.ReadOnlySafe;
-        //        }
-        //
-        //        switch (readOnlyOpt) {
-        //            case ReadOnlySafe:
-        //                final List<PeerId> peers = this.conf.getConf().getPeers();
-        //                Requires.requireTrue(peers != null && !peers.isEmpty(), "Empty peers");
-        //                final ReadIndexHeartbeatResponseClosure heartbeatDone = new ReadIndexHeartbeatResponseClosure(closure, respBuilder, this.conf.getConf().getQuorum(), peers.size());
-        //                // Send heartbeat requests to followers
-        //                for (final PeerId peer : peers) {
-        //                    if (peer.equals(this.serverId)) {
-        //                        continue;
-        //                    }
-        //                    this.replicatorGroup.sendHeartbeat(peer, heartbeatDone);
-        //                }
-        //                break;
-        //            case ReadOnlyLeaseBased:
-        //                // Responses to followers and local node.
-        //                respBuilder.setSuccess(true);
-        ////                closure.setResponse(respBuilder.build());
-        ////                closure.run(Status.OK());
-        //                break;
-        //        }
+    private void readLeader(final ReadIndexRequest request, final ReadIndexResponse.Builder respBuilder,
+                            final RpcResponseClosure<ReadIndexResponse> closure) {
+        if (getReadQuorum() <= 1) {
+            // Only one peer, fast path.
+            respBuilder.setSuccess(true) //
+                .setIndex(this.ballotBox.getLastCommittedIndex());
+            closure.setResponse(respBuilder.build());
+            closure.run(Status.OK());
+            return;
+        }
+
+        final long lastCommittedIndex = this.ballotBox.getLastCommittedIndex();
+        if (this.logManager.getTerm(lastCommittedIndex) != this.currTerm) {
+            // Reject read only request when this leader has not committed any log entry at its term
+            closure.run(new Status(RaftError.EAGAIN,
+                "ReadIndex request rejected because leader has not committed any log entry at its term, logIndex=%d, currTerm=%d.",
+                lastCommittedIndex, this.currTerm));
+            return;
+        }
+        respBuilder.setIndex(lastCommittedIndex);
+
+        if (StringUtils.isNotBlank(request.getPeerId())) {
+            // request from follower or learner, check if the follower/learner is in current conf.
+            final PeerId peer = new PeerId();
+            peer.parse(request.getServerId());
+            if (!this.conf.contains(peer) && !this.conf.containsLearner(peer)) {
+                closure.run(new Status(RaftError.EPERM, "Peer %s is not in current configuration: %s.", peer,
+                    this.conf));
+                return;
+            }
+        }
+
+        ReadOnlyOption readOnlyOpt = ReadOnlyOption.valueOfWithDefault(request.getReadOnlyOptions(),
+            this.raftOptions.getReadOnlyOptions());
+        if (readOnlyOpt != ReadOnlyOption.ReadOnlySafe && !isLeaderLeaseValid()) {
+            // If leader lease timeout, we must change option to ReadOnlySafe
+            readOnlyOpt = ReadOnlyOption.ReadOnlySafe;
+        }
+
+        if (readOnlyOpt == ReadOnlyOption.ReadOnlySafe) {
+            final List<PeerId> peers = this.conf.getConf().getPeers();
+            Requires.requireTrue(peers != null && !peers.isEmpty(), "Empty peers");
+            final ReadIndexHeartbeatResponseClosure heartbeatDone = new ReadIndexHeartbeatResponseClosure(closure,
+                respBuilder, this.conf.getConf().getQuorum(), peers.size());
+            // Send heartbeat requests to followers
+            for (final PeerId peer : peers) {
+                if (peer.equals(this.serverId)) {
+                    continue;
+                }
+                this.replicatorGroup.sendHeartbeat(peer, heartbeatDone);
+            }
+        } else {
+            // The leader lease is valid, responses to followers and local node.
+            respBuilder.setSuccess(true);
+            closure.setResponse(respBuilder.build());
+            closure.run(Status.OK());
+        }
     }
 
     @Override
@@ -1665,6 +1702,15 @@ public class NodeImpl implements Node, RaftServerService {
 
         final LogEntry entry = new LogEntry();
         entry.setData(task.getData());
+        final LogEntryCompression compression = this.raftOptions.getLogEntryCompression();
+        if (compression != null && task.getData() != null) {
+            // Compress in the caller thread, the log is stored and replicated compressed.
+            final ByteBuffer compressed = compression.encode(task.getData());
+            if (compressed != null) {
+                entry.setData(compressed);
+                entry.setCompression(compression);
+            }
+        }
 
         final EventTranslator<LogEntryAndClosure> translator = (event, sequence) -> {
             event.reset();
@@ -1873,15 +1919,15 @@ public class NodeImpl implements Node, RaftServerService {
 
     private static class FollowerStableClosure extends LogManager.StableClosure {
 
-        final long                          committedIndex;
-        final AppendEntriesResponse.Builder responseBuilder;
-        final NodeImpl                      node;
-        final RpcRequestClosure             done;
-        final long                          term;
+        final long                                      committedIndex;
+        final AppendEntriesResponse.Builder             responseBuilder;
+        final NodeImpl                                  node;
+        final RpcResponseClosure<AppendEntriesResponse> done;
+        final long                                      term;
 
         public FollowerStableClosure(final AppendEntriesRequest request,
                                      final AppendEntriesResponse.Builder responseBuilder, final NodeImpl node,
-                                     final RpcRequestClosure done, final long term) {
+                                     final RpcResponseClosure<AppendEntriesResponse> done, final long term) {
             super(null);
             this.committedIndex = Math.min(
             // committed index is likely less than the lastLogIndex
@@ -1921,7 +1967,8 @@ public class NodeImpl implements Node, RaftServerService {
                     // So we have to respond failure to the old leader and set the new
                     // term to make it stepped down if it didn't.
                     this.responseBuilder.setSuccess(false).setTerm(this.node.currTerm);
-                    this.done.sendResponse(this.responseBuilder.build());
+                    this.done.setResponse(this.responseBuilder.build());
+                    this.done.run(Status.OK());
                     return;
                 }
             } finally {
@@ -1935,12 +1982,14 @@ public class NodeImpl implements Node, RaftServerService {
             // Ballot box is thread safe and tolerates disorder.
             this.node.ballotBox.setLastCommittedIndex(this.committedIndex);
 
-            this.done.sendResponse(this.responseBuilder.build());
+            this.done.setResponse(this.responseBuilder.build());
+            this.done.run(Status.OK());
         }
     }
 
     @Override
-    public RpcRequests.AppendEntriesResponse handleAppendEntriesRequest(final AppendEntriesRequest request) {
+    public RpcRequests.AppendEntriesResponse handleAppendEntriesRequest(final AppendEntriesRequest request,
+                                                                        final RpcResponseClosure<AppendEntriesResponse> done) {
         boolean doUnlock = true;
         final long startMs = Utils.monotonicMs();
         this.writeLock.lock();
@@ -2074,8 +2123,9 @@ public class NodeImpl implements Node, RaftServerService {
                 }
             }
 
-            //            final FollowerStableClosure closure = new FollowerStableClosure(request, AppendEntriesResponse.newBuilder().setTerm(this.currTerm), this, done, this.currTerm);
-            this.logManager.appendEntries(entries, null);
+            final FollowerStableClosure closure = new FollowerStableClosure(request, AppendEntriesResponse
+                .newBuilder().setTerm(this.currTerm), this, done, this.currTerm);
+            this.logManager.appendEntries(entries, closure);
             // update configuration after _log_manager updated its memory status
             checkAndSetConfiguration(true);
             success = true;
@@ -2105,6 +2155,13 @@ public class NodeImpl implements Node, RaftServerService {
             if (entry.hasChecksum()) {
                 logEntry.setChecksum(entry.getChecksum()); // since 1.2.6
             }
+            if (entry.hasCompression()) {
+                final LogEntryCompression compression = LogEntryCompression.forId(entry.getCompression());
+                if (compression == null) {
+                    throw new IllegalStateException("Unknown compression of log entry: " + entry.getCompression());
+                }
+                logEntry.setCompression(compression);
+            }
             final long dataLen = entry.getDataLen();
             if (dataLen > 0) {
                 final byte[] bs = new byte[(int) dataLen];
@@ -2783,6 +2840,7 @@ public class NodeImpl implements Node, RaftServerService {
                         .build();
                 this.rpcService.preVote(peer.getEndpoint(), done.request).whenComplete((requestVoteResponse, throwable) -> {
                     if (throwable == null) {
+                        done.setResponse(requestVoteResponse);
                         done.run(Status.OK());
                     } else {
                         done.run(new Status(10, throwable.getMessage()));
@@ -2970,7 +3028,10 @@ public class NodeImpl implements Node, RaftServerService {
                 Replicator.join(this.wakingCandidate);
             }
             this.shutdownLatch.await();
-            this.applyDisruptor.shutdown();
+            this.applyQueue.unsubscribe();
+            if (!this.sharedApplyDisruptor) {
+                this.applyDisruptor.shutdown();
+            }
             this.applyQueue = null;
             this.applyDisruptor = null;
             this.shutdownLatch = null;
@@ -3512,7 +3573,7 @@ public class NodeImpl implements Node, RaftServerService {
 
         do {
             if (entry.getType() == EnumOutter.EntryType.ENTRY_TYPE_DATA) {
-                return new UserLog(curIndex, entry.getData());
+                return new UserLog(curIndex, LogEntryCompression.decode(entry));
             } else {
                 curIndex++;
             }
@@ -51,20 +51,18 @@ import com.alipay.sofa.jraft.rpc.RpcRequests.ReadIndexRequest;
 import com.alipay.sofa.jraft.rpc.RpcRequests.ReadIndexResponse;
 import com.alipay.sofa.jraft.rpc.RpcResponseClosureAdapter;
 import com.alipay.sofa.jraft.util.Bytes;
-import com.alipay.sofa.jraft.util.DisruptorBuilder;
 import com.alipay.sofa.jraft.util.DisruptorMetricSet;
+import com.alipay.sofa.jraft.util.GroupedEvent;
+import com.alipay.sofa.jraft.util.GroupedEventHandler;
 import com.alipay.sofa.jraft.util.LogExceptionHandler;
 import com.alipay.sofa.jraft.util.NamedThreadFactory;
 import com.alipay.sofa.jraft.util.OnlyForTest;
+import com.alipay.sofa.jraft.util.StripedDisruptor;
+import com.alipay.sofa.jraft.util.StripedDisruptor.Subscription;
 import com.alipay.sofa.jraft.util.Utils;
 import com.google.protobuf.ZeroByteStringHelper;
-import com.lmax.disruptor.BlockingWaitStrategy;
 import com.lmax.disruptor.EventFactory;
-import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.EventTranslator;
-import com.lmax.disruptor.RingBuffer;
-import com.lmax.disruptor.dsl.Disruptor;
-import com.lmax.disruptor.dsl.ProducerType;
 
 /**
  * Read-only service implementation.
@@ -74,8 +72,9 @@ import com.lmax.disruptor.dsl.ProducerType;
 public class ReadOnlyServiceImpl implements ReadOnlyService, LastAppliedLogIndexListener {
 
     /** Disruptor to run readonly service. */
-    private Disruptor<ReadIndexEvent>                  readIndexDisruptor;
-    private RingBuffer<ReadIndexEvent>                 readIndexQueue;
+    private StripedDisruptor<ReadIndexEvent>           readIndexDisruptor;
+    private boolean                                    sharedDisruptor;
+    private Subscription<ReadIndexEvent>               readIndexQueue;
     private RaftOptions                                raftOptions;
     private NodeImpl                                   node;
     private final Lock                                 lock                = new ReentrantLock();
@@ -94,7 +93,7 @@ public class ReadOnlyServiceImpl implements ReadOnlyService, LastAppliedLogIndex
     private static final Logger                        LOG                 = LoggerFactory
                                                                                .getLogger(ReadOnlyServiceImpl.class);
 
-    private static class ReadIndexEvent {
+    public static class ReadIndexEvent extends GroupedEvent {
         ReadOnlyOption   readOnlyOptions;
         Bytes            requestContext;
         ReadIndexClosure done;
@@ -110,7 +109,7 @@ public class ReadOnlyServiceImpl implements ReadOnlyService, LastAppliedLogIndex
         }
     }
 
-    private static class ReadIndexEventFactory implements EventFactory<ReadIndexEvent> {
+    public static class ReadIndexEventFactory implements EventFactory<ReadIndexEvent> {
 
         @Override
         public ReadIndexEvent newInstance() {
@@ -118,7 +117,7 @@ public class ReadOnlyServiceImpl implements ReadOnlyService, LastAppliedLogIndex
         }
     }
 
-    private class ReadIndexEventHandler implements EventHandler<ReadIndexEvent> {
+    private class ReadIndexEventHandler implements GroupedEventHandler<ReadIndexEvent> {
         // task list for batch
         private final List<ReadIndexEvent> events = new ArrayList<>(
                                                       ReadOnlyServiceImpl.this.raftOptions.getApplyBatch());
@@ -140,6 +139,12 @@ public class ReadOnlyServiceImpl implements ReadOnlyService, LastAppliedLogIndex
             }
         }
 
+        @Override
+        public void onBatchEnd() {
+            executeReadIndexEvents(this.events);
+            reset();
+        }
+
         private void reset() {
             for (final ReadIndexEvent event : this.events) {
                 event.reset();
@@ -244,8 +249,22 @@ public class ReadOnlyServiceImpl implements ReadOnlyService, LastAppliedLogIndex
             return;
         }
         final ReadIndexRequest request = rb.build();
-        this.node.handleReadIndexRequest(request);
-//        this.node.handleReadIndexRequest(request, new ReadIndexResponseClosure(states, request));
+        final ReadIndexResponseClosure closure = new ReadIndexResponseClosure(states, request);
+        if (option == ReadOnlyOption.ReadOnlyFollowerBoundedStale) {
+            final long staleReadIndex = this.node.getBoundedStaleReadIndex();
+            if (staleReadIndex >= 0) {
+                // The follower heard from its leader within the lease, the caller accepts a
+                // bounded-stale read, no need to ask the leader.
+                this.nodeMetrics.recordTimes("read-index-follower-bounded-stale-times", states.size());
+                closure.setResponse(ReadIndexResponse.newBuilder() //
+                    .setIndex(staleReadIndex) //
+                    .setSuccess(true) //
+                    .build());
+                closure.run(Status.OK());
+                return;
+            }
+        }
+        this.node.handleReadIndexRequest(request, closure);
     }
 
     private void executeReadIndexEvents(final List<ReadIndexEvent> events) {
@@ -254,6 +273,7 @@ public class ReadOnlyServiceImpl implements ReadOnlyService, LastAppliedLogIndex
         }
         handleReadIndex(ReadOnlyOption.ReadOnlySafe, events);
         handleReadIndex(ReadOnlyOption.ReadOnlyLeaseBased, events);
+        handleReadIndex(ReadOnlyOption.ReadOnlyFollowerBoundedStale, events);
     }
 
     private void resetPendingStatusError(final Status st) {
@@ -281,20 +301,21 @@ public class ReadOnlyServiceImpl implements ReadOnlyService, LastAppliedLogIndex
 
         this.scheduledExecutorService = Executors
             .newSingleThreadScheduledExecutor(new NamedThreadFactory("ReadOnlyService-PendingNotify-Scanner", true));
-        this.readIndexDisruptor = DisruptorBuilder.<ReadIndexEvent> newInstance() //
-            .setEventFactory(new ReadIndexEventFactory()) //
-            .setRingBufferSize(this.raftOptions.getDisruptorBufferSize()) //
-            .setThreadFactory(new NamedThreadFactory("JRaft-ReadOnlyService-Disruptor-", true)) //
-            .setWaitStrategy(new BlockingWaitStrategy()) //
-            .setProducerType(ProducerType.MULTI) //
-            .build();
-        this.readIndexDisruptor.handleEventsWith(new ReadIndexEventHandler());
-        this.readIndexDisruptor
-            .setDefaultExceptionHandler(new LogExceptionHandler<Object>(getClass().getSimpleName()));
-        this.readIndexQueue = this.readIndexDisruptor.start();
+        this.sharedDisruptor = opts.getDisruptor() != null;
+        if (this.sharedDisruptor) {
+            this.readIndexDisruptor = opts.getDisruptor();
+        } else {
+            this.readIndexDisruptor = new StripedDisruptor<>("JRaft-ReadOnlyService-Disruptor-", 1,
+                this.raftOptions.getDisruptorBufferSize(), new ReadIndexEventFactory());
+        }
+        this.readIndexQueue = this.readIndexDisruptor.subscribe(this.node.getGroupId(), opts.getSchedulingWeight(),
+            new ReadIndexEventHandler(), new LogExceptionHandler<Object>(getClass().getSimpleName()));
         if (this.nodeMetrics.getMetricRegistry() != null) {
             this.nodeMetrics.getMetricRegistry() //
-                .register("jraft-read-only-service-disruptor", new DisruptorMetricSet(this.readIndexQueue));
+                .register("jraft-read-only-service-disruptor",
+                    new DisruptorMetricSet(this.readIndexQueue.getRingBuffer()));
+            this.nodeMetrics.getMetricRegistry() //
+                .register("jraft-read-only-service-disruptor-group", this.readIndexQueue);
         }
         // listen on lastAppliedLogIndex change events.
         this.fsmCaller.addLastAppliedLogIndexListener(this);
@@ -328,7 +349,10 @@ public class ReadOnlyServiceImpl implements ReadOnlyService, LastAppliedLogIndex
         if (this.shutdownLatch != null) {
             this.shutdownLatch.await();
         }
-        this.readIndexDisruptor.shutdown();
+        this.readIndexQueue.unsubscribe();
+        if (!this.sharedDisruptor) {
+            this.readIndexDisruptor.shutdown();
+        }
         resetPendingStatusError(new Status(RaftError.ESTOP, "Node is quit."));
         this.scheduledExecutorService.awaitTermination(5, TimeUnit.SECONDS);
     }
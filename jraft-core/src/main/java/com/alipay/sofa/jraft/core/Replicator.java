@@ -22,6 +22,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.BiConsumer;
 
 import javax.annotation.concurrent.ThreadSafe;
@@ -49,10 +50,7 @@ import com.alipay.sofa.jraft.rpc.RpcRequests.InstallSnapshotResponse;
 import com.alipay.sofa.jraft.rpc.RpcRequests.TimeoutNowRequest;
 import com.alipay.sofa.jraft.rpc.RpcRequests.TimeoutNowResponse;
 import com.alipay.sofa.jraft.storage.snapshot.SnapshotReader;
-import com.alipay.sofa.jraft.util.BufferUtils;
-import com.alipay.sofa.jraft.util.ByteBufferCollector;
 import com.alipay.sofa.jraft.util.OnlyForTest;
-import com.alipay.sofa.jraft.util.Recyclable;
 import com.alipay.sofa.jraft.util.RecyclableByteBufferList;
 import com.alipay.sofa.jraft.util.RecycleUtil;
 import com.alipay.sofa.jraft.util.Requires;
@@ -65,6 +63,7 @@ import com.codahale.metrics.Metric;
 import com.codahale.metrics.MetricFilter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.MetricSet;
+import com.google.common.base.Throwables;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.Message;
 import com.google.protobuf.ZeroByteStringHelper;
@@ -393,13 +392,13 @@ public class Replicator implements ThreadId.OnError {
         // Entries size in bytes
         final int size;
         // RPC future
-        final Future<Message> rpcFuture;
+        final Future<? extends Message> rpcFuture;
         final RequestType requestType;
         // Request sequence.
         final int seq;
 
         public Inflight(final RequestType requestType, final long startIndex, final int count, final int size,
-                        final int seq, final Future<Message> rpcFuture) {
+                        final int seq, final Future<? extends Message> rpcFuture) {
             super();
             this.seq = seq;
             this.requestType = requestType;
@@ -543,7 +542,7 @@ public class Replicator implements ThreadId.OnError {
     }
 
     @OnlyForTest
-    Future<Message> getRpcInFly() {
+    Future<? extends Message> getRpcInFly() {
         if (this.rpcInFly == null) {
             return null;
         }
@@ -578,7 +577,7 @@ public class Replicator implements ThreadId.OnError {
      * @param size    size in bytes
      */
     private void addInflight(final RequestType reqType, final long startIndex, final int count, final int size,
-                             final int seq, final Future<Message> rpcInfly) {
+                             final int seq, final Future<? extends Message> rpcInfly) {
         this.rpcInFly = new Inflight(reqType, startIndex, count, size, seq, rpcInfly);
         this.inflights.add(this.rpcInFly);
         this.nodeMetrics.recordSize(name(this.metricName, "replicate-inflights-count"), this.inflights.size());
@@ -689,15 +688,15 @@ public class Replicator implements ThreadId.OnError {
             final long monotonicSendTimeMs = Utils.monotonicMs();
             final int stateVersion = this.version;
             final int seq = getAndIncrementReqSeq();
-            CompletableFuture<InstallSnapshotResponse> installSnapshot = this.rpcService.installSnapshot(this.options.getPeerId().getEndpoint(), rb.build());
+            CompletableFuture<InstallSnapshotResponse> installSnapshot = this.rpcService.installSnapshot(this.options.getPeerId().getEndpoint(), request);
+            // Add the inflight before the callback, which runs in place when the rpc is already done.
+            addInflight(RequestType.Snapshot, this.nextIndex, 0, 0, seq, installSnapshot);
             installSnapshot.whenComplete((installSnapshotResponse, throwable) -> {
-                RpcRequests.ErrorResponse errorResponse = installSnapshotResponse.getErrorResponse();
-                Status status = new Status(errorResponse.getErrorCode(), errorResponse.getErrorMsg());
+                final Status status = rpcStatus(throwable, installSnapshotResponse == null ? null
+                        : installSnapshotResponse.getErrorResponse());
                 onRpcReturned(Replicator.this.id, RequestType.Snapshot, status, request, installSnapshotResponse, seq,
                         stateVersion, monotonicSendTimeMs);
             });
-            // FIX TODO: 待处理时限
-//            addInflight(RequestType.Snapshot, this.nextIndex, 0, 0, seq, rpcFuture);
         } finally {
             if (doUnlock) {
                 unlockId();
@@ -801,11 +800,12 @@ public class Replicator implements ThreadId.OnError {
                         }
                     };
                 }
-                CompletableFuture<AppendEntriesResponse> appendEntries = this.rpcService.appendEntries(this.options.getPeerId().getEndpoint(), request, this.options.getElectionTimeoutMs() / 2);
+                CompletableFuture<AppendEntriesResponse> appendEntries = this.rpcService.heartbeat(this.options.getPeerId().getEndpoint(), request, this.options.getElectionTimeoutMs() / 2);
                 appendEntries.whenComplete((appendEntriesResponse, throwable) -> {
-                    RpcRequests.ErrorResponse errorResponse = appendEntriesResponse.getErrorResponse();
-                    Status status = new Status(errorResponse.getErrorCode(), errorResponse.getErrorMsg());
-                    onHeartbeatReturned(Replicator.this.id, status, request, appendEntriesResponse, monotonicSendTimeMs);
+                    final Status status = rpcStatus(throwable, appendEntriesResponse == null ? null
+                            : appendEntriesResponse.getErrorResponse());
+                    heartbeatDone.setResponse(appendEntriesResponse);
+                    heartbeatDone.run(status);
                 });
 //                this.heartbeatInFly = this.rpcService.appendEntries(this.options.getPeerId().getEndpoint(), request,
 //                    this.options.getElectionTimeoutMs() / 2, heartbeatDone);
@@ -823,9 +823,11 @@ public class Replicator implements ThreadId.OnError {
                 final int stateVersion = this.version;
                 final int seq = getAndIncrementReqSeq();
                 CompletableFuture<AppendEntriesResponse> appendEntries = this.rpcService.appendEntries(this.options.getPeerId().getEndpoint(), request, -1);
+                // Add the inflight before the callback, which runs in place when the rpc is already done.
+                addInflight(RequestType.AppendEntries, this.nextIndex, 0, 0, seq, appendEntries);
                 appendEntries.whenComplete((appendEntriesResponse, throwable) -> {
-                    RpcRequests.ErrorResponse errorResponse = appendEntriesResponse.getErrorResponse();
-                    Status status = new Status(errorResponse.getErrorCode(), errorResponse.getErrorMsg());
+                    final Status status = rpcStatus(throwable, appendEntriesResponse == null ? null
+                            : appendEntriesResponse.getErrorResponse());
                     onRpcReturned(Replicator.this.id, RequestType.AppendEntries, status, request,
                             appendEntriesResponse, seq, stateVersion, monotonicSendTimeMs);
                 });
@@ -839,7 +841,6 @@ public class Replicator implements ThreadId.OnError {
 //                        }
 //
 //                    });
-//                addInflight(RequestType.AppendEntries, this.nextIndex, 0, 0, seq, rpcFuture);
             }
             LOG.debug("Node {} send HeartbeatRequest to {} term {} lastCommittedIndex {}", this.options.getNode()
                     .getNodeId(), this.options.getPeerId(), this.options.getTerm(), rb.getCommittedIndex());
@@ -848,21 +849,17 @@ public class Replicator implements ThreadId.OnError {
         }
     }
 
-    boolean prepareEntry(final long nextSendingIndex, final int offset, final RaftOutter.EntryMeta.Builder emb,
-                         final RecyclableByteBufferList dateBuffer) {
-        if (dateBuffer.getCapacity() >= this.raftOptions.getMaxBodySize()) {
-            return false;
-        }
-        final long logIndex = nextSendingIndex + offset;
-        final LogEntry entry = this.options.getLogManager().getEntry(logIndex);
-        if (entry == null) {
-            return false;
-        }
+    private void fillEntryMeta(final LogEntry entry, final RaftOutter.EntryMeta.Builder emb,
+                               final RecyclableByteBufferList dateBuffer) {
+        final long logIndex = entry.getId().getIndex();
         emb.setTerm(entry.getId().getTerm());
         if (entry.hasChecksum()) {
             emb.setChecksum(entry.getChecksum()); // since 1.2.6
         }
         emb.setType(entry.getType());
+        if (entry.getCompression() != null) {
+            emb.setCompression(entry.getCompression().getId());
+        }
         if (entry.getPeers() != null) {
             Requires.requireTrue(!entry.getPeers().isEmpty(), "Empty peers at logIndex=%d", logIndex);
             fillMetaPeers(emb, entry);
@@ -876,7 +873,6 @@ public class Replicator implements ThreadId.OnError {
             // should slice entry data
             dateBuffer.add(entry.getData().slice());
         }
-        return true;
     }
 
     private void fillMetaPeers(final RaftOutter.EntryMeta.Builder emb, final LogEntry entry) {
@@ -1295,6 +1291,10 @@ public class Replicator implements ThreadId.OnError {
             return;
         }
 
+        if (status.getRaftError() == RaftError.ETIMEDOUT) {
+            r.nodeMetrics.recordTimes(name(r.metricName, "rpc-timeout-times"), 1);
+        }
+
         if (stateVersion != r.version) {
             LOG.debug(
                     "Replicator {} ignored old version response {}, current version is {}, request is {}\n, and response is {}\n, status is {}.",
@@ -1404,6 +1404,21 @@ public class Replicator implements ThreadId.OnError {
         }
     }
 
+    /**
+     * Returns the status of a rpc, the failure of the rpc takes precedence over the error carried
+     * by the response, which is null when the rpc failed.
+     */
+    private static Status rpcStatus(final Throwable error, final RpcRequests.ErrorResponse errorResponse) {
+        if (error != null) {
+            final Throwable cause = Throwables.getRootCause(error);
+            if (cause instanceof TimeoutException) {
+                return new Status(RaftError.ETIMEDOUT, "RPC timed out: %s", cause.getMessage());
+            }
+            return new Status(RaftError.EINTERNAL, "RPC failed: %s", cause);
+        }
+        return new Status(errorResponse.getErrorCode(), errorResponse.getErrorMsg());
+    }
+
     /**
      * Reset in-flight state.
      */
@@ -1471,8 +1486,16 @@ public class Replicator implements ThreadId.OnError {
             }
             r.resetInflights();
             r.setState(State.Probe);
-            // unlock in in block
-            r.block(startTimeMs, status.getCode());
+            if (status.getRaftError() == RaftError.ETIMEDOUT) {
+                // The reply is lost or the follower is stalled, probe it again right away
+                // instead of waiting for the block timer.
+                r.nodeMetrics.recordTimes(name(r.metricName, "append-entries-retry-times"), 1);
+                // unlock id in sendEmptyEntries
+                r.sendProbeRequest();
+            } else {
+                // unlock in in block
+                r.block(startTimeMs, status.getCode());
+            }
             return false;
         }
         r.consecutiveErrorTimes = 0;
@@ -1576,7 +1599,7 @@ public class Replicator implements ThreadId.OnError {
         return true;
     }
 
-    private boolean fillCommonFields(final AppendEntriesRequest.Builder rb, long prevLogIndex, final boolean isHeartbeat) {
+    boolean fillCommonFields(final AppendEntriesRequest.Builder rb, long prevLogIndex, final boolean isHeartbeat) {
         final long prevLogTerm = this.options.getLogManager().getTerm(prevLogIndex);
         if (prevLogTerm == 0 && prevLogIndex != 0) {
             if (!isHeartbeat) {
@@ -1602,6 +1625,32 @@ public class Replicator implements ThreadId.OnError {
         return true;
     }
 
+    /**
+     * Adds the entries from |nextSendingIndex| to the AppendEntries request, read with one range
+     * read bounded by the max entries and body sizes. Returns the number of added entries.
+     */
+    int fillEntries(final AppendEntriesRequest.Builder rb, final long nextSendingIndex) {
+        final RecyclableByteBufferList byteBufList = RecyclableByteBufferList.newInstance();
+        try {
+            final List<LogEntry> entries = this.options.getLogManager().getEntries(nextSendingIndex,
+                this.raftOptions.getMaxEntriesSize(), this.raftOptions.getMaxBodySize());
+            for (final LogEntry entry : entries) {
+                final RaftOutter.EntryMeta.Builder emb = RaftOutter.EntryMeta.newBuilder();
+                fillEntryMeta(entry, emb, byteBufList);
+                rb.addEntries(emb.build());
+            }
+            if (byteBufList.getCapacity() > 0) {
+                // Wrap the entries data without copying, the rpc service writes the
+                // buffers straight to the connection.
+                final ByteString data = ZeroByteStringHelper.concatenate(byteBufList);
+                rb.setData(data != null ? data : ByteString.EMPTY);
+            }
+        } finally {
+            RecycleUtil.recycle(byteBufList);
+        }
+        return rb.getEntriesCount();
+    }
+
     private void waitMoreEntries(final long nextWaitIndex) {
         try {
             LOG.debug("Node {} waits more entries", this.options.getNode().getNodeId());
@@ -1626,6 +1675,12 @@ public class Replicator implements ThreadId.OnError {
             while (true) {
                 final long nextSendingIndex = getNextSendIndex();
                 if (nextSendingIndex > prevSendIndex) {
+                    if (!this.inflights.isEmpty()
+                        && !this.rpcService.isWritable(this.options.getPeerId().getEndpoint())) {
+                        // The channel is above its high water mark, the returning inflights resume sending.
+                        this.nodeMetrics.recordTimes(name(this.metricName, "replicate-backpressure-times"), 1);
+                        break;
+                    }
                     if (sendEntries(nextSendingIndex)) {
                         prevSendIndex = nextSendingIndex;
                     } else {
@@ -1659,37 +1714,14 @@ public class Replicator implements ThreadId.OnError {
             return false;
         }
 
-        ByteBufferCollector dataBuf = null;
-        final int maxEntriesSize = this.raftOptions.getMaxEntriesSize();
-        final RecyclableByteBufferList byteBufList = RecyclableByteBufferList.newInstance();
-        try {
-            for (int i = 0; i < maxEntriesSize; i++) {
-                final RaftOutter.EntryMeta.Builder emb = RaftOutter.EntryMeta.newBuilder();
-                if (!prepareEntry(nextSendingIndex, i, emb, byteBufList)) {
-                    break;
-                }
-                rb.addEntries(emb.build());
-            }
-            if (rb.getEntriesCount() == 0) {
-                if (nextSendingIndex < this.options.getLogManager().getFirstLogIndex()) {
-                    installSnapshot();
-                    return false;
-                }
-                // _id is unlock in _wait_more
-                waitMoreEntries(nextSendingIndex);
+        if (fillEntries(rb, nextSendingIndex) == 0) {
+            if (nextSendingIndex < this.options.getLogManager().getFirstLogIndex()) {
+                installSnapshot();
                 return false;
             }
-            if (byteBufList.getCapacity() > 0) {
-                dataBuf = ByteBufferCollector.allocateByRecyclers(byteBufList.getCapacity());
-                for (final ByteBuffer b : byteBufList) {
-                    dataBuf.put(b);
-                }
-                final ByteBuffer buf = dataBuf.getBuffer();
-                BufferUtils.flip(buf);
-                rb.setData(ZeroByteStringHelper.wrap(buf));
-            }
-        } finally {
-            RecycleUtil.recycle(byteBufList);
+            // _id is unlock in _wait_more
+            waitMoreEntries(nextSendingIndex);
+            return false;
         }
 
         final AppendEntriesRequest request = rb.build();
@@ -1704,19 +1736,19 @@ public class Replicator implements ThreadId.OnError {
         this.statInfo.firstLogIndex = rb.getPrevLogIndex() + 1;
         this.statInfo.lastLogIndex = rb.getPrevLogIndex() + rb.getEntriesCount();
 
-        final Recyclable recyclable = dataBuf;
         final int v = this.version;
         final long monotonicSendTimeMs = Utils.monotonicMs();
         final int seq = getAndIncrementReqSeq();
 
         this.appendEntriesCounter++;
-        Future<Message> rpcFuture = null;
+        CompletableFuture<AppendEntriesResponse> rpcFuture = null;
         try {
-            CompletableFuture<AppendEntriesResponse> appendEntries = this.rpcService.appendEntries(this.options.getPeerId().getEndpoint(), request, -1);
-            appendEntries.whenComplete((response, error) -> {
-                RecycleUtil.recycle(recyclable); // TODO: recycle on send success, not response received.
-                RpcRequests.ErrorResponse errorResponse = response.getErrorResponse();
-                Status status = new Status(errorResponse.getErrorCode(), errorResponse.getErrorMsg());
+            rpcFuture = this.rpcService.appendEntries(this.options.getPeerId().getEndpoint(), request, -1);
+            // Add the inflight before the callback, which runs in place when the rpc is already done.
+            addInflight(RequestType.AppendEntries, nextSendingIndex, request.getEntriesCount(),
+                request.getData().size(), seq, rpcFuture);
+            rpcFuture.whenComplete((response, error) -> {
+                final Status status = rpcStatus(error, response == null ? null : response.getErrorResponse());
                 onRpcReturned(Replicator.this.id, RequestType.AppendEntries, status, request, response,
                         seq, v, monotonicSendTimeMs);
             });
@@ -1731,11 +1763,8 @@ public class Replicator implements ThreadId.OnError {
 //                    }
 //                });
         } catch (final Throwable t) {
-            RecycleUtil.recycle(recyclable);
             ThrowUtil.throwException(t);
         }
-        addInflight(RequestType.AppendEntries, nextSendingIndex, request.getEntriesCount(), request.getData().size(),
-                seq, rpcFuture);
 
         return true;
     }
@@ -1798,8 +1827,7 @@ public class Replicator implements ThreadId.OnError {
         CompletableFuture<TimeoutNowResponse> completableFuture = this.rpcService.timeoutNow(this.options.getPeerId().getEndpoint(), request, timeoutMs);
         return completableFuture.whenComplete((response, error) -> {
             if (Replicator.this.id != null) {
-                RpcRequests.ErrorResponse errorResponse = response.getErrorResponse();
-                Status status = new Status(errorResponse.getErrorCode(), errorResponse.getErrorMsg());
+                final Status status = rpcStatus(error, response == null ? null : response.getErrorResponse());
                 onTimeoutNowReturned(Replicator.this.id, status, request, response, stopAfterFinish);
             }
         });
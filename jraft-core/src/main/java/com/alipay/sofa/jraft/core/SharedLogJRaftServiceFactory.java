@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.core;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.alipay.sofa.jraft.option.RaftOptions;
+import com.alipay.sofa.jraft.storage.LogStorage;
+import com.alipay.sofa.jraft.storage.impl.RocksDBSharedLogStorage;
+import com.alipay.sofa.jraft.util.Requires;
+
+/**
+ * A factory whose nodes store their logs in one {@link RocksDBSharedLogStorage} per disk,
+ * the log uri of each node naming its log in the shared one.
+ *
+ * <pre>
+ *   nodeOptions.setServiceFactory(new SharedLogJRaftServiceFactory("/data/raft/log"));
+ * </pre>
+ */
+public class SharedLogJRaftServiceFactory extends DefaultJRaftServiceFactory {
+
+    private final String sharedPath;
+
+    public SharedLogJRaftServiceFactory(final String sharedPath) {
+        Requires.requireTrue(StringUtils.isNotBlank(sharedPath), "Blank shared log path.");
+        this.sharedPath = sharedPath;
+    }
+
+    @Override
+    public LogStorage createLogStorage(final String uri, final RaftOptions raftOptions) {
+        Requires.requireTrue(StringUtils.isNotBlank(uri), "Blank log storage uri.");
+        return new RocksDBSharedLogStorage(this.sharedPath, uri, raftOptions);
+    }
+
+    public String getSharedPath() {
+        return this.sharedPath;
+    }
+}
@@ -16,6 +16,7 @@
  */
 package com.alipay.sofa.jraft.entity;
 
+import com.alipay.sofa.jraft.entity.codec.LogEntryCompression;
 import com.alipay.sofa.jraft.entity.codec.v2.LogOutter;
 import com.alipay.sofa.jraft.util.CrcUtil;
 
@@ -79,6 +80,10 @@ public class LogEntry implements Checksum {
      * old quorum for log entry
      **/
     private LogOutter.Quorum       oldQuorum;
+    /**
+     * compression of the entry data, null when the data is stored as applied
+     **/
+    private LogEntryCompression    compression;
 
     public List<PeerId> getLearners() {
         return this.learners;
@@ -284,13 +289,27 @@ public class LogEntry implements Checksum {
         this.data = data;
     }
 
+    /**
+     * Returns the compression of the data, null when the data is not compressed.
+     *
+     * @return the compression of the data
+     */
+    public LogEntryCompression getCompression() {
+        return this.compression;
+    }
+
+    public void setCompression(final LogEntryCompression compression) {
+        this.compression = compression;
+    }
+
     @Override
     public String toString() {
         return "LogEntry [type=" + this.type + ", id=" + this.id + ", peers=" + this.peers + ", oldPeers="
                + this.oldPeers + ", learners=" + this.learners + ", oldLearners=" + this.oldLearners + ", data="
                + (this.data != null ? this.data.remaining() : 0) + ", readFactor=" + this.readFactor + ", writeFactor="
                + this.writeFactor + ", oldReadFactor=" + oldReadFactor + ", oldWriteFactor=" + oldWriteFactor
-               + ", quorum=" + quorum + ", oldQuorum=" + oldQuorum + ", isEnableFlexible=" + isEnableFlexible + "]";
+               + ", quorum=" + quorum + ", oldQuorum=" + oldQuorum + ", isEnableFlexible=" + isEnableFlexible
+               + ", compression=" + compression + "]";
     }
 
     @Override
@@ -361,7 +380,7 @@ public class LogEntry implements Checksum {
         } else if (!this.peers.equals(other.peers)) {
             return false;
         }
-        return this.type == other.type;
+        return this.type == other.type && this.compression == other.compression;
     }
 
 }
@@ -261,6 +261,16 @@ public final class RaftOutter {
          * <code>optional .jraft.Quorum old_quorum = 15;</code>
          */
         com.alipay.sofa.jraft.entity.codec.v2.LogOutter.QuorumOrBuilder getOldQuorumOrBuilder();
+
+        /**
+         * <code>optional int32 compression = 16;</code>
+         */
+        boolean hasCompression();
+
+        /**
+         * <code>optional int32 compression = 16;</code>
+         */
+        int getCompression();
     }
 
     /**
@@ -290,6 +300,7 @@ public final class RaftOutter {
             oldReadFactor_ = 0;
             oldWriteFactor_ = 0;
             isEnableFlexible_ = false;
+            compression_ = 0;
         }
 
         @java.lang.Override
@@ -437,6 +448,11 @@ public final class RaftOutter {
                             bitField0_ |= 0x00000400;
                             break;
                         }
+                        case 128: {
+                            bitField0_ |= 0x00000800;
+                            compression_ = input.readInt32();
+                            break;
+                        }
                     }
                 }
             } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -831,6 +847,23 @@ public final class RaftOutter {
                 : oldQuorum_;
         }
 
+        public static final int COMPRESSION_FIELD_NUMBER = 16;
+        private int             compression_;
+
+        /**
+         * <code>optional int32 compression = 16;</code>
+         */
+        public boolean hasCompression() {
+            return ((bitField0_ & 0x00000800) == 0x00000800);
+        }
+
+        /**
+         * <code>optional int32 compression = 16;</code>
+         */
+        public int getCompression() {
+            return compression_;
+        }
+
         private byte memoizedIsInitialized = -1;
 
         public final boolean isInitialized() {
@@ -898,6 +931,9 @@ public final class RaftOutter {
             if (((bitField0_ & 0x00000400) == 0x00000400)) {
                 output.writeMessage(15, getOldQuorum());
             }
+            if (((bitField0_ & 0x00000800) == 0x00000800)) {
+                output.writeInt32(16, compression_);
+            }
             unknownFields.writeTo(output);
         }
 
@@ -972,6 +1008,9 @@ public final class RaftOutter {
             if (((bitField0_ & 0x00000400) == 0x00000400)) {
                 size += com.google.protobuf.CodedOutputStream.computeMessageSize(15, getOldQuorum());
             }
+            if (((bitField0_ & 0x00000800) == 0x00000800)) {
+                size += com.google.protobuf.CodedOutputStream.computeInt32Size(16, compression_);
+            }
             size += unknownFields.getSerializedSize();
             memoizedSize = size;
             return size;
@@ -1036,6 +1075,10 @@ public final class RaftOutter {
             if (hasOldQuorum()) {
                 result = result && getOldQuorum().equals(other.getOldQuorum());
             }
+            result = result && (hasCompression() == other.hasCompression());
+            if (hasCompression()) {
+                result = result && (getCompression() == other.getCompression());
+            }
             result = result && unknownFields.equals(other.unknownFields);
             return result;
         }
@@ -1107,6 +1150,10 @@ public final class RaftOutter {
                 hash = (37 * hash) + OLD_QUORUM_FIELD_NUMBER;
                 hash = (53 * hash) + getOldQuorum().hashCode();
             }
+            if (hasCompression()) {
+                hash = (37 * hash) + COMPRESSION_FIELD_NUMBER;
+                hash = (53 * hash) + getCompression();
+            }
             hash = (29 * hash) + unknownFields.hashCode();
             memoizedHashCode = hash;
             return hash;
@@ -1275,6 +1322,8 @@ public final class RaftOutter {
                     oldQuorumBuilder_.clear();
                 }
                 bitField0_ = (bitField0_ & ~0x00004000);
+                compression_ = 0;
+                bitField0_ = (bitField0_ & ~0x00008000);
                 return this;
             }
 
@@ -1371,6 +1420,10 @@ public final class RaftOutter {
                 } else {
                     result.oldQuorum_ = oldQuorumBuilder_.build();
                 }
+                if (((from_bitField0_ & 0x00008000) == 0x00008000)) {
+                    to_bitField0_ |= 0x00000800;
+                }
+                result.compression_ = compression_;
                 result.bitField0_ = to_bitField0_;
                 onBuilt();
                 return result;
@@ -1487,6 +1540,9 @@ public final class RaftOutter {
                 if (other.hasOldQuorum()) {
                     mergeOldQuorum(other.getOldQuorum());
                 }
+                if (other.hasCompression()) {
+                    setCompression(other.getCompression());
+                }
                 this.mergeUnknownFields(other.unknownFields);
                 onChanged();
                 return this;
@@ -2535,6 +2591,42 @@ public final class RaftOutter {
                 return oldQuorumBuilder_;
             }
 
+            private int compression_;
+
+            /**
+             * <code>optional int32 compression = 16;</code>
+             */
+            public boolean hasCompression() {
+                return ((bitField0_ & 0x00008000) == 0x00008000);
+            }
+
+            /**
+             * <code>optional int32 compression = 16;</code>
+             */
+            public int getCompression() {
+                return compression_;
+            }
+
+            /**
+             * <code>optional int32 compression = 16;</code>
+             */
+            public Builder setCompression(int value) {
+                bitField0_ |= 0x00008000;
+                compression_ = value;
+                onChanged();
+                return this;
+            }
+
+            /**
+             * <code>optional int32 compression = 16;</code>
+             */
+            public Builder clearCompression() {
+                bitField0_ = (bitField0_ & ~0x00008000);
+                compression_ = 0;
+                onChanged();
+                return this;
+            }
+
             public final Builder setUnknownFields(final com.google.protobuf.UnknownFieldSet unknownFields) {
                 return super.setUnknownFields(unknownFields);
             }
@@ -4829,7 +4921,7 @@ public final class RaftOutter {
     private static com.google.protobuf.Descriptors.FileDescriptor descriptor;
     static {
         java.lang.String[] descriptorData = { "\n\nraft.proto\022\005jraft\032\nenum.proto\032\tlog.pro"
-                                              + "to\"\341\002\n\tEntryMeta\022\014\n\004term\030\001 \002(\003\022\036\n\004type\030\002"
+                                              + "to\"\366\002\n\tEntryMeta\022\014\n\004term\030\001 \002(\003\022\036\n\004type\030\002"
                                               + " \002(\0162\020.jraft.EntryType\022\r\n\005peers\030\003 \003(\t\022\020\n"
                                               + "\010data_len\030\004 \001(\003\022\021\n\told_peers\030\005 \003(\t\022\020\n\010ch"
                                               + "ecksum\030\006 \001(\003\022\020\n\010learners\030\007 \003(\t\022\024\n\014old_le"
@@ -4837,7 +4929,8 @@ public final class RaftOutter {
                                               + "te_factor\030\n \001(\005\022\027\n\017old_read_factor\030\013 \001(\005"
                                               + "\022\030\n\020old_write_factor\030\014 \001(\005\022\030\n\020isEnableFl"
                                               + "exible\030\r \001(\010\022\035\n\006quorum\030\016 \001(\0132\r.jraft.Quo"
-                                              + "rum\022!\n\nold_quorum\030\017 \001(\0132\r.jraft.Quorum\"\313"
+                                              + "rum\022!\n\nold_quorum\030\017 \001(\0132\r.jraft.Quorum\022\023\n"
+                                              + "\013compression\030\020 \001(\005\"\313"
                                               + "\002\n\014SnapshotMeta\022\033\n\023last_included_index\030\001"
                                               + " \002(\003\022\032\n\022last_included_term\030\002 \002(\003\022\r\n\005peer"
                                               + "s\030\003 \003(\t\022\021\n\told_peers\030\004 \003(\t\022\020\n\010learners\030\005"
@@ -4862,7 +4955,7 @@ public final class RaftOutter {
         internal_static_jraft_EntryMeta_fieldAccessorTable = new com.google.protobuf.GeneratedMessageV3.FieldAccessorTable(
             internal_static_jraft_EntryMeta_descriptor, new java.lang.String[] { "Term", "Type", "Peers", "DataLen",
             "OldPeers", "Checksum", "Learners", "OldLearners", "ReadFactor", "WriteFactor", "OldReadFactor",
-            "OldWriteFactor", "IsEnableFlexible", "Quorum", "OldQuorum", });
+            "OldWriteFactor", "IsEnableFlexible", "Quorum", "OldQuorum", "Compression", });
         internal_static_jraft_SnapshotMeta_descriptor = getDescriptor().getMessageTypes().get(1);
         internal_static_jraft_SnapshotMeta_fieldAccessorTable = new com.google.protobuf.GeneratedMessageV3.FieldAccessorTable(
             internal_static_jraft_SnapshotMeta_descriptor, new java.lang.String[] { "LastIncludedIndex",
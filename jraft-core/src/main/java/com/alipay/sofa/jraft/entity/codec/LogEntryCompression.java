@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.entity.codec;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import com.alipay.sofa.jraft.entity.LogEntry;
+import com.alipay.sofa.jraft.error.LogEntryCorruptedException;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.compression.Snappy;
+
+/**
+ * Compression of the log data, chosen per raft group. The leader compresses the data of a task
+ * when it's applied, the compressed data is then the data of the log: it's stored, cached and
+ * replicated as is, and the followers store it as received. It's decompressed only for the state
+ * machine.
+ *
+ * The codec of a log is recorded out of its data, in {@link LogEntry#getCompression()}, which the
+ * log storage codec and the AppendEntries entry meta carry along. A log without codec holds its
+ * data as applied. Every peer decodes a log by the codec recorded with it, whatever compression
+ * it is configured with, and the logs written before the compression was enabled stay readable.
+ *
+ * The compressed data starts with the length of the raw data:
+ *
+ *   0  1  2  3
+ *  +-+-+-+-+-+-+-+-+-+-+-+-+
+ *  |  Length   | Codec data
+ *  +-+-+-+-+-+-+-+-+-+-+-+-+
+ */
+public enum LogEntryCompression {
+
+    NONE((byte) 0) {
+        @Override
+        protected ByteBuf compress(final ByteBuffer src, final ByteBuf out) {
+            return null;
+        }
+
+        @Override
+        protected void decompress(final ByteBuffer src, final ByteBuffer dest) {
+            dest.put(src);
+        }
+    },
+
+    SNAPPY((byte) 1) {
+        @Override
+        protected ByteBuf compress(final ByteBuffer src, final ByteBuf out) {
+            new Snappy().encode(Unpooled.wrappedBuffer(src.duplicate()), out, src.remaining());
+            return out;
+        }
+
+        @Override
+        protected void decompress(final ByteBuffer src, final ByteBuffer dest) {
+            final ByteBuf out = Unpooled.wrappedBuffer(dest);
+            out.clear();
+            new Snappy().decode(Unpooled.wrappedBuffer(src), out);
+            dest.position(out.writerIndex());
+        }
+    },
+
+    DEFLATE((byte) 2) {
+        @Override
+        protected ByteBuf compress(final ByteBuffer src, final ByteBuf out) {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(src.duplicate());
+                deflater.finish();
+                while (!deflater.finished()) {
+                    out.ensureWritable(Math.max(256, src.remaining() >>> 3));
+                    final ByteBuffer buf = out.nioBuffer(out.writerIndex(), out.writableBytes());
+                    out.writerIndex(out.writerIndex() + deflater.deflate(buf));
+                }
+                return out;
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        protected void decompress(final ByteBuffer src, final ByteBuffer dest) throws DataFormatException {
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(src);
+                while (dest.hasRemaining() && !inflater.finished()) {
+                    if (inflater.inflate(dest) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new DataFormatException("Truncated deflate data");
+                    }
+                }
+            } finally {
+                inflater.end();
+            }
+        }
+    };
+
+    public static final int    LENGTH_SIZE       = 4;
+    /** Data smaller than it is not worth compressing. */
+    public static final int    MIN_COMPRESS_SIZE = 64;
+
+    private final byte         id;
+
+    LogEntryCompression(final byte id) {
+        this.id = id;
+    }
+
+    public byte getId() {
+        return this.id;
+    }
+
+    /**
+     * Compresses |src| into |out| after the length, returns null when it's not compressible.
+     */
+    protected abstract ByteBuf compress(final ByteBuffer src, final ByteBuf out);
+
+    /**
+     * Decompresses |src| into the remaining of |dest|.
+     */
+    protected abstract void decompress(final ByteBuffer src, final ByteBuffer dest) throws Exception;
+
+    /**
+     * Returns |data| compressed by this codec, or null when it's not worth it, the log then keeps
+     * |data| and no codec.
+     */
+    public ByteBuffer encode(final ByteBuffer data) {
+        final int len = data.remaining();
+        if (this == NONE || len < MIN_COMPRESS_SIZE) {
+            return null;
+        }
+        final ByteBuf out = Unpooled.buffer(LENGTH_SIZE + (len >>> 1));
+        out.writeInt(len);
+        if (compress(data, out) != null && out.readableBytes() < len) {
+            return out.nioBuffer();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the raw data of |data| compressed by this codec.
+     */
+    public ByteBuffer decode(final ByteBuffer data) {
+        if (this == NONE || data == null) {
+            return data;
+        }
+        if (data.remaining() < LENGTH_SIZE) {
+            throw new LogEntryCorruptedException("Truncated compressed log data");
+        }
+        final int len = data.getInt(data.position());
+        if (len < 0) {
+            throw new LogEntryCorruptedException("Invalid " + this + " log data length " + len);
+        }
+        final ByteBuffer src = data.duplicate();
+        src.position(data.position() + LENGTH_SIZE);
+        final ByteBuffer dest = ByteBuffer.allocate(len);
+        try {
+            decompress(src, dest);
+        } catch (final Exception e) {
+            throw new LogEntryCorruptedException("Fail to decompress " + this + " log data: " + e.getMessage());
+        }
+        if (dest.hasRemaining()) {
+            throw new LogEntryCorruptedException("Decompressed " + this + " log data is shorter than " + len);
+        }
+        dest.flip();
+        return dest;
+    }
+
+    /**
+     * Returns the raw data of |entry|, decompressed by the codec it was written with.
+     */
+    public static ByteBuffer decode(final LogEntry entry) {
+        final LogEntryCompression codec = entry.getCompression();
+        return codec != null ? codec.decode(entry.getData()) : entry.getData();
+    }
+
+    public static LogEntryCompression forId(final int id) {
+        for (final LogEntryCompression codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        return null;
+    }
+}
@@ -800,6 +800,16 @@ public final class LogOutter {
          * <code>optional .jraft.Quorum old_quorum = 16;</code>
          */
         com.alipay.sofa.jraft.entity.codec.v2.LogOutter.QuorumOrBuilder getOldQuorumOrBuilder();
+
+        /**
+         * <code>optional int32 compression = 17;</code>
+         */
+        boolean hasCompression();
+
+        /**
+         * <code>optional int32 compression = 17;</code>
+         */
+        int getCompression();
     }
 
     /**
@@ -830,6 +840,7 @@ public final class LogOutter {
             oldReadFactor_ = 0;
             oldWriteFactor_ = 0;
             isEnableFlexible_ = false;
+            compression_ = 0;
         }
 
         @java.lang.Override
@@ -978,6 +989,11 @@ public final class LogOutter {
                             bitField0_ |= 0x00000800;
                             break;
                         }
+                        case 136: {
+                            bitField0_ |= 0x00001000;
+                            compression_ = input.readInt32();
+                            break;
+                        }
                     }
                 }
             } catch (com.google.protobuf.InvalidProtocolBufferException e) {
@@ -1333,6 +1349,23 @@ public final class LogOutter {
                 : oldQuorum_;
         }
 
+        public static final int COMPRESSION_FIELD_NUMBER = 17;
+        private int             compression_;
+
+        /**
+         * <code>optional int32 compression = 17;</code>
+         */
+        public boolean hasCompression() {
+            return ((bitField0_ & 0x00001000) == 0x00001000);
+        }
+
+        /**
+         * <code>optional int32 compression = 17;</code>
+         */
+        public int getCompression() {
+            return compression_;
+        }
+
         private byte memoizedIsInitialized = -1;
 
         public final boolean isInitialized() {
@@ -1411,6 +1444,9 @@ public final class LogOutter {
             if (((bitField0_ & 0x00000800) == 0x00000800)) {
                 output.writeMessage(16, getOldQuorum());
             }
+            if (((bitField0_ & 0x00001000) == 0x00001000)) {
+                output.writeInt32(17, compression_);
+            }
             unknownFields.writeTo(output);
         }
 
@@ -1488,6 +1524,9 @@ public final class LogOutter {
             if (((bitField0_ & 0x00000800) == 0x00000800)) {
                 size += com.google.protobuf.CodedOutputStream.computeMessageSize(16, getOldQuorum());
             }
+            if (((bitField0_ & 0x00001000) == 0x00001000)) {
+                size += com.google.protobuf.CodedOutputStream.computeInt32Size(17, compression_);
+            }
             size += unknownFields.getSerializedSize();
             memoizedSize = size;
             return size;
@@ -1556,6 +1595,10 @@ public final class LogOutter {
             if (hasOldQuorum()) {
                 result = result && getOldQuorum().equals(other.getOldQuorum());
             }
+            result = result && (hasCompression() == other.hasCompression());
+            if (hasCompression()) {
+                result = result && (getCompression() == other.getCompression());
+            }
             result = result && unknownFields.equals(other.unknownFields);
             return result;
         }
@@ -1631,6 +1674,10 @@ public final class LogOutter {
                 hash = (37 * hash) + OLD_QUORUM_FIELD_NUMBER;
                 hash = (53 * hash) + getOldQuorum().hashCode();
             }
+            if (hasCompression()) {
+                hash = (37 * hash) + COMPRESSION_FIELD_NUMBER;
+                hash = (53 * hash) + getCompression();
+            }
             hash = (29 * hash) + unknownFields.hashCode();
             memoizedHashCode = hash;
             return hash;
@@ -1801,6 +1848,8 @@ public final class LogOutter {
                     oldQuorumBuilder_.clear();
                 }
                 bitField0_ = (bitField0_ & ~0x00008000);
+                compression_ = 0;
+                bitField0_ = (bitField0_ & ~0x00010000);
                 return this;
             }
 
@@ -1901,6 +1950,10 @@ public final class LogOutter {
                 } else {
                     result.oldQuorum_ = oldQuorumBuilder_.build();
                 }
+                if (((from_bitField0_ & 0x00010000) == 0x00010000)) {
+                    to_bitField0_ |= 0x00001000;
+                }
+                result.compression_ = compression_;
                 result.bitField0_ = to_bitField0_;
                 onBuilt();
                 return result;
@@ -2020,6 +2073,9 @@ public final class LogOutter {
                 if (other.hasOldQuorum()) {
                     mergeOldQuorum(other.getOldQuorum());
                 }
+                if (other.hasCompression()) {
+                    setCompression(other.getCompression());
+                }
                 this.mergeUnknownFields(other.unknownFields);
                 onChanged();
                 return this;
@@ -2973,6 +3029,42 @@ public final class LogOutter {
                 return oldQuorumBuilder_;
             }
 
+            private int compression_;
+
+            /**
+             * <code>optional int32 compression = 17;</code>
+             */
+            public boolean hasCompression() {
+                return ((bitField0_ & 0x00010000) == 0x00010000);
+            }
+
+            /**
+             * <code>optional int32 compression = 17;</code>
+             */
+            public int getCompression() {
+                return compression_;
+            }
+
+            /**
+             * <code>optional int32 compression = 17;</code>
+             */
+            public Builder setCompression(int value) {
+                bitField0_ |= 0x00010000;
+                compression_ = value;
+                onChanged();
+                return this;
+            }
+
+            /**
+             * <code>optional int32 compression = 17;</code>
+             */
+            public Builder clearCompression() {
+                bitField0_ = (bitField0_ & ~0x00010000);
+                compression_ = 0;
+                onChanged();
+                return this;
+            }
+
             public final Builder setUnknownFields(final com.google.protobuf.UnknownFieldSet unknownFields) {
                 return super.setUnknownFields(unknownFields);
             }
@@ -3031,7 +3123,7 @@ public final class LogOutter {
     private static com.google.protobuf.Descriptors.FileDescriptor descriptor;
     static {
         java.lang.String[] descriptorData = { "\n\tlog.proto\022\005jraft\032\nenum.proto\"\036\n\006Quorum"
-                                              + "\022\t\n\001w\030\001 \001(\005\022\t\n\001r\030\002 \001(\005\"\357\002\n\nPBLogEntry\022\036\n"
+                                              + "\022\t\n\001w\030\001 \001(\005\022\t\n\001r\030\002 \001(\005\"\204\003\n\nPBLogEntry\022\036\n"
                                               + "\004type\030\001 \002(\0162\020.jraft.EntryType\022\014\n\004term\030\002 "
                                               + "\002(\003\022\r\n\005index\030\003 \002(\003\022\r\n\005peers\030\004 \003(\014\022\021\n\told"
                                               + "_peers\030\005 \003(\014\022\014\n\004data\030\006 \002(\014\022\020\n\010checksum\030\007"
@@ -3040,7 +3132,8 @@ public final class LogOutter {
                                               + "r\030\013 \001(\005\022\027\n\017old_read_factor\030\014 \001(\005\022\030\n\020old_"
                                               + "write_factor\030\r \001(\005\022\032\n\022is_enable_flexible"
                                               + "\030\016 \001(\010\022\035\n\006quorum\030\017 \001(\0132\r.jraft.Quorum\022!\n"
-                                              + "\nold_quorum\030\020 \001(\0132\r.jraft.QuorumB2\n%com."
+                                              + "\nold_quorum\030\020 \001(\0132\r.jraft.Quorum\022\023\n\013compression"
+                                              + "\030\021 \001(\005B2\n%com."
                                               + "alipay.sofa.jraft.entity.codec.v2B\tLogOu" + "tter" };
         com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner assigner = new com.google.protobuf.Descriptors.FileDescriptor.InternalDescriptorAssigner() {
             public com.google.protobuf.ExtensionRegistry assignDescriptors(com.google.protobuf.Descriptors.FileDescriptor root) {
@@ -3058,7 +3151,7 @@ public final class LogOutter {
         internal_static_jraft_PBLogEntry_fieldAccessorTable = new com.google.protobuf.GeneratedMessageV3.FieldAccessorTable(
             internal_static_jraft_PBLogEntry_descriptor, new java.lang.String[] { "Type", "Term", "Index", "Peers",
             "OldPeers", "Data", "Checksum", "Learners", "OldLearners", "ReadFactor", "WriteFactor", "OldReadFactor",
-            "OldWriteFactor", "IsEnableFlexible", "Quorum", "OldQuorum", });
+            "OldWriteFactor", "IsEnableFlexible", "Quorum", "OldQuorum", "Compression", });
         com.alipay.sofa.jraft.entity.EnumOutter.getDescriptor();
     }
 
@@ -26,6 +26,7 @@ import org.slf4j.LoggerFactory;
 import com.alipay.sofa.jraft.JRaftUtils;
 import com.alipay.sofa.jraft.entity.LogEntry;
 import com.alipay.sofa.jraft.entity.PeerId;
+import com.alipay.sofa.jraft.entity.codec.LogEntryCompression;
 import com.alipay.sofa.jraft.entity.codec.LogEntryDecoder;
 import com.alipay.sofa.jraft.entity.codec.v2.LogOutter.PBLogEntry;
 import com.alipay.sofa.jraft.util.AsciiStringUtil;
@@ -126,6 +127,16 @@ public class V2Decoder implements LogEntryDecoder {
                 log.setOldQuorum(entry.getOldQuorum());
             }
 
+            if (entry.hasCompression()) {
+                final LogEntryCompression compression = LogEntryCompression.forId(entry.getCompression());
+                if (compression == null) {
+                    LOG.error("Unknown compression {} of log entry at index {}", entry.getCompression(),
+                        entry.getIndex());
+                    return null;
+                }
+                log.setCompression(compression);
+            }
+
             final ByteString data = entry.getData();
             if (!data.isEmpty()) {
                 log.setData(ByteBuffer.wrap(ZeroByteStringHelper.getByteArray(data)));
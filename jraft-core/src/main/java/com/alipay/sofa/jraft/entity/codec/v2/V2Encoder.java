@@ -130,6 +130,10 @@ public class V2Encoder implements LogEntryEncoder {
             builder.setOldQuorum(log.getOldQuorum());
         }
 
+        if (log.getCompression() != null) {
+            builder.setCompression(log.getCompression().getId());
+        }
+
         final PBLogEntry pbLogEntry = builder.build();
         final int bodyLen = pbLogEntry.getSerializedSize();
         final byte[] ret = new byte[LogEntryV2CodecFactory.HEADER_SIZE + bodyLen];
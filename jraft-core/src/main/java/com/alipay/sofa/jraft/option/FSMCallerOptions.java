@@ -19,9 +19,11 @@ package com.alipay.sofa.jraft.option;
 import com.alipay.sofa.jraft.Closure;
 import com.alipay.sofa.jraft.StateMachine;
 import com.alipay.sofa.jraft.closure.ClosureQueue;
+import com.alipay.sofa.jraft.core.FSMCallerImpl;
 import com.alipay.sofa.jraft.core.NodeImpl;
 import com.alipay.sofa.jraft.entity.LogId;
 import com.alipay.sofa.jraft.storage.LogManager;
+import com.alipay.sofa.jraft.util.StripedDisruptor;
 
 /**
  * FSM caller options.
@@ -31,16 +33,21 @@ import com.alipay.sofa.jraft.storage.LogManager;
  * 2018-Apr-04 2:59:02 PM
  */
 public class FSMCallerOptions {
-    private LogManager   logManager;
-    private StateMachine fsm;
-    private Closure      afterShutdown;
-    private LogId        bootstrapId;
-    private ClosureQueue closureQueue;
-    private NodeImpl     node;
+    private LogManager                                logManager;
+    private StateMachine                              fsm;
+    private Closure                                   afterShutdown;
+    private LogId                                     bootstrapId;
+    private ClosureQueue                              closureQueue;
+    private NodeImpl                                  node;
     /**
      * disruptor buffer size.
      */
-    private int          disruptorBufferSize = 1024;
+    private int                                       disruptorBufferSize = 1024;
+    /**
+     * shared disruptor, the caller runs its own when it's null.
+     */
+    private StripedDisruptor<FSMCallerImpl.ApplyTask> disruptor;
+    private int                                       schedulingWeight    = 1;
 
     public int getDisruptorBufferSize() {
         return this.disruptorBufferSize;
@@ -50,6 +57,22 @@ public class FSMCallerOptions {
         this.disruptorBufferSize = disruptorBufferSize;
     }
 
+    public StripedDisruptor<FSMCallerImpl.ApplyTask> getDisruptor() {
+        return this.disruptor;
+    }
+
+    public void setDisruptor(StripedDisruptor<FSMCallerImpl.ApplyTask> disruptor) {
+        this.disruptor = disruptor;
+    }
+
+    public int getSchedulingWeight() {
+        return this.schedulingWeight;
+    }
+
+    public void setSchedulingWeight(int schedulingWeight) {
+        this.schedulingWeight = schedulingWeight;
+    }
+
     public NodeImpl getNode() {
         return this.node;
     }
@@ -22,6 +22,8 @@ import com.alipay.sofa.jraft.core.NodeMetrics;
 import com.alipay.sofa.jraft.entity.codec.LogEntryCodecFactory;
 import com.alipay.sofa.jraft.entity.codec.v2.LogEntryV2CodecFactory;
 import com.alipay.sofa.jraft.storage.LogStorage;
+import com.alipay.sofa.jraft.storage.impl.LogManagerImpl;
+import com.alipay.sofa.jraft.util.StripedDisruptor;
 
 /**
  * Options for log manager.
@@ -31,14 +33,17 @@ import com.alipay.sofa.jraft.storage.LogStorage;
  * 2018-Mar-13 5:15:15 PM
  */
 public class LogManagerOptions {
-    private String               groupId;
-    private LogStorage           logStorage;
-    private ConfigurationManager configurationManager;
-    private FSMCaller            fsmCaller;
-    private int                  disruptorBufferSize  = 1024;
-    private RaftOptions          raftOptions;
-    private NodeMetrics          nodeMetrics;
-    private LogEntryCodecFactory logEntryCodecFactory = LogEntryV2CodecFactory.getInstance();
+    private String                                              groupId;
+    private LogStorage                                          logStorage;
+    private ConfigurationManager                                configurationManager;
+    private FSMCaller                                           fsmCaller;
+    private int                                                 disruptorBufferSize  = 1024;
+    private RaftOptions                                         raftOptions;
+    private NodeMetrics                                         nodeMetrics;
+    private LogEntryCodecFactory                                logEntryCodecFactory = LogEntryV2CodecFactory.getInstance();
+    // Shared disruptor, the log manager runs its own when it's null
+    private StripedDisruptor<LogManagerImpl.StableClosureEvent> disruptor;
+    private int                                                 schedulingWeight     = 1;
 
     public String getGroupId() {
         return groupId;
@@ -96,6 +101,22 @@ public class LogManagerOptions {
         this.configurationManager = configurationManager;
     }
 
+    public StripedDisruptor<LogManagerImpl.StableClosureEvent> getDisruptor() {
+        return this.disruptor;
+    }
+
+    public void setDisruptor(final StripedDisruptor<LogManagerImpl.StableClosureEvent> disruptor) {
+        this.disruptor = disruptor;
+    }
+
+    public int getSchedulingWeight() {
+        return this.schedulingWeight;
+    }
+
+    public void setSchedulingWeight(final int schedulingWeight) {
+        this.schedulingWeight = schedulingWeight;
+    }
+
     public FSMCaller getFsmCaller() {
         return this.fsmCaller;
     }
@@ -21,6 +21,7 @@ import com.alipay.sofa.jraft.JRaftServiceFactory;
 import com.alipay.sofa.jraft.StateMachine;
 import com.alipay.sofa.jraft.conf.Configuration;
 import com.alipay.sofa.jraft.core.ElectionPriority;
+import com.alipay.sofa.jraft.core.GroupEventLoops;
 import com.alipay.sofa.jraft.entity.BallotFactory;
 import com.alipay.sofa.jraft.storage.SnapshotThrottle;
 import com.alipay.sofa.jraft.util.Copiable;
@@ -177,6 +178,17 @@ public class NodeOptions extends RpcOptions implements Copiable<NodeOptions> {
      */
     private ApplyTaskMode                   applyTaskMode          = ApplyTaskMode.NonBlocking;
 
+    /**
+     * Event loops shared with the other groups of the process, the node runs its own apply,
+     * log manager, fsm caller and read-only service threads if null.
+     */
+    private GroupEventLoops                 groupEventLoops;
+    /**
+     * Weight of the group on the shared event loops, a group gets a share of the ring
+     * buffers proportional to it when they are busy.
+     */
+    private int                             schedulingWeight       = 1;
+
     public ApplyTaskMode getApplyTaskMode() {
         return this.applyTaskMode;
     }
@@ -185,6 +197,22 @@ public class NodeOptions extends RpcOptions implements Copiable<NodeOptions> {
         this.applyTaskMode = applyTaskMode;
     }
 
+    public GroupEventLoops getGroupEventLoops() {
+        return this.groupEventLoops;
+    }
+
+    public void setGroupEventLoops(final GroupEventLoops groupEventLoops) {
+        this.groupEventLoops = groupEventLoops;
+    }
+
+    public int getSchedulingWeight() {
+        return this.schedulingWeight;
+    }
+
+    public void setSchedulingWeight(final int schedulingWeight) {
+        this.schedulingWeight = schedulingWeight;
+    }
+
     public JRaftServiceFactory getServiceFactory() {
         return this.serviceFactory;
     }
@@ -458,6 +486,8 @@ public class NodeOptions extends RpcOptions implements Copiable<NodeOptions> {
         nodeOptions.setSharedVoteTimer(this.sharedVoteTimer);
         nodeOptions.setSharedStepDownTimer(this.sharedStepDownTimer);
         nodeOptions.setSharedSnapshotTimer(this.sharedSnapshotTimer);
+        nodeOptions.setGroupEventLoops(this.groupEventLoops);
+        nodeOptions.setSchedulingWeight(this.schedulingWeight);
 
         nodeOptions.setRpcConnectTimeoutMs(super.getRpcConnectTimeoutMs());
         nodeOptions.setRpcDefaultTimeout(super.getRpcDefaultTimeout());
@@ -484,6 +514,7 @@ public class NodeOptions extends RpcOptions implements Copiable<NodeOptions> {
                + this.snapshotThrottle + ", sharedElectionTimer=" + this.sharedElectionTimer + ", sharedVoteTimer="
                + this.sharedVoteTimer + ", sharedStepDownTimer=" + this.sharedStepDownTimer + ", sharedSnapshotTimer="
                + this.sharedSnapshotTimer + ", serviceFactory=" + this.serviceFactory + ", applyTaskMode="
-               + this.applyTaskMode + ", raftOptions=" + this.raftOptions + "} " + super.toString();
+               + this.applyTaskMode + ", groupEventLoops=" + this.groupEventLoops + ", schedulingWeight="
+               + this.schedulingWeight + ", raftOptions=" + this.raftOptions + "} " + super.toString();
     }
 }
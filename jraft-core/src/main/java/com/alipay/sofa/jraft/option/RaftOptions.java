@@ -18,6 +18,7 @@ package com.alipay.sofa.jraft.option;
 
 import com.alipay.sofa.jraft.Node;
 import com.alipay.sofa.jraft.closure.ReadIndexClosure;
+import com.alipay.sofa.jraft.entity.codec.LogEntryCompression;
 import com.alipay.sofa.jraft.util.Copiable;
 import com.alipay.sofa.jraft.util.RpcFactoryHelper;
 
@@ -31,44 +32,75 @@ import com.alipay.sofa.jraft.util.RpcFactoryHelper;
 public class RaftOptions implements Copiable<RaftOptions> {
 
     /** Maximum of block size per RPC */
-    private int            maxByteCountPerRpc                   = 128 * 1024;
+    private int                 maxByteCountPerRpc                   = 128 * 1024;
+    /** The maximum file chunks in-flight per snapshot file copy, the copy window is this times maxByteCountPerRpc */
+    private int                 maxFileChunksInflight                = 16;
+    /** The maximum snapshot files downloaded in parallel, the copies share the snapshot throttle */
+    private int                 snapshotCopyParallelism              = 4;
+    /**
+     * Whether the snapshot writer records a content checksum of the files added without one, so that they
+     * are reused by content on followers. Files linked from the previous snapshot keep its checksum and
+     * are not hashed again.
+     */
+    private boolean             snapshotContentHash                  = false;
     /** File service check hole switch, default disable */
-    private boolean        fileCheckHole                        = false;
+    private boolean             fileCheckHole                        = false;
     /** The maximum number of entries in AppendEntriesRequest */
-    private int            maxEntriesSize                       = 1024;
+    private int                 maxEntriesSize                       = 1024;
     /** The maximum byte size of AppendEntriesRequest */
-    private int            maxBodySize                          = 512 * 1024;
+    private int                 maxBodySize                          = 512 * 1024;
     /** Flush buffer to LogStorage if the buffer size reaches the limit */
-    private int            maxAppendBufferSize                  = 256 * 1024;
+    private int                 maxAppendBufferSize                  = 256 * 1024;
     /** Maximum election delay time allowed by user */
-    private int            maxElectionDelayMs                   = 1000;
+    private int                 maxElectionDelayMs                   = 1000;
     /** Raft election:heartbeat timeout factor */
-    private int            electionHeartbeatFactor              = 10;
+    private int                 electionHeartbeatFactor              = 10;
     /** Maximum number of tasks that can be applied in a batch */
-    private int            applyBatch                           = 32;
+    private int                 applyBatch                           = 32;
+    /** The maximum number of committed entries read and decoded ahead of the FSM thread, 0 disables the prefetch */
+    private int                 maxApplyPrefetchEntries              = 1024;
+    /** The maximum byte size of the entries read ahead of the FSM thread */
+    private int                 maxApplyPrefetchBytes                = 4 * 1024 * 1024;
+    /**
+     * The maximum byte size of the logs a node keeps in memory, the persisted logs beyond it are evicted
+     * oldest first and read from the log storage again. All the nodes of the process are also bounded by
+     * the system property jraft.log_cache.max_process_bytes.
+     */
+    private long                maxLogCacheBytes                     = 256 * 1024 * 1024;
+    /**
+     * Whether the data of the logs kept in memory is copied into direct memory, out of the GC's way. The
+     * state machine then receives direct buffers, which have no accessible array.
+     */
+    private boolean             logCacheOffHeap                      = false;
+    /**
+     * The compression of the log data applied on this node while it's the leader, null(default) or NONE to
+     * keep the data as applied. The data is stored and replicated compressed, with its codec, and decompressed
+     * for the state machine. Every peer decodes the logs by their own codec, whatever this option.
+     */
+    private LogEntryCompression logEntryCompression;
     /** Call fsync when need */
-    private boolean        sync                                 = true;
+    private boolean             sync                                 = true;
     /** Sync log meta, snapshot meta and raft meta */
-    private boolean        syncMeta                             = false;
+    private boolean             syncMeta                             = false;
     /** Statistics to analyze the performance of db */
-    private boolean        openStatistics                       = true;
+    private boolean             openStatistics                       = true;
     /** Whether to enable replicator pipeline. */
-    private boolean        replicatorPipeline                   = true;
+    private boolean             replicatorPipeline                   = true;
     /** The maximum replicator pipeline in-flight requests/responses, only valid when enable replicator pipeline. */
-    private int            maxReplicatorInflightMsgs            = 256;
+    private int                 maxReplicatorInflightMsgs            = 256;
     /** Internal disruptor buffers size for Node/FSMCaller/LogManager etc. */
-    private int            disruptorBufferSize                  = 16384;
+    private int                 disruptorBufferSize                  = 16384;
     /**
      * The maximum timeout in seconds to wait when publishing events into disruptor, default is 10 seconds.
      * If the timeout happens, it may halt the node.
      * */
-    private int            disruptorPublishEventWaitTimeoutSecs = 10;
+    private int                 disruptorPublishEventWaitTimeoutSecs = 10;
     /**
      *  When true, validate log entry checksum when transferring the log entry from disk or network, default is false.
      *  If true, it would hurt the performance of JRAft but gain the data safety.
      *  @since 1.2.6
      */
-    private boolean        enableLogEntryChecksum               = false;
+    private boolean             enableLogEntryChecksum               = false;
 
     /**
      * ReadOnlyOption specifies how the read only request is processed.
@@ -83,8 +115,12 @@ public class RaftOptions implements Copiable<RaftOptions> {
      * If the clock drift is unbounded, leader might keep the lease longer than it
      * should (clock can move backward/pause without any bound). ReadIndex is not safe
      * in that case.
+
+     * {@link ReadOnlyOption#ReadOnlyFollowerBoundedStale} lets a follower serve the read without any
+     * RPC while it heard from its leader within the leader lease. The read is not linearizable, it
+     * may be up to one leader lease stale.
      */
-    private ReadOnlyOption readOnlyOptions                      = ReadOnlyOption.ReadOnlySafe;
+    private ReadOnlyOption      readOnlyOptions                      = ReadOnlyOption.ReadOnlySafe;
 
     /**
      * Read index read need compare current node's apply index with leader's commit index.
@@ -96,19 +132,19 @@ public class RaftOptions implements Copiable<RaftOptions> {
      * read index closure.
      * @since 1.4.0
      */
-    private int            maxReadIndexLag                      = -1;
+    private int                 maxReadIndexLag                      = -1;
 
     /**
      * Candidate steps down when election reaching timeout, default is true(enabled).
      * @since 1.3.0
      */
-    private boolean        stepDownWhenVoteTimedout             = true;
+    private boolean             stepDownWhenVoteTimedout             = true;
 
     /**
      * Check whether start up old storage (RocksdbLogStorage) when use newLogStorage
      * This option needs to be set to true if logs still exists in RocksdbLogStorage
      */
-    private boolean        startupOldStorage                    = false;
+    private boolean             startupOldStorage                    = false;
 
     public boolean isStepDownWhenVoteTimedout() {
         return this.stepDownWhenVoteTimedout;
@@ -182,6 +218,30 @@ public class RaftOptions implements Copiable<RaftOptions> {
         this.maxByteCountPerRpc = maxByteCountPerRpc;
     }
 
+    public int getMaxFileChunksInflight() {
+        return this.maxFileChunksInflight;
+    }
+
+    public void setMaxFileChunksInflight(final int maxFileChunksInflight) {
+        this.maxFileChunksInflight = maxFileChunksInflight;
+    }
+
+    public int getSnapshotCopyParallelism() {
+        return this.snapshotCopyParallelism;
+    }
+
+    public void setSnapshotCopyParallelism(final int snapshotCopyParallelism) {
+        this.snapshotCopyParallelism = snapshotCopyParallelism;
+    }
+
+    public boolean isSnapshotContentHash() {
+        return this.snapshotContentHash;
+    }
+
+    public void setSnapshotContentHash(final boolean snapshotContentHash) {
+        this.snapshotContentHash = snapshotContentHash;
+    }
+
     public boolean isFileCheckHole() {
         return this.fileCheckHole;
     }
@@ -238,6 +298,46 @@ public class RaftOptions implements Copiable<RaftOptions> {
         this.applyBatch = applyBatch;
     }
 
+    public int getMaxApplyPrefetchEntries() {
+        return this.maxApplyPrefetchEntries;
+    }
+
+    public void setMaxApplyPrefetchEntries(final int maxApplyPrefetchEntries) {
+        this.maxApplyPrefetchEntries = maxApplyPrefetchEntries;
+    }
+
+    public int getMaxApplyPrefetchBytes() {
+        return this.maxApplyPrefetchBytes;
+    }
+
+    public void setMaxApplyPrefetchBytes(final int maxApplyPrefetchBytes) {
+        this.maxApplyPrefetchBytes = maxApplyPrefetchBytes;
+    }
+
+    public long getMaxLogCacheBytes() {
+        return this.maxLogCacheBytes;
+    }
+
+    public void setMaxLogCacheBytes(final long maxLogCacheBytes) {
+        this.maxLogCacheBytes = maxLogCacheBytes;
+    }
+
+    public boolean isLogCacheOffHeap() {
+        return this.logCacheOffHeap;
+    }
+
+    public void setLogCacheOffHeap(final boolean logCacheOffHeap) {
+        this.logCacheOffHeap = logCacheOffHeap;
+    }
+
+    public LogEntryCompression getLogEntryCompression() {
+        return this.logEntryCompression;
+    }
+
+    public void setLogEntryCompression(final LogEntryCompression logEntryCompression) {
+        this.logEntryCompression = logEntryCompression;
+    }
+
     public boolean isSync() {
         return this.sync;
     }
@@ -274,6 +374,9 @@ public class RaftOptions implements Copiable<RaftOptions> {
     public RaftOptions copy() {
         final RaftOptions raftOptions = new RaftOptions();
         raftOptions.setMaxByteCountPerRpc(this.maxByteCountPerRpc);
+        raftOptions.setMaxFileChunksInflight(this.maxFileChunksInflight);
+        raftOptions.setSnapshotCopyParallelism(this.snapshotCopyParallelism);
+        raftOptions.setSnapshotContentHash(this.snapshotContentHash);
         raftOptions.setFileCheckHole(this.fileCheckHole);
         raftOptions.setMaxEntriesSize(this.maxEntriesSize);
         raftOptions.setMaxBodySize(this.maxBodySize);
@@ -281,6 +384,11 @@ public class RaftOptions implements Copiable<RaftOptions> {
         raftOptions.setMaxElectionDelayMs(this.maxElectionDelayMs);
         raftOptions.setElectionHeartbeatFactor(this.electionHeartbeatFactor);
         raftOptions.setApplyBatch(this.applyBatch);
+        raftOptions.setMaxApplyPrefetchEntries(this.maxApplyPrefetchEntries);
+        raftOptions.setMaxApplyPrefetchBytes(this.maxApplyPrefetchBytes);
+        raftOptions.setMaxLogCacheBytes(this.maxLogCacheBytes);
+        raftOptions.setLogCacheOffHeap(this.logCacheOffHeap);
+        raftOptions.setLogEntryCompression(this.logEntryCompression);
         raftOptions.setSync(this.sync);
         raftOptions.setSyncMeta(this.syncMeta);
         raftOptions.setOpenStatistics(this.openStatistics);
@@ -296,10 +404,15 @@ public class RaftOptions implements Copiable<RaftOptions> {
 
     @Override
     public String toString() {
-        return "RaftOptions{" + "maxByteCountPerRpc=" + maxByteCountPerRpc + ", fileCheckHole=" + fileCheckHole
+        return "RaftOptions{" + "maxByteCountPerRpc=" + maxByteCountPerRpc + ", maxFileChunksInflight="
+               + maxFileChunksInflight + ", snapshotCopyParallelism=" + snapshotCopyParallelism
+               + ", snapshotContentHash=" + snapshotContentHash + ", fileCheckHole=" + fileCheckHole
                + ", maxEntriesSize=" + maxEntriesSize + ", maxBodySize=" + maxBodySize + ", maxAppendBufferSize="
                + maxAppendBufferSize + ", maxElectionDelayMs=" + maxElectionDelayMs + ", electionHeartbeatFactor="
-               + electionHeartbeatFactor + ", applyBatch=" + applyBatch + ", sync=" + sync + ", syncMeta=" + syncMeta
+               + electionHeartbeatFactor + ", applyBatch=" + applyBatch + ", maxApplyPrefetchEntries="
+               + maxApplyPrefetchEntries + ", maxApplyPrefetchBytes=" + maxApplyPrefetchBytes + ", maxLogCacheBytes="
+               + maxLogCacheBytes + ", logCacheOffHeap=" + logCacheOffHeap + ", logEntryCompression="
+               + logEntryCompression + ", sync=" + sync + ", syncMeta=" + syncMeta
                + ", openStatistics=" + openStatistics + ", replicatorPipeline=" + replicatorPipeline
                + ", maxReplicatorInflightMsgs=" + maxReplicatorInflightMsgs + ", disruptorBufferSize="
                + disruptorBufferSize + ", disruptorPublishEventWaitTimeoutSecs=" + disruptorPublishEventWaitTimeoutSecs
@@ -35,11 +35,19 @@ public enum ReadOnlyOption {
     // If the clock drift is unbounded, leader might keep the lease longer than it
     // should (clock can move backward/pause without any bound). ReadIndex is not safe
     // in that case.
-    ReadOnlyLeaseBased;
+    ReadOnlyLeaseBased,
+    // ReadOnlyFollowerBoundedStale trades linearizability for reads without any RPC: a follower
+    // serves the read locally at the commit index it learned from its leader, as long as it heard
+    // from the leader within the leader lease. The read may miss the writes committed by the
+    // leader since its last message, so it is at most one leader lease stale, provided the clock
+    // drift is bounded. Only use it when the reads tolerate that staleness. When the follower has
+    // not heard from its leader within the lease, or on the leader, it falls back to
+    // ReadOnlyLeaseBased.
+    ReadOnlyFollowerBoundedStale;
 
     public static EnumOutter.ReadOnlyType convertMsgType(ReadOnlyOption option) {
-        return ReadOnlyOption.ReadOnlyLeaseBased.equals(option) ? EnumOutter.ReadOnlyType.READ_ONLY_LEASE_BASED
-            : EnumOutter.ReadOnlyType.READ_ONLY_SAFE;
+        return ReadOnlyOption.ReadOnlySafe.equals(option) ? EnumOutter.ReadOnlyType.READ_ONLY_SAFE
+            : EnumOutter.ReadOnlyType.READ_ONLY_LEASE_BASED;
     }
 
     public static ReadOnlyOption valueOfWithDefault(EnumOutter.ReadOnlyType readOnlyType, ReadOnlyOption defaultOption) {
@@ -18,6 +18,8 @@ package com.alipay.sofa.jraft.option;
 
 import com.alipay.sofa.jraft.FSMCaller;
 import com.alipay.sofa.jraft.core.NodeImpl;
+import com.alipay.sofa.jraft.core.ReadOnlyServiceImpl;
+import com.alipay.sofa.jraft.util.StripedDisruptor;
 
 /**
  * Read-Only service options.
@@ -26,9 +28,12 @@ import com.alipay.sofa.jraft.core.NodeImpl;
  */
 public class ReadOnlyServiceOptions {
 
-    private RaftOptions raftOptions;
-    private NodeImpl    node;
-    private FSMCaller   fsmCaller;
+    private RaftOptions                                          raftOptions;
+    private NodeImpl                                             node;
+    private FSMCaller                                            fsmCaller;
+    // Shared disruptor, the service runs its own when it's null
+    private StripedDisruptor<ReadOnlyServiceImpl.ReadIndexEvent> disruptor;
+    private int                                                  schedulingWeight = 1;
 
     public NodeImpl getNode() {
         return node;
@@ -46,6 +51,22 @@ public class ReadOnlyServiceOptions {
         this.raftOptions = raftOptions;
     }
 
+    public StripedDisruptor<ReadOnlyServiceImpl.ReadIndexEvent> getDisruptor() {
+        return disruptor;
+    }
+
+    public void setDisruptor(StripedDisruptor<ReadOnlyServiceImpl.ReadIndexEvent> disruptor) {
+        this.disruptor = disruptor;
+    }
+
+    public int getSchedulingWeight() {
+        return schedulingWeight;
+    }
+
+    public void setSchedulingWeight(int schedulingWeight) {
+        this.schedulingWeight = schedulingWeight;
+    }
+
     public FSMCaller getFsmCaller() {
         return fsmCaller;
     }
@@ -17,7 +17,7 @@
 package com.alipay.sofa.jraft.option;
 
 import com.alipay.sofa.jraft.core.Scheduler;
-import com.alipay.sofa.jraft.rpc.RaftClientService;
+import com.alipay.sofa.jraft.rpc.RaftMessageClientService;
 
 /**
  * Snapshot copier options.
@@ -28,17 +28,19 @@ import com.alipay.sofa.jraft.rpc.RaftClientService;
  */
 public class SnapshotCopierOptions {
 
-    private String            groupId;
-    private RaftClientService raftClientService;
-    private Scheduler         timerManager;
-    private RaftOptions       raftOptions;
-    private NodeOptions       nodeOptions;
+    private String                   groupId;
+    private RaftMessageClientService raftClientService;
+    private Scheduler                timerManager;
+    private RaftOptions              raftOptions;
+    private NodeOptions              nodeOptions;
+    /** The maximum files copied in parallel */
+    private int                      copyParallelism = 1;
 
     public SnapshotCopierOptions() {
         super();
     }
 
-    public SnapshotCopierOptions(String groupId, RaftClientService raftClientService, Scheduler timerManager,
+    public SnapshotCopierOptions(String groupId, RaftMessageClientService raftClientService, Scheduler timerManager,
                                  RaftOptions raftOptions, NodeOptions nodeOptions) {
         super();
         this.groupId = groupId;
@@ -64,11 +66,11 @@ public class SnapshotCopierOptions {
         this.nodeOptions = nodeOptions;
     }
 
-    public RaftClientService getRaftClientService() {
+    public RaftMessageClientService getRaftClientService() {
         return this.raftClientService;
     }
 
-    public void setRaftClientService(RaftClientService raftClientService) {
+    public void setRaftClientService(RaftMessageClientService raftClientService) {
         this.raftClientService = raftClientService;
     }
 
@@ -87,4 +89,12 @@ public class SnapshotCopierOptions {
     public void setRaftOptions(RaftOptions raftOptions) {
         this.raftOptions = raftOptions;
     }
+
+    public int getCopyParallelism() {
+        return this.copyParallelism;
+    }
+
+    public void setCopyParallelism(int copyParallelism) {
+        this.copyParallelism = copyParallelism;
+    }
 }
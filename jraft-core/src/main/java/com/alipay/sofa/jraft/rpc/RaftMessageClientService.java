@@ -68,6 +68,28 @@ public interface RaftMessageClientService {
                                                                        final RpcRequests.AppendEntriesRequest request,
                                                                        final int timeoutMs);
 
+    /**
+     * Sends a heartbeat request, the heartbeats of the groups sent to the same endpoint
+     * may be coalesced into one message.
+     *
+     * @param endpoint  destination address (ip, port)
+     * @param request   heartbeat request
+     * @param timeoutMs timeout millis
+     * @return a future with result
+     */
+    CompletableFuture<RpcRequests.AppendEntriesResponse> heartbeat(final Endpoint endpoint,
+                                                                   final RpcRequests.AppendEntriesRequest request,
+                                                                   final int timeoutMs);
+
+    /**
+     * Returns whether the replication channel to the endpoint can take more data, the
+     * replicator stops pipelining entries while it is not.
+     *
+     * @param endpoint destination address (ip, port)
+     * @return true when the channel is writable or not connected yet
+     */
+    boolean isWritable(final Endpoint endpoint);
+
     /**
      * Sends a install-snapshot request and handle the response with done.
      *
@@ -102,7 +124,8 @@ public interface RaftMessageClientService {
                                                                  final int timeoutMs);
 
     /**
-     * Send a read-index request and handle the response with done.
+     * Send a read-index request and handle the response with done, the read-index requests of
+     * the groups sent to the same leader may be coalesced into one message.
      *
      * @param endpoint  destination address (ip, port)
      * @param request   request data
@@ -54,9 +54,11 @@ public interface RaftServerService {
      * called done.run() with response.
      *
      * @param request   data of the entries to append
-     * @return the response message
+     * @param done      callback, run with the response once the entries are stable
+     * @return the response message, or null when done is going to be run
      */
-    RpcRequests.AppendEntriesResponse handleAppendEntriesRequest(AppendEntriesRequest request);
+    RpcRequests.AppendEntriesResponse handleAppendEntriesRequest(AppendEntriesRequest request,
+                                                                 RpcResponseClosure<RpcRequests.AppendEntriesResponse> done);
 
     /**
      * Handle install-snapshot request, return response message or
@@ -80,6 +82,7 @@ public interface RaftServerService {
      * Handle read-index request, call the RPC closure with response.
      *
      * @param request   data of the readIndex read
+     * @param done      callback
      */
-    RpcRequests.ReadIndexResponse handleReadIndexRequest(ReadIndexRequest request);
+    void handleReadIndexRequest(ReadIndexRequest request, RpcResponseClosure<ReadIndexResponse> done);
 }
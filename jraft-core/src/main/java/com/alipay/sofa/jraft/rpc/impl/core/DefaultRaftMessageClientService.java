@@ -38,11 +38,19 @@ import com.anyilanxin.kunpeng.atomix.cluster.PartitionManagementService;
 import com.anyilanxin.kunpeng.atomix.cluster.messaging.ClusterCommunicationService;
 import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingService;
 import com.anyilanxin.kunpeng.atomix.utils.net.Address;
-import com.anyilanxin.kunpeng.util.concurrent.SingleThreadContext;
-import com.anyilanxin.kunpeng.util.concurrent.ThreadContext;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
+import com.google.protobuf.WireFormat;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.*;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
@@ -55,12 +63,11 @@ import java.util.function.Function;
  * @author jiachun.fjc
  */
 public class DefaultRaftMessageClientService implements RaftMessageClientService {
-    private NodeOptions              nodeOptions;
-    private final ReplicatorGroup    rgGroup;
-    final PartitionManagementService partitionManagementService;
-    private final RaftServerService  raftServerService;
-    private final MessagingService   messagingService;
-    ThreadContext                    threadContext = new SingleThreadContext("sdfsdfsdf-%d");
+    private NodeOptions                 nodeOptions;
+    private final ReplicatorGroup       rgGroup;
+    final PartitionManagementService    partitionManagementService;
+    private final MessagingService      messagingService;
+    private final RaftMessageDispatcher dispatcher;
 
     @Override
     public boolean isConnected(Endpoint endpoint) {
@@ -75,39 +82,22 @@ public class DefaultRaftMessageClientService implements RaftMessageClientService
     }
 
     public DefaultRaftMessageClientService(final ReplicatorGroup rgGroup, final NodeOptions nodeOptions,
-                                           final PartitionManagementService partitionManagementService,
-                                           final RaftServerService raftServerService) {
+                                           final PartitionManagementService partitionManagementService) {
         this.rgGroup = rgGroup;
         this.nodeOptions = nodeOptions;
         this.partitionManagementService = partitionManagementService;
-        this.raftServerService = raftServerService;
         this.messagingService = partitionManagementService.getMessagingService();
-        register();
+        // Handlers are shared by all the raft groups on the same messaging service.
+        this.dispatcher = RaftMessageDispatcher.retain(this.messagingService);
+        if (nodeOptions.getMetricRegistry() != null) {
+            nodeOptions.getMetricRegistry().register("raft-message-handler-executor",
+                this.dispatcher.getHandlerExecutor());
+        }
     }
 
     @Override
     public void isClosed() {
-        unregister();
-    }
-
-    private void unregister() {
-        messagingService.unregisterHandler("preVote");
-        messagingService.unregisterHandler("requestVote");
-        messagingService.unregisterHandler("appendEntries");
-        messagingService.unregisterHandler("installSnapshot");
-        messagingService.unregisterHandler("getFile");
-        messagingService.unregisterHandler("timeoutNow");
-        messagingService.unregisterHandler("readIndex");
-    }
-
-    private void register() {
-        messagingService.registerHandler("preVote", this::handlePreVoteRequest, threadContext);
-        messagingService.registerHandler("requestVote", this::handleRequestVote, threadContext);
-        messagingService.registerHandler("appendEntries", this::handleAppendEntries, threadContext);
-        messagingService.registerHandler("installSnapshot", this::handleInstallSnapshot, threadContext);
-        messagingService.registerHandler("getFile", this::handleGetFile, threadContext);
-        messagingService.registerHandler("timeoutNow", this::handleTimeoutNow, threadContext);
-        messagingService.registerHandler("readIndex", this::handleReadIndex, threadContext);
+        this.dispatcher.release();
     }
 
     @Override
@@ -115,7 +105,7 @@ public class DefaultRaftMessageClientService implements RaftMessageClientService
         CompletableFuture<RequestVoteResponse> future = new CompletableFuture<>();
         messagingService.sendAndReceive(
                 Address.from(endpoint.getIp(), endpoint.getPort()),
-                "preVote",
+                RaftMessageDispatcher.PRE_VOTE,
                 request.toByteArray()).whenComplete((bytes, throwable) -> {
             if (throwable != null) {
                 future.completeExceptionally(throwable);
@@ -130,22 +120,13 @@ public class DefaultRaftMessageClientService implements RaftMessageClientService
         return future;
     }
 
-    byte[] handlePreVoteRequest(Address address, byte[] request) {
-        try {
-            RequestVoteResponse requestVoteResponse = raftServerService.handlePreVoteRequest(RequestVoteRequest
-                .parseFrom(request));
-            return requestVoteResponse.toByteArray();
-        } catch (InvalidProtocolBufferException e) {
-            throw new RuntimeException(e);
-        }
-    }
 
     @Override
     public CompletableFuture<RequestVoteResponse> requestVote(Endpoint endpoint, RequestVoteRequest request) {
         CompletableFuture<RequestVoteResponse> future = new CompletableFuture<>();
         messagingService.sendAndReceive(
                 Address.from(endpoint.getIp(), endpoint.getPort()),
-                "requestVote",
+                RaftMessageDispatcher.REQUEST_VOTE,
                 request.toByteArray()).whenComplete((bytes, throwable) -> {
             if (throwable != null) {
                 future.completeExceptionally(throwable);
@@ -160,44 +141,78 @@ public class DefaultRaftMessageClientService implements RaftMessageClientService
         return future;
     }
 
-    byte[] handleRequestVote(Address address, byte[] request) {
-        try {
-            RequestVoteResponse requestVoteResponse = raftServerService.handleRequestVoteRequest(RequestVoteRequest
-                .parseFrom(request));
-            return requestVoteResponse.toByteArray();
-        } catch (InvalidProtocolBufferException e) {
-            throw new RuntimeException(e);
-        }
-    }
 
     @Override
     public CompletableFuture<AppendEntriesResponse> appendEntries(Endpoint endpoint, AppendEntriesRequest request, int timeoutMs) {
         CompletableFuture<AppendEntriesResponse> future = new CompletableFuture<>();
-        messagingService.sendAndReceive(
-                Address.from(endpoint.getIp(), endpoint.getPort()),
-                "appendEntries",
-                request.toByteArray()).whenComplete((bytes, throwable) -> {
+        final Address address = Address.from(endpoint.getIp(), endpoint.getPort());
+        final CompletableFuture<byte[]> responseFuture;
+        // Bound every request, a lost reply must not stall the replication pipeline.
+        final Duration timeout = timeout(timeoutMs, this.nodeOptions.getRpcDefaultTimeout());
+        if (request.getData().isEmpty()) {
+            responseFuture = messagingService.sendAndReceive(address, RaftMessageDispatcher.APPEND_ENTRIES,
+                request.toByteArray(), timeout);
+        } else {
+            responseFuture = messagingService.sendAndReceive(address, RaftMessageDispatcher.APPEND_ENTRIES,
+                encodeAppendEntries(request), true, timeout);
+        }
+        responseFuture.whenComplete((bytes, throwable) -> {
             if (throwable != null) {
                 future.completeExceptionally(throwable);
             } else {
                 try {
                     future.complete(AppendEntriesResponse.parseFrom(bytes));
                 } catch (InvalidProtocolBufferException e) {
-                    throw new RuntimeException(e);
+                    future.completeExceptionally(e);
                 }
             }
         });
         return future;
     }
 
-    byte[] handleAppendEntries(Address address, byte[] request) {
+
+    @Override
+    public CompletableFuture<AppendEntriesResponse> heartbeat(Endpoint endpoint, AppendEntriesRequest request, int timeoutMs) {
+        return this.dispatcher.getHeartbeatAggregator().heartbeat(Address.from(endpoint.getIp(), endpoint.getPort()),
+            request, timeoutMs > 0 ? timeoutMs : this.nodeOptions.getRpcDefaultTimeout());
+    }
+
+    @Override
+    public boolean isWritable(final Endpoint endpoint) {
+        return this.messagingService.isWritable(Address.from(endpoint.getIp(), endpoint.getPort()),
+            RaftMessageDispatcher.APPEND_ENTRIES);
+    }
+
+    private static Duration timeout(final int timeoutMs, final int defaultTimeoutMs) {
+        return Duration.ofMillis(timeoutMs > 0 ? timeoutMs : defaultTimeoutMs);
+    }
+
+    /**
+     * Encodes the request as a composite buffer, the entries data is appended as the
+     * last field wrapping the buffers of the request data, so it is never copied
+     * before being written to the connection.
+     */
+    private static ByteBuf encodeAppendEntries(final AppendEntriesRequest request) {
+        final ByteString data = request.getData();
+        final byte[] header = request.toBuilder().clearData().build().toByteArray();
+        final byte[] dataTag = new byte[CodedOutputStream.computeTagSize(AppendEntriesRequest.DATA_FIELD_NUMBER)
+                                        + CodedOutputStream.computeUInt32SizeNoTag(data.size())];
+        final CodedOutputStream output = CodedOutputStream.newInstance(dataTag);
         try {
-            AppendEntriesResponse requestVoteResponse = raftServerService
-                .handleAppendEntriesRequest(AppendEntriesRequest.parseFrom(request));
-            return requestVoteResponse.toByteArray();
-        } catch (InvalidProtocolBufferException e) {
-            throw new RuntimeException(e);
+            output.writeTag(AppendEntriesRequest.DATA_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(data.size());
+            output.checkNoSpaceLeft();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        final List<ByteBuffer> dataBuffers = data.asReadOnlyByteBufferList();
+        final CompositeByteBuf buf = Unpooled.compositeBuffer(dataBuffers.size() + 2);
+        buf.addComponent(true, Unpooled.wrappedBuffer(header));
+        buf.addComponent(true, Unpooled.wrappedBuffer(dataTag));
+        for (final ByteBuffer dataBuffer : dataBuffers) {
+            buf.addComponent(true, Unpooled.wrappedBuffer(dataBuffer));
         }
+        return buf;
     }
 
     @Override
@@ -205,116 +220,71 @@ public class DefaultRaftMessageClientService implements RaftMessageClientService
         CompletableFuture<InstallSnapshotResponse> future = new CompletableFuture<>();
         messagingService.sendAndReceive(
                 Address.from(endpoint.getIp(), endpoint.getPort()),
-                "installSnapshot",
-                request.toByteArray()).whenComplete((bytes, throwable) -> {
+                RaftMessageDispatcher.INSTALL_SNAPSHOT,
+                request.toByteArray(),
+                timeout(-1, this.nodeOptions.getRpcInstallSnapshotTimeout())).whenComplete((bytes, throwable) -> {
             if (throwable != null) {
                 future.completeExceptionally(throwable);
             } else {
                 try {
                     future.complete(InstallSnapshotResponse.parseFrom(bytes));
                 } catch (InvalidProtocolBufferException e) {
-                    throw new RuntimeException(e);
+                    future.completeExceptionally(e);
                 }
             }
         });
         return future;
     }
 
-    byte[] handleInstallSnapshot(Address address, byte[] request) {
-        try {
-            InstallSnapshotResponse response = raftServerService.handleInstallSnapshot(InstallSnapshotRequest
-                .parseFrom(request));
-            return response.toByteArray();
-        } catch (InvalidProtocolBufferException e) {
-            throw new RuntimeException(e);
-        }
-    }
 
     @Override
     public CompletableFuture<GetFileResponse> getFile(Endpoint endpoint, GetFileRequest request, int timeoutMs) {
         CompletableFuture<GetFileResponse> future = new CompletableFuture<>();
         messagingService.sendAndReceive(
                 Address.from(endpoint.getIp(), endpoint.getPort()),
-                "getFile",
-                request.toByteArray()).whenComplete((bytes, throwable) -> {
+                RaftMessageDispatcher.GET_FILE,
+                request.toByteArray(),
+                timeout(timeoutMs, this.nodeOptions.getRpcDefaultTimeout())).whenComplete((bytes, throwable) -> {
             if (throwable != null) {
                 future.completeExceptionally(throwable);
             } else {
                 try {
                     future.complete(GetFileResponse.parseFrom(bytes));
                 } catch (InvalidProtocolBufferException e) {
-                    throw new RuntimeException(e);
+                    future.completeExceptionally(e);
                 }
             }
         });
         return future;
     }
 
-    byte[] handleGetFile(Address address, byte[] request) {
-        try {
-            GetFileResponse response = FileService.getInstance().handleGetFile(GetFileRequest.parseFrom(request));
-            return response.toByteArray();
-        } catch (InvalidProtocolBufferException e) {
-            throw new RuntimeException(e);
-        }
-    }
 
     @Override
     public CompletableFuture<TimeoutNowResponse> timeoutNow(Endpoint endpoint, TimeoutNowRequest request, int timeoutMs) {
         CompletableFuture<TimeoutNowResponse> future = new CompletableFuture<>();
         messagingService.sendAndReceive(
                 Address.from(endpoint.getIp(), endpoint.getPort()),
-                "timeoutNow",
-                request.toByteArray()).whenComplete((bytes, throwable) -> {
+                RaftMessageDispatcher.TIMEOUT_NOW,
+                request.toByteArray(),
+                timeout(timeoutMs, this.nodeOptions.getRpcDefaultTimeout())).whenComplete((bytes, throwable) -> {
             if (throwable != null) {
                 future.completeExceptionally(throwable);
             } else {
                 try {
                     future.complete(TimeoutNowResponse.parseFrom(bytes));
                 } catch (InvalidProtocolBufferException e) {
-                    throw new RuntimeException(e);
+                    future.completeExceptionally(e);
                 }
             }
         });
         return future;
     }
 
-    byte[] handleTimeoutNow(Address address, byte[] request) {
-        try {
-            TimeoutNowResponse response = raftServerService.handleTimeoutNowRequest(TimeoutNowRequest
-                .parseFrom(request));
-            return response.toByteArray();
-        } catch (InvalidProtocolBufferException e) {
-            throw new RuntimeException(e);
-        }
-    }
 
     @Override
     public CompletableFuture<ReadIndexResponse> readIndex(Endpoint endpoint, ReadIndexRequest request, int timeoutMs) {
-        CompletableFuture<ReadIndexResponse> future = new CompletableFuture<>();
-        messagingService.sendAndReceive(
-                Address.from(endpoint.getIp(), endpoint.getPort()),
-                "readIndex",
-                request.toByteArray()).whenComplete((bytes, throwable) -> {
-            if (throwable != null) {
-                future.completeExceptionally(throwable);
-            } else {
-                try {
-                    future.complete(ReadIndexResponse.parseFrom(bytes));
-                } catch (InvalidProtocolBufferException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        });
-        return future;
+        return this.dispatcher.getReadIndexAggregator().readIndex(Address.from(endpoint.getIp(), endpoint.getPort()),
+            request, timeoutMs > 0 ? timeoutMs : this.nodeOptions.getRpcDefaultTimeout());
     }
 
-    byte[] handleReadIndex(Address address, byte[] request) {
-        try {
-            ReadIndexResponse response = raftServerService.handleReadIndexRequest(ReadIndexRequest.parseFrom(request));
-            return response.toByteArray();
-        } catch (InvalidProtocolBufferException e) {
-            throw new RuntimeException(e);
-        }
-    }
 }
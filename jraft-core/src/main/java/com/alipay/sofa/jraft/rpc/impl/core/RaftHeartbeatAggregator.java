@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.rpc.impl.core;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.alipay.sofa.jraft.rpc.RpcRequests.AppendEntriesRequest;
+import com.alipay.sofa.jraft.rpc.RpcRequests.AppendEntriesResponse;
+import com.alipay.sofa.jraft.util.Utils;
+import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingService;
+import com.anyilanxin.kunpeng.atomix.utils.net.Address;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Coalesces the heartbeats of all the raft groups led on this node toward the same endpoint.
+ *
+ * Heartbeats enqueued within {@link Utils#HEARTBEAT_BATCH_WINDOW_MS} are sent as one
+ * {@link RaftMessageDispatcher#APPEND_ENTRIES_BATCH} message. Even a lone heartbeat goes as a
+ * batch, so heartbeats always travel on the latency lane of the channel pool instead of
+ * queueing behind the replicated entries.
+ */
+public final class RaftHeartbeatAggregator extends RaftMessageAggregator<AppendEntriesRequest, AppendEntriesResponse> {
+
+    RaftHeartbeatAggregator(final MessagingService messagingService, final int windowMs) {
+        super(messagingService, RaftMessageDispatcher.APPEND_ENTRIES, RaftMessageDispatcher.APPEND_ENTRIES_BATCH,
+            windowMs, "JRaft-Heartbeat-Aggregator-");
+    }
+
+    /**
+     * Sends the heartbeat request, coalesced with the heartbeats of the other groups sent to
+     * the same address in the current window.
+     *
+     * @param address   the target address
+     * @param request   the heartbeat request
+     * @param timeoutMs the response timeout
+     * @return the response future
+     */
+    public CompletableFuture<AppendEntriesResponse> heartbeat(final Address address,
+                                                              final AppendEntriesRequest request, final int timeoutMs) {
+        return submit(address, request, timeoutMs);
+    }
+
+    @Override
+    protected AppendEntriesResponse parseResponse(final byte[] bytes) throws InvalidProtocolBufferException {
+        return AppendEntriesResponse.parseFrom(bytes);
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.rpc.impl.core;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alipay.sofa.jraft.util.NamedThreadFactory;
+import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingException;
+import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingService;
+import com.anyilanxin.kunpeng.atomix.utils.net.Address;
+import com.google.common.base.Throwables;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Coalesces the requests of all the raft groups on this node sent to the same endpoint.
+ *
+ * Requests submitted within the window are sent as one batch message, the receiver handles
+ * every request and replies the responses in the same order. The batch is encoded as a
+ * protobuf message with a single repeated bytes field holding the serialized requests (or
+ * responses). When the peer has no handler for the batch subject, the requests of the batch
+ * are sent one by one on the plain subject, and so are the next requests to the peer until the
+ * connection to it is re-established.
+ *
+ * @param <Req>  the request type
+ * @param <Resp> the response type
+ */
+abstract class RaftMessageAggregator<Req extends Message, Resp extends Message> {
+
+    private static final Logger                                    LOG                = LoggerFactory
+                                                                                        .getLogger(RaftMessageAggregator.class);
+
+    private static final int                                       BATCH_FIELD_NUMBER = 1;
+
+    private final MessagingService                                 messagingService;
+    private final String                                           subject;
+    private final String                                           batchSubject;
+    private final int                                              windowMs;
+    private final ScheduledExecutorService                         scheduler;
+    private final ConcurrentMap<Address, List<Pending<Req, Resp>>> pending            = new ConcurrentHashMap<>();
+    // the peers without handler for the batch subject
+    private final Set<Address>                                     noBatchHandler     = ConcurrentHashMap
+                                                                                        .newKeySet();
+
+    RaftMessageAggregator(final MessagingService messagingService, final String subject, final String batchSubject,
+                          final int windowMs, final String threadName) {
+        this.messagingService = messagingService;
+        this.subject = subject;
+        this.batchSubject = batchSubject;
+        this.windowMs = windowMs;
+        this.scheduler = windowMs > 0 ? Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(threadName,
+            true)) : null;
+    }
+
+    /**
+     * Parses the response of the plain subject.
+     */
+    protected abstract Resp parseResponse(final byte[] bytes) throws InvalidProtocolBufferException;
+
+    /**
+     * Sends the request, coalesced with the requests of the other groups sent to the same
+     * address in the current window.
+     *
+     * @param address   the target address
+     * @param request   the request
+     * @param timeoutMs the response timeout
+     * @return the response future
+     */
+    CompletableFuture<Resp> submit(final Address address, final Req request, final int timeoutMs) {
+        if (this.noBatchHandler.contains(address)) {
+            return send(address, request, timeoutMs);
+        }
+        final Pending<Req, Resp> message = new Pending<>(request, timeoutMs);
+        if (this.scheduler == null) {
+            sendBatch(address, Collections.singletonList(message));
+            return message.future;
+        }
+        final boolean[] first = new boolean[1];
+        this.pending.compute(address, (k, batch) -> {
+            if (batch == null) {
+                batch = new ArrayList<>();
+                first[0] = true;
+            }
+            batch.add(message);
+            return batch;
+        });
+        if (first[0]) {
+            try {
+                this.scheduler.schedule(() -> flush(address), this.windowMs, TimeUnit.MILLISECONDS);
+            } catch (final Throwable t) {
+                // The aggregator is shut down, nobody is going to flush this batch.
+                final List<Pending<Req, Resp>> batch = this.pending.remove(address);
+                if (batch != null) {
+                    batch.forEach(m -> m.future.completeExceptionally(t));
+                }
+            }
+        }
+        return message.future;
+    }
+
+    public void shutdown() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+        }
+    }
+
+    private void flush(final Address address) {
+        final List<Pending<Req, Resp>> batch = this.pending.remove(address);
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        sendBatch(address, batch);
+    }
+
+    private void sendBatch(final Address address, final List<Pending<Req, Resp>> batch) {
+        if (this.noBatchHandler.contains(address)) {
+            sendOneByOne(address, batch);
+            return;
+        }
+        int timeoutMs = Integer.MAX_VALUE;
+        final List<byte[]> requests = new ArrayList<>(batch.size());
+        for (final Pending<Req, Resp> message : batch) {
+            requests.add(message.request.toByteArray());
+            timeoutMs = Math.min(timeoutMs, message.timeoutMs);
+        }
+        this.messagingService
+            .sendAndReceive(address, this.batchSubject, encodeBatch(requests), Duration.ofMillis(timeoutMs)) //
+            .whenComplete((bytes, throwable) -> {
+                if (throwable != null) {
+                    if (Throwables.getRootCause(throwable) instanceof MessagingException.NoRemoteHandler) {
+                        // The peer does not know batches yet, send the requests one by one.
+                        if (this.noBatchHandler.add(address)) {
+                            LOG.info("Peer {} has no handler for {}, send {} one by one until reconnected.",
+                                address, this.batchSubject, this.subject);
+                        }
+                        sendOneByOne(address, batch);
+                    } else {
+                        batch.forEach(m -> m.future.completeExceptionally(throwable));
+                    }
+                    return;
+                }
+                try {
+                    final List<byte[]> responses = decodeBatch(bytes);
+                    if (responses.size() != batch.size()) {
+                        throw new InvalidProtocolBufferException(String.format(
+                            "Expect %d responses of %s from %s, but got %d", batch.size(), this.batchSubject,
+                            address, responses.size()));
+                    }
+                    for (int i = 0; i < responses.size(); i++) {
+                        batch.get(i).future.complete(parseResponse(responses.get(i)));
+                    }
+                } catch (final IOException e) {
+                    LOG.warn("Fail to decode responses of {} from {}.", this.batchSubject, address, e);
+                    batch.forEach(m -> m.future.completeExceptionally(e));
+                }
+            });
+    }
+
+    private void sendOneByOne(final Address address, final List<Pending<Req, Resp>> batch) {
+        for (final Pending<Req, Resp> message : batch) {
+            complete(message, send(address, message.request, message.timeoutMs));
+        }
+    }
+
+    private CompletableFuture<Resp> send(final Address address, final Req request, final int timeoutMs) {
+        final CompletableFuture<Resp> future = new CompletableFuture<>();
+        this.messagingService
+            .sendAndReceive(address, this.subject, request.toByteArray(), Duration.ofMillis(timeoutMs)) //
+            .whenComplete((bytes, throwable) -> {
+                if (throwable != null) {
+                    if (isConnectionClosed(throwable)) {
+                        // The peer may be upgraded once reconnected, probe the batch subject again.
+                        this.noBatchHandler.remove(address);
+                    }
+                    future.completeExceptionally(throwable);
+                    return;
+                }
+                try {
+                    future.complete(parseResponse(bytes));
+                } catch (final InvalidProtocolBufferException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        return future;
+    }
+
+    /**
+     * Same rule as the messaging service, which closes the connection on any failure but a
+     * timeout or a remote error, the next request opens a new one.
+     */
+    private static boolean isConnectionClosed(final Throwable throwable) {
+        final Throwable cause = Throwables.getRootCause(throwable);
+        return !(cause instanceof TimeoutException) && !(cause instanceof MessagingException);
+    }
+
+    private static <Resp> void complete(final Pending<?, Resp> message, final CompletableFuture<Resp> responseFuture) {
+        responseFuture.whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                message.future.completeExceptionally(throwable);
+            } else {
+                message.future.complete(response);
+            }
+        });
+    }
+
+    static byte[] encodeBatch(final List<byte[]> messages) {
+        int size = 0;
+        for (final byte[] message : messages) {
+            size += CodedOutputStream.computeByteArraySize(BATCH_FIELD_NUMBER, message);
+        }
+        final byte[] bytes = new byte[size];
+        final CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        try {
+            for (final byte[] message : messages) {
+                output.writeByteArray(BATCH_FIELD_NUMBER, message);
+            }
+            output.checkNoSpaceLeft();
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes;
+    }
+
+    static List<byte[]> decodeBatch(final byte[] bytes) throws IOException {
+        final List<byte[]> messages = new ArrayList<>();
+        final CodedInputStream input = CodedInputStream.newInstance(bytes);
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            if (WireFormat.getTagFieldNumber(tag) == BATCH_FIELD_NUMBER
+                && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                messages.add(input.readByteArray());
+            } else if (!input.skipField(tag)) {
+                break;
+            }
+        }
+        return messages;
+    }
+
+    private static final class Pending<Req, Resp> {
+        final Req                     request;
+        final int                     timeoutMs;
+        final CompletableFuture<Resp> future = new CompletableFuture<>();
+
+        Pending(final Req request, final int timeoutMs) {
+            this.request = request;
+            this.timeoutMs = timeoutMs;
+        }
+    }
+}
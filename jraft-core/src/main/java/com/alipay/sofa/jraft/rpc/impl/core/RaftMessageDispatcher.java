@@ -0,0 +1,534 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.rpc.impl.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alipay.sofa.jraft.Node;
+import com.alipay.sofa.jraft.NodeManager;
+import com.alipay.sofa.jraft.Status;
+import com.alipay.sofa.jraft.entity.PeerId;
+import com.alipay.sofa.jraft.error.RaftError;
+import com.alipay.sofa.jraft.rpc.RaftServerService;
+import com.alipay.sofa.jraft.rpc.RpcRequests.AppendEntriesRequest;
+import com.alipay.sofa.jraft.rpc.RpcRequests.AppendEntriesResponse;
+import com.alipay.sofa.jraft.rpc.RpcRequests.ErrorResponse;
+import com.alipay.sofa.jraft.rpc.RpcRequests.GetFileRequest;
+import com.alipay.sofa.jraft.rpc.RpcRequests.GetFileResponse;
+import com.alipay.sofa.jraft.rpc.RpcRequests.InstallSnapshotRequest;
+import com.alipay.sofa.jraft.rpc.RpcRequests.InstallSnapshotResponse;
+import com.alipay.sofa.jraft.rpc.RpcRequests.ReadIndexRequest;
+import com.alipay.sofa.jraft.rpc.RpcRequests.ReadIndexResponse;
+import com.alipay.sofa.jraft.rpc.RpcRequests.RequestVoteRequest;
+import com.alipay.sofa.jraft.rpc.RpcRequests.RequestVoteResponse;
+import com.alipay.sofa.jraft.rpc.RpcRequests.TimeoutNowRequest;
+import com.alipay.sofa.jraft.rpc.RpcRequests.TimeoutNowResponse;
+import com.alipay.sofa.jraft.rpc.RpcResponseClosureAdapter;
+import com.alipay.sofa.jraft.rpc.impl.core.RaftMessageHandlerExecutor.Lane;
+import com.alipay.sofa.jraft.storage.FileService;
+import com.alipay.sofa.jraft.util.Endpoint;
+import com.alipay.sofa.jraft.util.Utils;
+import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingConfig.ChannelLane;
+import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingService;
+import com.anyilanxin.kunpeng.atomix.utils.net.Address;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+import com.google.protobuf.ZeroByteStringHelper;
+
+/**
+ * Process-wide dispatcher of raft messages received by a {@link MessagingService}.
+ *
+ * Every raft subject is registered only once per messaging service, no matter how many raft
+ * groups share it. Incoming requests are routed to the target node through {@link NodeManager}
+ * by the group id and peer id carried in every request, so that hundreds of groups can share one
+ * set of netty channels and handlers.
+ *
+ * Requests are handled by a {@link RaftMessageHandlerExecutor}, votes and heartbeats go to the
+ * priority lane, snapshot transfers go to the bulk lane, and append-entries of a group are
+ * always handled in order by one thread of the replication lane. Heartbeats of many groups may
+ * arrive coalesced in one {@link #APPEND_ENTRIES_BATCH} message, see {@link RaftHeartbeatAggregator},
+ * and so may the read-index requests forwarded by followers in one {@link #READ_INDEX_BATCH} message,
+ * see {@link RaftReadIndexAggregator}.
+ */
+public final class RaftMessageDispatcher {
+
+    private static final Logger                                       LOG                  = LoggerFactory
+                                                                                               .getLogger(RaftMessageDispatcher.class);
+
+    static final String                                               PRE_VOTE             = "preVote";
+    static final String                                               REQUEST_VOTE         = "requestVote";
+    static final String                                               APPEND_ENTRIES       = "appendEntries";
+    static final String                                               APPEND_ENTRIES_BATCH = "appendEntriesBatch";
+    static final String                                               INSTALL_SNAPSHOT     = "installSnapshot";
+    static final String                                               GET_FILE             = "getFile";
+    static final String                                               TIMEOUT_NOW          = "timeoutNow";
+    static final String                                               READ_INDEX           = "readIndex";
+    static final String                                               READ_INDEX_BATCH     = "readIndexBatch";
+
+    private static final Map<MessagingService, RaftMessageDispatcher> DISPATCHERS          = new ConcurrentHashMap<>();
+
+    private final MessagingService                                    messagingService;
+    private final RaftMessageHandlerExecutor                          handlerExecutor;
+    private final RaftHeartbeatAggregator                             heartbeatAggregator;
+    private final RaftReadIndexAggregator                             readIndexAggregator;
+    // Guarded by DISPATCHERS
+    private int                                                       refCount;
+
+    private RaftMessageDispatcher(final MessagingService messagingService) {
+        this.messagingService = messagingService;
+        this.handlerExecutor = new RaftMessageHandlerExecutor();
+        this.heartbeatAggregator = new RaftHeartbeatAggregator(messagingService, Utils.HEARTBEAT_BATCH_WINDOW_MS);
+        this.readIndexAggregator = new RaftReadIndexAggregator(messagingService, Utils.READ_INDEX_BATCH_WINDOW_MS);
+    }
+
+    /**
+     * Returns the dispatcher bound to the given messaging service, registers the raft
+     * handlers when it is the first user of the messaging service.
+     *
+     * @param messagingService the shared messaging service
+     * @return the dispatcher of the messaging service
+     */
+    public static RaftMessageDispatcher retain(final MessagingService messagingService) {
+        synchronized (DISPATCHERS) {
+            RaftMessageDispatcher dispatcher = DISPATCHERS.get(messagingService);
+            if (dispatcher == null) {
+                dispatcher = new RaftMessageDispatcher(messagingService);
+                dispatcher.register();
+                DISPATCHERS.put(messagingService, dispatcher);
+            }
+            dispatcher.refCount++;
+            return dispatcher;
+        }
+    }
+
+    /**
+     * Releases the dispatcher, unregisters the raft handlers when the last user is gone.
+     */
+    public void release() {
+        synchronized (DISPATCHERS) {
+            if (this.refCount <= 0) {
+                return;
+            }
+            if (--this.refCount == 0) {
+                DISPATCHERS.remove(this.messagingService, this);
+                unregister();
+                this.heartbeatAggregator.shutdown();
+                this.readIndexAggregator.shutdown();
+                this.handlerExecutor.shutdownGracefully();
+            }
+        }
+    }
+
+    /**
+     * Returns the executor which handles the inbound raft messages.
+     */
+    public RaftMessageHandlerExecutor getHandlerExecutor() {
+        return this.handlerExecutor;
+    }
+
+    /**
+     * Returns the aggregator which coalesces the outbound heartbeats of the groups.
+     */
+    public RaftHeartbeatAggregator getHeartbeatAggregator() {
+        return this.heartbeatAggregator;
+    }
+
+    /**
+     * Returns the aggregator which coalesces the read-index requests forwarded to the leaders.
+     */
+    public RaftReadIndexAggregator getReadIndexAggregator() {
+        return this.readIndexAggregator;
+    }
+
+    private void register() {
+        register(PRE_VOTE, Lane.PRIORITY, this::handlePreVote);
+        register(REQUEST_VOTE, Lane.PRIORITY, this::handleRequestVote);
+        registerAsync(APPEND_ENTRIES, Lane.REPLICATION, this::handleAppendEntries);
+        registerAsync(APPEND_ENTRIES_BATCH, Lane.PRIORITY, this::handleAppendEntriesBatch);
+        register(INSTALL_SNAPSHOT, Lane.BULK, this::handleInstallSnapshot);
+        register(GET_FILE, Lane.BULK, this::handleGetFile);
+        register(TIMEOUT_NOW, Lane.PRIORITY, this::handleTimeoutNow);
+        registerAsync(READ_INDEX, Lane.PRIORITY, this::handleReadIndex);
+        registerAsync(READ_INDEX_BATCH, Lane.PRIORITY, this::handleReadIndexBatch);
+        registerChannelLanes();
+    }
+
+    /**
+     * Keeps votes, heartbeats and read-index requests away from the connections busy with
+     * replication and snapshot transfers, unless the messaging config sets other lanes.
+     */
+    private void registerChannelLanes() {
+        this.messagingService.registerChannelLane(PRE_VOTE, ChannelLane.LATENCY);
+        this.messagingService.registerChannelLane(REQUEST_VOTE, ChannelLane.LATENCY);
+        this.messagingService.registerChannelLane(APPEND_ENTRIES_BATCH, ChannelLane.LATENCY);
+        this.messagingService.registerChannelLane(TIMEOUT_NOW, ChannelLane.LATENCY);
+        this.messagingService.registerChannelLane(READ_INDEX, ChannelLane.LATENCY);
+        this.messagingService.registerChannelLane(READ_INDEX_BATCH, ChannelLane.LATENCY);
+        this.messagingService.registerChannelLane(APPEND_ENTRIES, ChannelLane.REPLICATION);
+        this.messagingService.registerChannelLane(INSTALL_SNAPSHOT, ChannelLane.BULK);
+        this.messagingService.registerChannelLane(GET_FILE, ChannelLane.BULK);
+    }
+
+    private void register(final String subject, final Lane lane, final BiFunction<Address, byte[], byte[]> handler) {
+        registerAsync(subject, lane,
+            (address, bytes) -> CompletableFuture.completedFuture(handler.apply(address, bytes)));
+    }
+
+    /**
+     * Registers a handler whose response may complete after the handler returns, e.g. a
+     * read-index request waits for the heartbeats of the leader.
+     */
+    private void registerAsync(final String subject, final Lane lane,
+                               final BiFunction<Address, byte[], CompletableFuture<byte[]>> handler) {
+        this.messagingService.registerHandler(subject, (address, bytes) -> {
+            final CompletableFuture<byte[]> future = new CompletableFuture<>();
+            // Heartbeats are not pipelined with the replication, let them bypass the queued entries.
+            final Lane target = lane == Lane.REPLICATION && isHeartbeatRequest(bytes) ? Lane.PRIORITY : lane;
+            try {
+                // A batch carries many groups, spread the batches over the lane.
+                final String groupId = isBatch(subject) ? null : peekGroupId(bytes);
+                this.handlerExecutor.execute(target, groupId, () -> {
+                    try {
+                        handler.apply(address, bytes).whenComplete((response, throwable) -> {
+                            if (throwable != null) {
+                                future.completeExceptionally(throwable);
+                            } else {
+                                future.complete(response);
+                            }
+                        });
+                    } catch (final Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                });
+            } catch (final Throwable t) {
+                future.completeExceptionally(t);
+            }
+            return future;
+        });
+    }
+
+    private static boolean isBatch(final String subject) {
+        return subject.equals(APPEND_ENTRIES_BATCH) || subject.equals(READ_INDEX_BATCH);
+    }
+
+    /**
+     * Reads the group id without parsing the whole request, the group id is always
+     * the first field of the raft requests. Returns null if the request has no group id.
+     */
+    static String peekGroupId(final byte[] bytes) {
+        try {
+            final CodedInputStream input = CodedInputStream.newInstance(bytes);
+            final int tag = input.readTag();
+            if (tag != 0 && WireFormat.getTagFieldNumber(tag) == AppendEntriesRequest.GROUP_ID_FIELD_NUMBER
+                && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                return input.readString();
+            }
+        } catch (final IOException e) {
+            // Let the handler report the malformed request.
+        }
+        return null;
+    }
+
+    /**
+     * Returns true when the append-entries request carries neither entries nor data.
+     */
+    static boolean isHeartbeatRequest(final byte[] bytes) {
+        try {
+            final CodedInputStream input = CodedInputStream.newInstance(bytes);
+            int tag;
+            while ((tag = input.readTag()) != 0) {
+                final int field = WireFormat.getTagFieldNumber(tag);
+                if (field == AppendEntriesRequest.ENTRIES_FIELD_NUMBER
+                    || field == AppendEntriesRequest.DATA_FIELD_NUMBER) {
+                    return false;
+                }
+                if (!input.skipField(tag)) {
+                    break;
+                }
+            }
+            return true;
+        } catch (final IOException e) {
+            return false;
+        }
+    }
+
+    private void unregister() {
+        this.messagingService.unregisterHandler(PRE_VOTE);
+        this.messagingService.unregisterHandler(REQUEST_VOTE);
+        this.messagingService.unregisterHandler(APPEND_ENTRIES);
+        this.messagingService.unregisterHandler(APPEND_ENTRIES_BATCH);
+        this.messagingService.unregisterHandler(INSTALL_SNAPSHOT);
+        this.messagingService.unregisterHandler(GET_FILE);
+        this.messagingService.unregisterHandler(TIMEOUT_NOW);
+        this.messagingService.unregisterHandler(READ_INDEX);
+        this.messagingService.unregisterHandler(READ_INDEX_BATCH);
+    }
+
+    /**
+     * Finds the local node of the group, returns null when not found.
+     */
+    private RaftServerService findNode(final String groupId, final String peerIdStr) {
+        if (StringUtils.isBlank(peerIdStr)) {
+            // Request without target peer, e.g. read-index from an old version follower,
+            // routes it to the node of the group which is bound to this messaging service.
+            final List<Node> nodes = NodeManager.getInstance().getNodesByGroupId(groupId);
+            if (nodes == null) {
+                return null;
+            }
+            final Address local = this.messagingService.address();
+            final Endpoint localEndpoint = new Endpoint(local.host(), local.port());
+            synchronized (nodes) {
+                for (final Node node : nodes) {
+                    if (node.getNodeId().getPeerId().getEndpoint().equals(localEndpoint)) {
+                        return (RaftServerService) node;
+                    }
+                }
+            }
+            return null;
+        }
+        final PeerId peer = new PeerId();
+        if (!peer.parse(peerIdStr)) {
+            LOG.warn("Fail to parse peerId: {}, group: {}.", peerIdStr, groupId);
+            return null;
+        }
+        return (RaftServerService) NodeManager.getInstance().get(groupId, peer);
+    }
+
+    private static ErrorResponse notFound(final String groupId, final String peerIdStr) {
+        return ErrorResponse.newBuilder() //
+            .setErrorCode(RaftError.ENOENT.getNumber()) //
+            .setErrorMsg(String.format("Peer id not found: %s, group: %s", peerIdStr, groupId)) //
+            .build();
+    }
+
+    byte[] handlePreVote(final Address address, final byte[] bytes) {
+        try {
+            final RequestVoteRequest request = RequestVoteRequest.parseFrom(bytes);
+            final RaftServerService node = findNode(request.getGroupId(), request.getPeerId());
+            if (node == null) {
+                return RequestVoteResponse.newBuilder() //
+                    .setTerm(0) //
+                    .setGranted(false) //
+                    .setErrorResponse(notFound(request.getGroupId(), request.getPeerId())) //
+                    .build() //
+                    .toByteArray();
+            }
+            return node.handlePreVoteRequest(request).toByteArray();
+        } catch (final InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    byte[] handleRequestVote(final Address address, final byte[] bytes) {
+        try {
+            final RequestVoteRequest request = RequestVoteRequest.parseFrom(bytes);
+            final RaftServerService node = findNode(request.getGroupId(), request.getPeerId());
+            if (node == null) {
+                return RequestVoteResponse.newBuilder() //
+                    .setTerm(0) //
+                    .setGranted(false) //
+                    .setErrorResponse(notFound(request.getGroupId(), request.getPeerId())) //
+                    .build() //
+                    .toByteArray();
+            }
+            return node.handleRequestVoteRequest(request).toByteArray();
+        } catch (final InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    CompletableFuture<byte[]> handleAppendEntries(final Address address, final byte[] bytes) {
+        final AppendEntriesRequest request;
+        try {
+            // The request bytes are owned by this handler, let the entries data wrap them.
+            request = AppendEntriesRequest.parseFrom(ZeroByteStringHelper.newAliasingInput(bytes));
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        final RaftServerService node = findNode(request.getGroupId(), request.getPeerId());
+        if (node == null) {
+            return CompletableFuture.completedFuture(AppendEntriesResponse.newBuilder() //
+                .setTerm(0) //
+                .setSuccess(false) //
+                .setErrorResponse(notFound(request.getGroupId(), request.getPeerId())) //
+                .build() //
+                .toByteArray());
+        }
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        // The response is returned at once unless the entries have to be made stable first.
+        final AppendEntriesResponse response = node.handleAppendEntriesRequest(request,
+            new RpcResponseClosureAdapter<AppendEntriesResponse>() {
+
+                @Override
+                public void run(final Status status) {
+                    if (getResponse() != null) {
+                        future.complete(getResponse().toByteArray());
+                    } else {
+                        future.complete(AppendEntriesResponse.newBuilder() //
+                            .setTerm(0) //
+                            .setSuccess(false) //
+                            .setErrorResponse(ErrorResponse.newBuilder() //
+                                .setErrorCode(status.getCode()) //
+                                .setErrorMsg(StringUtils.defaultString(status.getErrorMsg())) //
+                                .build()) //
+                            .build() //
+                            .toByteArray());
+                    }
+                }
+            });
+        if (response != null) {
+            future.complete(response.toByteArray());
+        }
+        return future;
+    }
+
+    CompletableFuture<byte[]> handleAppendEntriesBatch(final Address address, final byte[] bytes) {
+        final List<byte[]> requests;
+        try {
+            requests = RaftMessageAggregator.decodeBatch(bytes);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        final List<CompletableFuture<byte[]>> futures = new ArrayList<>(requests.size());
+        for (final byte[] request : requests) {
+            futures.add(handleAppendEntries(address, request));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            final List<byte[]> responses = new ArrayList<>(futures.size());
+            for (final CompletableFuture<byte[]> future : futures) {
+                responses.add(future.join());
+            }
+            return RaftMessageAggregator.encodeBatch(responses);
+        });
+    }
+
+    byte[] handleInstallSnapshot(final Address address, final byte[] bytes) {
+        try {
+            final InstallSnapshotRequest request = InstallSnapshotRequest.parseFrom(bytes);
+            final RaftServerService node = findNode(request.getGroupId(), request.getPeerId());
+            if (node == null) {
+                return InstallSnapshotResponse.newBuilder() //
+                    .setTerm(0) //
+                    .setSuccess(false) //
+                    .setErrorResponse(notFound(request.getGroupId(), request.getPeerId())) //
+                    .build() //
+                    .toByteArray();
+            }
+            return node.handleInstallSnapshot(request).toByteArray();
+        } catch (final InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    byte[] handleGetFile(final Address address, final byte[] bytes) {
+        try {
+            // Readers are registered process wide by reader id, no group routing required.
+            final GetFileResponse response = FileService.getInstance().handleGetFile(GetFileRequest.parseFrom(bytes));
+            return response.toByteArray();
+        } catch (final InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    byte[] handleTimeoutNow(final Address address, final byte[] bytes) {
+        try {
+            final TimeoutNowRequest request = TimeoutNowRequest.parseFrom(bytes);
+            final RaftServerService node = findNode(request.getGroupId(), request.getPeerId());
+            if (node == null) {
+                return TimeoutNowResponse.newBuilder() //
+                    .setTerm(0) //
+                    .setSuccess(false) //
+                    .setErrorResponse(notFound(request.getGroupId(), request.getPeerId())) //
+                    .build() //
+                    .toByteArray();
+            }
+            return node.handleTimeoutNowRequest(request).toByteArray();
+        } catch (final InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    CompletableFuture<byte[]> handleReadIndex(final Address address, final byte[] bytes) {
+        final ReadIndexRequest request;
+        try {
+            request = ReadIndexRequest.parseFrom(bytes);
+        } catch (final InvalidProtocolBufferException e) {
+            throw new RuntimeException(e);
+        }
+        final RaftServerService node = findNode(request.getGroupId(), request.getPeerId());
+        if (node == null) {
+            return CompletableFuture.completedFuture(ReadIndexResponse.newBuilder() //
+                .setIndex(0) //
+                .setSuccess(false) //
+                .setErrorResponse(notFound(request.getGroupId(), request.getPeerId())) //
+                .build() //
+                .toByteArray());
+        }
+        final CompletableFuture<byte[]> future = new CompletableFuture<>();
+        node.handleReadIndexRequest(request, new RpcResponseClosureAdapter<ReadIndexResponse>() {
+
+            @Override
+            public void run(final Status status) {
+                if (getResponse() != null) {
+                    future.complete(getResponse().toByteArray());
+                } else {
+                    future.complete(ReadIndexResponse.newBuilder() //
+                        .setIndex(0) //
+                        .setSuccess(false) //
+                        .setErrorResponse(ErrorResponse.newBuilder() //
+                            .setErrorCode(status.getCode()) //
+                            .setErrorMsg(StringUtils.defaultString(status.getErrorMsg())) //
+                            .build()) //
+                        .build() //
+                        .toByteArray());
+                }
+            }
+        });
+        return future;
+    }
+
+    CompletableFuture<byte[]> handleReadIndexBatch(final Address address, final byte[] bytes) {
+        final List<byte[]> requests;
+        try {
+            requests = RaftMessageAggregator.decodeBatch(bytes);
+        } catch (final IOException e) {
+            throw new RuntimeException(e);
+        }
+        final List<CompletableFuture<byte[]>> futures = new ArrayList<>(requests.size());
+        for (final byte[] request : requests) {
+            futures.add(handleReadIndex(address, request));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            final List<byte[]> responses = new ArrayList<>(futures.size());
+            for (final CompletableFuture<byte[]> future : futures) {
+                responses.add(future.join());
+            }
+            return RaftMessageAggregator.encodeBatch(responses);
+        });
+    }
+}
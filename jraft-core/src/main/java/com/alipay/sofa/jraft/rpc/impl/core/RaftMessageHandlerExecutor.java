@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.rpc.impl.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.alipay.sofa.jraft.util.Utils;
+import com.alipay.sofa.jraft.util.concurrent.DefaultFixedThreadsExecutorGroupFactory;
+import com.alipay.sofa.jraft.util.concurrent.FixedThreadsExecutorGroup;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+
+/**
+ * Partitioned executor of the inbound raft messages.
+ *
+ * Messages are separated into lanes so that a slow snapshot read never stalls heartbeats
+ * and votes, and inside a lane the messages of a group are always handled by the same
+ * thread, which keeps the order of append-entries within a group while spreading the
+ * groups across cores.
+ */
+public final class RaftMessageHandlerExecutor implements MetricSet {
+
+    /**
+     * Handler lanes.
+     */
+    public enum Lane {
+        PRIORITY("priority"), // votes, heartbeats, timeout-now and read-index
+        REPLICATION("replication"), // append-entries and probes
+        BULK("bulk"); // install-snapshot and get-file
+
+        private final String name;
+
+        Lane(final String name) {
+            this.name = name;
+        }
+    }
+
+    private final FixedThreadsExecutorGroup[] executors;
+    private final AtomicLong[]                pendingTasks;
+
+    public RaftMessageHandlerExecutor() {
+        this(Utils.MESSAGE_HANDLER_PRIORITY_THREADS, Utils.MESSAGE_HANDLER_REPLICATION_THREADS,
+            Utils.MESSAGE_HANDLER_BULK_THREADS, Utils.MAX_MESSAGE_HANDLER_TASKS);
+    }
+
+    public RaftMessageHandlerExecutor(final int priorityThreads, final int replicationThreads, final int bulkThreads,
+                                      final int maxPendingTasksPerThread) {
+        final Lane[] lanes = Lane.values();
+        final int[] threads = { priorityThreads, replicationThreads, bulkThreads };
+        this.executors = new FixedThreadsExecutorGroup[lanes.length];
+        this.pendingTasks = new AtomicLong[lanes.length];
+        for (final Lane lane : lanes) {
+            this.executors[lane.ordinal()] = DefaultFixedThreadsExecutorGroupFactory.INSTANCE.newExecutorGroup(
+                threads[lane.ordinal()], "JRaft-Message-Handler-" + lane.name + "-", maxPendingTasksPerThread, true);
+            this.pendingTasks[lane.ordinal()] = new AtomicLong();
+        }
+    }
+
+    /**
+     * Executes the task on the thread of the lane which the group is bound to.
+     *
+     * @param lane    the handler lane
+     * @param groupId the raft group id, messages of the same group keep their order,
+     *                messages without group id are spread over the lane
+     * @param task    the task to run
+     */
+    public void execute(final Lane lane, final String groupId, final Runnable task) {
+        final AtomicLong pending = this.pendingTasks[lane.ordinal()];
+        final FixedThreadsExecutorGroup executor = this.executors[lane.ordinal()];
+        final Runnable wrapped = () -> {
+            pending.decrementAndGet();
+            task.run();
+        };
+        pending.incrementAndGet();
+        try {
+            if (groupId == null) {
+                executor.next().execute(wrapped);
+            } else {
+                executor.execute(groupId.hashCode(), wrapped);
+            }
+        } catch (final Throwable t) {
+            pending.decrementAndGet();
+            throw t;
+        }
+    }
+
+    /**
+     * Returns the count of tasks waiting in the lane.
+     */
+    public long getPendingTasks(final Lane lane) {
+        return this.pendingTasks[lane.ordinal()].get();
+    }
+
+    public void shutdownGracefully() {
+        for (final FixedThreadsExecutorGroup executor : this.executors) {
+            executor.shutdownGracefully();
+        }
+    }
+
+    @Override
+    public Map<String, Metric> getMetrics() {
+        final Map<String, Metric> gauges = new HashMap<>();
+        for (final Lane lane : Lane.values()) {
+            gauges.put(lane.name + "-pending-tasks", (Gauge<Long>) () -> getPendingTasks(lane));
+        }
+        return gauges;
+    }
+}
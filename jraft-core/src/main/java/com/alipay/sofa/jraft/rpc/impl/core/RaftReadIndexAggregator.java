@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.rpc.impl.core;
+
+import java.util.concurrent.CompletableFuture;
+
+import com.alipay.sofa.jraft.rpc.RpcRequests.ReadIndexRequest;
+import com.alipay.sofa.jraft.rpc.RpcRequests.ReadIndexResponse;
+import com.alipay.sofa.jraft.util.Utils;
+import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingService;
+import com.anyilanxin.kunpeng.atomix.utils.net.Address;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Coalesces the read-index requests that followers on this node forward to the same leader.
+ *
+ * Every group already batches its own reads in the read-only service, this aggregator merges
+ * those batches across the groups led by the same endpoint, requests enqueued within
+ * {@link Utils#READ_INDEX_BATCH_WINDOW_MS} are sent as one
+ * {@link RaftMessageDispatcher#READ_INDEX_BATCH} message.
+ */
+public final class RaftReadIndexAggregator extends RaftMessageAggregator<ReadIndexRequest, ReadIndexResponse> {
+
+    RaftReadIndexAggregator(final MessagingService messagingService, final int windowMs) {
+        super(messagingService, RaftMessageDispatcher.READ_INDEX, RaftMessageDispatcher.READ_INDEX_BATCH, windowMs,
+            "JRaft-ReadIndex-Aggregator-");
+    }
+
+    /**
+     * Sends the read-index request, coalesced with the read-index requests of the other groups
+     * sent to the same address in the current window.
+     *
+     * @param address   the address of the leader
+     * @param request   the read-index request
+     * @param timeoutMs the response timeout
+     * @return the response future
+     */
+    public CompletableFuture<ReadIndexResponse> readIndex(final Address address, final ReadIndexRequest request,
+                                                          final int timeoutMs) {
+        return submit(address, request, timeoutMs);
+    }
+
+    @Override
+    protected ReadIndexResponse parseResponse(final byte[] bytes) throws InvalidProtocolBufferException {
+        return ReadIndexResponse.parseFrom(bytes);
+    }
+}
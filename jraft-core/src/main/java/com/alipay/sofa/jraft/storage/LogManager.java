@@ -155,6 +155,17 @@ public interface LogManager extends Lifecycle<LogManagerOptions>, Describer {
      */
     LogEntry getEntry(final long index);
 
+    /**
+     * Get the consecutive log entries starting at index, reading the ones not in memory with one
+     * range read of the log storage.
+     *
+     * @param firstIndex the index of the first log entry
+     * @param maxCount   the max number of log entries
+     * @param maxBytes   stop after the first log entry whose data makes the returned ones reach it
+     * @return the log entries, empty when the log entry at {@code firstIndex} doesn't exist
+     */
+    List<LogEntry> getEntries(final long firstIndex, final int maxCount, final long maxBytes);
+
     /**
      * Get the log term at index.
      *
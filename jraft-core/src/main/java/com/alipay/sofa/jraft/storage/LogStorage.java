@@ -16,6 +16,7 @@
  */
 package com.alipay.sofa.jraft.storage;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.alipay.sofa.jraft.Lifecycle;
@@ -46,6 +47,27 @@ public interface LogStorage extends Lifecycle<LogStorageOptions>, Storage {
      */
     LogEntry getEntry(final long index);
 
+    /**
+     * Get the consecutive logEntries starting at |firstIndex|, at most |maxCount| ones. It stops
+     * after the first log whose data makes the returned ones reach |maxBytes|, or at the first
+     * log that can't be read, returns an empty list when the log at |firstIndex| can't be read.
+     *
+     * Implementations should read the range with one scan instead of a lookup per log.
+     */
+    default List<LogEntry> getEntries(final long firstIndex, final int maxCount, final long maxBytes) {
+        final List<LogEntry> entries = new ArrayList<>(Math.min(maxCount, 64));
+        long bytes = 0;
+        for (long index = firstIndex; entries.size() < maxCount && bytes < maxBytes; index++) {
+            final LogEntry entry = getEntry(index);
+            if (entry == null) {
+                break;
+            }
+            entries.add(entry);
+            bytes += entry.getData() != null ? entry.getData().remaining() : 0;
+        }
+        return entries;
+    }
+
     /**
      * Get logEntry's term by index. This method is deprecated, you should use {@link #getEntry(long)} to get the log id's term.
      * @deprecated
@@ -0,0 +1,318 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.storage.impl;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.alipay.sofa.jraft.entity.LogEntry;
+import com.alipay.sofa.jraft.entity.LogId;
+import com.alipay.sofa.jraft.util.Describer;
+import com.alipay.sofa.jraft.util.SegmentList;
+import com.alipay.sofa.jraft.util.SystemPropertyUtil;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+
+/**
+ * The logs of a {@link LogManagerImpl} kept in memory, a contiguous range of the latest logs.
+ *
+ * <p>The cache is bounded in bytes by the node budget and by a budget shared by all the nodes of
+ * the process (system property {@code jraft.log_cache.max_process_bytes}). Over budget, the oldest
+ * logs are evicted as long as they are persisted, the logs not on disk yet are always kept. An
+ * evicted log is read from the log storage again.
+ *
+ * <p>When off-heap, the data of a cached log is copied into direct memory slabs shared by the
+ * consecutive logs, so the cached logs don't weigh on the GC. A slab is freed by the JVM once no
+ * log data slices it, the data can be handed to the replicators and the state machine without
+ * copy or release.
+ *
+ * <p>Not thread safe, the caller guards the cache with its lock. The statistics can be read by
+ * any thread.
+ */
+public class LogEntryCache implements Describer {
+
+    /** The byte budget of the logs cached by all the nodes of the process. */
+    public static final long            MAX_PROCESS_BYTES = SystemPropertyUtil.getLong(
+                                                              "jraft.log_cache.max_process_bytes", Long.MAX_VALUE);
+    /** The size of the direct memory slabs. */
+    public static final int             SLAB_SIZE         = SystemPropertyUtil.getInt("jraft.log_cache.slab_size",
+                                                              256 * 1024);
+
+    private static final AtomicLong     PROCESS_BYTES     = new AtomicLong(0);
+
+    private final SegmentList<LogEntry> entries           = new SegmentList<>(true);
+    private final long                  maxBytes;
+    private final boolean               offHeap;
+    private final LongAdder             hits              = new LongAdder();
+    private final LongAdder             misses            = new LongAdder();
+    private final LongAdder             evictions         = new LongAdder();
+    private volatile long               bytes;
+    // the slab the next logs are copied into
+    private ByteBuffer                  slab;
+
+    public LogEntryCache(final long maxBytes, final boolean offHeap) {
+        this.maxBytes = maxBytes;
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * Appends the logs following the last cached one.
+     */
+    public void addAll(final List<LogEntry> logs) {
+        long added = 0;
+        for (final LogEntry entry : logs) {
+            if (this.offHeap) {
+                entry.setData(copyOffHeap(entry.getData()));
+            }
+            added += sizeOf(entry);
+        }
+        this.entries.addAll(logs);
+        addBytes(added);
+    }
+
+    /**
+     * Returns the cached log at |index|, or null when it's not cached.
+     */
+    public LogEntry get(final long index) {
+        LogEntry entry = null;
+        if (!this.entries.isEmpty()) {
+            final long firstIndex = this.entries.peekFirst().getId().getIndex();
+            final long lastIndex = this.entries.peekLast().getId().getIndex();
+            if (lastIndex - firstIndex + 1 != this.entries.size()) {
+                throw new IllegalStateException(String.format("lastIndex=%d,firstIndex=%d,logsInMemory=[%s]",
+                    lastIndex, firstIndex, descEntries()));
+            }
+            if (index >= firstIndex && index <= lastIndex) {
+                entry = this.entries.get((int) (index - firstIndex));
+            }
+        }
+        if (entry != null) {
+            this.hits.increment();
+        } else {
+            this.misses.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Removes the logs up to |id|(inclusive), they are both persisted and applied.
+     */
+    public void removeUpTo(final LogId id) {
+        int count = 0;
+        long removed = 0;
+        for (; count < this.entries.size(); count++) {
+            final LogEntry entry = this.entries.get(count);
+            if (entry.getId().compareTo(id) > 0) {
+                break;
+            }
+            removed += sizeOf(entry);
+        }
+        removeFirst(count, removed);
+    }
+
+    /**
+     * Removes the logs before |firstIndexKept|.
+     */
+    public void removeBefore(final long firstIndexKept) {
+        int count = 0;
+        long removed = 0;
+        for (; count < this.entries.size(); count++) {
+            final LogEntry entry = this.entries.get(count);
+            if (entry.getId().getIndex() >= firstIndexKept) {
+                break;
+            }
+            removed += sizeOf(entry);
+        }
+        removeFirst(count, removed);
+    }
+
+    /**
+     * Removes the logs after |lastIndexKept|.
+     */
+    public void removeAfter(final long lastIndexKept) {
+        long removed = 0;
+        for (int i = this.entries.size() - 1; i >= 0; i--) {
+            final LogEntry entry = this.entries.get(i);
+            if (entry.getId().getIndex() <= lastIndexKept) {
+                break;
+            }
+            removed += sizeOf(entry);
+        }
+        this.entries.removeFromLastWhen(entry -> entry.getId().getIndex() > lastIndexKept);
+        addBytes(-removed);
+    }
+
+    public void clear() {
+        this.entries.clear();
+        addBytes(-this.bytes);
+        this.slab = null;
+    }
+
+    /**
+     * Evicts the oldest logs up to |persistedIndex|(inclusive) while the node or the process is
+     * over budget.
+     */
+    public void evict(final long persistedIndex) {
+        int count = 0;
+        long removed = 0;
+        for (; count < this.entries.size() && isOverBudget(removed); count++) {
+            final LogEntry entry = this.entries.get(count);
+            if (entry.getId().getIndex() > persistedIndex) {
+                break;
+            }
+            removed += sizeOf(entry);
+        }
+        if (count > 0) {
+            this.evictions.add(count);
+            removeFirst(count, removed);
+        }
+    }
+
+    public boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    public long getBytes() {
+        return this.bytes;
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * Returns the bytes cached by all the nodes of the process.
+     */
+    public static long getProcessBytes() {
+        return PROCESS_BYTES.get();
+    }
+
+    public MetricSet metricSet() {
+        return () -> {
+            final Map<String, Metric> gauges = new HashMap<>();
+            gauges.put("bytes", (Gauge<Long>) this::getBytes);
+            gauges.put("process-bytes", (Gauge<Long>) LogEntryCache::getProcessBytes);
+            gauges.put("hits", (Gauge<Long>) this::getHits);
+            gauges.put("misses", (Gauge<Long>) this::getMisses);
+            gauges.put("evictions", (Gauge<Long>) this::getEvictions);
+            return gauges;
+        };
+    }
+
+    @Override
+    public void describe(final Printer out) {
+        out.print("  logCache: ") //
+            .print("bytes=") //
+            .print(this.bytes) //
+            .print(", maxBytes=") //
+            .print(this.maxBytes) //
+            .print(", processBytes=") //
+            .print(getProcessBytes()) //
+            .print(", offHeap=") //
+            .print(this.offHeap) //
+            .print(", hits=") //
+            .print(getHits()) //
+            .print(", misses=") //
+            .print(getMisses()) //
+            .print(", evictions=") //
+            .println(getEvictions());
+    }
+
+    public String descEntries() {
+        final StringBuilder sb = new StringBuilder();
+        boolean wasFirst = true;
+        for (int i = 0; i < this.entries.size(); i++) {
+            LogEntry logEntry = this.entries.get(i);
+            if (!wasFirst) {
+                sb.append(",");
+            } else {
+                wasFirst = false;
+            }
+            sb.append("<id:(").append(logEntry.getId().getTerm()).append(",").append(logEntry.getId().getIndex())
+                .append("),type:").append(logEntry.getType()).append(">");
+        }
+        return sb.toString();
+    }
+
+    private boolean isOverBudget(final long toRemove) {
+        return this.bytes - toRemove > this.maxBytes || PROCESS_BYTES.get() - toRemove > MAX_PROCESS_BYTES;
+    }
+
+    private void removeFirst(final int count, final long removed) {
+        if (count > 0) {
+            this.entries.removeFromFirst(count);
+            addBytes(-removed);
+        }
+    }
+
+    @SuppressWarnings("NonAtomicOperationOnVolatileField")
+    private void addBytes(final long delta) {
+        if (delta != 0) {
+            this.bytes += delta;
+            PROCESS_BYTES.addAndGet(delta);
+        }
+    }
+
+    private ByteBuffer copyOffHeap(final ByteBuffer data) {
+        if (data == null || data.isDirect() || !data.hasRemaining()) {
+            return data;
+        }
+        final int len = data.remaining();
+        if (len > SLAB_SIZE / 4) {
+            // A large log gets a buffer on its own, not to waste the rest of a slab.
+            final ByteBuffer buf = ByteBuffer.allocateDirect(len);
+            buf.put(data.duplicate());
+            buf.flip();
+            return buf;
+        }
+        if (this.slab == null || this.slab.remaining() < len) {
+            this.slab = ByteBuffer.allocateDirect(SLAB_SIZE);
+        }
+        final int pos = this.slab.position();
+        this.slab.put(data.duplicate());
+        final ByteBuffer buf = this.slab.duplicate();
+        buf.position(pos);
+        buf.limit(pos + len);
+        return buf.slice();
+    }
+
+    /**
+     * The bytes of a cached log, the capacity of its data rather than the remaining bytes, as the
+     * state machine and the replicators read the data through its position, so that the same log is
+     * always accounted the same when it's added and removed.
+     */
+    private static long sizeOf(final LogEntry entry) {
+        return entry.getData() != null ? entry.getData().capacity() : 0;
+    }
+}
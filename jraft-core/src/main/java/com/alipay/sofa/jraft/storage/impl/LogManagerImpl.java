@@ -50,19 +50,16 @@ import com.alipay.sofa.jraft.option.RaftOptions;
 import com.alipay.sofa.jraft.storage.LogManager;
 import com.alipay.sofa.jraft.storage.LogStorage;
 import com.alipay.sofa.jraft.util.ArrayDeque;
-import com.alipay.sofa.jraft.util.DisruptorBuilder;
 import com.alipay.sofa.jraft.util.DisruptorMetricSet;
+import com.alipay.sofa.jraft.util.GroupedEvent;
+import com.alipay.sofa.jraft.util.GroupedEventHandler;
 import com.alipay.sofa.jraft.util.LogExceptionHandler;
-import com.alipay.sofa.jraft.util.NamedThreadFactory;
 import com.alipay.sofa.jraft.util.Requires;
-import com.alipay.sofa.jraft.util.SegmentList;
+import com.alipay.sofa.jraft.util.StripedDisruptor;
+import com.alipay.sofa.jraft.util.StripedDisruptor.Subscription;
 import com.alipay.sofa.jraft.util.Utils;
 import com.lmax.disruptor.EventFactory;
-import com.lmax.disruptor.EventHandler;
-import com.lmax.disruptor.RingBuffer;
 import com.lmax.disruptor.TimeoutBlockingWaitStrategy;
-import com.lmax.disruptor.dsl.Disruptor;
-import com.lmax.disruptor.dsl.ProducerType;
 
 /**
  * LogManager implementation.
@@ -87,13 +84,14 @@ public class LogManagerImpl implements LogManager {
     private long                                             nextWaitId            = 1;
     private LogId                                            diskId                = new LogId(0, 0);
     private LogId                                            appliedId             = new LogId(0, 0);
-    private final SegmentList<LogEntry>                      logsInMemory          = new SegmentList<>(true);
+    private LogEntryCache                                    logsInMemory;
     private volatile long                                    firstLogIndex;
     private volatile long                                    lastLogIndex;
     private volatile LogId                                   lastSnapshotId        = new LogId(0, 0);
     private final Map<Long, WaitMeta>                        waitMap               = new HashMap<>();
-    private Disruptor<StableClosureEvent>                    disruptor;
-    private RingBuffer<StableClosureEvent>                   diskQueue;
+    private StripedDisruptor<StableClosureEvent>             disruptor;
+    private boolean                                          sharedDisruptor;
+    private Subscription<StableClosureEvent>                 diskQueue;
     private RaftOptions                                      raftOptions;
     private volatile CountDownLatch                          shutDownLatch;
     private NodeMetrics                                      nodeMetrics;
@@ -108,7 +106,7 @@ public class LogManagerImpl implements LogManager {
         LAST_LOG_ID // get last log id
     }
 
-    private static class StableClosureEvent {
+    public static class StableClosureEvent extends GroupedEvent {
         StableClosure done;
         EventType     type;
 
@@ -118,7 +116,7 @@ public class LogManagerImpl implements LogManager {
         }
     }
 
-    private static class StableClosureEventFactory implements EventFactory<StableClosureEvent> {
+    public static class StableClosureEventFactory implements EventFactory<StableClosureEvent> {
 
         @Override
         public StableClosureEvent newInstance() {
@@ -173,6 +171,8 @@ public class LogManagerImpl implements LogManager {
             this.nodeMetrics = opts.getNodeMetrics();
             this.logStorage = opts.getLogStorage();
             this.configManager = opts.getConfigurationManager();
+            this.logsInMemory = new LogEntryCache(this.raftOptions.getMaxLogCacheBytes(),
+                this.raftOptions.isLogCacheOffHeap());
 
             LogStorageOptions lsOpts = new LogStorageOptions();
             lsOpts.setGroupId(opts.getGroupId());
@@ -187,24 +187,26 @@ public class LogManagerImpl implements LogManager {
             this.lastLogIndex = this.logStorage.getLastLogIndex();
             this.diskId = new LogId(this.lastLogIndex, getTermFromLogStorage(this.lastLogIndex));
             this.fsmCaller = opts.getFsmCaller();
-            this.disruptor = DisruptorBuilder.<StableClosureEvent> newInstance() //
-                    .setEventFactory(new StableClosureEventFactory()) //
-                    .setRingBufferSize(opts.getDisruptorBufferSize()) //
-                    .setThreadFactory(new NamedThreadFactory("JRaft-LogManager-Disruptor-", true)) //
-                    .setProducerType(ProducerType.MULTI) //
+            this.sharedDisruptor = opts.getDisruptor() != null;
+            if (this.sharedDisruptor) {
+                this.disruptor = opts.getDisruptor();
+            } else {
+                this.disruptor = new StripedDisruptor<>("JRaft-LogManager-Disruptor-", 1,
+                    opts.getDisruptorBufferSize(), new StableClosureEventFactory(),
                     /*
                      *  Use timeout strategy in log manager. If timeout happens, it will called reportError to halt the node.
                      */
-                    .setWaitStrategy(new TimeoutBlockingWaitStrategy(
-                        this.raftOptions.getDisruptorPublishEventWaitTimeoutSecs(), TimeUnit.SECONDS)) //
-                    .build();
-            this.disruptor.handleEventsWith(new StableClosureEventHandler());
-            this.disruptor.setDefaultExceptionHandler(new LogExceptionHandler<Object>(this.getClass().getSimpleName(),
+                    () -> new TimeoutBlockingWaitStrategy(this.raftOptions.getDisruptorPublishEventWaitTimeoutSecs(),
+                        TimeUnit.SECONDS));
+            }
+            this.diskQueue = this.disruptor.subscribe(this.groupId, opts.getSchedulingWeight(),
+                new StableClosureEventHandler(), new LogExceptionHandler<Object>(this.getClass().getSimpleName(),
                     (event, ex) -> reportError(-1, "LogManager handle event error")));
-            this.diskQueue = this.disruptor.start();
             if (this.nodeMetrics.getMetricRegistry() != null) {
                 this.nodeMetrics.getMetricRegistry().register("jraft-log-manager-disruptor",
-                    new DisruptorMetricSet(this.diskQueue));
+                    new DisruptorMetricSet(this.diskQueue.getRingBuffer()));
+                this.nodeMetrics.getMetricRegistry().register("jraft-log-manager-disruptor-group", this.diskQueue);
+                this.nodeMetrics.getMetricRegistry().register("jraft-log-cache", this.logsInMemory.metricSet());
             }
         } finally {
             this.writeLock.unlock();
@@ -234,7 +236,17 @@ public class LogManagerImpl implements LogManager {
             return;
         }
         this.shutDownLatch.await();
-        this.disruptor.shutdown();
+        this.diskQueue.unsubscribe();
+        if (!this.sharedDisruptor) {
+            this.disruptor.shutdown();
+        }
+        // Give the bytes back to the process budget.
+        this.writeLock.lock();
+        try {
+            this.logsInMemory.clear();
+        } finally {
+            this.writeLock.unlock();
+        }
     }
 
     @Override
@@ -259,7 +271,7 @@ public class LogManagerImpl implements LogManager {
     private void clearMemoryLogs(final LogId id) {
         this.writeLock.lock();
         try {
-            this.logsInMemory.removeFromFirstWhen(entry -> entry.getId().compareTo(id) <= 0);
+            this.logsInMemory.removeUpTo(id);
         } finally {
             this.writeLock.unlock();
         }
@@ -334,6 +346,7 @@ public class LogManagerImpl implements LogManager {
             if (!entries.isEmpty()) {
                 done.setFirstLogIndex(entries.get(0).getId().getIndex());
                 this.logsInMemory.addAll(entries);
+                this.logsInMemory.evict(this.diskId.getIndex());
             }
             done.setEntries(entries);
 
@@ -492,7 +505,7 @@ public class LogManagerImpl implements LogManager {
         }
     }
 
-    private class StableClosureEventHandler implements EventHandler<StableClosureEvent> {
+    private class StableClosureEventHandler implements GroupedEventHandler<StableClosureEvent> {
         LogId               lastId  = LogManagerImpl.this.diskId;
         List<StableClosure> storage = new ArrayList<>(256);
         AppendBatcher       ab      = new AppendBatcher(this.storage, 256, new ArrayList<>(),
@@ -565,11 +578,16 @@ public class LogManagerImpl implements LogManager {
                 }
             }
             if (endOfBatch) {
-                this.lastId = this.ab.flush();
-                setDiskId(this.lastId);
+                onBatchEnd();
             }
         }
 
+        @Override
+        public void onBatchEnd() {
+            this.lastId = this.ab.flush();
+            setDiskId(this.lastId);
+        }
+
     }
 
     private void reportError(final int code, final String fmt, final Object... args) {
@@ -590,6 +608,8 @@ public class LogManagerImpl implements LogManager {
                 return;
             }
             this.diskId = id;
+            // The logs persisted now can be evicted.
+            this.logsInMemory.evict(id.getIndex());
             clearId = this.diskId.compareTo(this.appliedId) <= 0 ? this.diskId : this.appliedId;
         } finally {
             this.writeLock.unlock();
@@ -723,36 +743,8 @@ public class LogManagerImpl implements LogManager {
         }
     }
 
-    private String descLogsInMemory() {
-        final StringBuilder sb = new StringBuilder();
-        boolean wasFirst = true;
-        for (int i = 0; i < this.logsInMemory.size(); i++) {
-            LogEntry logEntry = this.logsInMemory.get(i);
-            if (!wasFirst) {
-                sb.append(",");
-            } else {
-                wasFirst = false;
-            }
-            sb.append("<id:(").append(logEntry.getId().getTerm()).append(",").append(logEntry.getId().getIndex())
-                .append("),type:").append(logEntry.getType()).append(">");
-        }
-        return sb.toString();
-    }
-
     protected LogEntry getEntryFromMemory(final long index) {
-        LogEntry entry = null;
-        if (!this.logsInMemory.isEmpty()) {
-            final long firstIndex = this.logsInMemory.peekFirst().getId().getIndex();
-            final long lastIndex = this.logsInMemory.peekLast().getId().getIndex();
-            if (lastIndex - firstIndex + 1 != this.logsInMemory.size()) {
-                throw new IllegalStateException(String.format("lastIndex=%d,firstIndex=%d,logsInMemory=[%s]",
-                    lastIndex, firstIndex, descLogsInMemory()));
-            }
-            if (index >= firstIndex && index <= lastIndex) {
-                entry = this.logsInMemory.get((int) (index - firstIndex));
-            }
-        }
-        return entry;
+        return this.logsInMemory.get(index);
     }
 
     @Override
@@ -784,6 +776,74 @@ public class LogManagerImpl implements LogManager {
         return entry;
     }
 
+    @Override
+    public List<LogEntry> getEntries(final long firstIndex, final int maxCount, final long maxBytes) {
+        final List<LogEntry> entries = new ArrayList<>(Math.min(maxCount, 64));
+        // The logs in memory are the tail of the range, collect them under the same lock.
+        final List<LogEntry> memEntries = new ArrayList<>();
+        long lastIndex;
+        this.readLock.lock();
+        try {
+            if (maxCount <= 0 || firstIndex > this.lastLogIndex || firstIndex < this.firstLogIndex) {
+                return entries;
+            }
+            lastIndex = Math.min(this.lastLogIndex, firstIndex + maxCount - 1);
+            for (long index = lastIndex; index >= firstIndex; index--) {
+                final LogEntry entry = getEntryFromMemory(index);
+                if (entry == null) {
+                    break;
+                }
+                memEntries.add(entry);
+            }
+            lastIndex -= memEntries.size();
+        } finally {
+            this.readLock.unlock();
+        }
+        Collections.reverse(memEntries);
+
+        long bytes = 0;
+        if (lastIndex >= firstIndex) {
+            final List<LogEntry> stored = this.logStorage.getEntries(firstIndex, (int) (lastIndex - firstIndex + 1),
+                maxBytes);
+            if (stored.isEmpty()) {
+                reportError(RaftError.EIO.getNumber(), "Corrupted entry at index=%d, not found", firstIndex);
+                return entries;
+            }
+            for (final LogEntry entry : stored) {
+                // Validate checksum
+                if (this.raftOptions.isEnableLogEntryChecksum() && entry.isCorrupted()) {
+                    final String msg = String.format(
+                        "Corrupted entry at index=%d, term=%d, expectedChecksum=%d, realChecksum=%d", entry.getId()
+                            .getIndex(), entry.getId().getTerm(), entry.getChecksum(), entry.checksum());
+                    reportError(RaftError.EIO.getNumber(), msg);
+                    if (entries.isEmpty()) {
+                        throw new LogEntryCorruptedException(msg);
+                    }
+                    // Returns the good ones, the next read reports the corrupted one.
+                    return entries;
+                }
+                entries.add(entry);
+                bytes += sizeOf(entry);
+            }
+            if (entries.size() < lastIndex - firstIndex + 1) {
+                // Stopped by maxBytes or by a log not found, don't leave a gap.
+                return entries;
+            }
+        }
+        for (final LogEntry entry : memEntries) {
+            if (bytes >= maxBytes) {
+                break;
+            }
+            entries.add(entry);
+            bytes += sizeOf(entry);
+        }
+        return entries;
+    }
+
+    private static long sizeOf(final LogEntry entry) {
+        return entry.getData() != null ? entry.getData().remaining() : 0;
+    }
+
     @Override
     public long getTerm(final long index) {
         if (index == 0) {
@@ -973,7 +1033,7 @@ public class LogManagerImpl implements LogManager {
 
     private boolean truncatePrefix(final long firstIndexKept, final Lock lock) {
 
-        this.logsInMemory.removeFromFirstWhen(entry -> entry.getId().getIndex() < firstIndexKept);
+        this.logsInMemory.removeBefore(firstIndexKept);
 
         // TODO  maybe it's fine here
         Requires.requireTrue(firstIndexKept >= this.firstLogIndex,
@@ -1016,7 +1076,7 @@ public class LogManagerImpl implements LogManager {
             return;
         }
 
-        this.logsInMemory.removeFromLastWhen(entry -> entry.getId().getIndex() > lastIndexKept);
+        this.logsInMemory.removeAfter(lastIndexKept);
 
         this.lastLogIndex = lastIndexKept;
         final long lastTermKept = unsafeGetTerm(lastIndexKept);
@@ -1230,5 +1290,6 @@ public class LogManagerImpl implements LogManager {
             .println(_appliedId);
         out.print("  lastSnapshotId: ") //
             .println(_lastSnapshotId);
+        this.logsInMemory.describe(out);
     }
 }
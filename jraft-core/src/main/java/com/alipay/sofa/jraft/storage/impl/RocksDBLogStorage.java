@@ -462,6 +462,46 @@ public class RocksDBLogStorage implements LogStorage, Describer {
         return null;
     }
 
+    @Override
+    public List<LogEntry> getEntries(final long firstIndex, final int maxCount, final long maxBytes) {
+        final List<LogEntry> entries = new ArrayList<>(Math.min(maxCount, 64));
+        this.readLock.lock();
+        try {
+            if (this.hasLoadFirstLogIndex && firstIndex < this.firstLogIndex) {
+                return entries;
+            }
+            checkState();
+            long bytes = 0;
+            long index = firstIndex;
+            try (final RocksIterator it = this.db.newIterator(this.defaultHandle, this.totalOrderReadOptions)) {
+                it.seek(getKeyBytes(firstIndex));
+                while (it.isValid() && entries.size() < maxCount && bytes < maxBytes) {
+                    if (Bits.getLong(it.key(), 0) != index) {
+                        break;
+                    }
+                    final byte[] bs = onDataGet(index, it.value());
+                    final LogEntry entry = bs != null ? this.logEntryDecoder.decode(bs) : null;
+                    if (entry == null) {
+                        if (bs != null) {
+                            LOG.error("Bad log entry format for index={}, the log data is: {}.", index,
+                                BytesUtil.toHex(bs));
+                        }
+                        break;
+                    }
+                    entries.add(entry);
+                    bytes += entry.getData() != null ? entry.getData().remaining() : 0;
+                    index++;
+                    it.next();
+                }
+            }
+        } catch (final IOException e) {
+            LOG.error("Fail to get log entries from index {} in data path: {}.", firstIndex, this.path, e);
+        } finally {
+            this.readLock.unlock();
+        }
+        return entries;
+    }
+
     @OnlyForTest
     LogEntry getEntryFromDB(final long index) throws IOException, RocksDBException {
       final byte[] keyBytes = getKeyBytes(index);
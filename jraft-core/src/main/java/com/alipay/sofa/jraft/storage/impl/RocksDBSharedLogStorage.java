@@ -0,0 +1,504 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.storage.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alipay.sofa.jraft.Quorum;
+import com.alipay.sofa.jraft.conf.Configuration;
+import com.alipay.sofa.jraft.conf.ConfigurationEntry;
+import com.alipay.sofa.jraft.conf.ConfigurationManager;
+import com.alipay.sofa.jraft.entity.EnumOutter.EntryType;
+import com.alipay.sofa.jraft.entity.LogEntry;
+import com.alipay.sofa.jraft.entity.LogId;
+import com.alipay.sofa.jraft.entity.codec.LogEntryDecoder;
+import com.alipay.sofa.jraft.entity.codec.LogEntryEncoder;
+import com.alipay.sofa.jraft.option.LogStorageOptions;
+import com.alipay.sofa.jraft.option.RaftOptions;
+import com.alipay.sofa.jraft.storage.LogStorage;
+import com.alipay.sofa.jraft.util.Bits;
+import com.alipay.sofa.jraft.util.BytesUtil;
+import com.alipay.sofa.jraft.util.Describer;
+import com.alipay.sofa.jraft.util.Requires;
+import com.alipay.sofa.jraft.util.ThreadPoolsFactory;
+import com.alipay.sofa.jraft.util.Utils;
+
+/**
+ * Log storage of one node in a {@link SharedRocksDBLog}. Many groups on a disk then share one
+ * write-ahead log and one sync per group commit, instead of one rocksdb and one sync stream
+ * each.
+ *
+ * <p>The log is identified by its name, the log uri of the node, so the peers of one group
+ * hosted in the same process don't collide.
+ */
+public class RocksDBSharedLogStorage implements LogStorage, Describer {
+
+    private static final Logger LOG               = LoggerFactory.getLogger(RocksDBSharedLogStorage.class);
+
+    /**
+     * First log index key suffix in configuration column family.
+     */
+    private static final byte[] FIRST_LOG_IDX_KEY = Utils.getBytes("meta/firstLogIndex");
+
+    private final String        sharedPath;
+    private final String        name;
+    private final RaftOptions   raftOptions;
+    private String              groupId;
+    private SharedRocksDBLog    sharedLog;
+    private long                tag;
+    private final ReadWriteLock readWriteLock     = new ReentrantReadWriteLock();
+    private final Lock          readLock          = this.readWriteLock.readLock();
+    private final Lock          writeLock         = this.readWriteLock.writeLock();
+
+    private volatile long       firstLogIndex     = 1;
+
+    private volatile boolean    hasLoadFirstLogIndex;
+
+    private LogEntryEncoder     logEntryEncoder;
+    private LogEntryDecoder     logEntryDecoder;
+
+    /**
+     * @param sharedPath  path of the shared log
+     * @param name        name of this log in the shared one, unique in the process
+     * @param raftOptions raft options
+     */
+    public RocksDBSharedLogStorage(final String sharedPath, final String name, final RaftOptions raftOptions) {
+        this.sharedPath = sharedPath;
+        this.name = name;
+        this.raftOptions = raftOptions;
+    }
+
+    @Override
+    public boolean init(final LogStorageOptions opts) {
+        Requires.requireNonNull(opts.getConfigurationManager(), "Null conf manager");
+        Requires.requireNonNull(opts.getLogEntryCodecFactory(), "Null log entry codec factory");
+        this.groupId = opts.getGroupId();
+        this.writeLock.lock();
+        try {
+            if (this.sharedLog != null) {
+                LOG.warn("RocksDBSharedLogStorage init() of {} in {} already.", this.name, this.sharedPath);
+                return true;
+            }
+            this.logEntryDecoder = opts.getLogEntryCodecFactory().decoder();
+            this.logEntryEncoder = opts.getLogEntryCodecFactory().encoder();
+            Requires.requireNonNull(this.logEntryDecoder, "Null log entry decoder");
+            Requires.requireNonNull(this.logEntryEncoder, "Null log entry encoder");
+            this.sharedLog = SharedRocksDBLog.acquire(this.sharedPath, this.raftOptions);
+            this.tag = this.sharedLog.getTag(this.name);
+            this.hasLoadFirstLogIndex = false;
+            this.firstLogIndex = 1;
+            load(opts.getConfigurationManager());
+            return true;
+        } catch (final RocksDBException e) {
+            LOG.error("Fail to init RocksDBSharedLogStorage of {} in {}.", this.name, this.sharedPath, e);
+            if (this.sharedLog != null) {
+                this.sharedLog.release();
+                this.sharedLog = null;
+            }
+            return false;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    private void load(final ConfigurationManager confManager) {
+        final RocksDB db = this.sharedLog.getDb();
+        final byte[] firstLogIndexKey = getFirstLogIndexKey();
+        try (final RocksIterator it = db.newIterator(this.sharedLog.getConfHandle(),
+            this.sharedLog.getTotalOrderReadOptions())) {
+            for (it.seek(getKeyBytes(0)); it.isValid() && isOwnKey(it.key()); it.next()) {
+                final byte[] ks = it.key();
+                final byte[] bs = it.value();
+                // LogEntry index
+                if (ks.length == 16) {
+                    final LogEntry entry = this.logEntryDecoder.decode(bs);
+                    if (entry == null) {
+                        LOG.warn("Fail to decode conf entry at index {}, the log data is: {}.", Bits.getLong(ks, 8),
+                            BytesUtil.toHex(bs));
+                    } else if (entry.getType() == EntryType.ENTRY_TYPE_CONFIGURATION && confManager != null) {
+                        confManager.add(toConfigurationEntry(entry));
+                    }
+                } else if (Arrays.equals(firstLogIndexKey, ks)) {
+                    setFirstLogIndex(Bits.getLong(bs, 0));
+                    truncatePrefixInBackground(0L, this.firstLogIndex);
+                } else {
+                    LOG.warn("Unknown entry in configuration storage key={}, value={}.", BytesUtil.toHex(ks),
+                        BytesUtil.toHex(bs));
+                }
+            }
+        }
+    }
+
+    private static ConfigurationEntry toConfigurationEntry(final LogEntry entry) {
+        final ConfigurationEntry confEntry = new ConfigurationEntry();
+        confEntry.setId(new LogId(entry.getId().getIndex(), entry.getId().getTerm()));
+        final Quorum quorum = new Quorum(entry.getQuorum().getW(), entry.getQuorum().getR());
+        confEntry.setConf(new Configuration(entry.getPeers(), entry.getLearners(), quorum, entry.getWriteFactor(),
+            entry.getReadFactor(), entry.getEnableFlexible()));
+        if (entry.getOldPeers() != null) {
+            Quorum oldQuorum = null;
+            if (Objects.nonNull(entry.getOldQuorum())) {
+                oldQuorum = new Quorum(entry.getOldQuorum().getW(), entry.getOldQuorum().getR());
+            }
+            confEntry.setOldConf(new Configuration(entry.getOldPeers(), entry.getOldLearners(), oldQuorum, entry
+                .getOldWriteFactor(), entry.getOldReadFactor(), entry.getEnableFlexible()));
+        }
+        return confEntry;
+    }
+
+    private byte[] getKeyBytes(final long index) {
+        final byte[] ks = new byte[16];
+        Bits.putLong(ks, 0, this.tag);
+        Bits.putLong(ks, 8, index);
+        return ks;
+    }
+
+    /**
+     * Returns the first key past this log, the tag of the next one.
+     */
+    private byte[] getEndKey() {
+        final byte[] ks = new byte[8];
+        Bits.putLong(ks, 0, this.tag + 1);
+        return ks;
+    }
+
+    private byte[] getFirstLogIndexKey() {
+        final byte[] ks = new byte[8 + FIRST_LOG_IDX_KEY.length];
+        Bits.putLong(ks, 0, this.tag);
+        System.arraycopy(FIRST_LOG_IDX_KEY, 0, ks, 8, FIRST_LOG_IDX_KEY.length);
+        return ks;
+    }
+
+    private boolean isOwnKey(final byte[] ks) {
+        return ks.length >= 8 && Bits.getLong(ks, 0) == this.tag;
+    }
+
+    private void setFirstLogIndex(final long index) {
+        this.firstLogIndex = index;
+        this.hasLoadFirstLogIndex = true;
+    }
+
+    private boolean saveFirstLogIndex(final long firstLogIndex) {
+        this.readLock.lock();
+        try {
+            checkState();
+            final byte[] vs = new byte[8];
+            Bits.putLong(vs, 0, firstLogIndex);
+            this.sharedLog.getDb().put(this.sharedLog.getConfHandle(), this.sharedLog.getWriteOptions(),
+                getFirstLogIndexKey(), vs);
+            return true;
+        } catch (final RocksDBException e) {
+            LOG.error("Fail to save first log index {} of {} in {}.", firstLogIndex, this.name, this.sharedPath, e);
+            return false;
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
+    private void checkState() {
+        Requires.requireNonNull(this.sharedLog, "Shared log not initialized or released");
+    }
+
+    @Override
+    public void shutdown() {
+        this.writeLock.lock();
+        try {
+            if (this.sharedLog != null) {
+                this.sharedLog.release();
+                this.sharedLog = null;
+                LOG.info("RocksDBSharedLogStorage of {} released, the shared path is: {}.", this.name,
+                    this.sharedPath);
+            }
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long getFirstLogIndex() {
+        this.readLock.lock();
+        try {
+            if (this.hasLoadFirstLogIndex) {
+                return this.firstLogIndex;
+            }
+            checkState();
+            try (final RocksIterator it = this.sharedLog.getDb().newIterator(this.sharedLog.getDefaultHandle(),
+                this.sharedLog.getTotalOrderReadOptions())) {
+                it.seek(getKeyBytes(0));
+                if (it.isValid() && isOwnKey(it.key())) {
+                    final long ret = Bits.getLong(it.key(), 8);
+                    saveFirstLogIndex(ret);
+                    setFirstLogIndex(ret);
+                    return ret;
+                }
+            }
+            return 1L;
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
+    @Override
+    public long getLastLogIndex() {
+        this.readLock.lock();
+        try {
+            checkState();
+            try (final RocksIterator it = this.sharedLog.getDb().newIterator(this.sharedLog.getDefaultHandle(),
+                this.sharedLog.getTotalOrderReadOptions())) {
+                it.seekForPrev(getKeyBytes(Long.MAX_VALUE));
+                if (it.isValid() && isOwnKey(it.key())) {
+                    return Bits.getLong(it.key(), 8);
+                }
+                return 0L;
+            }
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
+    @Override
+    public LogEntry getEntry(final long index) {
+        this.readLock.lock();
+        try {
+            if (this.hasLoadFirstLogIndex && index < this.firstLogIndex) {
+                return null;
+            }
+            checkState();
+            final byte[] bs = this.sharedLog.getDb().get(this.sharedLog.getDefaultHandle(), getKeyBytes(index));
+            if (bs == null) {
+                return null;
+            }
+            final LogEntry entry = this.logEntryDecoder.decode(bs);
+            if (entry == null) {
+                LOG.error("Bad log entry format for index={}, the log data is: {}.", index, BytesUtil.toHex(bs));
+            }
+            return entry;
+        } catch (final RocksDBException e) {
+            LOG.error("Fail to get log entry at index {} of {} in {}.", index, this.name, this.sharedPath, e);
+        } finally {
+            this.readLock.unlock();
+        }
+        return null;
+    }
+
+    @Override
+    public List<LogEntry> getEntries(final long firstIndex, final int maxCount, final long maxBytes) {
+        final List<LogEntry> entries = new ArrayList<>(Math.min(maxCount, 64));
+        this.readLock.lock();
+        try {
+            if (this.hasLoadFirstLogIndex && firstIndex < this.firstLogIndex) {
+                return entries;
+            }
+            checkState();
+            long bytes = 0;
+            long index = firstIndex;
+            try (final RocksIterator it = this.sharedLog.getDb().newIterator(this.sharedLog.getDefaultHandle(),
+                this.sharedLog.getTotalOrderReadOptions())) {
+                it.seek(getKeyBytes(firstIndex));
+                while (it.isValid() && entries.size() < maxCount && bytes < maxBytes) {
+                    // Stops at the end of this log as well, the next key has another tag.
+                    if (!isOwnKey(it.key()) || Bits.getLong(it.key(), 8) != index) {
+                        break;
+                    }
+                    final byte[] bs = it.value();
+                    final LogEntry entry = this.logEntryDecoder.decode(bs);
+                    if (entry == null) {
+                        LOG.error("Bad log entry format for index={}, the log data is: {}.", index,
+                            BytesUtil.toHex(bs));
+                        break;
+                    }
+                    entries.add(entry);
+                    bytes += entry.getData() != null ? entry.getData().remaining() : 0;
+                    index++;
+                    it.next();
+                }
+            }
+        } finally {
+            this.readLock.unlock();
+        }
+        return entries;
+    }
+
+    @Override
+    public long getTerm(final long index) {
+        final LogEntry entry = getEntry(index);
+        if (entry != null) {
+            return entry.getId().getTerm();
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean appendEntry(final LogEntry entry) {
+        return appendEntries(Collections.singletonList(entry)) == 1;
+    }
+
+    @Override
+    public int appendEntries(final List<LogEntry> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return 0;
+        }
+        this.readLock.lock();
+        try {
+            if (this.sharedLog == null) {
+                LOG.warn("Shared log not initialized or released, log name: {}.", this.name);
+                return 0;
+            }
+            final SharedRocksDBLog.WriteRequest request = new SharedRocksDBLog.WriteRequest();
+            for (final LogEntry entry : entries) {
+                final byte[] ks = getKeyBytes(entry.getId().getIndex());
+                final byte[] content = this.logEntryEncoder.encode(entry);
+                request.put(this.sharedLog.getDefaultHandle(), ks, content);
+                if (entry.getType() == EntryType.ENTRY_TYPE_CONFIGURATION) {
+                    request.put(this.sharedLog.getConfHandle(), ks, content);
+                }
+            }
+            return this.sharedLog.write(request) ? entries.size() : 0;
+        } catch (final InterruptedException e) {
+            LOG.error("Append entries of {} interrupted.", this.name, e);
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean truncatePrefix(final long firstIndexKept) {
+        this.readLock.lock();
+        try {
+            final long startIndex = getFirstLogIndex();
+            final boolean ret = saveFirstLogIndex(firstIndexKept);
+            if (ret) {
+                setFirstLogIndex(firstIndexKept);
+            }
+            truncatePrefixInBackground(startIndex, firstIndexKept);
+            return ret;
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
+    private void truncatePrefixInBackground(final long startIndex, final long firstIndexKept) {
+        // delete logs in background.
+        ThreadPoolsFactory.runInThread(this.groupId, () -> {
+            final long startMs = Utils.monotonicMs();
+            this.readLock.lock();
+            try {
+                final SharedRocksDBLog log = this.sharedLog;
+                if (log == null) {
+                    LOG.warn("Shared log is released while truncating prefixed logs of {}, the range is: [{}, {})",
+                        this.name, startIndex, firstIndexKept);
+                    return;
+                }
+                final byte[] startKey = getKeyBytes(startIndex);
+                final byte[] endKey = getKeyBytes(firstIndexKept);
+                log.getDb().deleteRange(log.getDefaultHandle(), startKey, endKey);
+                log.getDb().deleteRange(log.getConfHandle(), startKey, endKey);
+            } catch (final RocksDBException e) {
+                LOG.error("Fail to truncatePrefix of {}, firstIndexKept={}.", this.name, firstIndexKept, e);
+            } finally {
+                this.readLock.unlock();
+                LOG.info("Truncated prefix logs of {} from log index {} to {}, cost {} ms.", this.name, startIndex,
+                    firstIndexKept, Utils.monotonicMs() - startMs);
+            }
+        });
+    }
+
+    @Override
+    public boolean truncateSuffix(final long lastIndexKept) {
+        this.readLock.lock();
+        try {
+            checkState();
+            final RocksDB db = this.sharedLog.getDb();
+            final byte[] startKey = getKeyBytes(lastIndexKept + 1);
+            final byte[] endKey = getKeyBytes(getLastLogIndex() + 1);
+            db.deleteRange(this.sharedLog.getDefaultHandle(), this.sharedLog.getWriteOptions(), startKey, endKey);
+            db.deleteRange(this.sharedLog.getConfHandle(), this.sharedLog.getWriteOptions(), startKey, endKey);
+            return true;
+        } catch (final RocksDBException e) {
+            LOG.error("Fail to truncateSuffix {} of {}.", lastIndexKept, this.name, e);
+        } finally {
+            this.readLock.unlock();
+        }
+        return false;
+    }
+
+    @Override
+    public boolean reset(final long nextLogIndex) {
+        if (nextLogIndex <= 0) {
+            throw new IllegalArgumentException("Invalid next log index.");
+        }
+        this.writeLock.lock();
+        try {
+            checkState();
+            LogEntry entry = getEntry(nextLogIndex);
+            // drop the whole log, the first log index key included
+            final RocksDB db = this.sharedLog.getDb();
+            db.deleteRange(this.sharedLog.getDefaultHandle(), this.sharedLog.getWriteOptions(), getKeyBytes(0),
+                getEndKey());
+            db.deleteRange(this.sharedLog.getConfHandle(), this.sharedLog.getWriteOptions(), getKeyBytes(0),
+                getEndKey());
+            this.hasLoadFirstLogIndex = false;
+            this.firstLogIndex = 1;
+            if (entry == null) {
+                entry = new LogEntry();
+                entry.setType(EntryType.ENTRY_TYPE_NO_OP);
+                entry.setId(new LogId(nextLogIndex, 0));
+                LOG.warn("Entry not found for nextLogIndex {} when reset log {}.", nextLogIndex, this.name);
+            }
+            return appendEntry(entry);
+        } catch (final RocksDBException e) {
+            LOG.error("Fail to reset next log index of {}.", this.name, e);
+            return false;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void describe(final Printer out) {
+        this.readLock.lock();
+        try {
+            out.print("  name: ") //
+                .println(this.name);
+            out.print("  tag: ") //
+                .println(this.tag);
+            if (this.sharedLog != null) {
+                out.print("  sharedLog: ") //
+                    .println(this.sharedLog);
+                out.print("  pendingRequests: ") //
+                    .println(this.sharedLog.getPendingRequests());
+            }
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+}
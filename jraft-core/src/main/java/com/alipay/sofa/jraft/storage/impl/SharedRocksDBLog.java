@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.storage.impl;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.rocksdb.BlockBasedTableConfig;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
+import org.rocksdb.DBOptions;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alipay.sofa.jraft.option.RaftOptions;
+import com.alipay.sofa.jraft.util.Bits;
+import com.alipay.sofa.jraft.util.NamedThreadFactory;
+import com.alipay.sofa.jraft.util.StorageOptionsFactory;
+import com.alipay.sofa.jraft.util.SystemPropertyUtil;
+import com.alipay.sofa.jraft.util.Utils;
+
+/**
+ * One rocksdb write-ahead log shared by the {@link RocksDBSharedLogStorage}s of a process on a
+ * disk. Keys are the 8 bytes tag allotted to each log, followed by the log index, and the
+ * appends of all the logs are merged by a group-commit thread into one write and one sync.
+ *
+ * <p>Opened by the first {@link #acquire} of a path, closed by the last {@link #release}.
+ */
+public final class SharedRocksDBLog {
+
+    private static final Logger                        LOG             = LoggerFactory
+                                                                           .getLogger(SharedRocksDBLog.class);
+
+    /**
+     * Max number of append requests merged into one write.
+     */
+    public static final int                            MAX_GROUP_COMMIT = SystemPropertyUtil.getInt(
+                                                                           "jraft.shared_log.max_group_commit", 256);
+
+    private static final Map<String, SharedRocksDBLog> LOGS            = new HashMap<>();
+
+    static {
+        RocksDB.loadLibrary();
+    }
+
+    /**
+     * The entries of one {@code appendEntries}, written and synced along the requests of the
+     * other logs.
+     */
+    public static final class WriteRequest {
+        private final List<ColumnFamilyHandle>  handles = new ArrayList<>();
+        private final List<byte[]>              keys    = new ArrayList<>();
+        private final List<byte[]>              values  = new ArrayList<>();
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        public void put(final ColumnFamilyHandle handle, final byte[] key, final byte[] value) {
+            this.handles.add(handle);
+            this.keys.add(key);
+            this.values.add(value);
+        }
+
+        public boolean isEmpty() {
+            return this.keys.isEmpty();
+        }
+
+        private void fill(final WriteBatch batch) throws RocksDBException {
+            for (int i = 0; i < this.keys.size(); i++) {
+                batch.put(this.handles.get(i), this.keys.get(i), this.values.get(i));
+            }
+        }
+    }
+
+    private final String                     path;
+    private final boolean                    sync;
+    private int                              refs;
+    private RocksDB                          db;
+    private DBOptions                        dbOptions;
+    private ColumnFamilyOptions              cfOptions;
+    private WriteOptions                     writeOptions;
+    private ReadOptions                      totalOrderReadOptions;
+    private ColumnFamilyHandle               defaultHandle;
+    private ColumnFamilyHandle               confHandle;
+    // log name -> tag
+    private ColumnFamilyHandle               tagHandle;
+    private long                             maxTag;
+    private final BlockingQueue<WriteRequest> requests = new LinkedBlockingQueue<>();
+    private Thread                           committer;
+    private volatile boolean                 stopped;
+
+    /**
+     * Returns the shared log of |path|, opening it on first use. The sync option of the first
+     * caller applies to every log.
+     */
+    public static synchronized SharedRocksDBLog acquire(final String path, final RaftOptions raftOptions)
+                                                                                                      throws RocksDBException {
+        final String key = new File(path).getAbsolutePath();
+        SharedRocksDBLog log = LOGS.get(key);
+        if (log == null) {
+            log = new SharedRocksDBLog(key, raftOptions.isSync());
+            log.open();
+            LOGS.put(key, log);
+        }
+        log.refs++;
+        return log;
+    }
+
+    /**
+     * Releases a reference taken by {@link #acquire}, the last one closes the log.
+     */
+    public void release() {
+        synchronized (SharedRocksDBLog.class) {
+            if (--this.refs > 0) {
+                return;
+            }
+            LOGS.remove(this.path);
+        }
+        close();
+    }
+
+    private SharedRocksDBLog(final String path, final boolean sync) {
+        this.path = path;
+        this.sync = sync;
+    }
+
+    private void open() throws RocksDBException {
+        final File dir = new File(this.path);
+        if (dir.exists() && !dir.isDirectory()) {
+            throw new IllegalStateException("Invalid log path, it's a regular file: " + this.path);
+        }
+        this.dbOptions = StorageOptionsFactory.getRocksDBOptions(null, SharedRocksDBLog.class);
+        final BlockBasedTableConfig tConfig = StorageOptionsFactory.getRocksDBTableFormatConfig(null,
+            SharedRocksDBLog.class);
+        this.cfOptions = StorageOptionsFactory.getRocksDBColumnFamilyOptions(null, SharedRocksDBLog.class) //
+            .useFixedLengthPrefixExtractor(8) //
+            .setTableFormatConfig(tConfig);
+        this.writeOptions = new WriteOptions();
+        this.writeOptions.setSync(this.sync);
+        this.totalOrderReadOptions = new ReadOptions();
+        this.totalOrderReadOptions.setTotalOrderSeek(true);
+
+        final List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+        descriptors.add(new ColumnFamilyDescriptor("Configuration".getBytes(), this.cfOptions));
+        descriptors.add(new ColumnFamilyDescriptor("Tags".getBytes(), this.cfOptions));
+        descriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, this.cfOptions));
+        final List<ColumnFamilyHandle> handles = new ArrayList<>();
+        this.db = RocksDB.open(this.dbOptions, this.path, descriptors, handles);
+        this.confHandle = handles.get(0);
+        this.tagHandle = handles.get(1);
+        this.defaultHandle = handles.get(2);
+
+        try (final RocksIterator it = this.db.newIterator(this.tagHandle, this.totalOrderReadOptions)) {
+            for (it.seekToFirst(); it.isValid(); it.next()) {
+                this.maxTag = Math.max(this.maxTag, Bits.getLong(it.value(), 0));
+            }
+        }
+        this.committer = new NamedThreadFactory("JRaft-SharedLog-Committer-", true).newThread(this::runCommitter);
+        this.committer.start();
+        LOG.info("Shared log opened in {}, sync={}.", this.path, this.sync);
+    }
+
+    private void close() {
+        this.stopped = true;
+        try {
+            this.committer.join();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.confHandle.close();
+        this.tagHandle.close();
+        this.defaultHandle.close();
+        this.db.close();
+        this.cfOptions.close();
+        this.dbOptions.close();
+        this.writeOptions.close();
+        this.totalOrderReadOptions.close();
+        LOG.info("Shared log closed in {}.", this.path);
+    }
+
+    /**
+     * Returns the tag of the log |name|, allotting one on first use.
+     */
+    public synchronized long getTag(final String name) throws RocksDBException {
+        final byte[] key = Utils.getBytes(name);
+        final byte[] value = this.db.get(this.tagHandle, key);
+        if (value != null) {
+            return Bits.getLong(value, 0);
+        }
+        final byte[] tag = new byte[8];
+        Bits.putLong(tag, 0, ++this.maxTag);
+        this.db.put(this.tagHandle, this.writeOptions, key, tag);
+        return this.maxTag;
+    }
+
+    /**
+     * Queues |request| for the next group commit and waits for it.
+     *
+     * @return true when the request is written, and synced if the log is
+     */
+    public boolean write(final WriteRequest request) throws InterruptedException {
+        if (request.isEmpty()) {
+            return true;
+        }
+        if (this.stopped) {
+            LOG.warn("Shared log in {} is closed.", this.path);
+            return false;
+        }
+        this.requests.add(request);
+        try {
+            return request.future.get();
+        } catch (final ExecutionException e) {
+            LOG.error("Fail to write shared log in {}.", this.path, e.getCause());
+            return false;
+        }
+    }
+
+    private void runCommitter() {
+        final List<WriteRequest> batch = new ArrayList<>(MAX_GROUP_COMMIT);
+        while (!this.stopped || !this.requests.isEmpty()) {
+            try {
+                final WriteRequest first = this.requests.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                this.requests.drainTo(batch, MAX_GROUP_COMMIT - 1);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            boolean ok = true;
+            try (final WriteBatch writeBatch = new WriteBatch()) {
+                for (final WriteRequest request : batch) {
+                    request.fill(writeBatch);
+                }
+                this.db.write(this.writeOptions, writeBatch);
+            } catch (final RocksDBException e) {
+                LOG.error("Fail to group commit {} requests in {}.", batch.size(), this.path, e);
+                ok = false;
+            }
+            for (final WriteRequest request : batch) {
+                request.future.complete(ok);
+            }
+            batch.clear();
+        }
+        WriteRequest request;
+        while ((request = this.requests.poll()) != null) {
+            request.future.complete(false);
+        }
+    }
+
+    public String getPath() {
+        return this.path;
+    }
+
+    public RocksDB getDb() {
+        return this.db;
+    }
+
+    public WriteOptions getWriteOptions() {
+        return this.writeOptions;
+    }
+
+    public ReadOptions getTotalOrderReadOptions() {
+        return this.totalOrderReadOptions;
+    }
+
+    public ColumnFamilyHandle getDefaultHandle() {
+        return this.defaultHandle;
+    }
+
+    public ColumnFamilyHandle getConfHandle() {
+        return this.confHandle;
+    }
+
+    public int getPendingRequests() {
+        return this.requests.size();
+    }
+
+    @Override
+    public String toString() {
+        return "SharedRocksDBLog{path=" + this.path + ", sync=" + this.sync + ", refs=" + this.refs + '}';
+    }
+}
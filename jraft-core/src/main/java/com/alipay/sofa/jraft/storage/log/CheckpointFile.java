@@ -43,22 +43,32 @@ public class CheckpointFile {
         public String segFilename;
         // Segment file current commit position.
         public int    committedPos;
+        // First log index of the log, 0 when unknown.
+        public long   firstLogIndex;
 
         public Checkpoint(final String segFilename, final int committedPos) {
+            this(segFilename, committedPos, 0);
+        }
+
+        public Checkpoint(final String segFilename, final int committedPos, final long firstLogIndex) {
             super();
             this.segFilename = segFilename;
             this.committedPos = committedPos;
+            this.firstLogIndex = firstLogIndex;
         }
 
         /**
-         * commitPos (4 bytes) + path(4 byte len + string bytes)
+         * commitPos (4 bytes) + path(4 byte len + string bytes) + firstLogIndex (8 bytes, optional)
          */
         byte[] encode() {
             byte[] ps = AsciiStringUtil.unsafeEncode(this.segFilename);
-            byte[] bs = new byte[8 + ps.length];
+            byte[] bs = new byte[8 + ps.length + (this.firstLogIndex > 0 ? 8 : 0)];
             Bits.putInt(bs, 0, this.committedPos);
             Bits.putInt(bs, 4, ps.length);
             System.arraycopy(ps, 0, bs, 8, ps.length);
+            if (this.firstLogIndex > 0) {
+                Bits.putLong(bs, 8 + ps.length, this.firstLogIndex);
+            }
             return bs;
         }
 
@@ -69,12 +79,16 @@ public class CheckpointFile {
             this.committedPos = Bits.getInt(bs, 0);
             int len = Bits.getInt(bs, 4);
             this.segFilename = AsciiStringUtil.unsafeDecode(bs, 8, len);
-            return this.committedPos >= 0 && !this.segFilename.isEmpty();
+            if (bs.length >= 8 + len + 8) {
+                this.firstLogIndex = Bits.getLong(bs, 8 + len);
+            }
+            return this.committedPos >= 0 && (!this.segFilename.isEmpty() || this.firstLogIndex > 0);
         }
 
         @Override
         public String toString() {
-            return "Checkpoint [segFilename=" + this.segFilename + ", committedPos=" + this.committedPos + "]";
+            return "Checkpoint [segFilename=" + this.segFilename + ", committedPos=" + this.committedPos
+                   + ", firstLogIndex=" + this.firstLogIndex + "]";
         }
     }
 
@@ -412,6 +412,8 @@ public class SegmentFile implements Lifecycle<SegmentFileOptions> {
             final int oldPos = this.wrotePos;
             clear(wrotePos, sync);
             this.wrotePos = wrotePos;
+            // The next sync must flush the records rewritten from here.
+            this.committedPos = Math.min(this.committedPos, wrotePos);
             this.lastLogIndex = logIndex;
             BufferUtils.position(this.buffer, wrotePos);
             LOG.info(
@@ -825,7 +827,34 @@ public class SegmentFile implements Lifecycle<SegmentFileOptions> {
         }
     }
 
-    private void swapInIfNeed() {
+    /**
+     * Returns the position of the record following the one at |pos|, or -1 when there is no
+     * complete committed record at |pos|.
+     *
+     * @param pos the record position
+     * @return the next record position
+     */
+    int nextRecordPos(final int pos) {
+        swapInIfNeed();
+        this.readLock.lock();
+        try {
+            if (pos < HEADER_SIZE || pos + RECORD_MAGIC_BYTES_SIZE + RECORD_DATA_LENGTH_SIZE > this.committedPos) {
+                return -1;
+            }
+            for (int i = 0; i < RECORD_MAGIC_BYTES_SIZE; i++) {
+                if (this.buffer.get(pos + i) != RECORD_MAGIC_BYTES[i]) {
+                    return -1;
+                }
+            }
+            final int dataLen = this.buffer.getInt(pos + RECORD_MAGIC_BYTES_SIZE);
+            final int nextPos = pos + RECORD_MAGIC_BYTES_SIZE + RECORD_DATA_LENGTH_SIZE + dataLen;
+            return dataLen < 0 || nextPos > this.committedPos ? -1 : nextPos;
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
+    void swapInIfNeed() {
         if (this.swappedOut) {
             swapIn();
         }
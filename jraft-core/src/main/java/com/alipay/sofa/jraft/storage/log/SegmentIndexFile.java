@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.storage.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alipay.sofa.jraft.util.Utils;
+
+/**
+ * A sparse offset index of a {@link SegmentFile}, memory mapped. The content format is:
+ * <pre>
+ *   magic bytes     interval
+ *   [0x30 0x30]    [4 bytes]
+ *
+ *   [slot, slot, ...]
+ * </pre>
+ *
+ * Slot k is the 4 bytes position in the segment of the log firstLogIndex + k * interval, 0 when
+ * it's not indexed yet. The index is only a cache of the segment: slots that are lost or don't
+ * match the segment are rebuilt by scanning its records.
+ */
+public class SegmentIndexFile {
+
+    private static final Logger LOG         = LoggerFactory.getLogger(SegmentIndexFile.class);
+
+    private static final byte   MAGIC       = 0x30;
+    public static final int     HEADER_SIZE = 6;
+    private static final int    SLOT_SIZE   = 4;
+
+    private final String        path;
+    private final int           interval;
+    private final int           slots;
+    private MappedByteBuffer    buffer;
+
+    public SegmentIndexFile(final String path, final int interval, final int slots) {
+        super();
+        this.path = path;
+        this.interval = interval;
+        this.slots = slots;
+    }
+
+    /**
+     * Maps the index file, creating it when it doesn't exist. An index written with another
+     * interval is cleared.
+     */
+    public boolean init() {
+        final boolean exists = new File(this.path).exists();
+        try (FileChannel fc = FileChannel.open(Paths.get(this.path), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            this.buffer = fc.map(MapMode.READ_WRITE, 0, HEADER_SIZE + (long) this.slots * SLOT_SIZE);
+        } catch (final IOException e) {
+            LOG.error("Fail to mmap segment index file {}.", this.path, e);
+            return false;
+        }
+        if (exists && this.buffer.get(0) == MAGIC && this.buffer.get(1) == MAGIC
+            && this.buffer.getInt(2) == this.interval) {
+            return true;
+        }
+        if (exists) {
+            LOG.warn("Segment index file {} has a bad header or another interval, clear it.", this.path);
+        }
+        clearFrom(0);
+        this.buffer.put(0, MAGIC);
+        this.buffer.put(1, MAGIC);
+        this.buffer.putInt(2, this.interval);
+        return true;
+    }
+
+    public int getInterval() {
+        return this.interval;
+    }
+
+    public int getSlots() {
+        return this.slots;
+    }
+
+    /**
+     * Returns the slot of |logIndex| in a segment starting at |firstLogIndex|, or -1 when the log
+     * is not indexed.
+     */
+    public int slotOf(final long firstLogIndex, final long logIndex) {
+        final long offset = logIndex - firstLogIndex;
+        if (offset < 0 || offset % this.interval != 0) {
+            return -1;
+        }
+        return offset / this.interval < this.slots ? (int) (offset / this.interval) : -1;
+    }
+
+    /**
+     * Returns true when the log |logIndex| can be written in a segment starting at
+     * |firstLogIndex|, that is when its slot, if any, fits in this index.
+     */
+    public boolean hasRoomFor(final long firstLogIndex, final long logIndex) {
+        return (logIndex - firstLogIndex) / this.interval < this.slots;
+    }
+
+    public int getPos(final int slot) {
+        return this.buffer.getInt(HEADER_SIZE + slot * SLOT_SIZE);
+    }
+
+    public void setPos(final int slot, final int pos) {
+        this.buffer.putInt(HEADER_SIZE + slot * SLOT_SIZE, pos);
+    }
+
+    /**
+     * Clears the slots from |slot|(inclusive) to the end.
+     */
+    public void clearFrom(final int slot) {
+        for (int i = Math.max(slot, 0); i < this.slots; i++) {
+            if (getPos(i) == 0) {
+                // slots are filled in order, the rest is blank.
+                break;
+            }
+            setPos(i, 0);
+        }
+    }
+
+    public void sync() {
+        if (this.buffer != null) {
+            this.buffer.force();
+        }
+    }
+
+    public void shutdown() {
+        if (this.buffer != null) {
+            Utils.unmap(this.buffer);
+            this.buffer = null;
+        }
+    }
+
+    public void destroy() {
+        shutdown();
+        FileUtils.deleteQuietly(new File(this.path));
+    }
+
+    public String getPath() {
+        return this.path;
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentIndexFile [path=" + this.path + ", interval=" + this.interval + ", slots=" + this.slots + "]";
+    }
+}
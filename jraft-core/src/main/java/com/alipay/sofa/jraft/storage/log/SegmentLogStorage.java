@@ -0,0 +1,1114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.storage.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.alipay.sofa.jraft.Quorum;
+import com.alipay.sofa.jraft.conf.Configuration;
+import com.alipay.sofa.jraft.conf.ConfigurationEntry;
+import com.alipay.sofa.jraft.conf.ConfigurationManager;
+import com.alipay.sofa.jraft.entity.EnumOutter.EntryType;
+import com.alipay.sofa.jraft.entity.LogEntry;
+import com.alipay.sofa.jraft.entity.LogId;
+import com.alipay.sofa.jraft.entity.codec.LogEntryDecoder;
+import com.alipay.sofa.jraft.entity.codec.LogEntryEncoder;
+import com.alipay.sofa.jraft.option.LogStorageOptions;
+import com.alipay.sofa.jraft.option.RaftOptions;
+import com.alipay.sofa.jraft.storage.LogStorage;
+import com.alipay.sofa.jraft.storage.impl.RocksDBLogStorage.WriteContext;
+import com.alipay.sofa.jraft.storage.log.CheckpointFile.Checkpoint;
+import com.alipay.sofa.jraft.storage.log.RocksDBSegmentLogStorage.BarrierWriteContext;
+import com.alipay.sofa.jraft.storage.log.SegmentFile.SegmentFileOptions;
+import com.alipay.sofa.jraft.util.Describer;
+import com.alipay.sofa.jraft.util.ExecutorServiceHelper;
+import com.alipay.sofa.jraft.util.NamedThreadFactory;
+import com.alipay.sofa.jraft.util.Requires;
+import com.alipay.sofa.jraft.util.SystemPropertyUtil;
+import com.alipay.sofa.jraft.util.ThreadPoolUtil;
+import com.alipay.sofa.jraft.util.Utils;
+
+/**
+ * Log storage made of segment files only, without rocksdb. Every log entry is appended to the
+ * last {@link SegmentFile}, and located by the sparse {@link SegmentIndexFile} of its segment.
+ *
+ * <ul>
+ *   <li>{@code truncatePrefix} only deletes the segments before the first kept log, the first
+ *   log index is saved in the checkpoint.</li>
+ *   <li>{@code truncateSuffix} rewrites the tail of the segment holding the last kept log and
+ *   deletes the ones after it.</li>
+ *   <li>After a crash, detected by the {@link AbortFile}, the last segment is scanned from its
+ *   last indexed log and truncated after its last complete record.</li>
+ *   <li>The indexes of the configuration entries are kept in a small append-only file, so they
+ *   are loaded without scanning the segments.</li>
+ * </ul>
+ *
+ * Appends, truncations and resets are serialized by the log manager.
+ */
+public class SegmentLogStorage implements LogStorage, Describer {
+
+    private static final Logger  LOG                            = LoggerFactory
+                                                                    .getLogger(SegmentLogStorage.class);
+
+    private static final String  SEGMENT_FILE_POSFIX            = ".s";
+    private static final String  INDEX_FILE_POSFIX              = ".i";
+    private static final Pattern SEGMENT_FILE_NAME_PATTERN      = Pattern.compile("[0-9]+\\.s");
+    private static final String  CONF_INDEX_FILE                = "conf_index";
+
+    /**
+     * Default checkpoint interval in milliseconds.
+     */
+    private static final int     DEFAULT_CHECKPOINT_INTERVAL_MS = SystemPropertyUtil.getInt(
+                                                                    "jraft.log_storage.segment.checkpoint.interval.ms",
+                                                                    5000);
+
+    /**
+     * Max segment file size, 256M
+     */
+    private static final int     MAX_SEGMENT_FILE_SIZE          = SystemPropertyUtil.getInt(
+                                                                    "jraft.log_storage.segment_log.max.size.bytes",
+                                                                    256 * 1024 * 1024);
+
+    /**
+     * One log of every this many is indexed, the others are found by skipping records from it.
+     */
+    private static final int     DEFAULT_INDEX_INTERVAL         = SystemPropertyUtil.getInt(
+                                                                    "jraft.log_storage.segment_log.index.interval", 8);
+
+    /**
+     * The index of a segment is sized for records of at least this size on average, a segment of
+     * smaller records is rolled when its index is full.
+     */
+    private static final int     MIN_AVG_RECORD_SIZE            = 32;
+
+    private static final int     MEM_SEGMENT_COUNT              = 3;
+
+    /**
+     * SegmentLogStorage builder
+     */
+    public static class Builder {
+        private String             path;
+        private RaftOptions        raftOptions;
+        private int                maxSegmentFileSize       = MAX_SEGMENT_FILE_SIZE;
+        private int                indexInterval            = DEFAULT_INDEX_INTERVAL;
+        private ThreadPoolExecutor writeExecutor;
+        private int                keepInMemorySegmentCount = MEM_SEGMENT_COUNT;
+        private int                checkpointIntervalMs     = DEFAULT_CHECKPOINT_INTERVAL_MS;
+
+        public String getPath() {
+            return this.path;
+        }
+
+        public Builder setPath(final String path) {
+            this.path = path;
+            return this;
+        }
+
+        public RaftOptions getRaftOptions() {
+            return this.raftOptions;
+        }
+
+        public Builder setRaftOptions(final RaftOptions raftOptions) {
+            this.raftOptions = raftOptions;
+            return this;
+        }
+
+        public int getMaxSegmentFileSize() {
+            return this.maxSegmentFileSize;
+        }
+
+        public Builder setMaxSegmentFileSize(final int maxSegmentFileSize) {
+            this.maxSegmentFileSize = maxSegmentFileSize;
+            return this;
+        }
+
+        public int getIndexInterval() {
+            return this.indexInterval;
+        }
+
+        public Builder setIndexInterval(final int indexInterval) {
+            this.indexInterval = indexInterval;
+            return this;
+        }
+
+        public ThreadPoolExecutor getWriteExecutor() {
+            return this.writeExecutor;
+        }
+
+        public Builder setWriteExecutor(final ThreadPoolExecutor writeExecutor) {
+            this.writeExecutor = writeExecutor;
+            return this;
+        }
+
+        public int getKeepInMemorySegmentCount() {
+            return this.keepInMemorySegmentCount;
+        }
+
+        public Builder setKeepInMemorySegmentCount(final int keepInMemorySegmentCount) {
+            this.keepInMemorySegmentCount = keepInMemorySegmentCount;
+            return this;
+        }
+
+        public int getCheckpointIntervalMs() {
+            return this.checkpointIntervalMs;
+        }
+
+        public Builder setCheckpointIntervalMs(final int checkpointIntervalMs) {
+            this.checkpointIntervalMs = checkpointIntervalMs;
+            return this;
+        }
+
+        public SegmentLogStorage build() {
+            return new SegmentLogStorage(this.path, this.raftOptions, this.maxSegmentFileSize, this.indexInterval,
+                this.keepInMemorySegmentCount, this.checkpointIntervalMs, this.writeExecutor);
+        }
+    }
+
+    /**
+     * A segment file and its index.
+     */
+    private static final class Segment {
+        final SegmentFile      file;
+        final SegmentIndexFile index;
+
+        Segment(final SegmentFile file, final SegmentIndexFile index) {
+            this.file = file;
+            this.index = index;
+        }
+
+        long getFirstLogIndex() {
+            return this.file.getFirstLogIndex();
+        }
+
+        long getLastLogIndex() {
+            return this.file.getLastLogIndex();
+        }
+
+        void shutdown() {
+            this.file.shutdown();
+            this.index.shutdown();
+        }
+
+        void destroy() {
+            this.file.destroy();
+            this.index.destroy();
+        }
+
+        @Override
+        public String toString() {
+            return this.file.toString();
+        }
+    }
+
+    private final String                  path;
+    private final boolean                 sync;
+    private final int                     maxSegmentFileSize;
+    private final int                     indexInterval;
+    private final int                     indexSlots;
+    private final int                     keepInMemorySegmentCount;
+    private final int                     checkpointIntervalMs;
+    private final ThreadPoolExecutor      writeExecutor;
+    private final CheckpointFile          checkpointFile;
+    private final AbortFile               abortFile;
+    private final ReadWriteLock           readWriteLock    = new ReentrantReadWriteLock();
+    private final Lock                    writeLock        = this.readWriteLock.writeLock();
+    private final Lock                    readLock         = this.readWriteLock.readLock();
+    // segment file sequence.
+    private final AtomicLong              nextFileSequence = new AtomicLong(0);
+    // used or using segments, only the log manager thread adds to it.
+    private CopyOnWriteArrayList<Segment> segments;
+    // the pre-allocated segment the next roll takes.
+    private Future<Segment>               nextSegment;
+    private ExecutorService               segmentAllocator;
+    private ScheduledExecutorService      checkpointExecutor;
+    private FileChannel                   confIndexChannel;
+    private volatile long                 firstLogIndex    = 1;
+    private volatile long                 lastLogIndex;
+    private LogEntryEncoder               logEntryEncoder;
+    private LogEntryDecoder               logEntryDecoder;
+
+    /**
+     * Creates a SegmentLogStorage builder.
+     * @return a builder instance.
+     */
+    public static Builder builder(final String uri, final RaftOptions raftOptions) {
+        return new Builder().setPath(uri).setRaftOptions(raftOptions);
+    }
+
+    public SegmentLogStorage(final String path, final RaftOptions raftOptions) {
+        this(path, raftOptions, MAX_SEGMENT_FILE_SIZE, DEFAULT_INDEX_INTERVAL, MEM_SEGMENT_COUNT,
+            DEFAULT_CHECKPOINT_INTERVAL_MS, null);
+    }
+
+    public SegmentLogStorage(final String path, final RaftOptions raftOptions, final int maxSegmentFileSize,
+                             final int indexInterval, final int keepInMemorySegmentCount,
+                             final int checkpointIntervalMs, final ThreadPoolExecutor writeExecutor) {
+        Requires.requireTrue(maxSegmentFileSize > SegmentFile.HEADER_SIZE, "maxSegmentFileSize is too small");
+        Requires.requireTrue(indexInterval > 0, "indexInterval is not greater than zero");
+        Requires.requireTrue(keepInMemorySegmentCount > 0, "keepInMemorySegmentCount is not greater than zero");
+        Requires.requireTrue(checkpointIntervalMs > 0, "checkpointIntervalMs is not greater than zero");
+        this.path = path;
+        this.sync = raftOptions.isSync();
+        this.maxSegmentFileSize = maxSegmentFileSize;
+        this.indexInterval = indexInterval;
+        this.indexSlots = maxSegmentFileSize / (indexInterval * MIN_AVG_RECORD_SIZE) + 1;
+        this.keepInMemorySegmentCount = keepInMemorySegmentCount;
+        this.checkpointIntervalMs = checkpointIntervalMs;
+        this.writeExecutor = writeExecutor == null ? createDefaultWriteExecutor() : writeExecutor;
+        this.checkpointFile = new CheckpointFile(path + File.separator + "checkpoint");
+        this.abortFile = new AbortFile(path + File.separator + "abort");
+    }
+
+    private static ThreadPoolExecutor createDefaultWriteExecutor() {
+        return ThreadPoolUtil.newThreadPool("SegmentLogStorage-write-pool", true, Utils.cpus(), Utils.cpus() * 3,
+            60, new ArrayBlockingQueue<>(10000), new NamedThreadFactory("SegmentLogStorageWriter"),
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @Override
+    public boolean init(final LogStorageOptions opts) {
+        Requires.requireNonNull(opts.getConfigurationManager(), "Null conf manager");
+        Requires.requireNonNull(opts.getLogEntryCodecFactory(), "Null log entry codec factory");
+        final long startMs = Utils.monotonicMs();
+        this.writeLock.lock();
+        try {
+            if (this.segments != null) {
+                LOG.warn("SegmentLogStorage init() in {} already.", this.path);
+                return true;
+            }
+            this.logEntryDecoder = opts.getLogEntryCodecFactory().decoder();
+            this.logEntryEncoder = opts.getLogEntryCodecFactory().encoder();
+            Requires.requireNonNull(this.logEntryDecoder, "Null log entry decoder");
+            Requires.requireNonNull(this.logEntryEncoder, "Null log entry encoder");
+            FileUtils.forceMkdir(new File(this.path));
+            this.segmentAllocator = Executors.newSingleThreadExecutor(new NamedThreadFactory(
+                "JRaft-SegmentAllocator-", true));
+            if (!loadSegments()) {
+                return false;
+            }
+            this.confIndexChannel = openConfIndex();
+            loadConfigurations(opts.getConfigurationManager());
+
+            if (this.abortFile.exists()) {
+                this.abortFile.touch();
+            } else if (!this.abortFile.create()) {
+                LOG.error("Fail to create abort file {}.", this.abortFile.getPath());
+                return false;
+            }
+            this.checkpointExecutor = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory(
+                "JRaft-SegmentLogStorage-Checkpoint-", true));
+            this.checkpointExecutor.scheduleAtFixedRate(this::onCheckpointTimer, this.checkpointIntervalMs,
+                this.checkpointIntervalMs, TimeUnit.MILLISECONDS);
+            LOG.info("SegmentLogStorage loaded {} segment files from path {}, firstLogIndex={}, lastLogIndex={}.",
+                this.segments.size(), this.path, this.firstLogIndex, this.lastLogIndex);
+            return true;
+        } catch (final IOException e) {
+            LOG.error("Fail to init SegmentLogStorage, path={}.", this.path, e);
+            return false;
+        } finally {
+            this.writeLock.unlock();
+            LOG.info("SegmentLogStorage init and load cost {} ms.", Utils.monotonicMs() - startMs);
+        }
+    }
+
+    private boolean loadSegments() throws IOException {
+        final Checkpoint checkpoint = loadCheckpoint();
+        final boolean normalExit = !this.abortFile.exists();
+        if (!normalExit) {
+            LOG.info("SegmentLogStorage {} did not exit normally, will recover the last segment.", this.path);
+        }
+        final File[] segmentFiles = new File(this.path).listFiles((dir, name) -> SEGMENT_FILE_NAME_PATTERN.matcher(
+            name).matches());
+        final List<Segment> loaded = new ArrayList<>();
+        Segment blank = null;
+        if (segmentFiles != null) {
+            Arrays.sort(segmentFiles, Comparator.comparing(SegmentLogStorage::getFileSequenceFromFileName));
+            for (int i = 0; i < segmentFiles.length; i++) {
+                final File segFile = segmentFiles[i];
+                final long sequence = getFileSequenceFromFileName(segFile);
+                this.nextFileSequence.set(sequence + 1);
+                final SegmentFile file = new SegmentFile(this.maxSegmentFileSize, segFile.getAbsolutePath(),
+                    this.writeExecutor);
+                if (!file.mmapFile(false)) {
+                    if (i != segmentFiles.length - 1) {
+                        LOG.error("Detected corrupted header segment file {}.", segFile);
+                        return false;
+                    }
+                    // The new segment whose header fails to be saved, keep it aside for safety.
+                    LOG.warn("Truncate the last segment file {} which it's header is corrupted.", segFile);
+                    file.shutdown();
+                    FileUtils.moveFile(segFile, new File(segFile.getAbsolutePath() + ".corrupted"));
+                    FileUtils.deleteQuietly(new File(getIndexFilePath(sequence)));
+                    continue;
+                }
+                final Segment segment = new Segment(file, new SegmentIndexFile(getIndexFilePath(sequence),
+                    this.indexInterval, this.indexSlots));
+                if (!file.isBlank()) {
+                    loaded.add(segment);
+                } else if (blank == null && initBlankSegment(segment)) {
+                    blank = segment;
+                } else {
+                    segment.destroy();
+                }
+            }
+        }
+
+        final String checkpointSegFile = checkpoint != null ? checkpoint.segFilename : null;
+        for (int i = 0; i < loaded.size(); i++) {
+            final Segment segment = loaded.get(i);
+            final boolean isLastFile = i == loaded.size() - 1;
+            // After a normal exit the checkpoint holds the end of the last segment, else its end is
+            // found by scanning its records.
+            final int pos = normalExit && segment.file.getFilename().equals(checkpointSegFile) ? checkpoint.committedPos
+                : segment.file.getSize();
+            final SegmentFileOptions opts = SegmentFileOptions.builder() //
+                .setSync(this.sync) //
+                .setRecover(false) //
+                .setLastFile(isLastFile) //
+                .setNewFile(false) //
+                .setPos(pos).build();
+            if (!segment.file.init(opts) || !segment.index.init()) {
+                LOG.error("Fail to load segment file {}.", segment.file.getPath());
+                return false;
+            }
+            if (!recoverSegment(segment, isLastFile)) {
+                if (!isLastFile) {
+                    return false;
+                }
+                LOG.warn("The last segment file {} has no complete log, destroy it.", segment.file.getPath());
+                loaded.remove(i);
+                segment.destroy();
+                break;
+            }
+            if (i > 0 && segment.getFirstLogIndex() != loaded.get(i - 1).getLastLogIndex() + 1) {
+                LOG.error("Detected discontinuous segment file {} after {}.", segment.file.getPath(),
+                    loaded.get(i - 1).file.getPath());
+                return false;
+            }
+        }
+
+        long firstIndex = checkpoint != null && checkpoint.firstLogIndex > 0 ? checkpoint.firstLogIndex : 1;
+        if (!loaded.isEmpty()) {
+            firstIndex = Math.max(firstIndex, loaded.get(0).getFirstLogIndex());
+        }
+        // Segments left by a prefix truncation interrupted before deleting them.
+        while (!loaded.isEmpty() && loaded.get(0).getLastLogIndex() < firstIndex) {
+            loaded.remove(0).destroy();
+        }
+        this.firstLogIndex = firstIndex;
+        this.lastLogIndex = loaded.isEmpty() ? 0 : loaded.get(loaded.size() - 1).getLastLogIndex();
+        this.segments = new CopyOnWriteArrayList<>(loaded);
+        if (blank != null) {
+            this.nextSegment = CompletableFuture.completedFuture(blank);
+        } else {
+            allocateNextSegment();
+        }
+        return true;
+    }
+
+    private boolean initBlankSegment(final Segment segment) {
+        final SegmentFileOptions opts = SegmentFileOptions.builder() //
+            .setSync(false) //
+            .setRecover(false) //
+            .setLastFile(true) //
+            .build();
+        if (!segment.file.init(opts) || !segment.index.init()) {
+            LOG.error("Fail to load blank segment file {}.", segment.file.getPath());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the last log of |segment| from its last valid index slot, indexing the logs after it.
+     * The tail after the last complete record of the last segment is truncated.
+     *
+     * @return false when the segment has no complete record
+     */
+    private boolean recoverSegment(final Segment segment, final boolean isLastFile) {
+        final SegmentFile file = segment.file;
+        final SegmentIndexFile index = segment.index;
+        final long first = file.getFirstLogIndex();
+        int slot = -1;
+        int pos = SegmentFile.HEADER_SIZE;
+        for (int i = 0; i < index.getSlots(); i++) {
+            final int slotPos = index.getPos(i);
+            if (i == 0 ? slotPos != SegmentFile.HEADER_SIZE : slotPos <= pos) {
+                break;
+            }
+            if (file.nextRecordPos(slotPos) < 0) {
+                break;
+            }
+            slot = i;
+            pos = slotPos;
+        }
+        index.clearFrom(slot + 1);
+        long logIndex = slot < 0 ? first : first + (long) slot * this.indexInterval;
+        int nextPos;
+        while ((nextPos = file.nextRecordPos(pos)) > 0) {
+            final int s = index.slotOf(first, logIndex);
+            if (s >= 0) {
+                index.setPos(s, pos);
+            }
+            logIndex++;
+            pos = nextPos;
+        }
+        final long last = logIndex - 1;
+        if (last < first) {
+            return false;
+        }
+        file.setLastLogIndex(last);
+        if (isLastFile && pos < file.getWrotePos()) {
+            LOG.warn("Truncate the last segment file {} after its last complete log {} at pos={}.", file.getPath(),
+                last, pos);
+            file.truncateSuffix(pos, last, this.sync);
+        }
+        return true;
+    }
+
+    private Checkpoint loadCheckpoint() {
+        try {
+            final Checkpoint checkpoint = this.checkpointFile.load();
+            if (checkpoint != null) {
+                LOG.info("Loaded checkpoint: {} from {}.", checkpoint, this.checkpointFile.getPath());
+            }
+            return checkpoint;
+        } catch (final IOException e) {
+            LOG.error("Fail to load checkpoint file: {}", this.checkpointFile.getPath(), e);
+            return null;
+        }
+    }
+
+    private FileChannel openConfIndex() throws IOException {
+        final FileChannel channel = FileChannel.open(Paths.get(this.path, CONF_INDEX_FILE), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size() - channel.size() % 8);
+        return channel;
+    }
+
+    /**
+     * Adds the configuration entries of the log to |confManager|, and rewrites the conf index
+     * without the truncated or overwritten ones.
+     */
+    private void loadConfigurations(final ConfigurationManager confManager) throws IOException {
+        final int count = (int) (this.confIndexChannel.size() / 8);
+        final ByteBuffer buf = ByteBuffer.allocate(count * 8);
+        while (buf.hasRemaining() && this.confIndexChannel.read(buf, buf.position()) > 0) {
+            // read fully
+        }
+        buf.flip();
+        final TreeSet<Long> indexes = new TreeSet<>();
+        while (buf.remaining() >= 8) {
+            indexes.add(buf.getLong());
+        }
+        final List<Long> kept = new ArrayList<>(indexes.size());
+        for (final long index : indexes) {
+            final LogEntry entry = getEntry(index);
+            if (entry != null && entry.getType() == EntryType.ENTRY_TYPE_CONFIGURATION) {
+                confManager.add(toConfigurationEntry(entry));
+                kept.add(index);
+            }
+        }
+        if (kept.size() != count) {
+            rewriteConfIndex(kept);
+        }
+    }
+
+    private void rewriteConfIndex(final List<Long> indexes) throws IOException {
+        final File tmp = new File(this.path, CONF_INDEX_FILE + ".tmp");
+        try (final FileChannel channel = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeConfIndexes(channel, indexes, true);
+        }
+        this.confIndexChannel.close();
+        if (!Utils.atomicMoveFile(tmp, new File(this.path, CONF_INDEX_FILE), true)) {
+            throw new IOException("Fail to rewrite conf index in " + this.path);
+        }
+        this.confIndexChannel = openConfIndex();
+    }
+
+    private static void writeConfIndexes(final FileChannel channel, final List<Long> indexes, final boolean sync)
+                                                                                                              throws IOException {
+        final ByteBuffer buf = ByteBuffer.allocate(indexes.size() * 8);
+        for (final long index : indexes) {
+            buf.putLong(index);
+        }
+        buf.flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    private static ConfigurationEntry toConfigurationEntry(final LogEntry entry) {
+        final ConfigurationEntry confEntry = new ConfigurationEntry();
+        confEntry.setId(new LogId(entry.getId().getIndex(), entry.getId().getTerm()));
+        final Quorum quorum = new Quorum(entry.getQuorum().getW(), entry.getQuorum().getR());
+        confEntry.setConf(new Configuration(entry.getPeers(), entry.getLearners(), quorum, entry.getWriteFactor(),
+            entry.getReadFactor(), entry.getEnableFlexible()));
+        if (entry.getOldPeers() != null) {
+            Quorum oldQuorum = null;
+            if (Objects.nonNull(entry.getOldQuorum())) {
+                oldQuorum = new Quorum(entry.getOldQuorum().getW(), entry.getOldQuorum().getR());
+            }
+            confEntry.setOldConf(new Configuration(entry.getOldPeers(), entry.getOldLearners(), oldQuorum, entry
+                .getOldWriteFactor(), entry.getOldReadFactor(), entry.getEnableFlexible()));
+        }
+        return confEntry;
+    }
+
+    private void allocateNextSegment() {
+        this.nextSegment = this.segmentAllocator.submit(this::allocateNewSegment);
+    }
+
+    private Segment allocateNewSegment() throws IOException {
+        final long sequence = this.nextFileSequence.getAndIncrement();
+        final String segPath = getSegmentFilePath(sequence);
+        final SegmentFile file = new SegmentFile(this.maxSegmentFileSize, segPath, this.writeExecutor);
+        final SegmentFileOptions opts = SegmentFileOptions.builder() //
+            .setSync(false) //
+            .setRecover(false) //
+            .setLastFile(true) //
+            .setNewFile(true) //
+            .setPos(0).build();
+        if (!file.init(opts)) {
+            FileUtils.deleteQuietly(new File(segPath));
+            throw new IOException("Fail to create new segment file " + segPath);
+        }
+        final SegmentIndexFile index = new SegmentIndexFile(getIndexFilePath(sequence), this.indexInterval,
+            this.indexSlots);
+        if (!index.init()) {
+            file.destroy();
+            throw new IOException("Fail to create segment index file " + index.getPath());
+        }
+        file.hintLoad();
+        LOG.info("Create a new segment file {}.", segPath);
+        return new Segment(file, index);
+    }
+
+    private String getSegmentFilePath(final long sequence) {
+        return this.path + File.separator + String.format("%019d", sequence) + SEGMENT_FILE_POSFIX;
+    }
+
+    private String getIndexFilePath(final long sequence) {
+        return this.path + File.separator + String.format("%019d", sequence) + INDEX_FILE_POSFIX;
+    }
+
+    private static long getFileSequenceFromFileName(final File file) {
+        final String name = file.getName();
+        return Long.parseLong(name.substring(0, name.indexOf(SEGMENT_FILE_POSFIX)));
+    }
+
+    private void checkState() {
+        Requires.requireNonNull(this.segments, "SegmentLogStorage not initialized or destroyed");
+    }
+
+    private Segment getLastSegment() {
+        return this.segments.isEmpty() ? null : this.segments.get(this.segments.size() - 1);
+    }
+
+    /**
+     * Returns the segment holding |logIndex|, or null.
+     */
+    private Segment findSegment(final long logIndex) {
+        int low = 0;
+        int high = this.segments.size() - 1;
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final Segment segment = this.segments.get(mid);
+            if (segment.getLastLogIndex() < logIndex) {
+                low = mid + 1;
+            } else if (segment.getFirstLogIndex() > logIndex) {
+                high = mid - 1;
+            } else {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the position of |logIndex| in |segment|, from the closest index slot before it.
+     */
+    private int positionOf(final Segment segment, final long logIndex) {
+        final long offset = logIndex - segment.getFirstLogIndex();
+        if (offset < 0 || offset / this.indexInterval >= segment.index.getSlots()) {
+            return -1;
+        }
+        final int slot = (int) (offset / this.indexInterval);
+        int pos = segment.index.getPos(slot);
+        for (long i = (long) slot * this.indexInterval; pos > 0 && i < offset; i++) {
+            pos = segment.file.nextRecordPos(pos);
+        }
+        return pos > 0 ? pos : -1;
+    }
+
+    @Override
+    public long getFirstLogIndex() {
+        return this.firstLogIndex;
+    }
+
+    @Override
+    public long getLastLogIndex() {
+        return this.lastLogIndex;
+    }
+
+    @Override
+    public LogEntry getEntry(final long index) {
+        this.readLock.lock();
+        try {
+            if (index < this.firstLogIndex || index > this.lastLogIndex) {
+                return null;
+            }
+            checkState();
+            final Segment segment = findSegment(index);
+            if (segment == null) {
+                return null;
+            }
+            final int pos = positionOf(segment, index);
+            if (pos < 0) {
+                LOG.error("Log entry at index={} is not found in segment file {}.", index, segment.file.getPath());
+                return null;
+            }
+            final byte[] data = segment.file.read(index, pos);
+            if (data == null) {
+                return null;
+            }
+            final LogEntry entry = this.logEntryDecoder.decode(data);
+            if (entry == null) {
+                LOG.error("Bad log entry format for index={} in segment file {}.", index, segment.file.getPath());
+            }
+            return entry;
+        } catch (final IOException e) {
+            LOG.error("Fail to get log entry at index {} in {}.", index, this.path, e);
+            return null;
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
+    @Override
+    public List<LogEntry> getEntries(final long firstIndex, final int maxCount, final long maxBytes) {
+        final List<LogEntry> entries = new ArrayList<>(Math.min(maxCount, 64));
+        this.readLock.lock();
+        try {
+            if (firstIndex < this.firstLogIndex || firstIndex > this.lastLogIndex) {
+                return entries;
+            }
+            checkState();
+            final long lastIndex = Math.min(this.lastLogIndex, firstIndex + maxCount - 1);
+            long bytes = 0;
+            long index = firstIndex;
+            // Locate the first log with the index, then walk the records one after another.
+            Segment segment = null;
+            int pos = -1;
+            while (index <= lastIndex && bytes < maxBytes) {
+                if (segment == null || index > segment.getLastLogIndex()) {
+                    segment = findSegment(index);
+                    pos = segment != null ? positionOf(segment, index) : -1;
+                }
+                if (pos < 0) {
+                    LOG.error("Log entry at index={} is not found in {}.", index, this.path);
+                    break;
+                }
+                final byte[] data = segment.file.read(index, pos);
+                final LogEntry entry = data != null ? this.logEntryDecoder.decode(data) : null;
+                if (entry == null) {
+                    LOG.error("Bad log entry format for index={} in segment file {}.", index, segment.file.getPath());
+                    break;
+                }
+                entries.add(entry);
+                bytes += entry.getData() != null ? entry.getData().remaining() : 0;
+                pos = segment.file.nextRecordPos(pos);
+                index++;
+            }
+        } catch (final IOException e) {
+            LOG.error("Fail to get log entries from index {} in {}.", firstIndex, this.path, e);
+        } finally {
+            this.readLock.unlock();
+        }
+        return entries;
+    }
+
+    @Override
+    public long getTerm(final long index) {
+        final LogEntry entry = getEntry(index);
+        if (entry != null) {
+            return entry.getId().getTerm();
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean appendEntry(final LogEntry entry) {
+        return appendEntries(Collections.singletonList(entry)) == 1;
+    }
+
+    @Override
+    public int appendEntries(final List<LogEntry> entries) {
+        if (entries == null || entries.isEmpty()) {
+            return 0;
+        }
+        this.readLock.lock();
+        try {
+            checkState();
+            final WriteContext ctx = new BarrierWriteContext();
+            List<Long> confIndexes = null;
+            long prevIndex = this.segments.isEmpty() ? 0 : this.lastLogIndex;
+            int appended = 0;
+            for (final LogEntry entry : entries) {
+                final long logIndex = entry.getId().getIndex();
+                if (prevIndex > 0 && logIndex != prevIndex + 1) {
+                    LOG.error("Fail to append log entry at index={} after {} in {}, the logs must be contiguous.",
+                        logIndex, prevIndex, this.path);
+                    break;
+                }
+                final byte[] data = this.logEntryEncoder.encode(entry);
+                final int writeBytes = SegmentFile.getWriteBytes(data);
+                if (writeBytes > this.maxSegmentFileSize - SegmentFile.HEADER_SIZE) {
+                    LOG.error("Too large log entry at index={}, size={}, maxSegmentFileSize={}.", logIndex,
+                        data.length, this.maxSegmentFileSize);
+                    break;
+                }
+                final Segment segment = getWritableSegment(logIndex, writeBytes, ctx);
+                ctx.startJob();
+                final int pos = segment.file.write(logIndex, data, ctx);
+                final int slot = segment.index.slotOf(segment.getFirstLogIndex(), logIndex);
+                if (slot >= 0) {
+                    segment.index.setPos(slot, pos);
+                }
+                if (entry.getType() == EntryType.ENTRY_TYPE_CONFIGURATION) {
+                    if (confIndexes == null) {
+                        confIndexes = new ArrayList<>();
+                    }
+                    confIndexes.add(logIndex);
+                }
+                prevIndex = logIndex;
+                appended++;
+            }
+            ctx.joinAll();
+            if (confIndexes != null) {
+                // Must be durable before the entries, or a configuration would be lost on recovery.
+                writeConfIndexes(this.confIndexChannel, confIndexes, this.sync);
+            }
+            final Segment last = getLastSegment();
+            if (last != null) {
+                last.file.sync(this.sync);
+            }
+            if (appended > 0) {
+                this.lastLogIndex = prevIndex;
+            }
+            return appended;
+        } catch (final IOException e) {
+            LOG.error("Fail to append entries in {}.", this.path, e);
+            return 0;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the last segment if it has room for |writeBytes| at |logIndex|, else seals it and
+     * rolls a pre-allocated one.
+     */
+    private Segment getWritableSegment(final long logIndex, final int writeBytes, final WriteContext ctx)
+                                                                                                         throws IOException,
+                                                                                                         InterruptedException {
+        final Segment last = getLastSegment();
+        if (last != null) {
+            if (!last.file.reachesFileEndBy(writeBytes) && last.index.hasRoomFor(last.getFirstLogIndex(), logIndex)) {
+                return last;
+            }
+            ctx.startJob();
+            // Attach a finish hook to set last segment file to be read-only.
+            ctx.addFinishHook(() -> last.file.setReadOnly(true));
+            // Run sync in parallel
+            this.writeExecutor.execute(() -> {
+                try {
+                    last.file.sync(this.sync);
+                } catch (final IOException e) {
+                    ctx.setError(e);
+                } finally {
+                    ctx.finishJob();
+                }
+            });
+        }
+        final Segment segment;
+        try {
+            segment = this.nextSegment.get();
+        } catch (final ExecutionException e) {
+            throw new IOException("Fail to allocate segment file in " + this.path, e.getCause());
+        } finally {
+            allocateNextSegment();
+        }
+        segment.file.setFirstLogIndex(logIndex);
+        this.segments.add(segment);
+        return segment;
+    }
+
+    @Override
+    public boolean truncatePrefix(final long firstIndexKept) {
+        final List<Segment> destroyed = new ArrayList<>();
+        this.writeLock.lock();
+        try {
+            checkState();
+            if (firstIndexKept <= this.firstLogIndex) {
+                return true;
+            }
+            this.firstLogIndex = firstIndexKept;
+            while (!this.segments.isEmpty() && this.segments.get(0).getLastLogIndex() < firstIndexKept) {
+                destroyed.add(this.segments.remove(0));
+            }
+            if (this.segments.isEmpty()) {
+                this.lastLogIndex = 0;
+            }
+            return doCheckpoint();
+        } finally {
+            this.writeLock.unlock();
+            for (final Segment segment : destroyed) {
+                segment.destroy();
+            }
+        }
+    }
+
+    @Override
+    public boolean truncateSuffix(final long lastIndexKept) {
+        final List<Segment> destroyed = new ArrayList<>();
+        this.writeLock.lock();
+        try {
+            checkState();
+            if (lastIndexKept >= this.lastLogIndex) {
+                return true;
+            }
+            Segment last;
+            while ((last = getLastSegment()) != null && last.getFirstLogIndex() > lastIndexKept) {
+                destroyed.add(this.segments.remove(this.segments.size() - 1));
+            }
+            if (last != null) {
+                // It may be a sealed segment, written again from now on.
+                last.file.setReadOnly(false);
+                last.file.swapInIfNeed();
+                if (last.getLastLogIndex() > lastIndexKept) {
+                    final int pos = positionOf(last, lastIndexKept + 1);
+                    if (pos < 0) {
+                        LOG.error("Fail to truncate suffix of segment file {}, log {} is not found.",
+                            last.file.getPath(), lastIndexKept + 1);
+                        return false;
+                    }
+                    last.file.truncateSuffix(pos, lastIndexKept, this.sync);
+                    final long offset = lastIndexKept + 1 - last.getFirstLogIndex();
+                    last.index.clearFrom((int) ((offset + this.indexInterval - 1) / this.indexInterval));
+                    // The cleared slots must not point to the records rewritten after a power failure.
+                    last.index.sync();
+                }
+            }
+            this.lastLogIndex = last == null ? 0 : lastIndexKept;
+            return doCheckpoint();
+        } finally {
+            this.writeLock.unlock();
+            for (final Segment segment : destroyed) {
+                segment.destroy();
+            }
+        }
+    }
+
+    @Override
+    public boolean reset(final long nextLogIndex) {
+        if (nextLogIndex <= 0) {
+            throw new IllegalArgumentException("Invalid next log index.");
+        }
+        final List<Segment> destroyed = new ArrayList<>();
+        this.writeLock.lock();
+        try {
+            checkState();
+            LogEntry entry = getEntry(nextLogIndex);
+            destroyed.addAll(this.segments);
+            this.segments.clear();
+            this.checkpointFile.destroy();
+            this.confIndexChannel.truncate(0);
+            this.firstLogIndex = nextLogIndex;
+            this.lastLogIndex = 0;
+            LOG.info("Destroyed segments and checkpoint in path {} by resetting.", this.path);
+            if (entry == null) {
+                entry = new LogEntry();
+                entry.setType(EntryType.ENTRY_TYPE_NO_OP);
+                entry.setId(new LogId(nextLogIndex, 0));
+                LOG.warn("Entry not found for nextLogIndex {} when reset.", nextLogIndex);
+            }
+            return appendEntry(entry) && doCheckpoint();
+        } catch (final IOException e) {
+            LOG.error("Fail to reset next log index in {}.", this.path, e);
+            return false;
+        } finally {
+            this.writeLock.unlock();
+            for (final Segment segment : destroyed) {
+                segment.destroy();
+            }
+        }
+    }
+
+    private void onCheckpointTimer() {
+        doCheckpoint();
+        doSwapOutSegments();
+    }
+
+    private boolean doCheckpoint() {
+        this.readLock.lock();
+        try {
+            if (this.segments == null) {
+                return false;
+            }
+            final Segment last = getLastSegment();
+            return this.checkpointFile.save(new Checkpoint(last != null ? last.file.getFilename() : "",
+                last != null ? last.file.getCommittedPos() : 0, this.firstLogIndex));
+        } catch (final IOException e) {
+            LOG.error("Fatal error, fail to do checkpoint in {}.", this.path, e);
+            return false;
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
+    private void doSwapOutSegments() {
+        if (!this.readLock.tryLock()) {
+            return;
+        }
+        try {
+            if (this.segments == null || this.segments.size() <= this.keepInMemorySegmentCount) {
+                return;
+            }
+            int segmentsInMemCount = 0;
+            final int lastIndex = this.segments.size() - 1;
+            for (int i = lastIndex; i >= 0; i--) {
+                final SegmentFile segFile = this.segments.get(i).file;
+                if (!segFile.isSwappedOut()) {
+                    segmentsInMemCount++;
+                    if (segmentsInMemCount >= this.keepInMemorySegmentCount && i != lastIndex) {
+                        segFile.hintUnload();
+                        segFile.swapOut();
+                    }
+                }
+            }
+        } catch (final Exception e) {
+            LOG.error("Fail to swap out segments in {}.", this.path, e);
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (this.checkpointExecutor != null) {
+            ExecutorServiceHelper.shutdownAndAwaitTermination(this.checkpointExecutor);
+        }
+        List<Segment> shutdownSegments = Collections.emptyList();
+        this.writeLock.lock();
+        try {
+            if (this.segments == null) {
+                return;
+            }
+            doCheckpoint();
+            shutdownSegments = new ArrayList<>(this.segments);
+            this.segments = null;
+            if (this.confIndexChannel != null) {
+                this.confIndexChannel.close();
+            }
+            if (!this.abortFile.destroy()) {
+                LOG.error("Fail to delete abort file {}.", this.abortFile.getPath());
+            }
+        } catch (final IOException e) {
+            LOG.error("Fail to close conf index in {}.", this.path, e);
+        } finally {
+            this.writeLock.unlock();
+            for (final Segment segment : shutdownSegments) {
+                segment.shutdown();
+            }
+        }
+        if (this.nextSegment != null) {
+            try {
+                this.nextSegment.get().shutdown();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final ExecutionException e) {
+                LOG.warn("Fail to allocate segment file in {}.", this.path, e.getCause());
+            }
+        }
+        if (this.segmentAllocator != null) {
+            ExecutorServiceHelper.shutdownAndAwaitTermination(this.segmentAllocator);
+        }
+        this.writeExecutor.shutdown();
+        LOG.info("SegmentLogStorage in {} is shutdown.", this.path);
+    }
+
+    @Override
+    public void describe(final Printer out) {
+        this.readLock.lock();
+        try {
+            out.print("  path: ") //
+                .println(this.path);
+            out.print("  firstLogIndex: ") //
+                .println(this.firstLogIndex);
+            out.print("  lastLogIndex: ") //
+                .println(this.lastLogIndex);
+            if (this.segments != null) {
+                out.println("  segments: ");
+                for (final Segment segment : this.segments) {
+                    out.print("    ") //
+                        .println(segment);
+                }
+            }
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+}
@@ -49,6 +49,7 @@ import com.alipay.sofa.jraft.storage.SnapshotExecutor;
 import com.alipay.sofa.jraft.storage.SnapshotStorage;
 import com.alipay.sofa.jraft.storage.snapshot.local.LocalSnapshotStorage;
 import com.alipay.sofa.jraft.util.CountDownEvent;
+import com.alipay.sofa.jraft.util.Describer;
 import com.alipay.sofa.jraft.util.OnlyForTest;
 import com.alipay.sofa.jraft.util.Requires;
 import com.alipay.sofa.jraft.util.RpcFactoryHelper;
@@ -693,10 +694,11 @@ public class SnapshotExecutorImpl implements SnapshotExecutor {
     private SnapshotCopierOptions newCopierOpts() {
         final SnapshotCopierOptions copierOpts = new SnapshotCopierOptions();
         copierOpts.setNodeOptions(this.node.getOptions());
-//        copierOpts.setRaftClientService(this.node.getRpcService());
+        copierOpts.setRaftClientService(this.node.getRpcService());
         copierOpts.setTimerManager(this.node.getTimerManager());
         copierOpts.setRaftOptions(this.node.getRaftOptions());
         copierOpts.setGroupId(this.node.getGroupId());
+        copierOpts.setCopyParallelism(this.node.getRaftOptions().getSnapshotCopyParallelism());
         return copierOpts;
     }
 
@@ -750,6 +752,7 @@ public class SnapshotExecutorImpl implements SnapshotExecutor {
         final boolean _savingSnapshot;
         final boolean _loadingSnapshot;
         final boolean _stopped;
+        final SnapshotCopier _curCopier;
         this.lock.lock();
         try {
             _lastSnapshotTerm = this.lastSnapshotTerm;
@@ -758,6 +761,7 @@ public class SnapshotExecutorImpl implements SnapshotExecutor {
             _savingSnapshot = this.savingSnapshot;
             _loadingSnapshot = this.loadingSnapshot;
             _stopped = this.stopped;
+            _curCopier = this.curCopier;
         } finally {
             this.lock.unlock();
         }
@@ -773,5 +777,8 @@ public class SnapshotExecutorImpl implements SnapshotExecutor {
             .println(_loadingSnapshot);
         out.print("  stopped: ") //
             .println(_stopped);
+        if (_curCopier instanceof Describer) {
+            ((Describer) _curCopier).describe(out);
+        }
     }
 }
@@ -18,16 +18,30 @@ package com.alipay.sofa.jraft.storage.snapshot.local;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+import org.apache.commons.io.filefilter.TrueFileFilter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,10 +54,12 @@ import com.alipay.sofa.jraft.storage.SnapshotThrottle;
 import com.alipay.sofa.jraft.storage.snapshot.Snapshot;
 import com.alipay.sofa.jraft.storage.snapshot.SnapshotCopier;
 import com.alipay.sofa.jraft.storage.snapshot.SnapshotReader;
+import com.alipay.sofa.jraft.storage.snapshot.remote.CopySession;
 import com.alipay.sofa.jraft.storage.snapshot.remote.RemoteFileCopier;
 import com.alipay.sofa.jraft.storage.snapshot.remote.Session;
 import com.alipay.sofa.jraft.util.ArrayDeque;
 import com.alipay.sofa.jraft.util.ByteBufferCollector;
+import com.alipay.sofa.jraft.util.Describer;
 import com.alipay.sofa.jraft.util.Requires;
 import com.alipay.sofa.jraft.util.ThreadPoolsFactory;
 import com.alipay.sofa.jraft.util.Utils;
@@ -51,32 +67,51 @@ import com.alipay.sofa.jraft.util.Utils;
 /**
  * Copy another machine snapshot to local.
  *
+ * Up to {@link SnapshotCopierOptions#getCopyParallelism()} files are copied at the same time,
+ * all of them sharing the snapshot throttle. A file being copied is marked by a
+ * {@link #PARTIAL_FILE_SUFFIX} file holding its remote checksum, so that the copy of the same
+ * file resumes from the copied bytes when the download is restarted, e.g. from a new leader.
+ *
+ * When filtering before copying, a remote file whose checksum matches a local file of the last
+ * snapshot, under any name, is hard linked from it instead of downloaded. With the content
+ * checksums recorded by {@link LocalSnapshotWriter}, every install only fetches the files changed
+ * since the last one.
+ *
  * @author boyan (boyan@alibaba-inc.com)
  *
  * 2018-Apr-07 11:32:30 AM
  */
-public class LocalSnapshotCopier extends SnapshotCopier {
+public class LocalSnapshotCopier extends SnapshotCopier implements Describer {
 
-    private static final Logger          LOG  = LoggerFactory.getLogger(LocalSnapshotCopier.class);
+    private static final Logger                    LOG                 = LoggerFactory
+                                                                           .getLogger(LocalSnapshotCopier.class);
 
-    private String                       groupId;
-    private final Lock                   lock = new ReentrantLock();
+    static final String                            PARTIAL_FILE_SUFFIX = ".jraft_partial";
+
+    private String                                 groupId;
+    private final Lock                             lock                = new ReentrantLock();
     /** The copy job future object*/
-    private volatile Future<?>           future;
-    private boolean                      cancelled;
+    private volatile Future<?>                     future;
+    private boolean                                cancelled;
     /** snapshot writer */
-    private LocalSnapshotWriter          writer;
+    private LocalSnapshotWriter                    writer;
     /** snapshot reader */
-    private volatile LocalSnapshotReader reader;
+    private volatile LocalSnapshotReader           reader;
     /** snapshot storage*/
-    private LocalSnapshotStorage         storage;
-    private boolean                      filterBeforeCopyRemote;
-    private LocalSnapshot                remoteSnapshot;
+    private LocalSnapshotStorage                   storage;
+    private boolean                                filterBeforeCopyRemote;
+    private LocalSnapshot                          remoteSnapshot;
     /** remote file copier*/
-    private RemoteFileCopier             copier;
-    /** current copying session*/
-    private Session                      curSession;
-    private SnapshotThrottle             snapshotThrottle;
+    private RemoteFileCopier                       copier;
+    /** current copying sessions*/
+    private final Set<Session>                     curSessions         = new HashSet<>();
+    private SnapshotThrottle                       snapshotThrottle;
+    /** the maximum files copied in parallel */
+    private int                                    copyParallelism     = 1;
+    /** <file name, session> of the files being copied, for the progress */
+    private final Map<String, CopySession>         copyingFiles        = new ConcurrentHashMap<>();
+    private final AtomicLong                       copiedFiles         = new AtomicLong();
+    private final AtomicLong                       copiedBytes         = new AtomicLong();
 
     public void setSnapshotThrottle(final SnapshotThrottle snapshotThrottle) {
         this.snapshotThrottle = snapshotThrottle;
@@ -103,16 +138,21 @@ public class LocalSnapshotCopier extends SnapshotCopier {
             if (!isOk()) {
                 break;
             }
-            final Set<String> files = this.remoteSnapshot.listFiles();
-            for (final String file : files) {
-                copyFile(file);
-            }
+            copyFiles(this.remoteSnapshot.listFiles());
         } while (false);
         if (!isOk() && this.writer != null && this.writer.isOk()) {
             this.writer.setError(getCode(), getErrorMsg());
         }
         if (this.writer != null) {
-            Utils.closeQuietly(this.writer);
+            // Keep the copied files on error to resume from them when filtering before copying
+            try {
+                this.writer.close(this.filterBeforeCopyRemote);
+            } catch (final IOException e) {
+                LOG.error("Fail to close snapshot writer {}.", this.writer.getPath(), e);
+                if (isOk()) {
+                    setError(RaftError.EIO, "Fail to close snapshot writer");
+                }
+            }
             this.writer = null;
         }
         if (isOk()) {
@@ -120,13 +160,66 @@ public class LocalSnapshotCopier extends SnapshotCopier {
         }
     }
 
+    /**
+     * Copies the files, |copyParallelism| ones at the same time.
+     */
+    void copyFiles(final Set<String> files) throws IOException, InterruptedException {
+        if (this.copyParallelism <= 1) {
+            for (final String file : files) {
+                copyFile(file);
+            }
+            return;
+        }
+        final Map<String, CopySession> inflight = new LinkedHashMap<>();
+        final BlockingQueue<String> finished = new LinkedBlockingQueue<>();
+        final Iterator<String> it = files.iterator();
+        try {
+            while (isOk()) {
+                while (isOk() && inflight.size() < this.copyParallelism && it.hasNext()) {
+                    final String fileName = it.next();
+                    final CopySession session = startCopyFile(fileName);
+                    if (session != null) {
+                        inflight.put(fileName, session);
+                        session.setFinishListener(() -> finished.add(fileName));
+                    }
+                }
+                if (inflight.isEmpty()) {
+                    break;
+                }
+                final String fileName = finished.take();
+                finishCopyFile(fileName, inflight.remove(fileName));
+            }
+        } finally {
+            // Failed or interrupted, stop the other copies, the copied bytes are kept to resume.
+            for (final Map.Entry<String, CopySession> entry : inflight.entrySet()) {
+                entry.getValue().cancel();
+                removeSession(entry.getKey(), entry.getValue());
+                Utils.closeQuietly(entry.getValue());
+            }
+        }
+    }
+
     void copyFile(final String fileName) throws IOException, InterruptedException {
+        final CopySession session = startCopyFile(fileName);
+        if (session == null) {
+            return;
+        }
+        session.join(); // join out of lock
+        finishCopyFile(fileName, session);
+    }
+
+    /**
+     * Starts to copy |fileName|, returns null when it's not copied, because it's in the writer
+     * already or on failure.
+     */
+    private CopySession startCopyFile(final String fileName) throws IOException {
         if (this.writer.getFileMeta(fileName) != null) {
             LOG.info("Skipped downloading {}", fileName);
-            return;
+            FileUtils.deleteQuietly(new File(getPartialFilePath(fileName)));
+            return null;
         }
         if (!checkFile(fileName)) {
-            return;
+            return null;
         }
         final String filePath = this.writer.getPath() + File.separator + fileName;
         final Path subPath = Paths.get(filePath);
@@ -135,53 +228,125 @@ public class LocalSnapshotCopier extends SnapshotCopier {
             if (!parentDir.exists() && !parentDir.mkdirs()) {
                 LOG.error("Fail to create directory for {}", filePath);
                 setError(RaftError.EIO, "Fail to create directory");
-                return;
+                return null;
             }
         }
 
         final LocalFileMeta meta = (LocalFileMeta) this.remoteSnapshot.getFileMeta(fileName);
-        Session session = null;
+        this.lock.lock();
         try {
-            this.lock.lock();
-            try {
-                if (this.cancelled) {
-                    if (isOk()) {
-                        setError(RaftError.ECANCELED, "ECANCELED");
-                    }
-                    return;
-                }
-                session = this.copier.startCopyToFile(fileName, filePath, null);
-                if (session == null) {
-                    LOG.error("Fail to copy {}", fileName);
-                    setError(-1, "Fail to copy %s", fileName);
-                    return;
+            if (this.cancelled) {
+                if (isOk()) {
+                    setError(RaftError.ECANCELED, "ECANCELED");
                 }
-                this.curSession = session;
-
-            } finally {
-                this.lock.unlock();
+                return null;
             }
-            session.join(); // join out of lock
-            this.lock.lock();
-            try {
-                this.curSession = null;
-            } finally {
-                this.lock.unlock();
+            final long resumeOffset = prepareResume(fileName, filePath, meta);
+            final CopySession session = this.copier.startCopyToFile(fileName, filePath, resumeOffset, null);
+            if (session == null) {
+                LOG.error("Fail to copy {}", fileName);
+                setError(-1, "Fail to copy %s", fileName);
+                return null;
             }
-            if (!session.status().isOk() && isOk()) {
-                setError(session.status().getCode(), session.status().getErrorMsg());
+            this.curSessions.add(session);
+            this.copyingFiles.put(fileName, session);
+            return session;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Adds the copied |fileName| into the writer once its |session| finishes.
+     */
+    private void finishCopyFile(final String fileName, final CopySession session) {
+        try {
+            removeSession(fileName, session);
+            if (!session.status().isOk()) {
+                if (isOk()) {
+                    setError(session.status().getCode(), session.status().getErrorMsg());
+                }
                 return;
             }
+            final LocalFileMeta meta = (LocalFileMeta) this.remoteSnapshot.getFileMeta(fileName);
             if (!this.writer.addFile(fileName, meta)) {
                 setError(RaftError.EIO, "Fail to add file to writer");
                 return;
             }
-            if (!this.writer.sync()) {
-                setError(RaftError.EIO, "Fail to sync writer");
+            try {
+                if (!this.writer.sync()) {
+                    setError(RaftError.EIO, "Fail to sync writer");
+                    return;
+                }
+            } catch (final IOException e) {
+                setError(RaftError.EIO, "Fail to sync writer: %s", e.getMessage());
+                return;
             }
+            FileUtils.deleteQuietly(new File(getPartialFilePath(fileName)));
+            this.copiedFiles.incrementAndGet();
+            this.copiedBytes.addAndGet(session.getWrittenBytes());
+            LOG.info("Copied file {} of {} bytes, {} files copied.", fileName, session.getWrittenBytes(),
+                this.copiedFiles.get());
         } finally {
-            if (session != null) {
-                Utils.closeQuietly(session);
+            Utils.closeQuietly(session);
+        }
+    }
+
+    private void removeSession(final String fileName, final Session session) {
+        this.lock.lock();
+        try {
+            this.curSessions.remove(session);
+            this.copyingFiles.remove(fileName);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private String getPartialFilePath(final String fileName) {
+        return this.writer.getPath() + File.separator + fileName + PARTIAL_FILE_SUFFIX;
+    }
+
+    /**
+     * Returns the bytes of |fileName| copied by an interrupted download of the same remote file,
+     * 0 when it's copied from scratch. Marks the file as being copied.
+     */
+    private long prepareResume(final String fileName, final String filePath, final LocalFileMeta meta)
+                                                                                                     throws IOException {
+        final File partialFile = new File(getPartialFilePath(fileName));
+        if (meta == null || !meta.hasChecksum()) {
+            // Can't tell whether the copied bytes are from the same file.
+            FileUtils.deleteQuietly(partialFile);
+            return 0;
+        }
+        final File file = new File(filePath);
+        if (partialFile.exists() && file.exists()) {
+            final String checksum = new String(Files.readAllBytes(partialFile.toPath()), StandardCharsets.UTF_8);
+            if (checksum.equals(meta.getChecksum())) {
+                LOG.info("Resume downloading {} from offset {}.", fileName, file.length());
+                return file.length();
+            }
+        }
+        Files.write(partialFile.toPath(), meta.getChecksum().getBytes(StandardCharsets.UTF_8));
+        return 0;
+    }
+
+    /**
+     * Deletes the partially copied files that are not in the remote snapshot.
+     */
+    private void removeStalePartialFiles() {
+        final File dir = new File(this.writer.getPath());
+        if (!dir.isDirectory()) {
+            return;
+        }
+        final String dirPath = dir.getAbsolutePath();
+        for (final File partialFile : FileUtils.listFiles(dir, new SuffixFileFilter(PARTIAL_FILE_SUFFIX),
+            TrueFileFilter.INSTANCE)) {
+            final String path = partialFile.getAbsolutePath();
+            final String fileName = path.substring(dirPath.length() + 1, path.length() - PARTIAL_FILE_SUFFIX.length());
+            if (this.remoteSnapshot.getFileMeta(fileName) == null) {
+                LOG.info("Deleted stale partially copied file {}.", fileName);
+                FileUtils.deleteQuietly(new File(dirPath + File.separator + fileName));
+                FileUtils.deleteQuietly(partialFile);
             }
         }
     }
@@ -221,14 +386,14 @@ public class LocalSnapshotCopier extends SnapshotCopier {
                     return;
                 }
                 session = this.copier.startCopy2IoBuffer(Snapshot.JRAFT_SNAPSHOT_META_FILE, metaBuf, null);
-                this.curSession = session;
+                this.curSessions.add(session);
             } finally {
                 this.lock.unlock();
             }
             session.join(); //join out of lock.
             this.lock.lock();
             try {
-                this.curSession = null;
+                this.curSessions.remove(session);
             } finally {
                 this.lock.unlock();
             }
@@ -251,6 +416,10 @@ public class LocalSnapshotCopier extends SnapshotCopier {
         }
     }
 
+    private static boolean isContentHash(final LocalFileMeta meta) {
+        return meta.hasChecksum() && meta.getChecksum().startsWith(LocalSnapshotWriter.CONTENT_HASH_PREFIX);
+    }
+
     boolean filterBeforeCopy(final LocalSnapshotWriter writer, final SnapshotReader lastSnapshot) throws IOException {
         final Set<String> existingFiles = writer.listFiles();
         final ArrayDeque<String> toRemove = new ArrayDeque<>();
@@ -262,6 +431,16 @@ public class LocalSnapshotCopier extends SnapshotCopier {
         }
 
         final Set<String> remoteFiles = this.remoteSnapshot.listFiles();
+        // <content hash, file name> of the local files in last_snapshot
+        final Map<String, String> lastSnapshotFiles = new HashMap<>();
+        if (lastSnapshot != null) {
+            for (final String fileName : lastSnapshot.listFiles()) {
+                final LocalFileMeta meta = (LocalFileMeta) lastSnapshot.getFileMeta(fileName);
+                if (meta != null && isContentHash(meta) && meta.getSource() == FileSource.FILE_SOURCE_LOCAL) {
+                    lastSnapshotFiles.putIfAbsent(meta.getChecksum(), fileName);
+                }
+            }
+        }
 
         for (final String fileName : remoteFiles) {
             final LocalFileMeta remoteMeta = (LocalFileMeta) this.remoteSnapshot.getFileMeta(fileName);
@@ -288,20 +467,33 @@ public class LocalSnapshotCopier extends SnapshotCopier {
             if (lastSnapshot == null) {
                 continue;
             }
-            if ((localMeta = (LocalFileMeta) lastSnapshot.getFileMeta(fileName)) == null) {
-                continue;
-            }
-            if (!localMeta.hasChecksum() || !localMeta.getChecksum().equals(remoteMeta.getChecksum())) {
-                continue;
+            String sourceName = fileName;
+            localMeta = (LocalFileMeta) lastSnapshot.getFileMeta(fileName);
+            if (localMeta == null || !localMeta.hasChecksum()
+                || !localMeta.getChecksum().equals(remoteMeta.getChecksum())) {
+                // Only a content hash addresses the content, look for it under another name.
+                // Any other checksum is user defined and identifies the file under its name only.
+                if (!isContentHash(remoteMeta)) {
+                    continue;
+                }
+                sourceName = lastSnapshotFiles.get(remoteMeta.getChecksum());
+                if (sourceName == null) {
+                    continue;
+                }
+                localMeta = remoteMeta.toBuilder().setSource(FileSource.FILE_SOURCE_LOCAL).build();
             }
 
-            LOG.info("Found the same file ={} checksum={} in lastSnapshot={}", fileName, remoteMeta.getChecksum(),
-                lastSnapshot.getPath());
+            LOG.info("Found the same file ={} checksum={} as {} in lastSnapshot={}", fileName,
+                remoteMeta.getChecksum(), sourceName, lastSnapshot.getPath());
             if (localMeta.getSource() == FileSource.FILE_SOURCE_LOCAL) {
-                final String sourcePath = lastSnapshot.getPath() + File.separator + fileName;
+                final String sourcePath = lastSnapshot.getPath() + File.separator + sourceName;
                 final String destPath = writer.getPath() + File.separator + fileName;
                 FileUtils.deleteQuietly(new File(destPath));
                 try {
+                    final Path parentDir = Paths.get(destPath).getParent();
+                    if (parentDir != null) {
+                        Files.createDirectories(parentDir);
+                    }
                     Files.createLink(Paths.get(destPath), Paths.get(sourcePath));
                 } catch (final IOException e) {
                     LOG.error("Fail to link {} to {}", sourcePath, destPath, e);
@@ -349,6 +541,7 @@ public class LocalSnapshotCopier extends SnapshotCopier {
                 return;
             }
         }
+        removeStalePartialFiles();
         this.writer.saveMeta(this.remoteSnapshot.getMetaTable().getMeta());
         if (!this.writer.sync()) {
             LOG.error("Fail to sync snapshot writer path={}", this.writer.getPath());
@@ -361,6 +554,7 @@ public class LocalSnapshotCopier extends SnapshotCopier {
         this.cancelled = false;
         this.groupId = opts.getGroupId();
         this.filterBeforeCopyRemote = opts.getNodeOptions().isFilterBeforeCopyRemote();
+        this.copyParallelism = Math.max(1, opts.getCopyParallelism());
         this.remoteSnapshot = new LocalSnapshot(opts.getRaftOptions());
         return this.copier.init(uri, this.snapshotThrottle, opts);
     }
@@ -407,8 +601,8 @@ public class LocalSnapshotCopier extends SnapshotCopier {
                 setError(RaftError.ECANCELED, "Cancel the copier manually.");
             }
             this.cancelled = true;
-            if (this.curSession != null) {
-                this.curSession.cancel();
+            for (final Session session : this.curSessions) {
+                session.cancel();
             }
             if (this.future != null) {
                 this.future.cancel(true);
@@ -439,4 +633,19 @@ public class LocalSnapshotCopier extends SnapshotCopier {
     public SnapshotReader getReader() {
         return this.reader;
     }
+
+    @Override
+    public void describe(final Printer out) {
+        final List<Map.Entry<String, CopySession>> copying = new ArrayList<>(this.copyingFiles.entrySet());
+        out.print("  copiedFiles: ") //
+            .println(this.copiedFiles.get());
+        out.print("  copiedBytes: ") //
+            .println(this.copiedBytes.get());
+        for (final Map.Entry<String, CopySession> entry : copying) {
+            out.print("  copying: ") //
+                .print(entry.getKey()) //
+                .print(", writtenBytes: ") //
+                .println(entry.getValue().getWrittenBytes());
+        }
+    }
 }
@@ -276,6 +276,10 @@ public class LocalSnapshotStorage implements SnapshotStorage {
                 destroySnapshot(writer.getPath());
             }
         }
+        if (writer.getParentIndex() != 0) {
+            unref(writer.getParentIndex());
+            writer.setParent(0, null);
+        }
 
         if (ioe != null) {
             throw ioe;
@@ -316,6 +320,16 @@ public class LocalSnapshotStorage implements SnapshotStorage {
                 writer = null;
                 break;
             }
+            // The unchanged files are linked from the last snapshot, keep it until the writer is closed.
+            this.lock.lock();
+            try {
+                if (this.lastSnapshotIndex != 0) {
+                    ref(this.lastSnapshotIndex);
+                    writer.setParent(this.lastSnapshotIndex, getSnapshotPath(this.lastSnapshotIndex));
+                }
+            } finally {
+                this.lock.unlock();
+            }
         } while (false);
         return writer;
     }
@@ -18,45 +18,83 @@ package com.alipay.sofa.jraft.storage.snapshot.local;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.alipay.sofa.jraft.entity.LocalFileMetaOutter.FileSource;
 import com.alipay.sofa.jraft.entity.LocalFileMetaOutter.LocalFileMeta;
 import com.alipay.sofa.jraft.entity.LocalFileMetaOutter.LocalFileMeta.Builder;
 import com.alipay.sofa.jraft.entity.RaftOutter.SnapshotMeta;
 import com.alipay.sofa.jraft.error.RaftError;
 import com.alipay.sofa.jraft.option.RaftOptions;
 import com.alipay.sofa.jraft.storage.snapshot.SnapshotWriter;
+import com.alipay.sofa.jraft.util.BytesUtil;
 import com.alipay.sofa.jraft.util.Utils;
 import com.google.protobuf.Message;
 
 /**
  * Snapshot writer to write snapshot into local file system.
  *
+ * A snapshot is built upon the last one: the files that didn't change are hard linked from it by
+ * {@link #addFileFromParent(String)}, so only the changed files are written, while every snapshot
+ * directory stays complete on its own. With {@link RaftOptions#isSnapshotContentHash()}, the files
+ * added without a checksum get a content checksum, reused from the last snapshot for the same
+ * file, which lets the followers reuse them by content.
+ *
  * @author boyan (boyan@alibaba-inc.com)
  *
  * 2018-Apr-08 11:51:43 AM
  */
 public class LocalSnapshotWriter extends SnapshotWriter {
 
-    private static final Logger          LOG = LoggerFactory.getLogger(LocalSnapshotWriter.class);
+    private static final Logger          LOG                 = LoggerFactory.getLogger(LocalSnapshotWriter.class);
+
+    static final String                  CONTENT_HASH_PREFIX = "sha256:";
 
     private final LocalSnapshotMetaTable metaTable;
     private final String                 path;
     private final LocalSnapshotStorage   snapshotStorage;
+    private final RaftOptions            raftOptions;
     private volatile boolean             closed;
+    /** The index of the last snapshot this one is built upon, 0 when there's none */
+    private long                         parentIndex;
+    private String                       parentPath;
+    private LocalSnapshotMetaTable       parentMetaTable;
 
     public LocalSnapshotWriter(String path, LocalSnapshotStorage snapshotStorage, RaftOptions raftOptions) {
         super();
         this.snapshotStorage = snapshotStorage;
         this.path = path;
+        this.raftOptions = raftOptions;
         this.metaTable = new LocalSnapshotMetaTable(raftOptions);
         this.closed = false;
     }
 
+    /**
+     * Sets the last snapshot, referenced by the storage until this writer is closed.
+     */
+    void setParent(final long parentIndex, final String parentPath) {
+        this.parentIndex = parentIndex;
+        this.parentPath = parentPath;
+    }
+
+    /**
+     * Returns the index of the last snapshot the unchanged files can be linked from, 0 when there
+     * is none.
+     */
+    public long getParentIndex() {
+        return this.parentIndex;
+    }
+
     @Override
     public boolean init(final Void v) {
         final File dir = new File(this.path);
@@ -127,10 +165,114 @@ public class LocalSnapshotWriter extends SnapshotWriter {
         if (fileMeta != null) {
             metaBuilder.mergeFrom(fileMeta);
         }
+        if (this.raftOptions.isSnapshotContentHash() && !metaBuilder.hasChecksum()
+            && metaBuilder.getSource() == FileSource.FILE_SOURCE_LOCAL) {
+            final String checksum = getContentChecksum(fileName);
+            if (checksum != null) {
+                metaBuilder.setChecksum(checksum);
+            }
+        }
         final LocalFileMeta meta = metaBuilder.build();
         return this.metaTable.addFile(fileName, meta);
     }
 
+    /**
+     * Adds the file |fileName| of the last snapshot unchanged, hard linked into this snapshot with
+     * its metadata, so that only the changed files are written.
+     *
+     * @return true when the file is linked, false when the last snapshot doesn't have it or on
+     *         failure
+     */
+    public boolean addFileFromParent(final String fileName) {
+        checkState();
+        final LocalFileMeta parentMeta = getParentFileMeta(fileName);
+        if (parentMeta == null || parentMeta.getSource() != FileSource.FILE_SOURCE_LOCAL) {
+            return false;
+        }
+        final Path sourcePath = Paths.get(this.parentPath, fileName);
+        final Path destPath = Paths.get(this.path, fileName);
+        try {
+            if (destPath.getParent() != null) {
+                Files.createDirectories(destPath.getParent());
+            }
+            Files.deleteIfExists(destPath);
+            Files.createLink(destPath, sourcePath);
+        } catch (final IOException e) {
+            LOG.error("Fail to link {} to {}.", sourcePath, destPath, e);
+            return false;
+        }
+        return this.metaTable.addFile(fileName, parentMeta);
+    }
+
+    /**
+     * Returns the metadata of |fileName| in the last snapshot, or null.
+     */
+    public LocalFileMeta getParentFileMeta(final String fileName) {
+        final LocalSnapshotMetaTable parentTable = getParentMetaTable();
+        return parentTable != null ? parentTable.getFileMeta(fileName) : null;
+    }
+
+    private LocalSnapshotMetaTable getParentMetaTable() {
+        if (this.parentMetaTable == null && this.parentPath != null) {
+            final LocalSnapshotMetaTable table = new LocalSnapshotMetaTable(this.raftOptions);
+            try {
+                if (!table.loadFromFile(this.parentPath + File.separator + JRAFT_SNAPSHOT_META_FILE)) {
+                    LOG.warn("Fail to load the meta of the last snapshot {}.", this.parentPath);
+                    this.parentPath = null;
+                    return null;
+                }
+            } catch (final IOException e) {
+                LOG.warn("Fail to load the meta of the last snapshot {}.", this.parentPath, e);
+                this.parentPath = null;
+                return null;
+            }
+            this.parentMetaTable = table;
+        }
+        return this.parentMetaTable;
+    }
+
+    /**
+     * Returns the content checksum of |fileName|, taken from the last snapshot when it's the same
+     * file, e.g. linked by the state machine, computed otherwise. Returns null on failure.
+     */
+    private String getContentChecksum(final String fileName) {
+        final File file = new File(this.path, fileName);
+        if (!file.isFile()) {
+            return null;
+        }
+        final LocalFileMeta parentMeta = getParentFileMeta(fileName);
+        try {
+            if (parentMeta != null && parentMeta.hasChecksum()
+                && parentMeta.getChecksum().startsWith(CONTENT_HASH_PREFIX)) {
+                final File parentFile = new File(this.parentPath, fileName);
+                if (parentFile.exists() && Files.isSameFile(parentFile.toPath(), file.toPath())) {
+                    return parentMeta.getChecksum();
+                }
+            }
+            return contentHash(file);
+        } catch (final IOException e) {
+            LOG.warn("Fail to compute the content checksum of {}.", file, e);
+            return null;
+        }
+    }
+
+    static String contentHash(final File file) throws IOException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        final byte[] buf = new byte[64 * 1024];
+        try (final InputStream in = Files.newInputStream(file.toPath())) {
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                digest.update(buf, 0, n);
+            }
+        }
+        return CONTENT_HASH_PREFIX + BytesUtil.toHex(digest.digest());
+    }
+
     @Override
     public boolean removeFile(final String fileName) {
         checkState();
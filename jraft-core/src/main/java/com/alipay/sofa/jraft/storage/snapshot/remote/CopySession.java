@@ -19,10 +19,15 @@ package com.alipay.sofa.jraft.storage.snapshot.remote;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -36,23 +41,27 @@ import com.alipay.sofa.jraft.core.Scheduler;
 import com.alipay.sofa.jraft.error.RaftError;
 import com.alipay.sofa.jraft.option.CopyOptions;
 import com.alipay.sofa.jraft.option.RaftOptions;
-import com.alipay.sofa.jraft.rpc.RaftClientService;
-import com.alipay.sofa.jraft.rpc.RpcRequests;
+import com.alipay.sofa.jraft.rpc.RaftMessageClientService;
 import com.alipay.sofa.jraft.rpc.RpcRequests.GetFileRequest;
 import com.alipay.sofa.jraft.rpc.RpcRequests.GetFileResponse;
-import com.alipay.sofa.jraft.rpc.RpcResponseClosureAdapter;
 import com.alipay.sofa.jraft.rpc.RpcUtils;
 import com.alipay.sofa.jraft.storage.SnapshotThrottle;
 import com.alipay.sofa.jraft.util.BufferUtils;
 import com.alipay.sofa.jraft.util.ByteBufferCollector;
 import com.alipay.sofa.jraft.util.Endpoint;
 import com.alipay.sofa.jraft.util.OnlyForTest;
-import com.alipay.sofa.jraft.util.Requires;
 import com.alipay.sofa.jraft.util.Utils;
-import com.google.protobuf.Message;
+import com.google.common.base.Throwables;
 
 /**
  * Copy session.
+ *
+ * A file is copied as a window of up to {@link RaftOptions#getMaxFileChunksInflight()} chunks
+ * of {@link RaftOptions#getMaxByteCountPerRpc()} bytes requested at consecutive offsets, the
+ * chunks are written in offset order as they return and every written chunk opens room for the
+ * next one, so the transfer is bound by the bandwidth rather than by the round trip. On failure
+ * the chunks not written yet are dropped and the copy resumes from the written offset.
+ *
  * @author boyan (boyan@alibaba-inc.com)
  *
  * 2018-Apr-08 12:01:23 PM
@@ -60,37 +69,49 @@ import com.google.protobuf.Message;
 @ThreadSafe
 public class CopySession implements Session {
 
-    private static final Logger          LOG         = LoggerFactory.getLogger(CopySession.class);
+    private static final Logger            LOG         = LoggerFactory.getLogger(CopySession.class);
 
-    private final Lock                   lock        = new ReentrantLock();
-    private final Status                 st          = Status.OK();
-    private final CountDownLatch         finishLatch = new CountDownLatch(1);
-    private final GetFileResponseClosure done        = new GetFileResponseClosure();
-    private final RaftClientService      rpcService;
-    private final GetFileRequest.Builder requestBuilder;
-    private final Endpoint               endpoint;
-    private final Scheduler              timerManager;
-    private final SnapshotThrottle       snapshotThrottle;
-    private final RaftOptions            raftOptions;
-    private int                          retryTimes  = 0;
-    private boolean                      finished;
-    private ByteBufferCollector          destBuf;
-    private CopyOptions                  copyOptions = new CopyOptions();
-    private OutputStream                 outputStream;
-    private ScheduledFuture<?>           timer;
-    private String                       destPath;
-    private Future<Message>              rpcCall;
+    private final Lock                     lock        = new ReentrantLock();
+    private final Status                   st          = Status.OK();
+    private final CountDownLatch           finishLatch = new CountDownLatch(1);
+    private final RaftMessageClientService rpcService;
+    private final GetFileRequest.Builder   requestBuilder;
+    private final Endpoint                 endpoint;
+    private final Scheduler                timerManager;
+    private final SnapshotThrottle         snapshotThrottle;
+    private final RaftOptions              raftOptions;
+    // <offset, chunk> of the chunks requested but not written yet
+    private final TreeMap<Long, Chunk>     chunks      = new TreeMap<>();
+    private int                            retryTimes  = 0;
+    private boolean                        finished;
+    private ByteBufferCollector            destBuf;
+    private CopyOptions                    copyOptions = new CopyOptions();
+    private OutputStream                   outputStream;
+    private ScheduledFuture<?>             timer;
+    private String                         destPath;
+    // Offset of the next chunk to request
+    private long                           nextOffset;
+    // Bytes written into the destination
+    private long                           writtenOffset;
+    // Whether a chunk reached the end of the file, no more chunks are requested then
+    private boolean                        eofReached;
+    // Bumped when the in-flight chunks are dropped, the responses of the dropped chunks are ignored
+    private int                            version;
+    // Run once the session finishes
+    private Runnable                       finishListener;
 
     /**
-     * Get file response closure to answer client.
-     *
-     * @author boyan (boyan@alibaba-inc.com)
+     * A piece of the file requested from the remote.
      */
-    private class GetFileResponseClosure extends RpcResponseClosureAdapter<GetFileResponse> {
+    private static final class Chunk {
+        final long                         offset;
+        final long                         count;
+        CompletableFuture<GetFileResponse> rpcFuture;
+        GetFileResponse                    response;
 
-        @Override
-        public void run(final Status status) {
-            onRpcReturned(status, getResponse());
+        Chunk(final long offset, final long count) {
+            this.offset = offset;
+            this.count = count;
         }
     }
 
@@ -98,14 +119,47 @@ public class CopySession implements Session {
         this.destPath = destPath;
     }
 
-    @OnlyForTest
-    GetFileResponseClosure getDone() {
-        return this.done;
+    /**
+     * Starts the copy at |offset|, when the destination already holds the bytes before it.
+     */
+    public void setStartOffset(final long offset) {
+        this.lock.lock();
+        try {
+            this.nextOffset = offset;
+            this.writtenOffset = offset;
+        } finally {
+            this.lock.unlock();
+        }
     }
 
-    @OnlyForTest
-    Future<Message> getRpcCall() {
-        return this.rpcCall;
+    /**
+     * Returns the bytes of the file in the destination, including the ones before the start
+     * offset.
+     */
+    public long getWrittenBytes() {
+        this.lock.lock();
+        try {
+            return this.writtenOffset;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the listener run once this session finishes, or right away when it's finished.
+     */
+    public void setFinishListener(final Runnable listener) {
+        boolean runNow;
+        this.lock.lock();
+        try {
+            this.finishListener = listener;
+            runNow = this.finished;
+        } finally {
+            this.lock.unlock();
+        }
+        if (runNow) {
+            listener.run();
+        }
     }
 
     @OnlyForTest
@@ -129,7 +183,7 @@ public class CopySession implements Session {
         }
     }
 
-    public CopySession(final RaftClientService rpcService, final Scheduler timerManager,
+    public CopySession(final RaftMessageClientService rpcService, final Scheduler timerManager,
                        final SnapshotThrottle snapshotThrottle, final RaftOptions raftOptions,
                        final GetFileRequest.Builder rb, final Endpoint ep) {
         super();
@@ -163,9 +217,7 @@ public class CopySession implements Session {
             if (this.timer != null) {
                 this.timer.cancel(true);
             }
-            if (this.rpcCall != null) {
-                this.rpcCall.cancel(true);
-            }
+            dropChunks();
             if (this.st.isOk()) {
                 this.st.setError(RaftError.ECANCELED, RaftError.ECANCELED.name());
             }
@@ -189,8 +241,7 @@ public class CopySession implements Session {
         if (!this.finished) {
             if (!this.st.isOk()) {
                 LOG.error("Fail to copy data, readerId={} fileName={} offset={} status={}",
-                    this.requestBuilder.getReaderId(), this.requestBuilder.getFilename(),
-                    this.requestBuilder.getOffset(), this.st);
+                    this.requestBuilder.getReaderId(), this.requestBuilder.getFilename(), this.writtenOffset, this.st);
             }
             if (this.outputStream != null) {
                 Utils.closeQuietly(this.outputStream);
@@ -205,6 +256,9 @@ public class CopySession implements Session {
             }
             this.finished = true;
             this.finishLatch.countDown();
+            if (this.finishListener != null) {
+                this.finishListener.run();
+            }
         }
     }
 
@@ -212,15 +266,36 @@ public class CopySession implements Session {
         RpcUtils.runInThread(this::sendNextRpc);
     }
 
-    void onRpcReturned(final Status status, final GetFileResponse response) {
+    /**
+     * Cancels the chunks not written yet, the next chunk is requested from the written offset.
+     */
+    private void dropChunks() {
+        final List<Chunk> dropped = new ArrayList<>(this.chunks.values());
+        this.chunks.clear();
+        this.nextOffset = this.writtenOffset;
+        this.eofReached = false;
+        this.version++;
+        // The responses of the cancelled requests are ignored as the version is bumped.
+        for (final Chunk chunk : dropped) {
+            if (chunk.rpcFuture != null) {
+                chunk.rpcFuture.cancel(true);
+            }
+        }
+    }
+
+    void onRpcReturned(final int stateVersion, final long offset, final Status status, final GetFileResponse response) {
         this.lock.lock();
         try {
-            if (this.finished) {
+            if (this.finished || stateVersion != this.version) {
+                return;
+            }
+            final Chunk chunk = this.chunks.get(offset);
+            if (chunk == null) {
                 return;
             }
             if (!status.isOk()) {
-                // Reset count to make next rpc retry the previous one
-                this.requestBuilder.setCount(0);
+                // Resume from the written offset on retry
+                dropChunks();
                 if (status.getCode() == RaftError.ECANCELED.getNumber()) {
                     if (this.st.isOk()) {
                         this.st.setError(status.getCode(), status.getErrorMsg());
@@ -243,26 +318,39 @@ public class CopySession implements Session {
                 return;
             }
             this.retryTimes = 0;
-            Requires.requireNonNull(response, "response");
-            // Reset count to |real_read_size| to make next rpc get the right offset
-            if (!response.getEof()) {
-                this.requestBuilder.setCount(response.getReadSize());
+            chunk.response = response;
+            if (response.getEof()) {
+                this.eofReached = true;
             }
-            if (this.outputStream != null) {
-                try {
-                    response.getData().writeTo(this.outputStream);
-                } catch (final IOException e) {
-                    LOG.error("Fail to write into file {}", this.destPath, e);
-                    this.st.setError(RaftError.EIO, RaftError.EIO.name());
+            // Write the returned chunks in offset order
+            Map.Entry<Long, Chunk> first;
+            while ((first = this.chunks.firstEntry()) != null && first.getValue().response != null) {
+                this.chunks.pollFirstEntry();
+                final GetFileResponse resp = first.getValue().response;
+                if (this.outputStream != null) {
+                    try {
+                        resp.getData().writeTo(this.outputStream);
+                    } catch (final IOException e) {
+                        LOG.error("Fail to write into file {}", this.destPath, e);
+                        this.st.setError(RaftError.EIO, RaftError.EIO.name());
+                        dropChunks();
+                        onFinished();
+                        return;
+                    }
+                } else {
+                    this.destBuf.put(resp.getData().asReadOnlyByteBuffer());
+                }
+                this.writtenOffset += resp.getData().size();
+                if (resp.getEof()) {
+                    dropChunks();
                     onFinished();
                     return;
                 }
-            } else {
-                this.destBuf.put(response.getData().asReadOnlyByteBuffer());
-            }
-            if (response.getEof()) {
-                onFinished();
-                return;
+                if (resp.getData().size() != first.getValue().count) {
+                    // A short read, the offsets of the following chunks are wrong.
+                    dropChunks();
+                    break;
+                }
             }
         } finally {
             this.lock.unlock();
@@ -271,37 +359,72 @@ public class CopySession implements Session {
     }
 
     /**
-     * Send next RPC request to get a piece of file data.
+     * Send next RPC requests to fill the window of in-flight chunks.
      */
     void sendNextRpc() {
+        final List<Chunk> toSend = new ArrayList<>();
+        final GetFileRequest.Builder rb;
+        final int stateVersion;
         this.lock.lock();
         try {
             this.timer = null;
-            final long offset = this.requestBuilder.getOffset() + this.requestBuilder.getCount();
-            final long maxCount = this.destBuf == null ? this.raftOptions.getMaxByteCountPerRpc() : Integer.MAX_VALUE;
-            this.requestBuilder.setOffset(offset).setCount(maxCount).setReadPartly(true);
-
             if (this.finished) {
                 return;
             }
-            // throttle
-            long newMaxCount = maxCount;
-            if (this.snapshotThrottle != null) {
-                newMaxCount = this.snapshotThrottle.throttledByThroughput(maxCount);
-                if (newMaxCount == 0) {
-                    // Reset count to make next rpc retry the previous one
-                    this.requestBuilder.setCount(0);
-                    this.timer = this.timerManager.schedule(this::onTimer, this.copyOptions.getRetryIntervalMs(),
-                        TimeUnit.MILLISECONDS);
-                    return;
+            // The whole file is read by one request when copying into the buffer
+            final long maxCount = this.destBuf == null ? this.raftOptions.getMaxByteCountPerRpc() : Integer.MAX_VALUE;
+            final int window = this.destBuf == null ? Math.max(1, this.raftOptions.getMaxFileChunksInflight()) : 1;
+            while (!this.eofReached && this.chunks.size() < window) {
+                // throttle
+                long newMaxCount = maxCount;
+                if (this.snapshotThrottle != null) {
+                    newMaxCount = this.snapshotThrottle.throttledByThroughput(maxCount);
+                    if (newMaxCount == 0) {
+                        if (this.chunks.isEmpty()) {
+                            // Nothing in flight calls back, retry later.
+                            this.timer = this.timerManager.schedule(this::onTimer,
+                                this.copyOptions.getRetryIntervalMs(), TimeUnit.MILLISECONDS);
+                        }
+                        break;
+                    }
                 }
+                final Chunk chunk = new Chunk(this.nextOffset, newMaxCount);
+                this.chunks.put(chunk.offset, chunk);
+                this.nextOffset += newMaxCount;
+                toSend.add(chunk);
             }
-            this.requestBuilder.setCount(newMaxCount);
-            final RpcRequests.GetFileRequest request = this.requestBuilder.build();
-            LOG.debug("Send get file request {} to peer {}", request, this.endpoint);
-            this.rpcCall = this.rpcService.getFile(this.endpoint, request, this.copyOptions.getTimeoutMs(), this.done);
+            rb = this.requestBuilder.clone();
+            stateVersion = this.version;
         } finally {
             this.lock.unlock();
         }
+        // Send outside of the lock, the response may be handled in the calling thread.
+        for (final Chunk chunk : toSend) {
+            final GetFileRequest request = rb.setOffset(chunk.offset).setCount(chunk.count).setReadPartly(true)
+                .build();
+            LOG.debug("Send get file request {} to peer {}", request, this.endpoint);
+            final CompletableFuture<GetFileResponse> rpcFuture = this.rpcService.getFile(this.endpoint, request,
+                this.copyOptions.getTimeoutMs());
+            this.lock.lock();
+            try {
+                chunk.rpcFuture = rpcFuture;
+            } finally {
+                this.lock.unlock();
+            }
+            rpcFuture.whenComplete((response, throwable) -> onRpcReturned(stateVersion, chunk.offset,
+                rpcStatus(throwable, response), response));
+        }
+    }
+
+    private static Status rpcStatus(final Throwable throwable, final GetFileResponse response) {
+        if (throwable != null) {
+            final Throwable cause = Throwables.getRootCause(throwable);
+            return new Status(cause instanceof TimeoutException ? RaftError.ETIMEDOUT : RaftError.EINTERNAL,
+                "Fail to get file: %s", cause.getMessage());
+        }
+        if (response.hasErrorResponse() && response.getErrorResponse().getErrorCode() != 0) {
+            return new Status(response.getErrorResponse().getErrorCode(), response.getErrorResponse().getErrorMsg());
+        }
+        return Status.OK();
     }
 }
@@ -21,6 +21,8 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -29,7 +31,7 @@ import com.alipay.sofa.jraft.core.Scheduler;
 import com.alipay.sofa.jraft.option.CopyOptions;
 import com.alipay.sofa.jraft.option.RaftOptions;
 import com.alipay.sofa.jraft.option.SnapshotCopierOptions;
-import com.alipay.sofa.jraft.rpc.RaftClientService;
+import com.alipay.sofa.jraft.rpc.RaftMessageClientService;
 import com.alipay.sofa.jraft.rpc.RpcRequests.GetFileRequest;
 import com.alipay.sofa.jraft.storage.SnapshotThrottle;
 import com.alipay.sofa.jraft.storage.snapshot.Snapshot;
@@ -46,14 +48,14 @@ import com.alipay.sofa.jraft.util.Utils;
  */
 public class RemoteFileCopier {
 
-    private static final Logger LOG = LoggerFactory.getLogger(RemoteFileCopier.class);
+    private static final Logger      LOG = LoggerFactory.getLogger(RemoteFileCopier.class);
 
-    private long                readId;
-    private RaftClientService   rpcService;
-    private Endpoint            endpoint;
-    private RaftOptions         raftOptions;
-    private Scheduler           timerManager;
-    private SnapshotThrottle    snapshotThrottle;
+    private long                     readId;
+    private RaftMessageClientService rpcService;
+    private Endpoint                 endpoint;
+    private RaftOptions              raftOptions;
+    private Scheduler                timerManager;
+    private SnapshotThrottle         snapshotThrottle;
 
     @OnlyForTest
     long getReaderId() {
@@ -89,7 +91,7 @@ public class RemoteFileCopier {
             LOG.error("Fail to parse readerId or endpoint.", e);
             return false;
         }
-        if (!this.rpcService.connect(this.endpoint)) {
+        if (!this.rpcService.checkConnection(this.endpoint, true)) {
             LOG.error("Fail to init channel to {}.", this.endpoint);
             return false;
         }
@@ -121,17 +123,40 @@ public class RemoteFileCopier {
 
     public Session startCopyToFile(final String source, final String destPath, final CopyOptions opts)
                                                                                                       throws IOException {
+        return startCopyToFile(source, destPath, 0, opts);
+    }
+
+    /**
+     * Start to copy `source` from remote to local dest, resuming after the first `resumeOffset`
+     * bytes of the dest when it holds that many, from scratch otherwise.
+     *
+     * @param source       source from remote
+     * @param destPath     local path
+     * @param resumeOffset the bytes already copied into dest
+     * @param opts         options of copy
+     * @return the copy session, null on failure
+     */
+    public CopySession startCopyToFile(final String source, final String destPath, long resumeOffset,
+                                       final CopyOptions opts) throws IOException {
         final File file = new File(destPath);
 
-        // delete exists file.
-        if (file.exists()) {
+        if (resumeOffset > 0 && (!file.exists() || file.length() < resumeOffset)) {
+            resumeOffset = 0;
+        }
+        if (resumeOffset > 0) {
+            // Drop the bytes past the resumed offset.
+            try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(resumeOffset);
+            }
+        } else if (file.exists()) {
+            // delete exists file.
             if (!file.delete()) {
                 LOG.error("Fail to delete destPath: {}.", destPath);
                 return null;
             }
         }
 
-        final OutputStream out = new BufferedOutputStream(new FileOutputStream(file, false) {
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(file, resumeOffset > 0) {
 
             @Override
             public void close() throws IOException {
@@ -143,6 +168,7 @@ public class RemoteFileCopier {
         session.setOutputStream(out);
         session.setDestPath(destPath);
         session.setDestBuf(null);
+        session.setStartOffset(resumeOffset);
         if (opts != null) {
             session.setCopyOptions(opts);
         }
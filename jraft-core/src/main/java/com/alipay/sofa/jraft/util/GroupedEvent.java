@@ -0,0 +1,30 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.util;
+
+/**
+ * Base class of the events published through a {@link StripedDisruptor}, it carries the
+ * subscription the event is dispatched to, so that the groups sharing a stripe never see
+ * each other's events.
+ */
+public abstract class GroupedEvent {
+
+    /** The subscription which published the event, set by the stripe */
+    StripedDisruptor.Subscription<?> subscription;
+    /** Publish time, to measure how long the event waited in the stripe */
+    long                             publishNanos;
+}
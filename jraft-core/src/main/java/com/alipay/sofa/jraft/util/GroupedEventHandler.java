@@ -0,0 +1,35 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.util;
+
+import com.lmax.disruptor.EventHandler;
+
+/**
+ * Handler of the events of one group on a {@link StripedDisruptor}.
+ *
+ * <p>{@code endOfBatch} only marks the end of the stripe batch for the group owning the last
+ * event of it, the other groups that got events in the batch are told by
+ * {@link #onBatchEnd()} instead, and must flush what they batched there.
+ */
+public interface GroupedEventHandler<T extends GroupedEvent> extends EventHandler<T> {
+
+    /**
+     * Called when the stripe batch ends after some events of this group were handled with
+     * {@code endOfBatch} false.
+     */
+    void onBatchEnd() throws Exception;
+}
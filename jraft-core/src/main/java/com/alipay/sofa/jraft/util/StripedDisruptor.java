@@ -0,0 +1,381 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.alipay.sofa.jraft.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Metric;
+import com.codahale.metrics.MetricSet;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventFactory;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.EventTranslator;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.LifecycleAware;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+
+/**
+ * A fixed number of disruptors, the stripes, shared by many raft groups. Every group subscribes
+ * its handler to the least loaded stripe and publishes through the returned subscription, so
+ * that the groups of a process run on a bounded number of threads and ring buffers.
+ *
+ * <p>Groups are scheduled fairly by weight: half of a stripe's ring buffer is open to all of
+ * its groups, the other half is reserved and split between them by weight. A group with more
+ * events queued than its share can only publish while the open half has room, so a busy group
+ * can't take the ring slots the others need. A group alone on its stripe has no reservation, it
+ * publishes like on a disruptor of its own. A group over its share waits for room at most the
+ * publish wait timeout, then publishes anyway, bounded by the ring buffer only.
+ *
+ * @param <T> event type
+ */
+public class StripedDisruptor<T extends GroupedEvent> {
+
+    private static final Logger   LOG                               = LoggerFactory.getLogger(StripedDisruptor.class);
+
+    /** Same as the default of RaftOptions#getDisruptorPublishEventWaitTimeoutSecs(). */
+    public static final int       DEFAULT_PUBLISH_WAIT_TIMEOUT_SECS = 10;
+
+    private static final long     PUBLISH_PARK_NANOS                = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final String          name;
+    private final List<Stripe<T>> stripes;
+
+    public StripedDisruptor(final String name, final int stripes, final int bufferSize,
+                            final EventFactory<T> eventFactory) {
+        this(name, stripes, bufferSize, eventFactory, BlockingWaitStrategy::new);
+    }
+
+    /**
+     * @param name         name of the stripes, the prefix of their thread names
+     * @param stripes      number of stripes
+     * @param bufferSize   ring buffer size of every stripe, must be a power of 2
+     * @param eventFactory event factory
+     * @param waitStrategy creates the wait strategy of every stripe
+     */
+    public StripedDisruptor(final String name, final int stripes, final int bufferSize,
+                            final EventFactory<T> eventFactory, final Supplier<WaitStrategy> waitStrategy) {
+        this(name, stripes, bufferSize, eventFactory, waitStrategy, DEFAULT_PUBLISH_WAIT_TIMEOUT_SECS);
+    }
+
+    /**
+     * @param name                   name of the stripes, the prefix of their thread names
+     * @param stripes                number of stripes
+     * @param bufferSize             ring buffer size of every stripe, must be a power of 2
+     * @param eventFactory           event factory
+     * @param waitStrategy           creates the wait strategy of every stripe
+     * @param publishWaitTimeoutSecs how long a group over its share waits for room before
+     *                               publishing anyway
+     */
+    public StripedDisruptor(final String name, final int stripes, final int bufferSize,
+                            final EventFactory<T> eventFactory, final Supplier<WaitStrategy> waitStrategy,
+                            final int publishWaitTimeoutSecs) {
+        Requires.requireTrue(stripes > 0, "stripes must be positive: %d", stripes);
+        this.name = name;
+        this.stripes = new ArrayList<>(stripes);
+        final ThreadFactory threadFactory = new NamedThreadFactory(name, true);
+        final long publishWaitNanos = TimeUnit.SECONDS.toNanos(publishWaitTimeoutSecs);
+        for (int i = 0; i < stripes; i++) {
+            this.stripes.add(new Stripe<>(name, bufferSize, eventFactory, threadFactory, waitStrategy.get(),
+                publishWaitNanos));
+        }
+    }
+
+    /**
+     * Subscribes the handler of a group.
+     *
+     * @param groupId          the raft group id
+     * @param weight           scheduling weight of the group
+     * @param handler          handler of the events of the group
+     * @param exceptionHandler handler of the exceptions thrown by {@code handler}
+     * @return the subscription to publish the events of the group
+     */
+    public Subscription<T> subscribe(final String groupId, final int weight, final GroupedEventHandler<T> handler,
+                                     final ExceptionHandler<Object> exceptionHandler) {
+        Requires.requireTrue(weight > 0, "weight must be positive: %d", weight);
+        Stripe<T> stripe = this.stripes.get(0);
+        for (final Stripe<T> s : this.stripes) {
+            if (s.totalWeight.get() < stripe.totalWeight.get()) {
+                stripe = s;
+            }
+        }
+        stripe.totalWeight.addAndGet(weight);
+        stripe.subscribers.incrementAndGet();
+        LOG.debug("Group {} subscribes to {} with weight {}.", groupId, this.name, weight);
+        return new Subscription<>(groupId, weight, stripe, handler, exceptionHandler);
+    }
+
+    public int getStripes() {
+        return this.stripes.size();
+    }
+
+    /**
+     * Waits for the stripes to handle the published events and stops them.
+     */
+    public void shutdown() {
+        for (final Stripe<T> stripe : this.stripes) {
+            stripe.disruptor.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StripedDisruptor{" + "name='" + this.name + '\'' + ", stripes=" + this.stripes.size() + '}';
+    }
+
+    /**
+     * The events of a group on its stripe.
+     */
+    public static final class Subscription<T extends GroupedEvent> implements MetricSet {
+
+        private final String                   groupId;
+        private final int                      weight;
+        private final Stripe<T>                stripe;
+        private final GroupedEventHandler<T>   handler;
+        private final ExceptionHandler<Object> exceptionHandler;
+        private final AtomicLong               pending      = new AtomicLong();
+        private final AtomicBoolean            unsubscribed = new AtomicBoolean();
+        private volatile long                  lagNanos;
+        // Only accessed by the stripe thread.
+        private boolean                        unflushed;
+
+        Subscription(final String groupId, final int weight, final Stripe<T> stripe,
+                     final GroupedEventHandler<T> handler, final ExceptionHandler<Object> exceptionHandler) {
+            this.groupId = groupId;
+            this.weight = weight;
+            this.stripe = stripe;
+            this.handler = handler;
+            this.exceptionHandler = exceptionHandler;
+        }
+
+        /**
+         * Publishes an event, waits while the ring buffer is full or, at most the publish wait
+         * timeout, while the group is over its share.
+         */
+        public void publishEvent(final EventTranslator<T> translator) {
+            // The stripe thread never waits on itself, it would wait forever.
+            if (Thread.currentThread() != this.stripe.thread && !admit(1)) {
+                final long deadline = System.nanoTime() + this.stripe.publishWaitNanos;
+                while (!admit(1)) {
+                    if (System.nanoTime() - deadline >= 0) {
+                        LOG.warn("Group {} has been over its share of the stripe for {} ms, publishes anyway.",
+                            this.groupId, TimeUnit.NANOSECONDS.toMillis(this.stripe.publishWaitNanos));
+                        break;
+                    }
+                    LockSupport.parkNanos(PUBLISH_PARK_NANOS);
+                }
+            }
+            this.pending.incrementAndGet();
+            this.stripe.ringBuffer.publishEvent(Subscription::translate, this, translator);
+        }
+
+        /**
+         * Publishes an event, returns false if the ring buffer is full or the group is over
+         * its share.
+         */
+        public boolean tryPublishEvent(final EventTranslator<T> translator) {
+            if (!admit(1)) {
+                return false;
+            }
+            this.pending.incrementAndGet();
+            if (this.stripe.ringBuffer.tryPublishEvent(Subscription::translate, this, translator)) {
+                return true;
+            }
+            this.pending.decrementAndGet();
+            return false;
+        }
+
+        public boolean hasAvailableCapacity(final int requiredCapacity) {
+            return this.stripe.ringBuffer.hasAvailableCapacity(requiredCapacity) && admit(requiredCapacity);
+        }
+
+        public int getBufferSize() {
+            return this.stripe.ringBuffer.getBufferSize();
+        }
+
+        /**
+         * Returns the ring buffer of the stripe, shared with the other groups on it.
+         */
+        public RingBuffer<T> getRingBuffer() {
+            return this.stripe.ringBuffer;
+        }
+
+        /**
+         * Number of the events of the group waiting in the stripe.
+         */
+        public long getPendingEvents() {
+            return this.pending.get();
+        }
+
+        /**
+         * How long the last handled event of the group waited in the stripe.
+         */
+        public long getLagMs() {
+            return TimeUnit.NANOSECONDS.toMillis(this.lagNanos);
+        }
+
+        /**
+         * Number of the reserved ring slots the group is guaranteed.
+         */
+        public long getFairShare() {
+            final int totalWeight = Math.max(this.stripe.totalWeight.get(), this.weight);
+            return Math.max(1, (long) this.stripe.reserved * this.weight / totalWeight);
+        }
+
+        /**
+         * Gives the weight of the group back to the stripe, the events already published
+         * are still handled.
+         */
+        public void unsubscribe() {
+            if (this.unsubscribed.compareAndSet(false, true)) {
+                this.stripe.totalWeight.addAndGet(-this.weight);
+                this.stripe.subscribers.decrementAndGet();
+            }
+        }
+
+        @Override
+        public Map<String, Metric> getMetrics() {
+            final Map<String, Metric> gauges = new HashMap<>();
+            gauges.put("pending-events", (Gauge<Long>) this::getPendingEvents);
+            gauges.put("lag-ms", (Gauge<Long>) this::getLagMs);
+            gauges.put("fair-share", (Gauge<Long>) this::getFairShare);
+            gauges.put("weight", (Gauge<Integer>) () -> this.weight);
+            return gauges;
+        }
+
+        private boolean admit(final int n) {
+            // Alone on the stripe, nobody needs the reserved slots.
+            if (this.stripe.subscribers.get() <= 1 || this.pending.get() + n <= getFairShare()) {
+                return true;
+            }
+            return this.stripe.ringBuffer.remainingCapacity() - n >= this.stripe.reserved;
+        }
+
+        private void onEvent(final T event, final long sequence, final boolean endOfBatch) {
+            this.pending.decrementAndGet();
+            this.lagNanos = System.nanoTime() - event.publishNanos;
+            try {
+                this.handler.onEvent(event, sequence, endOfBatch);
+            } catch (final Throwable t) {
+                this.exceptionHandler.handleEventException(t, sequence, event);
+            }
+        }
+
+        private void onBatchEnd() {
+            try {
+                this.handler.onBatchEnd();
+            } catch (final Throwable t) {
+                this.exceptionHandler.handleEventException(t, -1, null);
+            }
+        }
+
+        private static <T extends GroupedEvent> void translate(final T event, final long sequence,
+                                                               final Subscription<T> subscription,
+                                                               final EventTranslator<T> translator) {
+            translator.translateTo(event, sequence);
+            event.subscription = subscription;
+            event.publishNanos = System.nanoTime();
+        }
+
+        @Override
+        public String toString() {
+            return "Subscription{" + "groupId='" + this.groupId + '\'' + ", weight=" + this.weight + ", pending="
+                   + this.pending.get() + '}';
+        }
+    }
+
+    private static final class Stripe<T extends GroupedEvent> implements EventHandler<T>, LifecycleAware {
+
+        final Disruptor<T>                  disruptor;
+        final RingBuffer<T>                 ringBuffer;
+        // Ring slots split between the groups by weight
+        final int                           reserved;
+        final AtomicInteger                 totalWeight = new AtomicInteger();
+        final AtomicInteger                 subscribers = new AtomicInteger();
+        // How long a group over its share waits for room
+        final long                          publishWaitNanos;
+        // Groups which got events without endOfBatch in the current batch
+        private final List<Subscription<T>> unflushed   = new ArrayList<>();
+        volatile Thread                     thread;
+
+        Stripe(final String name, final int bufferSize, final EventFactory<T> eventFactory,
+               final ThreadFactory threadFactory, final WaitStrategy waitStrategy, final long publishWaitNanos) {
+            this.disruptor = DisruptorBuilder.<T> newInstance() //
+                .setEventFactory(eventFactory) //
+                .setRingBufferSize(bufferSize) //
+                .setThreadFactory(threadFactory) //
+                .setProducerType(ProducerType.MULTI) //
+                .setWaitStrategy(waitStrategy) //
+                .build();
+            this.disruptor.handleEventsWith(this);
+            this.disruptor.setDefaultExceptionHandler(new LogExceptionHandler<Object>(name));
+            this.ringBuffer = this.disruptor.start();
+            this.reserved = bufferSize / 2;
+            this.publishWaitNanos = publishWaitNanos;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void onEvent(final T event, final long sequence, final boolean endOfBatch) {
+            final Subscription<T> subscription = (Subscription<T>) event.subscription;
+            event.subscription = null;
+            subscription.onEvent(event, sequence, endOfBatch);
+            if (!endOfBatch) {
+                if (!subscription.unflushed) {
+                    subscription.unflushed = true;
+                    this.unflushed.add(subscription);
+                }
+                return;
+            }
+            subscription.unflushed = false;
+            for (int i = 0; i < this.unflushed.size(); i++) {
+                final Subscription<T> s = this.unflushed.get(i);
+                if (s.unflushed) {
+                    s.unflushed = false;
+                    s.onBatchEnd();
+                }
+            }
+            this.unflushed.clear();
+        }
+
+        @Override
+        public void onStart() {
+            this.thread = Thread.currentThread();
+        }
+
+        @Override
+        public void onShutdown() {
+            this.thread = null;
+        }
+    }
+}
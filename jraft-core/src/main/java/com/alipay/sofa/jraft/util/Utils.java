@@ -101,6 +101,48 @@ public final class Utils {
                                                                                   "jraft.max.append.entries.tasks.per.thread",
                                                                                   32768);
 
+    /**
+     * Default jraft message handler pool size of the priority lane(votes, heartbeats, read-index).
+     */
+    public static final int           MESSAGE_HANDLER_PRIORITY_THREADS    = SystemPropertyUtil.getInt(
+                                                                              "jraft.message.handler.threads.priority",
+                                                                              Math.max(2, cpus() / 4));
+
+    /**
+     * Default jraft message handler pool size of the replication lane(append-entries).
+     */
+    public static final int           MESSAGE_HANDLER_REPLICATION_THREADS = SystemPropertyUtil.getInt(
+                                                                              "jraft.message.handler.threads.replication",
+                                                                              Ints.findNextPositivePowerOfTwo(cpus()));
+
+    /**
+     * Default jraft message handler pool size of the bulk lane(install-snapshot, get-file).
+     */
+    public static final int           MESSAGE_HANDLER_BULK_THREADS        = SystemPropertyUtil.getInt(
+                                                                              "jraft.message.handler.threads.bulk", 2);
+
+    /**
+     * Default jraft max pending tasks of message handler per thread, 32768 by default.
+     */
+    public static final int           MAX_MESSAGE_HANDLER_TASKS           = SystemPropertyUtil
+                                                                              .getInt(
+                                                                                  "jraft.max.message.handler.tasks.per.thread",
+                                                                                  32768);
+
+    /**
+     * Window in milliseconds to coalesce the heartbeats of all the groups sent to the same
+     * endpoint into one message, 5ms by default, a non-positive value disables the coalescing.
+     */
+    public static final int           HEARTBEAT_BATCH_WINDOW_MS           = SystemPropertyUtil.getInt(
+                                                                              "jraft.heartbeat.batch.window.ms", 5);
+
+    /**
+     * Window in milliseconds to coalesce the read-index requests of all the groups sent to the
+     * same leader into one message, 1ms by default, a non-positive value disables the coalescing.
+     */
+    public static final int           READ_INDEX_BATCH_WINDOW_MS          = SystemPropertyUtil.getInt(
+                                                                              "jraft.read_index.batch.window.ms", 1);
+
     /**
      * Whether use {@link com.alipay.sofa.jraft.util.concurrent.MpscSingleThreadExecutor}, true by
      * default.
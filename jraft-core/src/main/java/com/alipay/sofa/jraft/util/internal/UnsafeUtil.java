@@ -106,7 +106,7 @@ public final class UnsafeUtil {
      * available.
      */
     public static long objectFieldOffset(final Field field) {
-        return field == null || hasUnsafe() ? UNSAFE_ACCESSOR.objectFieldOffset(field) : -1;
+        return field == null || !hasUnsafe() ? -1 : UNSAFE_ACCESSOR.objectFieldOffset(field);
     }
 
 
@@ -177,7 +177,7 @@ public final class UnsafeUtil {
     }
 
     private static UnsafeAccessor getUnsafeAccessor0() {
-        return null;
+        return hasUnsafe() ? new UnsafeAccessor(UNSAFE) : null;
     }
 
     private static Object getUnsafe0() {
@@ -20,25 +20,43 @@ import com.anyilanxin.kunpeng.atomix.utils.config.Config;
 import java.io.File;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /** Messaging configuration. */
 public class MessagingConfig implements Config {
-    private final int            connectionPoolSize   = 8;
-    private List<String>         interfaces           = new ArrayList<>();
-    private Integer              port;
-    private Duration             shutdownQuietPeriod  = Duration.ofMillis(20);
-    private Duration             shutdownTimeout      = Duration.ofSeconds(1);
-    private boolean              tlsEnabled           = false;
-    private File                 certificateChain;
-    private File                 privateKey;
-    private CompressionAlgorithm compressionAlgorithm = CompressionAlgorithm.NONE;
-    private File                 keyStore;
-    private String               keyStorePassword;
-    private int                  socketSendBuffer     = 1024 * 1024;
-    private int                  socketReceiveBuffer  = 1024 * 1024;
-    private Duration             heartbeatTimeout     = Duration.ofSeconds(15);
-    private Duration             heartbeatInterval    = Duration.ofSeconds(5);
+    private final int                       connectionPoolSize   = 8;
+    private List<String>                    interfaces           = new ArrayList<>();
+    private Integer                         port;
+    private Duration                        shutdownQuietPeriod  = Duration.ofMillis(20);
+    private Duration                        shutdownTimeout      = Duration.ofSeconds(1);
+    private boolean                         tlsEnabled           = false;
+    private File                            certificateChain;
+    private File                            privateKey;
+    private CompressionAlgorithm            compressionAlgorithm = CompressionAlgorithm.NONE;
+    private File                            keyStore;
+    private String                          keyStorePassword;
+    private int                             socketSendBuffer     = 1024 * 1024;
+    private int                             socketReceiveBuffer  = 1024 * 1024;
+    private Duration                        heartbeatTimeout     = Duration.ofSeconds(15);
+    private Duration                        heartbeatInterval    = Duration.ofSeconds(5);
+    private int                             flushConsolidation   = 0;
+    private Transport                       transport            = Transport.AUTO;
+    private int                             serverEventLoops     = 0;
+    private int                             clientEventLoops     = 0;
+    private boolean                         tcpNoDelay           = true;
+    private boolean                         tcpQuickAck          = false;
+    private int                             busyPollMicros       = 0;
+    private boolean                         epollEdgeTriggered   = true;
+    private int                             lowWaterMark         = 10 * 32 * 1024;
+    private int                             highWaterMark        = 10 * 64 * 1024;
+    private int                             serverLowWaterMark   = 8 * 1024;
+    private int                             serverHighWaterMark  = 32 * 1024;
+    private final Map<String, ChannelLane>  channelLanes         = new HashMap<>();
+    private final Map<ChannelLane, Integer> laneLowWaterMarks    = new EnumMap<>(ChannelLane.class);
+    private final Map<ChannelLane, Integer> laneHighWaterMarks   = new EnumMap<>(ChannelLane.class);
 
     /**
      * Returns the local interfaces to which to bind the node.
@@ -300,7 +318,275 @@ public class MessagingConfig implements Config {
         return this;
     }
 
+    /**
+     * @return the number of flushes consolidated into one write to the socket, 0 when disabled
+     */
+    public int getFlushConsolidation() {
+        return flushConsolidation;
+    }
+
+    /**
+     * Consolidates the flushes of the connections, client and server side: the flushes requested
+     * while the connection is reading, or while a consolidated flush is pending, are deferred so
+     * that many small messages reach the socket in one write. Up to the given number of flushes
+     * are consolidated before one is forced.
+     *
+     * @param flushConsolidation the number of flushes to consolidate, 0 to disable
+     * @return this config for chaining
+     */
+    public MessagingConfig setFlushConsolidation(final int flushConsolidation) {
+        if (flushConsolidation < 0) {
+            throw new IllegalArgumentException(String.format(
+                "Expected a non negative flush consolidation, but got %d", flushConsolidation));
+        }
+        this.flushConsolidation = flushConsolidation;
+        return this;
+    }
+
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Sets the transport of the connections, a native transport the platform doesn't support falls
+     * back to the next one: io_uring to epoll, epoll to NIO.
+     *
+     * @param transport the transport
+     * @return this config for chaining
+     */
+    public MessagingConfig setTransport(final Transport transport) {
+        this.transport = transport;
+        return this;
+    }
+
+    /**
+     * @return the number of event loop threads accepting the connections, 0 for the Netty default
+     */
+    public int getServerEventLoops() {
+        return serverEventLoops;
+    }
+
+    public MessagingConfig setServerEventLoops(final int serverEventLoops) {
+        this.serverEventLoops = serverEventLoops;
+        return this;
+    }
+
+    /**
+     * @return the number of event loop threads serving the connections, 0 for the Netty default
+     */
+    public int getClientEventLoops() {
+        return clientEventLoops;
+    }
+
+    public MessagingConfig setClientEventLoops(final int clientEventLoops) {
+        this.clientEventLoops = clientEventLoops;
+        return this;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public MessagingConfig setTcpNoDelay(final boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+        return this;
+    }
+
+    /**
+     * @return whether TCP_QUICKACK is set on the connections, epoll and io_uring only
+     */
+    public boolean isTcpQuickAck() {
+        return tcpQuickAck;
+    }
+
+    public MessagingConfig setTcpQuickAck(final boolean tcpQuickAck) {
+        this.tcpQuickAck = tcpQuickAck;
+        return this;
+    }
+
+    /**
+     * @return the SO_BUSY_POLL of the connections in microseconds, 0 when disabled, epoll only
+     */
+    public int getBusyPollMicros() {
+        return busyPollMicros;
+    }
+
+    /**
+     * Sets SO_BUSY_POLL on the connections, so that a read busy polls the device queue for up to
+     * the given time instead of waiting for the interrupt. It trades CPU for latency and needs
+     * CAP_NET_ADMIN to exceed net.core.busy_read.
+     *
+     * @param busyPollMicros the busy poll time in microseconds, 0 to disable
+     * @return this config for chaining
+     */
+    public MessagingConfig setBusyPollMicros(final int busyPollMicros) {
+        this.busyPollMicros = busyPollMicros;
+        return this;
+    }
+
+    /**
+     * @return whether the epoll transport is edge-triggered (the Netty default) or level-triggered
+     */
+    public boolean isEpollEdgeTriggered() {
+        return epollEdgeTriggered;
+    }
+
+    public MessagingConfig setEpollEdgeTriggered(final boolean epollEdgeTriggered) {
+        this.epollEdgeTriggered = epollEdgeTriggered;
+        return this;
+    }
+
+    /**
+     * @return the low write buffer water mark in bytes of the connections without a lane
+     */
+    public int getLowWaterMark() {
+        return lowWaterMark;
+    }
+
+    /**
+     * @return the high write buffer water mark in bytes of the connections without a lane
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * Sets the write buffer water marks of the pooled connections without a lane, see
+     * {@link #setLaneWriteBufferWaterMark(ChannelLane, int, int)}.
+     *
+     * @param low  the low water mark in bytes
+     * @param high the high water mark in bytes
+     * @return this config for chaining
+     */
+    public MessagingConfig setWriteBufferWaterMark(final int low, final int high) {
+        checkWaterMarks("the pooled connections", low, high);
+        lowWaterMark = low;
+        highWaterMark = high;
+        return this;
+    }
+
+    /**
+     * @return the low write buffer water mark in bytes of the accepted connections
+     */
+    public int getServerLowWaterMark() {
+        return serverLowWaterMark;
+    }
+
+    /**
+     * @return the high write buffer water mark in bytes of the accepted connections
+     */
+    public int getServerHighWaterMark() {
+        return serverHighWaterMark;
+    }
+
+    /**
+     * Sets the write buffer water marks of the accepted connections, which write the replies.
+     *
+     * @param low  the low water mark in bytes
+     * @param high the high water mark in bytes
+     * @return this config for chaining
+     */
+    public MessagingConfig setServerWriteBufferWaterMark(final int low, final int high) {
+        checkWaterMarks("the accepted connections", low, high);
+        serverLowWaterMark = low;
+        serverHighWaterMark = high;
+        return this;
+    }
+
+    /**
+     * Returns the lanes of the message subjects, subjects without a lane share the pooled
+     * connections by the hash of the subject. The lanes set here take precedence over the ones
+     * registered by the users of the messaging service, see
+     * {@link MessagingService#registerChannelLane(String, ChannelLane)}.
+     *
+     * @return the lanes of the message subjects
+     */
+    public Map<String, ChannelLane> getChannelLanes() {
+        return channelLanes;
+    }
+
+    /**
+     * Sends the messages of the subject over the dedicated connection of the lane.
+     *
+     * @param subject the message subject
+     * @param lane    the lane, {@code null} to drop the lane set here
+     * @return this config for chaining
+     */
+    public MessagingConfig setChannelLane(final String subject, final ChannelLane lane) {
+        if (lane == null) {
+            channelLanes.remove(subject);
+        } else {
+            channelLanes.put(subject, lane);
+        }
+        return this;
+    }
+
+    /**
+     * @return the low write buffer water mark in bytes of the connection of the lane
+     */
+    public int getLaneLowWaterMark(final ChannelLane lane) {
+        return laneLowWaterMarks.getOrDefault(lane, lane.defaultLowWaterMark);
+    }
+
+    /**
+     * @return the high write buffer water mark in bytes of the connection of the lane
+     */
+    public int getLaneHighWaterMark(final ChannelLane lane) {
+        return laneHighWaterMarks.getOrDefault(lane, lane.defaultHighWaterMark);
+    }
+
+    /**
+     * Sets the write buffer water marks of the connection of the lane, the connection turns
+     * unwritable when the pending outbound bytes exceed the high water mark, and writable again
+     * when they drop below the low water mark.
+     *
+     * @param lane the lane
+     * @param low  the low water mark in bytes
+     * @param high the high water mark in bytes
+     * @return this config for chaining
+     */
+    public MessagingConfig setLaneWriteBufferWaterMark(final ChannelLane lane, final int low, final int high) {
+        checkWaterMarks("lane " + lane, low, high);
+        laneLowWaterMarks.put(lane, low);
+        laneHighWaterMarks.put(lane, high);
+        return this;
+    }
+
+    private static void checkWaterMarks(final String connections, final int low, final int high) {
+        if (low < 0 || high < low) {
+            throw new IllegalArgumentException(String.format(
+                "Expected 0 <= low <= high water mark for %s, but got low %d and high %d", connections, low, high));
+        }
+    }
+
     public enum CompressionAlgorithm {
         GZIP, NONE, SNAPPY
     }
+
+    /**
+     * The transport of the connections. The native transports cut the syscalls of the event loops:
+     * epoll writes gathered buffers and exposes the Linux socket options, io_uring submits and
+     * completes the socket operations in batches without a syscall each, it needs Linux 5.9+ and
+     * the netty-incubator-transport-native-io_uring artifact of the platform on the classpath.
+     */
+    public enum Transport {
+        /** Epoll when available, NIO otherwise. */
+        AUTO, NIO, EPOLL, IO_URING
+    }
+
+    /**
+     * Dedicated connections of the pool, so that bulk transfers never queue ahead of the latency
+     * sensitive messages in the same stream.
+     */
+    public enum ChannelLane {
+        LATENCY(8 * 1024, 32 * 1024), REPLICATION(10 * 32 * 1024, 10 * 64 * 1024), BULK(1024 * 1024, 4 * 1024 * 1024);
+
+        private final int defaultLowWaterMark;
+        private final int defaultHighWaterMark;
+
+        ChannelLane(final int defaultLowWaterMark, final int defaultHighWaterMark) {
+            this.defaultLowWaterMark = defaultLowWaterMark;
+            this.defaultHighWaterMark = defaultHighWaterMark;
+        }
+    }
 }
@@ -17,12 +17,15 @@
 package com.anyilanxin.kunpeng.atomix.cluster.messaging;
 
 import com.anyilanxin.kunpeng.atomix.utils.net.Address;
+import io.netty.buffer.ByteBuf;
 import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 /** Interface for low level messaging primitives. */
 public interface MessagingService {
@@ -331,6 +334,95 @@ public interface MessagingService {
       Duration timeout,
       Executor executor);
 
+  /**
+   * Sends a message asynchronously and expects a response, the payload buffer is written to the
+   * connection as is instead of being copied into an intermediate array.
+   *
+   * <p>The service takes the ownership of the payload and releases it once the returned future is
+   * completed, so the memory the payload wraps must not be reused before that. The future fails
+   * in the same cases as {@link #sendAndReceive(Address, String, byte[], boolean, Duration)}.
+   *
+   * @param address address to send the message to.
+   * @param type type of message.
+   * @param payload message payload buffer.
+   * @param keepAlive whether to keep the connection alive after usage
+   * @param timeout response timeout
+   * @return a response future
+   */
+  CompletableFuture<byte[]> sendAndReceive(
+      Address address, String type, ByteBuf payload, boolean keepAlive, Duration timeout);
+
+  /**
+   * Sends a message asynchronously whose payload is written by the writer into a pooled buffer,
+   * e.g. serialized in place, which is then written to the connection as is. The service releases
+   * the buffer once the message is sent.
+   *
+   * @param address address to send the message to.
+   * @param type type of message.
+   * @param writer writes the payload into the given buffer.
+   * @param keepAlive whether to keep the connection alive after usage
+   * @return future that is completed when the message is sent
+   */
+  CompletableFuture<Void> sendAsync(
+      Address address, String type, Consumer<ByteBuf> writer, boolean keepAlive);
+
+  /**
+   * Sends a message asynchronously and expects a response, the payload is written by the writer
+   * into a pooled buffer which is then written to the connection as is, see {@link
+   * #sendAndReceive(Address, String, ByteBuf, boolean, Duration)}.
+   *
+   * @param address address to send the message to.
+   * @param type type of message.
+   * @param writer writes the payload into the given buffer.
+   * @param keepAlive whether to keep the connection alive after usage
+   * @param timeout response timeout
+   * @return a response future
+   */
+  CompletableFuture<byte[]> sendAndReceive(
+      Address address,
+      String type,
+      Consumer<ByteBuf> writer,
+      boolean keepAlive,
+      Duration timeout);
+
+  /**
+   * Sends messages of the same type asynchronously in one batch and expects a response to each of
+   * them. The messages are written to the same pooled connection at once, in order, and the
+   * returned futures are in the order of the payloads. Every future fails in the same cases as
+   * {@link #sendAndReceive(Address, String, byte[], boolean, Duration)}.
+   *
+   * @param address address to send the messages to.
+   * @param type type of the messages.
+   * @param payloads the message payloads.
+   * @param timeout response timeout of every message
+   * @return the response futures
+   */
+  List<CompletableFuture<byte[]>> sendAndReceiveBatch(
+      Address address, String type, List<byte[]> payloads, Duration timeout);
+
+  /**
+   * Returns whether the connection carrying the messages of the type to the address can take more
+   * writes without queueing beyond its write buffer high water mark. Returns {@code true} when no
+   * connection is established yet.
+   *
+   * @param address address the messages are sent to.
+   * @param type type of message.
+   * @return whether the connection is writable
+   */
+  default boolean isWritable(final Address address, final String type) {
+    return true;
+  }
+
+  /**
+   * Sends the messages of the type over the dedicated connection of the lane, unless the lane of
+   * the type is set in {@link MessagingConfig#getChannelLanes()}. Does nothing for the services
+   * without lanes.
+   *
+   * @param type type of message.
+   * @param lane the lane of the messages
+   */
+  default void registerChannelLane(final String type, final MessagingConfig.ChannelLane lane) {}
+
   /**
    * Registers a new message handler for message type.
    *
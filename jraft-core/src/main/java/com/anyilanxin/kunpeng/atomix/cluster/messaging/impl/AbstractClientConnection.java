@@ -16,12 +16,20 @@
  */
 package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
 
+import com.alipay.sofa.jraft.util.timer.Timeout;
+import com.alipay.sofa.jraft.util.timer.Timer;
+import com.alipay.sofa.jraft.util.timer.TimerTask;
 import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingException;
 import com.anyilanxin.kunpeng.util.StringUtil;
-import com.google.common.collect.Maps;
+import io.netty.util.collection.LongObjectHashMap;
 
-import java.util.Map;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
@@ -31,16 +39,22 @@ import org.slf4j.LoggerFactory;
  * Base class for client-side connections. Manages request futures and timeouts.
  */
 abstract class AbstractClientConnection implements ClientConnection {
-    private final Logger                               log             = LoggerFactory.getLogger(getClass());
-    private final AtomicBoolean                        closed          = new AtomicBoolean(false);
+    private final Logger                            log             = LoggerFactory.getLogger(getClass());
+    private final AtomicBoolean                     closed          = new AtomicBoolean(false);
+    // the timer shared by the connections to expire the requests
+    private final Timer                             timer;
 
     // since all messages go through the same entry point, we keep a map of message IDs -> response
-    // futures to allow dynamic dispatch of messages to the right response future
-    private final Map<Long, CompletableFuture<byte[]>> responseFutures = Maps.newConcurrentMap();
+    // futures to allow dynamic dispatch of messages to the right response future, guarded by itself
+    private final LongObjectHashMap<ResponseFuture> responseFutures = new LongObjectHashMap<>();
+
+    AbstractClientConnection(final Timer timer) {
+        this.timer = timer;
+    }
 
     @Override
     public void dispatch(final ProtocolReply message) {
-        final CompletableFuture<byte[]> responseFuture = responseFutures.remove(message.id());
+        final ResponseFuture responseFuture = removeResponseFuture(message.id());
         if (responseFuture != null) {
             if (message.status() == ProtocolReply.Status.OK) {
                 responseFuture.complete(message.payload());
@@ -71,7 +85,11 @@ abstract class AbstractClientConnection implements ClientConnection {
     @Override
     public void close() {
         if (closed.compareAndSet(false, true)) {
-            for (final CompletableFuture<byte[]> responseFuture : responseFutures.values()) {
+            final List<ResponseFuture> pending;
+            synchronized (responseFutures) {
+                pending = new ArrayList<>(responseFutures.values());
+            }
+            for (final ResponseFuture responseFuture : pending) {
                 responseFuture.completeExceptionally(new MessagingException.ConnectionClosed(String.format(
                     "Connection %s was closed", this)));
             }
@@ -80,18 +98,100 @@ abstract class AbstractClientConnection implements ClientConnection {
 
     /**
      * Registers a request to await a response. The future returned is already set up to remove itself
-     * from the registry to ensure cleanup.
+     * from the registry to ensure cleanup, and fails with a {@link TimeoutException} when no response
+     * is received within the timeout, or at once when the timeout can't be scheduled.
      *
      * <p>Will return the same future if there already exists one for a given ID.
      *
-     * @param id the request ID
+     * @param message the request
+     * @param timeout the request timeout
      * @return the response future for the given request ID
      */
-    protected CompletableFuture<byte[]> awaitResponseForRequestWithId(final long id) {
-        final CompletableFuture<byte[]> responseFuture =
-                responseFutures.computeIfAbsent(id, ignored -> new CompletableFuture<>());
-        responseFuture.whenComplete((result, error) -> responseFutures.remove(id));
-
+    protected CompletableFuture<byte[]> awaitResponseForRequestWithId(final ProtocolRequest message,
+                                                                      final Duration timeout) {
+        final ResponseFuture responseFuture;
+        synchronized (responseFutures) {
+            final ResponseFuture existing = responseFutures.get(message.id());
+            if (existing != null) {
+                return existing;
+            }
+            responseFuture = new ResponseFuture(message.id(), message.subject(), timeout);
+            responseFutures.put(message.id(), responseFuture);
+        }
+        try {
+            responseFuture.timeout = timer.newTimeout(responseFuture, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (final IllegalStateException | RejectedExecutionException e) {
+            // the timer is stopped along with the messaging service, or is full
+            responseFuture.completeExceptionally(e);
+            return responseFuture;
+        }
+        if (responseFuture.isDone()) {
+            // completed before the timeout was set, e.g. by close()
+            responseFuture.timeout.cancel();
+        }
         return responseFuture;
     }
+
+    private ResponseFuture removeResponseFuture(final long id) {
+        synchronized (responseFutures) {
+            return responseFutures.remove(id);
+        }
+    }
+
+    private void removeResponseFuture(final ResponseFuture responseFuture) {
+        synchronized (responseFutures) {
+            if (responseFutures.get(responseFuture.id) == responseFuture) {
+                responseFutures.remove(responseFuture.id);
+            }
+        }
+    }
+
+    /**
+     * The response future of a request, which is also its timeout task: a completed request leaves
+     * the registry and cancels its timeout.
+     */
+    private final class ResponseFuture extends CompletableFuture<byte[]> implements TimerTask {
+        private final long       id;
+        private final String     subject;
+        private final Duration   duration;
+        private volatile Timeout timeout;
+
+        ResponseFuture(final long id, final String subject, final Duration duration) {
+            this.id = id;
+            this.subject = subject;
+            this.duration = duration;
+        }
+
+        @Override
+        public void run(final Timeout timeout) {
+            completeExceptionally(new TimeoutException(String.format("Request %s to %s timed out in %s", subject,
+                AbstractClientConnection.this, duration)));
+        }
+
+        @Override
+        public boolean complete(final byte[] value) {
+            final boolean completed = super.complete(value);
+            if (completed) {
+                release();
+            }
+            return completed;
+        }
+
+        @Override
+        public boolean completeExceptionally(final Throwable ex) {
+            final boolean completed = super.completeExceptionally(ex);
+            if (completed) {
+                release();
+            }
+            return completed;
+        }
+
+        private void release() {
+            removeResponseFuture(this);
+            final Timeout timeout = this.timeout;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
 }
@@ -19,7 +19,9 @@ package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
 import com.anyilanxin.kunpeng.atomix.utils.net.Address;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.MessageToByteEncoder;
 
 import java.io.IOException;
@@ -51,6 +53,29 @@ abstract class AbstractMessageEncoder extends MessageToByteEncoder<Object> {
 
     protected abstract void encodeReply(ProtocolReply reply, ByteBuf out);
 
+    /**
+     * Encodes the requests of the batch one after the other, a protocol may override it with a
+     * more compact framing its decoder splits back into the requests.
+     */
+    protected void encodeBatch(final ProtocolBatch batch, final ByteBuf out) {
+        for (final ProtocolRequest request : batch.requests()) {
+            encodeMessage(request, out);
+            writePayloadBuffer(request, out);
+            encodeRequest(request, out);
+        }
+    }
+
+    /**
+     * Copies the payload buffer of the request, if any, where the request is encoded into a
+     * single buffer instead of a composite, e.g. in a batch.
+     */
+    static void writePayloadBuffer(final ProtocolRequest request, final ByteBuf out) {
+        final ByteBuf payload = request.payloadBuffer();
+        if (payload != null) {
+            out.writeBytes(payload, payload.readerIndex(), payload.readableBytes());
+        }
+    }
+
     static void writeString(final ByteBuf buffer, final String value) {
         final ByteBuf buf = buffer.alloc().buffer(ByteBufUtil.utf8MaxBytes(value));
         try {
@@ -160,11 +185,58 @@ abstract class AbstractMessageEncoder extends MessageToByteEncoder<Object> {
     // Effectively same result as one generated by MessageToByteEncoder<InternalMessage>
     @Override
     public final boolean acceptOutboundMessage(final Object msg) throws Exception {
-        return msg instanceof ProtocolMessage;
+        return msg instanceof ProtocolMessage || msg instanceof ProtocolBatch;
+    }
+
+    @Override
+    public void write(final ChannelHandlerContext context, final Object msg, final ChannelPromise promise)
+                                                                                                       throws Exception {
+        if (msg instanceof ProtocolRequest && ((ProtocolRequest) msg).payloadBuffer() != null) {
+            writeComposite(context, (ProtocolRequest) msg, promise);
+        } else {
+            super.write(context, msg, promise);
+        }
+    }
+
+    /**
+     * Writes the request as a composite of the encoded header, the payload buffer and the encoded
+     * subject, so that the payload is never copied into the outbound buffer.
+     */
+    private void writeComposite(final ChannelHandlerContext context, final ProtocolRequest request,
+                                final ChannelPromise promise) {
+        final ByteBuf header = context.alloc().ioBuffer();
+        final ByteBuf trailer = context.alloc().ioBuffer();
+        final CompositeByteBuf out;
+        try {
+            if (!addressWritten) {
+                encodeAddress(request, header);
+                addressWritten = true;
+            }
+            encodeMessage(request, header);
+            encodeRequest(request, trailer);
+            out = context.alloc().compositeBuffer(3);
+        } catch (final Throwable t) {
+            header.release();
+            trailer.release();
+            promise.setFailure(t);
+            return;
+        }
+        out.addComponents(true, header, request.payloadBuffer().retainedDuplicate(), trailer);
+        context.write(out, promise);
     }
 
     @Override
     protected void encode(final ChannelHandlerContext context, final Object rawMessage, final ByteBuf out) {
+        if (rawMessage instanceof ProtocolBatch) {
+            final ProtocolBatch batch = (ProtocolBatch) rawMessage;
+            if (!addressWritten) {
+                encodeAddress(batch.requests().get(0), out);
+                addressWritten = true;
+            }
+            encodeBatch(batch, out);
+            return;
+        }
+
         if (!addressWritten) {
             encodeAddress((ProtocolMessage) rawMessage, out);
             addressWritten = true;
@@ -38,7 +38,9 @@ abstract class AbstractServerConnection implements ServerConnection {
     @Override
     public void dispatch(final ProtocolRequest message) {
         final String subject = message.subject();
-        final BiConsumer<ProtocolRequest, ServerConnection> handler = handlers.get(subject);
+        final int slot = message.handlerSlot();
+        final BiConsumer<ProtocolRequest, ServerConnection> handler = slot >= 0 ? handlers.get(slot) : handlers
+            .get(subject);
         if (handler != null) {
             log.trace("Received message type {} from {}", subject, message.sender());
             handler.accept(message, this);
@@ -16,17 +16,21 @@
  */
 package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
 
+import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingConfig;
+import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingConfig.ChannelLane;
 import com.anyilanxin.kunpeng.atomix.utils.net.Address;
 import com.anyilanxin.kunpeng.util.collection.Tuple;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import io.netty.channel.Channel;
+import io.netty.channel.WriteBufferWaterMark;
 
 import java.net.InetAddress;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 import org.slf4j.Logger;
@@ -34,6 +38,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Internal Netty channel pool.
+ *
+ * Every address gets {@code size} channels shared by the message types through the hash of the
+ * type, plus one dedicated channel per {@link ChannelLane} for the message types mapped to a lane
+ * in {@link MessagingConfig#getChannelLanes()} or through {@link #registerLane(String, ChannelLane)}.
  */
 class ChannelPool {
     private static final Logger                                                      LOGGER   = LoggerFactory
@@ -41,11 +49,30 @@ class ChannelPool {
 
     private final Function<Address, CompletableFuture<Channel>>                      factory;
     private final int                                                                size;
+    private final Map<String, ChannelLane>                                           lanes;
+    private final WriteBufferWaterMark[]                                             laneWaterMarks;
     private final Map<Tuple<Address, InetAddress>, List<CompletableFuture<Channel>>> channels = Maps.newConcurrentMap();
 
-    ChannelPool(final Function<Address, CompletableFuture<Channel>> factory, final int size) {
+    ChannelPool(final Function<Address, CompletableFuture<Channel>> factory, final MessagingConfig config) {
         this.factory = factory;
-        this.size = size;
+        this.size = config.getConnectionPoolSize();
+        this.lanes = new ConcurrentHashMap<>(config.getChannelLanes());
+        this.laneWaterMarks = new WriteBufferWaterMark[ChannelLane.values().length];
+        for (final ChannelLane lane : ChannelLane.values()) {
+            this.laneWaterMarks[lane.ordinal()] = new WriteBufferWaterMark(config.getLaneLowWaterMark(lane),
+                config.getLaneHighWaterMark(lane));
+        }
+    }
+
+    /**
+     * Maps the message type to the lane, unless the config maps it already. The messages sent
+     * before take the pooled channels, the ones sent afterwards take the channel of the lane.
+     *
+     * @param messageType the message type
+     * @param lane        the lane of the message type
+     */
+    void registerLane(final String messageType, final ChannelLane lane) {
+        lanes.putIfAbsent(messageType, lane);
     }
 
     /**
@@ -65,8 +92,9 @@ class ChannelPool {
         return channels.computeIfAbsent(
                 channelPoolIdentifier,
                 e -> {
-                    final List<CompletableFuture<Channel>> defaultList = new ArrayList<>(size);
-                    for (int i = 0; i < size; i++) {
+                    final int capacity = size + laneWaterMarks.length;
+                    final List<CompletableFuture<Channel>> defaultList = new ArrayList<>(capacity);
+                    for (int i = 0; i < capacity; i++) {
                         defaultList.add(null);
                     }
                     return Lists.newCopyOnWriteArrayList(defaultList);
@@ -80,9 +108,49 @@ class ChannelPool {
      * @return the channel offset for the given message type
      */
     private int getChannelOffset(final String messageType) {
+        final ChannelLane lane = lanes.get(messageType);
+        if (lane != null) {
+            return size + lane.ordinal();
+        }
         return Math.abs(messageType.hashCode() % size);
     }
 
+    /**
+     * Opens a channel, the channels of the lanes get the write buffer water marks of their lane.
+     */
+    private CompletableFuture<Channel> openChannel(final Address address, final int offset) {
+        final CompletableFuture<Channel> channelFuture = factory.apply(address);
+        if (offset < size) {
+            return channelFuture;
+        }
+        final WriteBufferWaterMark waterMark = laneWaterMarks[offset - size];
+        return channelFuture.thenApply(channel -> {
+            channel.config().setWriteBufferWaterMark(waterMark);
+            return channel;
+        });
+    }
+
+    /**
+     * Returns whether the channel to the given address for the given message type is writable,
+     * a channel which is not connected yet is regarded as writable.
+     *
+     * @param address     the address of the channel
+     * @param messageType the message type of the channel
+     * @return whether the channel is writable
+     */
+    boolean isWritable(final Address address, final String messageType) {
+        final List<CompletableFuture<Channel>> channelPool = channels.get(new Tuple<>(address, address.getAddress()));
+        if (channelPool == null) {
+            return true;
+        }
+        final CompletableFuture<Channel> channelFuture = channelPool.get(getChannelOffset(messageType));
+        if (channelFuture == null || !channelFuture.isDone() || channelFuture.isCompletedExceptionally()) {
+            return true;
+        }
+        final Channel channel = channelFuture.getNow(null);
+        return channel == null || !channel.isActive() || channel.isWritable();
+    }
+
     /**
      * Gets or creates a pooled channel to the given address for the given message type.
      *
@@ -102,7 +170,7 @@ class ChannelPool {
                 channelFuture = channelPool.get(offset);
                 if (channelFuture == null || channelFuture.isCompletedExceptionally()) {
                     LOGGER.debug("Connecting to {}", address);
-                    channelFuture = factory.apply(address);
+                    channelFuture = openChannel(address, offset);
                     final var finalFuture = channelFuture;
                     channelFuture.whenComplete(
                             (channel, error) -> {
@@ -139,7 +207,7 @@ class ChannelPool {
                                 if (currentFuture == finalFuture) {
                                     channelPool.set(offset, null);
                                 } else if (currentFuture == null) {
-                                    currentFuture = factory.apply(address);
+                                    currentFuture = openChannel(address, offset);
                                     currentFuture.whenComplete(this::logConnection);
                                     channelPool.set(offset, currentFuture);
                                 }
@@ -16,6 +16,9 @@
  */
 package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -35,9 +38,26 @@ interface ClientConnection extends Connection<ProtocolReply> {
      * Sends a message to the other side of the connection, awaiting a reply.
      *
      * @param message the message to send
+     * @param timeout the time to wait for the reply
      * @return a completable future to be completed once a reply is received or the request times out
      */
-    CompletableFuture<byte[]> sendAndReceive(ProtocolRequest message);
+    CompletableFuture<byte[]> sendAndReceive(ProtocolRequest message, Duration timeout);
+
+    /**
+     * Sends messages to the other side of the connection at once, awaiting a reply to each.
+     *
+     * @param messages the messages to send
+     * @param timeout the time to wait for every reply
+     * @return the completable futures of the replies, in the order of the messages
+     */
+    default List<CompletableFuture<byte[]>> sendAndReceiveBatch(final List<ProtocolRequest> messages,
+                                                                final Duration timeout) {
+        final List<CompletableFuture<byte[]>> responseFutures = new ArrayList<>(messages.size());
+        for (final ProtocolRequest message : messages) {
+            responseFutures.add(sendAndReceive(message, timeout));
+        }
+        return responseFutures;
+    }
 
     /**
      * Closes the connection.
@@ -16,15 +16,22 @@
  */
 package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
 
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 
 /**
  * Messaging handler registry.
+ *
+ * <p>Each registered message type gets a slot, kept when the type is unregistered, so that the
+ * decoders which resolved a type once dispatch by an array lookup.
  */
 final class HandlerRegistry {
     private final Map<String, BiConsumer<ProtocolRequest, ServerConnection>> handlers = new ConcurrentHashMap<>();
+    private final Map<String, Integer>                                       slots    = new ConcurrentHashMap<>();
+    @SuppressWarnings("unchecked")
+    private volatile BiConsumer<ProtocolRequest, ServerConnection>[]         table    = new BiConsumer[0];
 
     /**
      * Registers a message type handler.
@@ -32,8 +39,13 @@ final class HandlerRegistry {
      * @param type    the message type
      * @param handler the message handler
      */
-    void register(final String type, final BiConsumer<ProtocolRequest, ServerConnection> handler) {
+    synchronized void register(final String type, final BiConsumer<ProtocolRequest, ServerConnection> handler) {
         handlers.put(type, handler);
+        final int slot = slots.computeIfAbsent(type, t -> slots.size());
+        final BiConsumer<ProtocolRequest, ServerConnection>[] newTable = Arrays.copyOf(table,
+            Math.max(table.length, slot + 1));
+        newTable[slot] = handler;
+        table = newTable;
     }
 
     /**
@@ -41,8 +53,14 @@ final class HandlerRegistry {
      *
      * @param type the message type
      */
-    void unregister(final String type) {
+    synchronized void unregister(final String type) {
         handlers.remove(type);
+        final Integer slot = slots.get(type);
+        if (slot != null) {
+            final BiConsumer<ProtocolRequest, ServerConnection>[] newTable = table.clone();
+            newTable[slot] = null;
+            table = newTable;
+        }
     }
 
     /**
@@ -54,4 +72,26 @@ final class HandlerRegistry {
     BiConsumer<ProtocolRequest, ServerConnection> get(final String type) {
         return handlers.get(type);
     }
+
+    /**
+     * Returns the slot of a message type, or -1 if the type has never been registered.
+     *
+     * @param type the message type
+     * @return the slot of the message type
+     */
+    int slotOf(final String type) {
+        final Integer slot = slots.get(type);
+        return slot != null ? slot : -1;
+    }
+
+    /**
+     * Looks up a message type handler by its slot.
+     *
+     * @param slot the slot of the message type
+     * @return the message handler or {@code null} if no handler is registered in the slot
+     */
+    BiConsumer<ProtocolRequest, ServerConnection> get(final int slot) {
+        final BiConsumer<ProtocolRequest, ServerConnection>[] table = this.table;
+        return slot < table.length ? table[slot] : null;
+    }
 }
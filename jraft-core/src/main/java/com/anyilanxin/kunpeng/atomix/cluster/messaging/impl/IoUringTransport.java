@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
+
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringChannelOption;
+import io.netty.incubator.channel.uring.IOUringDatagramChannel;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The io_uring transport of netty-incubator, an optional dependency: the incubator classes are
+ * only loaded through this class once the transport is selected.
+ */
+final class IoUringTransport {
+
+    private IoUringTransport() {
+    }
+
+    /**
+     * @return whether the incubator is on the classpath and the kernel supports io_uring
+     */
+    static boolean isAvailable() {
+        try {
+            return IOUring.isAvailable();
+        } catch (final LinkageError e) {
+            return false;
+        }
+    }
+
+    static Throwable unavailabilityCause() {
+        try {
+            return IOUring.unavailabilityCause();
+        } catch (final LinkageError e) {
+            return e;
+        }
+    }
+
+    static EventLoopGroup newEventLoopGroup(final int threads, final ThreadFactory threadFactory) {
+        return new IOUringEventLoopGroup(threads, threadFactory);
+    }
+
+    static Class<? extends ServerChannel> serverChannelClass() {
+        return IOUringServerSocketChannel.class;
+    }
+
+    static Class<? extends SocketChannel> socketChannelClass() {
+        return IOUringSocketChannel.class;
+    }
+
+    static Class<? extends DatagramChannel> datagramChannelClass() {
+        return IOUringDatagramChannel.class;
+    }
+
+    static ChannelOption<Boolean> tcpQuickAck() {
+        return IOUringChannelOption.TCP_QUICKACK;
+    }
+}
@@ -16,29 +16,40 @@
  */
 package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
 
+import com.alipay.sofa.jraft.util.timer.Timer;
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
 
 /** Local client-side connection. */
 final class LocalClientConnection extends AbstractClientConnection {
     private final LocalServerConnection serverConnection;
 
-    LocalClientConnection(final HandlerRegistry handlers) {
+    LocalClientConnection(final HandlerRegistry handlers, final Timer timer) {
+        super(timer);
         serverConnection = new LocalServerConnection(handlers, this);
     }
 
     @Override
     public CompletableFuture<Void> sendAsync(final ProtocolRequest message) {
-        serverConnection.dispatch(message);
+        serverConnection.dispatch(toArrayPayload(message));
         return CompletableFuture.completedFuture(null);
     }
 
     @Override
-    public CompletableFuture<byte[]> sendAndReceive(final ProtocolRequest message) {
-        final CompletableFuture<byte[]> future = awaitResponseForRequestWithId(message.id());
-        serverConnection.dispatch(message);
+    public CompletableFuture<byte[]> sendAndReceive(final ProtocolRequest message, final Duration timeout) {
+        final CompletableFuture<byte[]> future = awaitResponseForRequestWithId(message, timeout);
+        serverConnection.dispatch(toArrayPayload(message));
         return future;
     }
 
+    private static ProtocolRequest toArrayPayload(final ProtocolRequest message) {
+        try {
+            return message.toArrayPayload();
+        } finally {
+            message.release();
+        }
+    }
+
     @Override
     public void close() {
         super.close();
@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingException;
+import com.anyilanxin.kunpeng.atomix.utils.net.Address;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Protocol version 3 message decoder, see {@link MessageEncoderV3} for the subject references and
+ * the batch frames, which are split back into their requests.
+ */
+class MessageDecoderV3 extends AbstractMessageDecoder {
+    /** The largest payload of a message, a larger length is taken as a corrupted stream. */
+    static final int              MAX_CONTENT_LENGTH = 64 * 1024 * 1024;
+
+    private final HandlerRegistry handlers;
+    // the subjects defined by the connection and their handler slots, indexed by subject id
+    private String[]              subjects           = new String[16];
+    private int[]                 slots              = new int[16];
+    private DecoderState          currentState       = DecoderState.READ_SENDER_HOST_LENGTH;
+    private int                   senderHostLength;
+    private String                senderHost;
+    private int                   senderPort;
+    private Address               senderAddress;
+    private ProtocolMessage.Type  type;
+    private long                  messageId;
+    private int                   contentLength;
+    private byte[]                content;
+    private int                   subjectRef;
+    private int                   subjectLength;
+    // the requests of the current batch left to decode, including the current one
+    private int                   batchRemaining;
+
+    MessageDecoderV3(final HandlerRegistry handlers) {
+        this.handlers = handlers;
+    }
+
+    @Override
+    @SuppressWarnings({ "squid:S128" })
+    // suppress switch fall through warning
+    protected void decode(final ChannelHandlerContext context, final ByteBuf buffer, final List<Object> out)
+                                                                                                            throws Exception {
+
+        switch (currentState) {
+            case READ_SENDER_HOST_LENGTH:
+                if (buffer.readableBytes() < Short.BYTES) {
+                    return;
+                }
+                senderHostLength = buffer.readShort();
+                currentState = DecoderState.READ_SENDER_HOST;
+            case READ_SENDER_HOST:
+                if (buffer.readableBytes() < senderHostLength) {
+                    return;
+                }
+                senderHost = readString(buffer, senderHostLength);
+                currentState = DecoderState.READ_SENDER_PORT;
+            case READ_SENDER_PORT:
+                if (buffer.readableBytes() < Integer.BYTES) {
+                    return;
+                }
+                senderPort = buffer.readInt();
+                senderAddress = Address.from(senderHost, senderPort);
+                currentState = DecoderState.READ_TYPE;
+            case READ_TYPE:
+                if (buffer.readableBytes() < Byte.BYTES) {
+                    return;
+                }
+                final byte typeId = buffer.readByte();
+                if (typeId == MessageEncoderV3.BATCH) {
+                    currentState = DecoderState.READ_BATCH_SIZE;
+                } else {
+                    type = ProtocolMessage.Type.forId(typeId);
+                    currentState = DecoderState.READ_MESSAGE_ID;
+                }
+            case READ_BATCH_SIZE:
+                if (currentState == DecoderState.READ_BATCH_SIZE) {
+                    try {
+                        batchRemaining = readInt(buffer);
+                    } catch (final Escape e) {
+                        return;
+                    }
+                    checkState(batchRemaining > 0, "Empty batch");
+                    // the requests of the batch follow without their type
+                    type = ProtocolMessage.Type.REQUEST;
+                    currentState = DecoderState.READ_MESSAGE_ID;
+                }
+            case READ_MESSAGE_ID:
+                try {
+                    messageId = readLong(buffer);
+                } catch (final Escape e) {
+                    return;
+                }
+                currentState = DecoderState.READ_CONTENT_LENGTH;
+            case READ_CONTENT_LENGTH:
+                try {
+                    contentLength = readInt(buffer);
+                } catch (final Escape e) {
+                    return;
+                }
+                if (contentLength < 0 || contentLength > MAX_CONTENT_LENGTH) {
+                    // the connection is closed by exceptionCaught
+                    throw new MessagingException.ProtocolException();
+                }
+                currentState = DecoderState.READ_CONTENT;
+            case READ_CONTENT:
+                if (buffer.readableBytes() < contentLength) {
+                    return;
+                }
+                if (contentLength > 0) {
+                    content = new byte[contentLength];
+                    buffer.readBytes(content);
+                } else {
+                    content = EMPTY_PAYLOAD;
+                }
+
+                switch (type) {
+                    case REQUEST:
+                        currentState = DecoderState.READ_SUBJECT_REF;
+                        break;
+                    case REPLY:
+                        currentState = DecoderState.READ_STATUS;
+                        break;
+                    default:
+                        checkState(false, "Must not be here");
+                }
+                break;
+            default:
+                break;
+        }
+
+        switch (type) {
+            case REQUEST:
+                switch (currentState) {
+                    case READ_SUBJECT_REF:
+                        try {
+                            subjectRef = readInt(buffer);
+                        } catch (final Escape e) {
+                            return;
+                        }
+                        if (subjectRef != 0 && (subjectRef & 1) == 0) {
+                            // a subject defined before, no string follows
+                            final int id = subjectRef >>> 1;
+                            checkState(id < subjects.length && subjects[id] != null, "Undefined subject id %s", id);
+                            out.add(newRequest(id));
+                            currentState = nextRequestState();
+                            break;
+                        }
+                        currentState = DecoderState.READ_SUBJECT_LENGTH;
+                    case READ_SUBJECT_LENGTH:
+                        if (buffer.readableBytes() < Short.BYTES) {
+                            return;
+                        }
+                        subjectLength = buffer.readShort();
+                        currentState = DecoderState.READ_SUBJECT;
+                    case READ_SUBJECT:
+                        if (buffer.readableBytes() < subjectLength) {
+                            return;
+                        }
+                        final String subject = readString(buffer, subjectLength);
+                        if (subjectRef == 0) {
+                            out.add(new ProtocolRequest(messageId, senderAddress, subject, content,
+                                handlers.slotOf(subject)));
+                        } else {
+                            final int id = subjectRef >>> 1;
+                            define(id, subject);
+                            out.add(newRequest(id));
+                        }
+                        currentState = nextRequestState();
+                        break;
+                    default:
+                        break;
+                }
+                break;
+            case REPLY:
+                switch (currentState) {
+                    case READ_STATUS:
+                        if (buffer.readableBytes() < Byte.BYTES) {
+                            return;
+                        }
+                        final ProtocolReply.Status status = ProtocolReply.Status.forId(buffer.readByte());
+                        final ProtocolReply message = new ProtocolReply(messageId, content, status);
+                        out.add(message);
+                        currentState = DecoderState.READ_TYPE;
+                        break;
+                    default:
+                        break;
+                }
+                break;
+            default:
+                checkState(false, "Must not be here");
+        }
+    }
+
+    private DecoderState nextRequestState() {
+        if (batchRemaining > 1) {
+            batchRemaining--;
+            return DecoderState.READ_MESSAGE_ID;
+        }
+        batchRemaining = 0;
+        return DecoderState.READ_TYPE;
+    }
+
+    private void define(final int id, final String subject) {
+        checkState(id > 0 && id <= MessageEncoderV3.MAX_SUBJECTS, "Invalid subject id %s", id);
+        if (id >= subjects.length) {
+            final int length = Math.max(subjects.length << 1, id + 1);
+            subjects = Arrays.copyOf(subjects, length);
+            slots = Arrays.copyOf(slots, length);
+        }
+        subjects[id] = subject;
+        slots[id] = handlers.slotOf(subject);
+    }
+
+    private ProtocolRequest newRequest(final int id) {
+        int slot = slots[id];
+        if (slot < 0) {
+            // not registered when defined, try again
+            slot = handlers.slotOf(subjects[id]);
+            slots[id] = slot;
+        }
+        return new ProtocolRequest(messageId, senderAddress, subjects[id], content, slot);
+    }
+
+    /** V3 decoder state. */
+    enum DecoderState {
+        READ_TYPE, READ_BATCH_SIZE, READ_MESSAGE_ID, READ_SENDER_HOST_LENGTH, READ_SENDER_HOST, READ_SENDER_PORT, READ_SUBJECT_REF, READ_SUBJECT_LENGTH, READ_SUBJECT, READ_STATUS, READ_CONTENT_LENGTH, READ_CONTENT
+    }
+}
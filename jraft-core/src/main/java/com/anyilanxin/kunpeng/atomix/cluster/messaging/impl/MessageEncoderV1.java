@@ -40,9 +40,12 @@ class MessageEncoderV1 extends AbstractMessageEncoder {
         buffer.writeByte(message.type().id());
         writeLong(buffer, message.id());
 
+        writeInt(buffer, message.payloadLength());
         final byte[] payload = message.payload();
-        writeInt(buffer, payload.length);
-        buffer.writeBytes(payload);
+        // a buffer payload is appended by the caller without being copied
+        if (payload != null) {
+            buffer.writeBytes(payload);
+        }
     }
 
     @Override
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
+
+import com.anyilanxin.kunpeng.atomix.utils.net.Address;
+import io.netty.buffer.ByteBuf;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * V3 message encoder. The subject of a request is written as a varint reference:
+ *
+ * <ul>
+ *   <li>{@code id << 1 | 1} followed by the subject string, defining the subject id for the
+ *       following requests of the connection;
+ *   <li>{@code id << 1} referring to a subject defined before;
+ *   <li>{@code 0} followed by the subject string, once the connection has defined
+ *       {@link #MAX_SUBJECTS} subjects.
+ * </ul>
+ */
+class MessageEncoderV3 extends MessageEncoderV2 {
+    static final int                   MAX_SUBJECTS = 4096;
+    // the type of a batch frame, after the REQUEST and REPLY message types
+    static final byte                  BATCH        = 3;
+
+    // Encoding happens in the channel's event loop only.
+    private final Map<String, Integer> subjectIds   = new HashMap<>();
+
+    MessageEncoderV3(final Address address) {
+        super(address);
+    }
+
+    @Override
+    protected void encodeRequest(final ProtocolRequest request, final ByteBuf out) {
+        final String subject = request.subject();
+        final Integer id = subjectIds.get(subject);
+        if (id != null) {
+            writeInt(out, id << 1);
+        } else if (subjectIds.size() < MAX_SUBJECTS) {
+            final int newId = subjectIds.size() + 1;
+            subjectIds.put(subject, newId);
+            writeInt(out, newId << 1 | 1);
+            writeString(out, subject);
+        } else {
+            writeInt(out, 0);
+            writeString(out, subject);
+        }
+    }
+
+    /**
+     * Encodes the batch as one frame: the batch type and the number of requests, then every
+     * request without its type.
+     */
+    @Override
+    protected void encodeBatch(final ProtocolBatch batch, final ByteBuf out) {
+        out.writeByte(BATCH);
+        writeInt(out, batch.size());
+        for (final ProtocolRequest request : batch.requests()) {
+            writeLong(out, request.id());
+            writeInt(out, request.payloadLength());
+            final byte[] payload = request.payload();
+            if (payload != null) {
+                out.writeBytes(payload);
+            } else {
+                writePayloadBuffer(request, out);
+            }
+            encodeRequest(request, out);
+        }
+    }
+}
@@ -35,4 +35,10 @@ public interface MessagingMetrics {
     void incInFlightRequests(String address, String topic);
 
     void decInFlightRequests(String address, String topic);
+
+    void observeTimerTickLag(long lagNanos);
+
+    void observeRequestBatchSize(String to, int batchSize);
+
+    void observeFlush(int writes, long latencyNanos);
 }
@@ -65,6 +65,27 @@ final class MessagingMetricsImpl implements MessagingMetrics {
                                                                 .help("The count of inflight requests")
                                                                 .labelNames(LABEL_ADDRESS, LABEL_TOPIC).register();
 
+    private static final Gauge     TIMER_TICK_LAG           = Gauge.build().namespace(NAMESPACE)
+                                                                .name("messaging_timer_tick_lag")
+                                                                .help("The lag of the request timeout timer in ms")
+                                                                .register();
+
+    private static final Histogram REQUEST_BATCH_SIZE       = Histogram.build().namespace(NAMESPACE)
+                                                                .name("messaging_request_batch_size")
+                                                                .help("The number of requests sent in one batch")
+                                                                .labelNames(LABEL_ADDRESS)
+                                                                .buckets(1, 2, 4, 8, 16, 32, 64, 128, 256).register();
+
+    private static final Histogram FLUSH_BATCH_SIZE         = Histogram.build().namespace(NAMESPACE)
+                                                                .name("messaging_flush_batch_size")
+                                                                .help("The number of writes flushed to the socket at once")
+                                                                .buckets(1, 2, 4, 8, 16, 32, 64, 128, 256).register();
+
+    private static final Histogram FLUSH_LATENCY            = Histogram.build().namespace(NAMESPACE)
+                                                                .name("messaging_flush_latency")
+                                                                .help("The time a write waits to be flushed to the socket in ms")
+                                                                .buckets(.01, .05, .1, .25, .5, 1, 2.5, 5, 10, 25).register();
+
     @Override
   public CloseableSilently startRequestTimer(final String name) {
     final var timer = REQUEST_RESPONSE_LATENCY.labels(name).startTimer();
@@ -105,4 +126,20 @@ final class MessagingMetricsImpl implements MessagingMetrics {
     public void decInFlightRequests(final String address, final String topic) {
         IN_FLIGHT_REQUESTS.labels(address, topic).dec();
     }
+
+    @Override
+    public void observeTimerTickLag(final long lagNanos) {
+        TIMER_TICK_LAG.set(lagNanos / 1_000_000d);
+    }
+
+    @Override
+    public void observeRequestBatchSize(final String to, final int batchSize) {
+        REQUEST_BATCH_SIZE.labels(to).observe(batchSize);
+    }
+
+    @Override
+    public void observeFlush(final int writes, final long latencyNanos) {
+        FLUSH_BATCH_SIZE.observe(writes);
+        FLUSH_LATENCY.observe(latencyNanos / 1_000_000d);
+    }
 }
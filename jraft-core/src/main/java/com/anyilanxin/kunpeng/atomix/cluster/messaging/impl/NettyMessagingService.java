@@ -18,6 +18,9 @@ package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
 
 import static com.anyilanxin.kunpeng.util.concurrent.Threads.namedThreads;
 
+import com.alipay.sofa.jraft.util.timer.HashedWheelTimer;
+import com.alipay.sofa.jraft.util.timer.Timeout;
+import com.alipay.sofa.jraft.util.timer.TimerTask;
 import com.anyilanxin.kunpeng.atomix.cluster.messaging.ManagedMessagingService;
 import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingConfig;
 import com.anyilanxin.kunpeng.atomix.cluster.messaging.MessagingException;
@@ -47,6 +50,7 @@ import io.netty.handler.codec.compression.SnappyFrameDecoder;
 import io.netty.handler.codec.compression.SnappyFrameEncoder;
 import io.netty.handler.codec.compression.ZlibCodecFactory;
 import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslProvider;
@@ -74,7 +78,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import org.agrona.CloseHelper;
 import org.slf4j.Logger;
@@ -84,6 +90,9 @@ import org.slf4j.LoggerFactory;
 public final class NettyMessagingService implements ManagedMessagingService {
     private static final Duration                      DEFAULT_TIMEOUT    = Duration.ofSeconds(5);
     private static final String                        TLS_PROTOCOL       = "TLSv1.3";
+    private static final long                          TIMEOUT_TICK_MS    = 10;
+    private static final int                           TICKS_PER_WHEEL    = 512;
+    private static final Duration                      TICK_LAG_INTERVAL  = Duration.ofSeconds(1);
 
     private final Logger                               log                = LoggerFactory.getLogger(getClass());
     private final Address                              advertisedAddress;
@@ -102,9 +111,10 @@ public final class NettyMessagingService implements ManagedMessagingService {
     private Class<? extends ServerChannel>             serverChannelClass;
     private Class<? extends SocketChannel>             clientChannelClass;
     private Class<? extends DatagramChannel>           clientDataGramChannelClass;
+    private MessagingConfig.Transport                  transport;
     private Channel                                    serverChannel;
-    // a single thread executor which silently rejects tasks being submitted when it's shutdown
-    private ScheduledExecutorService                   timeoutExecutor;
+    // the timer expiring the requests of all the client connections
+    private HashedWheelTimer                           timeoutTimer;
     private volatile LocalClientConnection             localConnection;
     private SslContext                                 serverSslContext;
     private SslContext                                 clientSslContext;
@@ -124,7 +134,7 @@ public final class NettyMessagingService implements ManagedMessagingService {
     this.advertisedAddress = advertisedAddress;
     this.protocolVersion = protocolVersion;
     this.config = verifyHeartbeatConfig(config);
-    channelPool = new ChannelPool(this::openChannel, config.getConnectionPoolSize());
+    channelPool = new ChannelPool(this::openChannel, config);
 
     initAddresses(config);
   }
@@ -220,27 +230,175 @@ public final class NettyMessagingService implements ManagedMessagingService {
     final long messageId = messageIdGenerator.incrementAndGet();
     final ProtocolRequest message =
         new ProtocolRequest(messageId, advertisedAddress, type, payload);
+    return sendAndReceive(address, type, () -> message, keepAlive, timeout, executor);
+  }
+
+    @Override
+  public CompletableFuture<byte[]> sendAndReceive(
+      final Address address,
+      final String type,
+      final ByteBuf payload,
+      final boolean keepAlive,
+      final Duration timeout) {
+    if (!started.get()) {
+      payload.release();
+      return CompletableFuture.failedFuture(
+          new IllegalStateException("MessagingService is closed."));
+    }
+
+    final long messageId = messageIdGenerator.incrementAndGet();
+    // the request is created once a connection sends it, and retains its own duplicate of the
+    // payload until it's written, the payload itself is held until the response
+    final CompletableFuture<byte[]> responseFuture =
+        sendAndReceive(
+            address,
+            type,
+            () -> new ProtocolRequest(messageId, advertisedAddress, type, payload),
+            keepAlive,
+            timeout,
+            MoreExecutors.directExecutor());
+    responseFuture.whenComplete((ignored, error) -> payload.release());
+    return responseFuture;
+  }
+
+    @Override
+  public CompletableFuture<Void> sendAsync(
+      final Address address,
+      final String type,
+      final Consumer<ByteBuf> writer,
+      final boolean keepAlive) {
+    if (!started.get()) {
+      return CompletableFuture.failedFuture(
+          new IllegalStateException("MessagingService is closed."));
+    }
+
+    final ByteBuf payload;
+    try {
+      payload = writePayload(writer);
+    } catch (final Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    final long messageId = messageIdGenerator.incrementAndGet();
+    // the request retains its own duplicate of the payload until it's written
+    final CompletableFuture<Void> future =
+        executeOnPooledConnection(
+            address,
+            type,
+            c -> c.sendAsync(new ProtocolRequest(messageId, advertisedAddress, type, payload)),
+            MoreExecutors.directExecutor());
+    future.whenComplete((ignored, error) -> payload.release());
+    return future;
+  }
+
+    @Override
+  public CompletableFuture<byte[]> sendAndReceive(
+      final Address address,
+      final String type,
+      final Consumer<ByteBuf> writer,
+      final boolean keepAlive,
+      final Duration timeout) {
+    if (!started.get()) {
+      return CompletableFuture.failedFuture(
+          new IllegalStateException("MessagingService is closed."));
+    }
+
+    final ByteBuf payload;
+    try {
+      payload = writePayload(writer);
+    } catch (final Exception e) {
+      return CompletableFuture.failedFuture(e);
+    }
+    return sendAndReceive(address, type, payload, keepAlive, timeout);
+  }
+
+    private static ByteBuf writePayload(final Consumer<ByteBuf> writer) {
+        final ByteBuf payload = PooledByteBufAllocator.DEFAULT.buffer();
+        try {
+            writer.accept(payload);
+            return payload;
+        } catch (final RuntimeException e) {
+            payload.release();
+            throw e;
+        }
+    }
+
+    @Override
+  public List<CompletableFuture<byte[]>> sendAndReceiveBatch(
+      final Address address,
+      final String type,
+      final List<byte[]> payloads,
+      final Duration timeout) {
+    final List<CompletableFuture<byte[]>> responseFutures = new ArrayList<>(payloads.size());
+    if (!started.get()) {
+      for (int i = 0; i < payloads.size(); i++) {
+        responseFutures.add(
+            CompletableFuture.failedFuture(
+                new IllegalStateException("MessagingService is closed.")));
+      }
+      return responseFutures;
+    }
+    if (payloads.isEmpty()) {
+      return responseFutures;
+    }
+
+    final List<ProtocolRequest> messages = new ArrayList<>(payloads.size());
+    for (final byte[] payload : payloads) {
+      final long messageId = messageIdGenerator.incrementAndGet();
+      messages.add(new ProtocolRequest(messageId, advertisedAddress, type, payload));
+      responseFutures.add(new CompletableFuture<>());
+    }
+    executeOnPooledConnection(
+            address,
+            type,
+            c -> {
+              final List<CompletableFuture<byte[]>> replies =
+                  c.sendAndReceiveBatch(messages, timeout);
+              for (int i = 0; i < replies.size(); i++) {
+                final CompletableFuture<byte[]> responseFuture = responseFutures.get(i);
+                replies
+                    .get(i)
+                    .whenComplete(
+                        (result, error) -> {
+                          if (error == null) {
+                            responseFuture.complete(result);
+                          } else {
+                            responseFuture.completeExceptionally(error);
+                          }
+                        });
+              }
+              // fails with the first failed reply, the pool handles the connection as it does
+              // for a single request
+              return CompletableFuture.allOf(replies.toArray(CompletableFuture[]::new));
+            },
+            MoreExecutors.directExecutor())
+        .whenComplete(
+            (ignored, error) -> {
+              if (error != null) {
+                // e.g. no channel to the address, the replies are completed already otherwise
+                responseFutures.forEach(f -> f.completeExceptionally(error));
+              }
+            });
+    return responseFutures;
+  }
+
+  private CompletableFuture<byte[]> sendAndReceive(
+      final Address address,
+      final String type,
+      final Supplier<ProtocolRequest> message,
+      final boolean keepAlive,
+      final Duration timeout,
+      final Executor executor) {
     final CompletableFuture<byte[]> responseFuture;
     if (keepAlive) {
       responseFuture =
-          executeOnPooledConnection(address, type, c -> c.sendAndReceive(message), executor);
+          executeOnPooledConnection(
+              address, type, c -> c.sendAndReceive(message.get(), timeout), executor);
     } else {
       responseFuture =
-          executeOnTransientConnection(address, c -> c.sendAndReceive(message), executor);
+          executeOnTransientConnection(
+              address, c -> c.sendAndReceive(message.get(), timeout), executor);
     }
-
-    final var timeoutFuture =
-        timeoutExecutor.schedule(
-            () -> {
-              responseFuture.completeExceptionally(
-                  new TimeoutException(
-                      String.format("Request %s to %s timed out in %s", type, address, timeout)));
-              openFutures.remove(responseFuture);
-            },
-            timeout.toNanos(),
-            TimeUnit.NANOSECONDS);
-    responseFuture.whenComplete((ignored, error) -> timeoutFuture.cancel(true));
-
+    // the connection expires the request, see AbstractClientConnection
     return responseFuture;
   }
 
@@ -330,6 +488,16 @@ public final class NettyMessagingService implements ManagedMessagingService {
         handlers.unregister(type);
     }
 
+    @Override
+    public boolean isWritable(final Address address, final String type) {
+        return address.equals(advertisedAddress) || channelPool.isWritable(address, type);
+    }
+
+    @Override
+    public void registerChannelLane(final String type, final MessagingConfig.ChannelLane lane) {
+        channelPool.registerLane(type, lane);
+    }
+
     @Override
     public boolean isRunning() {
         return started.get();
@@ -365,10 +533,14 @@ public final class NettyMessagingService implements ManagedMessagingService {
                                   new LoggingDnsQueryLifeCycleObserverFactory()))
                           .socketChannelType(clientChannelClass)
                           .channelType(clientDataGramChannelClass));
-              timeoutExecutor =
-                  Executors.newSingleThreadScheduledExecutor(
-                      new DefaultThreadFactory("netty-messaging-timeout-"));
-              localConnection = new LocalClientConnection(handlers);
+              timeoutTimer =
+                  new HashedWheelTimer(
+                      new DefaultThreadFactory("netty-messaging-timeout-"),
+                      TIMEOUT_TICK_MS,
+                      TimeUnit.MILLISECONDS,
+                      TICKS_PER_WHEEL);
+              new TickLagProbe().schedule();
+              localConnection = new LocalClientConnection(handlers, timeoutTimer);
               started.set(true);
               log.info(
                   "Started messaging service bound to {}, advertising {}, and using {}",
@@ -416,7 +588,7 @@ public final class NettyMessagingService implements ManagedMessagingService {
               } catch (final InterruptedException e) {
                 interrupted = true;
               }
-              timeoutExecutor.shutdown();
+              timeoutTimer.stop();
 
               for (final var entry : connections.entrySet()) {
                 final var channel = entry.getKey();
@@ -489,9 +661,33 @@ public final class NettyMessagingService implements ManagedMessagingService {
     }
 
     private void initTransport() {
+        switch (config.getTransport()) {
+            case NIO -> initNioTransport();
+            case EPOLL -> initEpollOrNioTransport();
+            case IO_URING -> {
+                if (IoUringTransport.isAvailable()) {
+                    initIoUringTransport();
+                } else {
+                    log.warn("io_uring transport is not available, falling back to epoll or NIO",
+                        IoUringTransport.unavailabilityCause());
+                    initEpollOrNioTransport();
+                }
+            }
+            default -> {
+                if (Epoll.isAvailable()) {
+                    initEpollTransport();
+                } else {
+                    initNioTransport();
+                }
+            }
+        }
+    }
+
+    private void initEpollOrNioTransport() {
         if (Epoll.isAvailable()) {
             initEpollTransport();
         } else {
+            log.warn("Epoll transport is not available, falling back to NIO", Epoll.unavailabilityCause());
             initNioTransport();
         }
     }
@@ -529,20 +725,69 @@ public final class NettyMessagingService implements ManagedMessagingService {
         return keyStore;
     }
 
+    private void initIoUringTransport() {
+        clientGroup = IoUringTransport.newEventLoopGroup(config.getClientEventLoops(),
+            namedThreads("netty-messaging-event-io_uring-client-%d", log));
+        serverGroup = IoUringTransport.newEventLoopGroup(config.getServerEventLoops(),
+            namedThreads("netty-messaging-event-io_uring-server-%d", log));
+        serverChannelClass = IoUringTransport.serverChannelClass();
+        clientChannelClass = IoUringTransport.socketChannelClass();
+        clientDataGramChannelClass = IoUringTransport.datagramChannelClass();
+        transport = MessagingConfig.Transport.IO_URING;
+    }
+
     private void initEpollTransport() {
-        clientGroup = new EpollEventLoopGroup(0, namedThreads("netty-messaging-event-epoll-client-%d", log));
-        serverGroup = new EpollEventLoopGroup(0, namedThreads("netty-messaging-event-epoll-server-%d", log));
+        clientGroup = new EpollEventLoopGroup(config.getClientEventLoops(), namedThreads(
+            "netty-messaging-event-epoll-client-%d", log));
+        serverGroup = new EpollEventLoopGroup(config.getServerEventLoops(), namedThreads(
+            "netty-messaging-event-epoll-server-%d", log));
         serverChannelClass = EpollServerSocketChannel.class;
         clientChannelClass = EpollSocketChannel.class;
         clientDataGramChannelClass = EpollDatagramChannel.class;
+        transport = MessagingConfig.Transport.EPOLL;
     }
 
     private void initNioTransport() {
-        clientGroup = new NioEventLoopGroup(0, namedThreads("netty-messaging-event-nio-client-%d", log));
-        serverGroup = new NioEventLoopGroup(0, namedThreads("netty-messaging-event-nio-server-%d", log));
+        clientGroup = new NioEventLoopGroup(config.getClientEventLoops(), namedThreads(
+            "netty-messaging-event-nio-client-%d", log));
+        serverGroup = new NioEventLoopGroup(config.getServerEventLoops(), namedThreads(
+            "netty-messaging-event-nio-server-%d", log));
         serverChannelClass = NioServerSocketChannel.class;
         clientChannelClass = NioSocketChannel.class;
         clientDataGramChannelClass = NioDatagramChannel.class;
+        transport = MessagingConfig.Transport.NIO;
+    }
+
+    /**
+     * Returns the socket options of the connections, client and server side, including the ones
+     * specific to the transport.
+     */
+    private Map<ChannelOption<?>, Object> socketOptions() {
+        final Map<ChannelOption<?>, Object> options = new LinkedHashMap<>();
+        options.put(ChannelOption.SO_RCVBUF, config.getSocketReceiveBuffer());
+        options.put(ChannelOption.SO_SNDBUF, config.getSocketSendBuffer());
+        options.put(ChannelOption.SO_KEEPALIVE, true);
+        options.put(ChannelOption.TCP_NODELAY, config.isTcpNoDelay());
+        options.put(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+        if (transport == MessagingConfig.Transport.EPOLL) {
+            options.put(EpollChannelOption.EPOLL_MODE,
+                config.isEpollEdgeTriggered() ? EpollMode.EDGE_TRIGGERED : EpollMode.LEVEL_TRIGGERED);
+            if (config.isTcpQuickAck()) {
+                options.put(EpollChannelOption.TCP_QUICKACK, true);
+            }
+            if (config.getBusyPollMicros() > 0) {
+                options.put(EpollChannelOption.SO_BUSY_POLL, config.getBusyPollMicros());
+            }
+        } else if (transport == MessagingConfig.Transport.IO_URING && config.isTcpQuickAck()) {
+            options.put(IoUringTransport.tcpQuickAck(), true);
+        }
+        return options;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void setOptions(final Map<ChannelOption<?>, Object> options,
+                                   final BiConsumer<ChannelOption<Object>, Object> setter) {
+        options.forEach((option, value) -> setter.accept((ChannelOption<Object>) option, value));
     }
 
     /**
@@ -696,7 +941,7 @@ public final class NettyMessagingService implements ManagedMessagingService {
     if (connection == null) {
       connection =
           connections.computeIfAbsent(
-              channel, c -> new RemoteClientConnection(messagingMetrics, c));
+              channel, c -> new RemoteClientConnection(messagingMetrics, c, timeoutTimer));
       channel
           .closeFuture()
           .addListener(
@@ -731,14 +976,10 @@ public final class NettyMessagingService implements ManagedMessagingService {
     final InetSocketAddress socketAddress = address.socketAddress();
 
     final Bootstrap bootstrap = new Bootstrap();
-    bootstrap.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+    setOptions(socketOptions(), bootstrap::option);
     bootstrap.option(
         ChannelOption.WRITE_BUFFER_WATER_MARK,
-        new WriteBufferWaterMark(10 * 32 * 1024, 10 * 64 * 1024));
-    bootstrap.option(ChannelOption.SO_RCVBUF, config.getSocketReceiveBuffer());
-    bootstrap.option(ChannelOption.SO_SNDBUF, config.getSocketSendBuffer());
-    bootstrap.option(ChannelOption.SO_KEEPALIVE, true);
-    bootstrap.option(ChannelOption.TCP_NODELAY, true);
+        new WriteBufferWaterMark(config.getLowWaterMark(), config.getHighWaterMark()));
     bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 1000);
     bootstrap.group(clientGroup);
     bootstrap.channel(clientChannelClass);
@@ -791,12 +1032,9 @@ public final class NettyMessagingService implements ManagedMessagingService {
         final ServerBootstrap b = new ServerBootstrap();
         b.option(ChannelOption.SO_REUSEADDR, true);
         b.option(ChannelOption.SO_BACKLOG, 128);
-        b.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(8 * 1024, 32 * 1024));
-        b.childOption(ChannelOption.SO_RCVBUF, config.getSocketReceiveBuffer());
-        b.childOption(ChannelOption.SO_SNDBUF, config.getSocketSendBuffer());
-        b.childOption(ChannelOption.SO_KEEPALIVE, true);
-        b.childOption(ChannelOption.TCP_NODELAY, true);
-        b.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+        setOptions(socketOptions(), b::childOption);
+        b.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+            new WriteBufferWaterMark(config.getServerLowWaterMark(), config.getServerHighWaterMark()));
         b.group(serverGroup, clientGroup);
         b.channel(serverChannelClass);
         b.childHandler(new BasicServerChannelInitializer());
@@ -897,6 +1135,19 @@ public final class NettyMessagingService implements ManagedMessagingService {
         }
     }
 
+    /**
+     * Adds the flush consolidation at the head of the pipeline when it's enabled, so that it
+     * consolidates the flushes of the whole pipeline, preceded by the handler measuring the flushes
+     * which reach the socket.
+     */
+    private void initFlushConsolidation(final SocketChannel channel) {
+        if (config.getFlushConsolidation() > 0) {
+            channel.pipeline().addLast("flush-metrics", new FlushMetricsHandler());
+            channel.pipeline().addLast("flush-consolidation",
+                new FlushConsolidationHandler(config.getFlushConsolidation(), true));
+        }
+    }
+
     /** Channel initializer for basic connections. */
     private class BasicClientChannelInitializer extends ChannelInitializer<SocketChannel> {
 
@@ -908,6 +1159,7 @@ public final class NettyMessagingService implements ManagedMessagingService {
 
         @Override
         protected void initChannel(final SocketChannel channel) {
+            initFlushConsolidation(channel);
             if (config.isTlsEnabled()) {
                 final var sslHandler = clientSslContext.newHandler(channel.alloc());
                 channel.pipeline().addLast("tls", sslHandler);
@@ -947,6 +1199,7 @@ public final class NettyMessagingService implements ManagedMessagingService {
 
         @Override
         protected void initChannel(final SocketChannel channel) {
+            initFlushConsolidation(channel);
             if (config.isTlsEnabled()) {
                 final var sslHandler = serverSslContext.newHandler(channel.alloc());
                 channel.pipeline().addLast("tls", sslHandler);
@@ -975,6 +1228,57 @@ public final class NettyMessagingService implements ManagedMessagingService {
         }
     }
 
+    /**
+     * Observes the number of writes every flush to the socket carries, and how long the first of
+     * them waited for it.
+     */
+    private final class FlushMetricsHandler extends ChannelOutboundHandlerAdapter {
+        private int  pendingWrites;
+        private long firstPendingWrite;
+
+        @Override
+        public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) {
+            if (pendingWrites++ == 0) {
+                firstPendingWrite = System.nanoTime();
+            }
+            ctx.write(msg, promise);
+        }
+
+        @Override
+        public void flush(final ChannelHandlerContext ctx) {
+            if (pendingWrites > 0) {
+                messagingMetrics.observeFlush(pendingWrites, System.nanoTime() - firstPendingWrite);
+                pendingWrites = 0;
+            }
+            ctx.flush();
+        }
+    }
+
+    /**
+     * Measures how late the timeout timer fires a timeout, including the rounding to the next tick,
+     * and reports it as the timer tick lag.
+     */
+    private final class TickLagProbe implements TimerTask {
+        private long deadline;
+
+        void schedule() {
+            deadline = System.nanoTime() + TICK_LAG_INTERVAL.toNanos();
+            timeoutTimer.newTimeout(this, TICK_LAG_INTERVAL.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void run(final Timeout timeout) {
+            messagingMetrics.observeTimerTickLag(System.nanoTime() - deadline);
+            if (started.get()) {
+                try {
+                    schedule();
+                } catch (final IllegalStateException e) {
+                    // stopped meanwhile
+                }
+            }
+        }
+    }
+
     /** Base class for handshake handlers. */
     private abstract class HandshakeHandlerAdapter<M extends ProtocolMessage> extends ChannelInboundHandlerAdapter {
 
@@ -1021,7 +1325,7 @@ public final class NettyMessagingService implements ManagedMessagingService {
          */
         void activateProtocolVersion(final ChannelHandlerContext context, final Connection<M> connection,
                                      final ProtocolVersion protocolVersion) {
-            final MessagingProtocol protocol = protocolVersion.createProtocol(advertisedAddress);
+            final MessagingProtocol protocol = protocolVersion.createProtocol(advertisedAddress, handlers);
             context.pipeline().remove(this);
             context.pipeline().addLast("encoder", protocol.newEncoder());
             context.pipeline().addLast("decoder", protocol.newDecoder());
@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.MoreObjects;
+import java.util.List;
+
+/**
+ * Requests written to a connection at once, encoded into a single outbound buffer, payload buffers
+ * included. The requests are received and replied to one by one.
+ */
+final class ProtocolBatch {
+    private final List<ProtocolRequest> requests;
+
+    ProtocolBatch(final List<ProtocolRequest> requests) {
+        checkArgument(!requests.isEmpty(), "Expected at least one request in a batch");
+        this.requests = requests;
+    }
+
+    List<ProtocolRequest> requests() {
+        return requests;
+    }
+
+    int size() {
+        return requests.size();
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).add("requests", requests).toString();
+    }
+}
@@ -45,6 +45,15 @@ public abstract class ProtocolMessage {
         return payload;
     }
 
+    /**
+     * Returns the length of the payload in bytes.
+     *
+     * @return the payload length
+     */
+    public int payloadLength() {
+        return payload == null ? 0 : payload.length;
+    }
+
     /** Internal message type. */
     public enum Type {
         REQUEST(1), REPLY(2);
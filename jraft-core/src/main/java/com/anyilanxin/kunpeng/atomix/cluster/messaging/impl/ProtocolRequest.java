@@ -19,16 +19,44 @@ package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
 import com.anyilanxin.kunpeng.atomix.utils.misc.ArraySizeHashPrinter;
 import com.anyilanxin.kunpeng.atomix.utils.net.Address;
 import com.google.common.base.MoreObjects;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 
 /** Internal request message. */
 public final class ProtocolRequest extends ProtocolMessage {
     private final Address sender;
     private final String  subject;
+    private final ByteBuf payloadBuffer;
+    private final int     handlerSlot;
 
     public ProtocolRequest(final long id, final Address sender, final String subject, final byte[] payload) {
+        this(id, sender, subject, payload, -1);
+    }
+
+    /**
+     * Creates a request whose subject is already resolved to the given {@link HandlerRegistry}
+     * slot, or -1 when it's not.
+     */
+    ProtocolRequest(final long id, final Address sender, final String subject, final byte[] payload,
+                    final int handlerSlot) {
         super(id, payload);
         this.sender = sender;
         this.subject = subject;
+        this.payloadBuffer = null;
+        this.handlerSlot = handlerSlot;
+    }
+
+    /**
+     * Creates a request whose payload is written to the channel as is, without being copied into
+     * the outbound buffer. The request retains its own duplicate of the payload buffer, which must
+     * be released by {@link #release()} once the request is written or dropped.
+     */
+    public ProtocolRequest(final long id, final Address sender, final String subject, final ByteBuf payload) {
+        super(id, null);
+        this.sender = sender;
+        this.subject = subject;
+        this.payloadBuffer = payload.retainedDuplicate();
+        this.handlerSlot = -1;
     }
 
     @Override
@@ -44,9 +72,54 @@ public final class ProtocolRequest extends ProtocolMessage {
         return sender;
     }
 
+    /**
+     * Returns the handler slot of the subject, or -1 if the subject must be looked up by name.
+     *
+     * @return the handler slot
+     */
+    int handlerSlot() {
+        return handlerSlot;
+    }
+
+    /**
+     * Returns the payload buffer, or {@code null} if the payload is a byte array.
+     *
+     * @return the payload buffer
+     */
+    public ByteBuf payloadBuffer() {
+        return payloadBuffer;
+    }
+
+    @Override
+    public int payloadLength() {
+        return payloadBuffer != null ? payloadBuffer.readableBytes() : super.payloadLength();
+    }
+
+    /**
+     * Releases the duplicate of the payload buffer the request retains, if any.
+     */
+    void release() {
+        if (payloadBuffer != null) {
+            payloadBuffer.release();
+        }
+    }
+
+    /**
+     * Returns a request carrying a copy of the payload buffer in a byte array, used where the
+     * request is not written to a channel.
+     *
+     * @return the request with an array payload
+     */
+    ProtocolRequest toArrayPayload() {
+        if (payloadBuffer == null) {
+            return this;
+        }
+        return new ProtocolRequest(id(), sender, subject, ByteBufUtil.getBytes(payloadBuffer));
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this).add("id", id()).add("subject", subject).add("sender", sender)
-            .add("payload", ArraySizeHashPrinter.of(payload())).toString();
+            .add("payload", payloadBuffer != null ? payloadBuffer : ArraySizeHashPrinter.of(payload())).toString();
     }
 }
@@ -32,6 +32,17 @@ public enum ProtocolVersion {
         public MessagingProtocol createProtocol(final Address address) {
             return new MessagingProtocolV2(address);
         }
+    },
+    V3(3) {
+        @Override
+        public MessagingProtocol createProtocol(final Address address) {
+            return new MessagingProtocolV3(address, new HandlerRegistry());
+        }
+
+        @Override
+        MessagingProtocol createProtocol(final Address address, final HandlerRegistry handlers) {
+            return new MessagingProtocolV3(address, handlers);
+        }
     };
 
     private final short version;
@@ -75,4 +86,15 @@ public enum ProtocolVersion {
      * @return a new protocol instance
      */
     public abstract MessagingProtocol createProtocol(Address address);
+
+    /**
+     * Creates a new protocol instance dispatching to the given handlers.
+     *
+     * @param address the protocol address
+     * @param handlers the handlers the received requests are dispatched to
+     * @return a new protocol instance
+     */
+    MessagingProtocol createProtocol(final Address address, final HandlerRegistry handlers) {
+        return createProtocol(address);
+    }
 }
@@ -16,7 +16,11 @@
  */
 package com.anyilanxin.kunpeng.atomix.cluster.messaging.impl;
 
+import com.alipay.sofa.jraft.util.timer.Timer;
 import io.netty.channel.Channel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 /** Client-side Netty remote connection. */
@@ -24,7 +28,8 @@ final class RemoteClientConnection extends AbstractClientConnection {
     private final Channel          channel;
     private final MessagingMetrics messagingMetrics;
 
-    RemoteClientConnection(final MessagingMetrics messagingMetrics, final Channel channel) {
+    RemoteClientConnection(final MessagingMetrics messagingMetrics, final Channel channel, final Timer timer) {
+        super(timer);
         this.messagingMetrics = messagingMetrics;
         this.channel = channel;
     }
@@ -37,6 +42,7 @@ final class RemoteClientConnection extends AbstractClientConnection {
         .writeAndFlush(message)
         .addListener(
             channelFuture -> {
+              message.release();
               if (!channelFuture.isSuccess()) {
                 future.completeExceptionally(channelFuture.cause());
               } else {
@@ -47,13 +53,15 @@ final class RemoteClientConnection extends AbstractClientConnection {
   }
 
     @Override
-  public CompletableFuture<byte[]> sendAndReceive(final ProtocolRequest message) {
-    final CompletableFuture<byte[]> responseFuture = awaitResponseForRequestWithId(message.id());
+  public CompletableFuture<byte[]> sendAndReceive(
+      final ProtocolRequest message, final Duration timeout) {
+    final CompletableFuture<byte[]> responseFuture = awaitResponseForRequestWithId(message, timeout);
     countReqResponseMetrics(message, responseFuture);
     channel
         .writeAndFlush(message)
         .addListener(
             channelFuture -> {
+              message.release();
               if (!channelFuture.isSuccess()) {
                 responseFuture.completeExceptionally(channelFuture.cause());
               }
@@ -61,12 +69,36 @@ final class RemoteClientConnection extends AbstractClientConnection {
     return responseFuture;
   }
 
+    /**
+     * Writes the messages as one {@link ProtocolBatch}, so they are encoded into a single buffer
+     * and flushed at once.
+     */
+    @Override
+    public List<CompletableFuture<byte[]>> sendAndReceiveBatch(final List<ProtocolRequest> messages,
+                                                                final Duration timeout) {
+        final List<CompletableFuture<byte[]>> responseFutures = new ArrayList<>(messages.size());
+        for (final ProtocolRequest message : messages) {
+            final CompletableFuture<byte[]> responseFuture = awaitResponseForRequestWithId(message, timeout);
+            countReqResponseMetrics(message, responseFuture);
+            responseFutures.add(responseFuture);
+        }
+        messagingMetrics.observeRequestBatchSize(channel.remoteAddress().toString(), messages.size());
+        channel.writeAndFlush(new ProtocolBatch(messages)).addListener(channelFuture -> {
+            messages.forEach(ProtocolRequest::release);
+            if (!channelFuture.isSuccess()) {
+                for (final CompletableFuture<byte[]> responseFuture : responseFutures) {
+                    responseFuture.completeExceptionally(channelFuture.cause());
+                }
+            }
+        });
+        return responseFutures;
+    }
+
     private void countMessageMetrics(final ProtocolRequest message) {
         final String toAddress = channel.remoteAddress().toString();
         final String subject = message.subject();
         messagingMetrics.countMessage(channel.remoteAddress().toString(), message.subject());
-        final byte[] payload = message.payload();
-        messagingMetrics.observeRequestSize(toAddress, subject, payload == null ? 0 : payload.length);
+        messagingMetrics.observeRequestSize(toAddress, subject, message.payloadLength());
     }
 
     private void countReqResponseMetrics(
@@ -76,8 +108,7 @@ final class RemoteClientConnection extends AbstractClientConnection {
     messagingMetrics.countRequestResponse(toAddress, subject);
     messagingMetrics.incInFlightRequests(toAddress, subject);
     final var timer = messagingMetrics.startRequestTimer(subject);
-    final byte[] payload = message.payload();
-    messagingMetrics.observeRequestSize(toAddress, subject, payload == null ? 0 : payload.length);
+    messagingMetrics.observeRequestSize(toAddress, subject, message.payloadLength());
 
     responseFuture.whenComplete(
         (success, failure) -> {
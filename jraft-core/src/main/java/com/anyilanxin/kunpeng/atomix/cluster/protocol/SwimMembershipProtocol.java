@@ -422,7 +422,7 @@ public class SwimMembershipProtocol
         .sendAndReceive(
             member.address(),
             MEMBERSHIP_SYNC,
-            SERIALIZER.encode(localMember.copy()),
+            buffer -> SERIALIZER.encode(localMember.copy(), buffer),
             false,
             config.getProbeTimeout())
         .whenCompleteAsync(
@@ -517,7 +517,7 @@ public class SwimMembershipProtocol
         .sendAndReceive(
             member.address(),
             MEMBERSHIP_PROBE,
-            SERIALIZER.encode(Pair.of(localMember.copy(), member)),
+            buffer -> SERIALIZER.encode(Pair.of(localMember.copy(), member), buffer),
             false,
             config.getProbeTimeout())
         .whenCompleteAsync(
@@ -629,7 +629,7 @@ public class SwimMembershipProtocol
         .sendAndReceive(
             member.address(),
             MEMBERSHIP_PROBE_REQUEST,
-            SERIALIZER.encode(suspect),
+            buffer -> SERIALIZER.encode(suspect, buffer),
             false,
             config.getProbeTimeout().multipliedBy(2))
         .<Boolean>thenApply(SERIALIZER::decode)
@@ -680,7 +680,7 @@ public class SwimMembershipProtocol
               .sendAndReceive(
                   member.address(),
                   MEMBERSHIP_PROBE,
-                  SERIALIZER.encode(Pair.of(localMember.copy(), member)),
+                  buffer -> SERIALIZER.encode(Pair.of(localMember.copy(), member), buffer),
                   false,
                   config.getProbeTimeout())
               .whenCompleteAsync(
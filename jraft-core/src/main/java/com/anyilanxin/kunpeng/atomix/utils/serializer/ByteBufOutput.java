@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.anyilanxin.kunpeng.atomix.utils.serializer;
+
+import com.esotericsoftware.kryo.io.Output;
+import io.netty.buffer.ByteBuf;
+import java.io.OutputStream;
+
+/**
+ * Output flushing its buffer into a Netty buffer, so that a serialized object is copied once,
+ * from the pooled buffer of the output into the target.
+ */
+final class ByteBufOutput extends Output {
+
+    private final ByteBufStream stream = new ByteBufStream();
+
+    ByteBufOutput(final int bufferSize) {
+        super(bufferSize);
+        super.setOutputStream(stream);
+    }
+
+    void setTarget(final ByteBuf target) {
+        stream.target = target;
+    }
+
+    private static final class ByteBufStream extends OutputStream {
+        private ByteBuf target;
+
+        @Override
+        public void write(final int b) {
+            target.writeByte(b);
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) {
+            target.writeBytes(bytes, offset, length);
+        }
+    }
+}
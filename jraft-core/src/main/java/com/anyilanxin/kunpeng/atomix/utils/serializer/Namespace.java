@@ -21,13 +21,14 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 import com.esotericsoftware.kryo.Kryo;
 import com.esotericsoftware.kryo.Serializer;
+import com.esotericsoftware.kryo.io.ByteBufferInput;
 import com.esotericsoftware.kryo.io.ByteBufferOutput;
 import com.esotericsoftware.kryo.io.Input;
 import com.esotericsoftware.kryo.util.Pool;
 import com.esotericsoftware.minlog.Log;
 import com.google.common.base.MoreObjects;
 import com.google.common.collect.ImmutableList;
-import java.io.ByteArrayInputStream;
+import io.netty.buffer.ByteBuf;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
@@ -54,6 +55,10 @@ public class Namespace {
     /** Smallest ID free to use for user defined registrations. */
     private static final int                       INITIAL_ID             = 16;
 
+    private static final byte[]                    EMPTY_BYTES            = new byte[0];
+
+    private static final ByteBuffer                EMPTY_BUFFER           = ByteBuffer.allocate(0);
+
     static {
         Log.NONE();
     }
@@ -80,19 +85,43 @@ public class Namespace {
                                                                                   }
                                                                               }
                                                                           };
+    private final Pool<ByteBufOutput>              byteBufOutputPool      = new Pool<>(true, true) {
+                                                                              @Override
+                                                                              protected ByteBufOutput create() {
+                                                                                  return new ByteBufOutput(
+                                                                                      DEFAULT_BUFFER_SIZE);
+                                                                              }
+
+                                                                              @Override
+                                                                              public void free(final ByteBufOutput output) {
+                                                                                  output.setTarget(null);
+                                                                                  output.reset();
+                                                                                  super.free(output);
+                                                                              }
+                                                                          };
+    // inputs reading the serialized bytes in place, they never own a buffer
     private final Pool<Input>                      inputPool              = new Pool<>(true, true) {
                                                                               @Override
                                                                               protected Input create() {
-                                                                                  return new Input(DEFAULT_BUFFER_SIZE);
+                                                                                  return new Input();
                                                                               }
 
                                                                               @Override
                                                                               public void free(final Input input) {
-                                                                                  if (input.getBuffer().length < MAX_POOLED_BUFFER_SIZE) {
-                                                                                      input.reset();
-                                                                                      input.setInputStream(null);
-                                                                                      super.free(input);
-                                                                                  }
+                                                                                  input.setBuffer(EMPTY_BYTES);
+                                                                                  super.free(input);
+                                                                              }
+                                                                          };
+    private final Pool<ByteBufferInput>            byteBufferInputPool    = new Pool<>(true, true) {
+                                                                              @Override
+                                                                              protected ByteBufferInput create() {
+                                                                                  return new ByteBufferInput();
+                                                                              }
+
+                                                                              @Override
+                                                                              public void free(final ByteBufferInput input) {
+                                                                                  input.setBuffer(EMPTY_BUFFER);
+                                                                                  super.free(input);
                                                                               }
                                                                           };
 
@@ -152,7 +181,31 @@ public class Namespace {
     }
 
     /**
-     * Deserializes given byte array to Object using Kryo instance in pool.
+     * Serializes given object to the writer index of a Netty buffer using Kryo instance in pool,
+     * without an intermediate byte array.
+     *
+     * @param obj Object to serialize
+     * @param buffer to write to
+     */
+    public void serialize(final Object obj, final ByteBuf buffer) {
+        final ByteBufOutput output = byteBufOutputPool.obtain();
+        try {
+            output.setTarget(buffer);
+            final Kryo kryo = kryoPool.obtain();
+            try {
+                kryo.writeClassAndObject(output, obj);
+            } finally {
+                kryoPool.free(kryo);
+            }
+            output.flush();
+        } finally {
+            byteBufOutputPool.free(output);
+        }
+    }
+
+    /**
+     * Deserializes given byte array to Object using Kryo instance in pool, the bytes are read in
+     * place.
      *
      * @param bytes serialized bytes
      * @param <T> deserialized Object type
@@ -164,7 +217,7 @@ public class Namespace {
             final Kryo kryo = kryoPool.obtain();
 
             try {
-                input.setInputStream(new ByteArrayInputStream(bytes));
+                input.setBuffer(bytes);
                 return (T) kryo.readClassAndObject(input);
             } finally {
                 kryoPool.free(kryo);
@@ -174,6 +227,34 @@ public class Namespace {
         }
     }
 
+    /**
+     * Deserializes the Object at the reader index of a Netty buffer using Kryo instance in pool,
+     * the bytes are read in place and the reader index is moved past them.
+     *
+     * @param buffer serialized bytes
+     * @param <T> deserialized Object type
+     * @return deserialized Object
+     */
+    public <T> T deserialize(final ByteBuf buffer) {
+        final ByteBufferInput input = byteBufferInputPool.obtain();
+        try {
+            final Kryo kryo = kryoPool.obtain();
+
+            try {
+                final ByteBuffer bytes = buffer.nioBuffer();
+                final int start = bytes.position();
+                input.setBuffer(bytes);
+                final T object = (T) kryo.readClassAndObject(input);
+                buffer.skipBytes(input.position() - start);
+                return object;
+            } finally {
+                kryoPool.free(kryo);
+            }
+        } finally {
+            byteBufferInputPool.free(input);
+        }
+    }
+
     public ImmutableList<RegistrationBlock> getRegisteredBlocks() {
         return registeredBlocks;
     }
@@ -16,6 +16,9 @@
  */
 package com.anyilanxin.kunpeng.atomix.utils.serializer;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
 /** Interface for serialization of store artifacts. */
 public interface Serializer {
 
@@ -46,6 +49,31 @@ public interface Serializer {
      */
     <T> T decode(byte[] bytes);
 
+    /**
+     * Serialize the specified object into the buffer, at its writer index.
+     *
+     * @param object object to serialize.
+     * @param buffer buffer to write to.
+     * @param <T> encoded type
+     */
+    default <T> void encode(final T object, final ByteBuf buffer) {
+        buffer.writeBytes(encode(object));
+    }
+
+    /**
+     * Deserialize the object at the reader index of the buffer, moving the reader index past it.
+     * The default implementation copies all the readable bytes and consumes them.
+     *
+     * @param buffer buffer to read from.
+     * @param <T> decoded type
+     * @return deserialized object.
+     */
+    default <T> T decode(final ByteBuf buffer) {
+        final byte[] bytes = ByteBufUtil.getBytes(buffer);
+        buffer.skipBytes(bytes.length);
+        return decode(bytes);
+    }
+
     /**
      * Creates a new Serializer instance from a Namespace.
      *
@@ -64,6 +92,16 @@ public interface Serializer {
       public <T> T decode(final byte[] bytes) {
         return namespace.deserialize(bytes);
       }
+
+      @Override
+      public <T> void encode(final T object, final ByteBuf buffer) {
+        namespace.serialize(object, buffer);
+      }
+
+      @Override
+      public <T> T decode(final ByteBuf buffer) {
+        return namespace.deserialize(buffer);
+      }
     };
   }
 }
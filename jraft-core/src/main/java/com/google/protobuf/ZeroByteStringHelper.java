@@ -54,6 +54,20 @@ public class ZeroByteStringHelper {
         return ByteString.wrap(buf);
     }
 
+    /**
+     * Create a {@link CodedInputStream} on the byte array, the bytes fields parsed
+     * from it wrap the array instead of copying it, so the array must never be
+     * modified after parsing.
+     *
+     * @param bs the byte array
+     * @return the aliasing input stream
+     */
+    public static CodedInputStream newAliasingInput(final byte[] bs) {
+        final CodedInputStream input = CodedInputStream.newInstance(bs, 0, bs.length, true);
+        input.enableAliasing(true);
+        return input;
+    }
+
     /**
      * Carry the byte[] from {@link ByteString}, if failed,
      * then call {@link ByteString#toByteArray()}.